@@ -0,0 +1,141 @@
+/**
+ *  LazyThought
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.susi.mind;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONException;
+
+import net.yacy.grid.tools.JSONStreamParser;
+import net.yacy.grid.tools.JSONStreamParser.Event;
+
+/**
+ * A lazy view on a serialized thought, as it is transported in the broker.
+ * The view reads the string attributes of the actions, like "type" and "queue", with a streaming scan
+ * over the raw message bytes; the data and all nested values of the actions are skipped.
+ * The complete thought is only created when getThought() is called. This lets listeners route and
+ * forward messages without paying the cost of parsing the whole message.
+ */
+public class LazyThought {
+
+    private final static Object NO_STRING = new Object(); // marks attributes which exist but are not strings
+
+    private final byte[] message;
+    private List<Map<String, Object>> actionAttributes;
+    private SusiThought thought;
+
+    /**
+     * create a view on a message
+     * @param message a plain json message or an attachment container, as written with SusiAttachment.toBytes()
+     */
+    public LazyThought(final byte[] message) {
+        this.message = message;
+        this.actionAttributes = null;
+        this.thought = null;
+    }
+
+    /**
+     * @return the raw message bytes
+     */
+    public byte[] getMessage() {
+        return this.message;
+    }
+
+    /**
+     * @return the number of actions in the thought
+     * @throws JSONException if the message is not valid json
+     */
+    public int getActionCount() throws JSONException {
+        return scan().size();
+    }
+
+    /**
+     * get a string attribute of an action without parsing the whole message
+     * @param action the index of the action
+     * @param attr the attribute name, i.e. "type" or "queue"
+     * @return the attribute value or "" if the action has no such attribute, like SusiAction.getStringAttr()
+     * @throws JSONException if the message is not valid json or the attribute is not a string
+     */
+    public String getActionStringAttr(final int action, final String attr) throws JSONException {
+        final Object value = scan().get(action).get(attr);
+        if (value == null) return "";
+        if (value == NO_STRING) throw new JSONException("action attribute " + attr + " is not a string");
+        return (String) value;
+    }
+
+    /**
+     * get the complete thought; the message is parsed on the first call only
+     * @return the thought
+     * @throws JSONException if the message is not valid json or a container is damaged
+     */
+    public SusiThought getThought() throws JSONException {
+        if (this.thought == null) {
+            try {
+                this.thought = new SusiThought(SusiAttachment.parse(this.message));
+            } catch (final IOException e) {
+                throw new JSONException(e); // a damaged container is handled like a syntax error
+            }
+        }
+        return this.thought;
+    }
+
+    private List<Map<String, Object>> scan() throws JSONException {
+        if (this.actionAttributes != null) return this.actionAttributes;
+        final List<Map<String, Object>> actions = new ArrayList<>();
+        final JSONStreamParser parser = SusiAttachment.isContainer(this.message) ?
+                new JSONStreamParser(this.message, 8, envelopeLength()) :
+                new JSONStreamParser(this.message);
+        if (parser.next() != Event.START_OBJECT) throw new JSONException("a thought must be a json object");
+        Event e;
+        while ((e = parser.next()) != Event.END_OBJECT) {
+            if (e != Event.KEY) throw new JSONException("unexpected " + e);
+            if (!"actions".equals(parser.getString())) {
+                parser.skipValue();
+                continue;
+            }
+            if (parser.next() != Event.START_ARRAY) throw new JSONException("actions must be an array");
+            while ((e = parser.next()) != Event.END_ARRAY) {
+                if (e != Event.START_OBJECT) throw new JSONException("an action must be a json object");
+                final Map<String, Object> attributes = new HashMap<>();
+                while (parser.next() != Event.END_OBJECT) {
+                    final String key = parser.getString();
+                    if (parser.next() == Event.STRING) {
+                        attributes.put(key, parser.getString());
+                    } else {
+                        attributes.put(key, NO_STRING);
+                        parser.skipValue();
+                    }
+                }
+                actions.add(attributes);
+            }
+        }
+        return this.actionAttributes = actions;
+    }
+
+    private int envelopeLength() throws JSONException {
+        final int l = (this.message[4] & 0xff) << 24 | (this.message[5] & 0xff) << 16 | (this.message[6] & 0xff) << 8 | (this.message[7] & 0xff);
+        if (l < 0 || l > this.message.length - 8) throw new JSONException("damaged attachment container");
+        return l;
+    }
+}
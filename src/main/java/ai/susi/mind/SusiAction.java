@@ -107,14 +107,15 @@ public class SusiAction {
     }
 
     // attach a binary asset to the action
+    // the asset is written as raw attachment if the thought is written with SusiAttachment.toBytes()
+    // and as Base64 string if the action is written as plain json
     public SusiAction setBinaryAsset(String name, byte[] b) {
         JSONObject assets;
         if (this.json.has("assets")) assets = this.json.getJSONObject("assets"); else {
             assets = new JSONObject();
             this.json.put("assets", assets);
         }
-        final String bAsBase64 = Base64.getEncoder().encodeToString(b);
-        assets.put(name, bAsBase64);
+        assets.put(name, new SusiAttachment(b));
         return this;
     }
 
@@ -122,7 +123,9 @@ public class SusiAction {
     public byte[] getBinaryAsset(String name) {
         if (!this.json.has("assets")) return null;
         JSONObject assets = this.json.getJSONObject("assets");
-        String bAsBase64 = assets.getString(name);
+        Object asset = assets.get(name);
+        if (asset instanceof SusiAttachment) return ((SusiAttachment) asset).getContent();
+        String bAsBase64 = assets.getString(name); // messages from older peers
         return Base64.getDecoder().decode(bAsBase64);
     }
 
@@ -0,0 +1,205 @@
+/**
+ *  SusiAttachment
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.susi.mind;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+import net.yacy.grid.tools.JSONStreamParser;
+import net.yacy.grid.tools.JSONStreamWriter;
+
+/**
+ * A binary asset of an action. Attachments are placed into the json of an action like any other value.
+ * If a thought is written as plain json, the attachment is written as Base64 string, which is the
+ * format that all older messages have. If a thought is written with toBytes(), the attachments are
+ * written as raw bytes behind the json envelope and the json only contains a reference to the attachment:
+ *
+ * message    = magic envelopeLength envelope attachmentCount attachment*
+ * attachment = idLength id contentLength content
+ *
+ * All numbers are big-endian int values, the envelope is the UTF-8 encoded json and the id is an UTF-8 string.
+ * Messages which do not start with the magic number are plain json.
+ */
+public class SusiAttachment implements JSONString {
+
+    public final static int MAGIC = 0x59474d31; // "YGM1"
+    public final static String REFERENCE_KEY = "attachment";
+
+    // the collector for attachments while a container envelope is written
+    private final static ThreadLocal<Map<SusiAttachment, String>> collector = new ThreadLocal<>();
+
+    private final byte[] content;
+
+    public SusiAttachment(final byte[] content) {
+        this.content = content;
+    }
+
+    public byte[] getContent() {
+        return this.content;
+    }
+
+    @Override
+    public String toJSONString() {
+        final Map<SusiAttachment, String> c = collector.get();
+        if (c == null) return JSONObject.quote(Base64.getEncoder().encodeToString(this.content));
+        String id = c.get(this);
+        if (id == null) {
+            id = Integer.toString(c.size());
+            c.put(this, id);
+        }
+        return "{\"" + REFERENCE_KEY + "\":\"" + id + "\"}";
+    }
+
+    /**
+     * check if a message is an attachment container
+     * @param message the message
+     * @return true if the message starts with the container magic number
+     */
+    public static boolean isContainer(final byte[] message) {
+        return message != null && message.length >= 8 &&
+                ((message[0] & 0xff) << 24 | (message[1] & 0xff) << 16 | (message[2] & 0xff) << 8 | (message[3] & 0xff)) == MAGIC;
+    }
+
+    /**
+     * write a json object as message. If the object contains attachments, the message is a container,
+     * otherwise it is plain json.
+     * @param json the message object
+     * @return the message bytes
+     */
+    public static byte[] toBytes(final JSONObject json) {
+        final Map<SusiAttachment, String> c = new IdentityHashMap<>();
+        final byte[] e;
+        collector.set(c);
+        try {
+            e = JSONStreamWriter.toBytes(json);
+        } finally {
+            collector.remove();
+        }
+        if (c.isEmpty()) return e;
+        final Map<String, byte[]> attachments = new LinkedHashMap<>();
+        c.forEach((attachment, id) -> attachments.put(id, attachment.content));
+        return pack(e, attachments);
+    }
+
+    /**
+     * read a message which was written with toBytes() or which is plain json.
+     * References to attachments in the assets of the actions are replaced by SusiAttachment objects.
+     * @param message the message bytes
+     * @return the message object
+     * @throws IOException if the container is damaged
+     */
+    public static JSONObject parse(final byte[] message) throws IOException {
+        if (!isContainer(message)) return JSONStreamParser.parseObject(message);
+        final Map<String, byte[]> attachments = new LinkedHashMap<>();
+        final byte[] envelope = unpack(message, attachments);
+        final JSONObject json = JSONStreamParser.parseObject(envelope);
+        if (json.has("actions")) resolve(json.getJSONArray("actions"), attachments);
+        return json;
+    }
+
+    private static void resolve(final JSONArray actions, final Map<String, byte[]> attachments) throws IOException {
+        for (int i = 0; i < actions.length(); i++) {
+            final JSONObject action = actions.optJSONObject(i);
+            if (action == null) continue;
+            final JSONObject assets = action.optJSONObject("assets");
+            if (assets != null) {
+                for (final String name: assets.keySet()) {
+                    final JSONObject reference = assets.optJSONObject(name);
+                    if (reference == null || reference.length() != 1 || !reference.has(REFERENCE_KEY)) continue;
+                    final byte[] content = attachments.get(reference.getString(REFERENCE_KEY));
+                    if (content == null) throw new IOException("missing attachment " + reference.getString(REFERENCE_KEY) + " for asset " + name);
+                    assets.put(name, new SusiAttachment(content));
+                }
+            }
+            final JSONArray embedded = action.optJSONArray("actions");
+            if (embedded != null) resolve(embedded, attachments);
+        }
+    }
+
+    /**
+     * write a container
+     * @param envelope the envelope bytes
+     * @param attachments the attachments, id to content
+     * @return the container bytes
+     */
+    public static byte[] pack(final byte[] envelope, final Map<String, byte[]> attachments) {
+        int size = 12 + envelope.length;
+        final byte[][] ids = new byte[attachments.size()][];
+        int i = 0;
+        for (final Map.Entry<String, byte[]> entry: attachments.entrySet()) {
+            ids[i] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            size += 8 + ids[i].length + entry.getValue().length;
+            i++;
+        }
+        final ByteBuffer bb = ByteBuffer.allocate(size);
+        bb.putInt(MAGIC).putInt(envelope.length).put(envelope).putInt(attachments.size());
+        i = 0;
+        for (final byte[] content: attachments.values()) {
+            bb.putInt(ids[i].length).put(ids[i]).putInt(content.length).put(content);
+            i++;
+        }
+        return bb.array();
+    }
+
+    /**
+     * read a container
+     * @param message the container bytes
+     * @param attachments a map which is filled with the attachments, id to content
+     * @return the envelope bytes
+     * @throws IOException if the message is not a container or the container is damaged
+     */
+    public static byte[] unpack(final byte[] message, final Map<String, byte[]> attachments) throws IOException {
+        if (!isContainer(message)) throw new IOException("not an attachment container");
+        try {
+            final ByteBuffer bb = ByteBuffer.wrap(message);
+            bb.getInt(); // magic
+            final byte[] envelope = read(bb);
+            final int count = bb.getInt();
+            if (count < 0) throw new IOException("damaged attachment container: negative attachment count");
+            for (int i = 0; i < count; i++) {
+                final byte[] id = read(bb);
+                final byte[] content = read(bb);
+                attachments.put(new String(id, StandardCharsets.UTF_8), content);
+            }
+            return envelope;
+        } catch (final BufferUnderflowException e) {
+            throw new IOException("damaged attachment container");
+        }
+    }
+
+    // the length is checked before the allocation: a damaged message must not allocate more than its own size
+    private static byte[] read(final ByteBuffer bb) throws IOException {
+        final int length = bb.getInt();
+        if (length < 0 || length > bb.remaining()) throw new IOException("damaged attachment container: length " + length + ", remaining " + bb.remaining());
+        final byte[] b = new byte[length];
+        bb.get(b);
+        return b;
+    }
+}
@@ -415,6 +415,15 @@ public class SusiThought extends JSONObject {
         return this;
     }
     
+    /**
+     * Write the thought as message. Binary assets of the actions are written as raw attachments
+     * behind the json, not as Base64 strings inside the json.
+     * @return the message bytes
+     */
+    public byte[] toBytes() {
+        return SusiAttachment.toBytes(this);
+    }
+    
     public String toString() {
         return super.toString(2); // thats here to get a better debugging output
     }
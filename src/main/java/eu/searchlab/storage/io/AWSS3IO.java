@@ -157,6 +157,7 @@ public class AWSS3IO extends AbstractIO implements GenericIO {
      * @param len
      * @throws IOException
      */
+    @Override
     public void write(final IOPath iop, final InputStream is, final long len) throws IOException {
         final ObjectMetadata metadata = new ObjectMetadata();
         metadata.setContentType("application/octet-stream"); // was: text/plain
@@ -24,11 +24,28 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PipedOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 public abstract class AbstractIO implements GenericIO {
 
+    // conditional operations of implementations without native support are only atomic within this JVM
+    private final static Object casLock = new Object();
+
+    // settings for parallel transfers
+    public static long defaultPartSize = 16 * 1024 * 1024;
+    public static int defaultConcurrency = 4;
+    public static int defaultRetries = 3;
+
+    // the threads which transfer the parts of parallel uploads and downloads
+    protected final static ExecutorService transferExecutor = Executors.newCachedThreadPool(r -> {
+        final Thread t = new Thread(r, "AbstractIO.transfer");
+        t.setDaemon(true);
+        return t;
+    });
 
     @Override
     public void writeGZIP(final IOPath iop, final byte[] object) throws IOException {
@@ -80,6 +97,48 @@ public abstract class AbstractIO implements GenericIO {
         return readAll(read(iop, offset), (int) len);
     }
 
+    @Override
+    public void writeParallel(final IOPath iop, final InputStream stream, final long len, final long partSize, final int concurrency) throws IOException {
+        write(iop, stream, len);
+    }
+
+    @Override
+    public InputStream readParallel(final IOPath iop, final long partSize, final int concurrency) throws IOException {
+        final long size = size(iop);
+        if (size <= partSize || concurrency <= 1) return read(iop);
+        return new ParallelRangeInputStream(this, iop, size, partSize, concurrency, defaultRetries, transferExecutor);
+    }
+
+    @Override
+    public boolean compareAndSet(final IOPath iop, final byte[] expected, final byte[] object) throws IOException {
+        synchronized (casLock) {
+            if (!matches(iop, expected)) return false;
+            write(iop, object);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean compareAndRemove(final IOPath iop, final byte[] expected) throws IOException {
+        synchronized (casLock) {
+            if (expected == null || !matches(iop, expected)) return false;
+            remove(iop);
+            return true;
+        }
+    }
+
+    /**
+     * check if an object has the expected content
+     * @param iop
+     * @param expected the expected content or null if the object must not exist
+     * @return true if the object matches
+     * @throws IOException
+     */
+    protected boolean matches(final IOPath iop, final byte[] expected) throws IOException {
+        if (!exists(iop)) return expected == null;
+        return expected != null && Arrays.equals(readAll(iop), expected);
+    }
+
     @Override
     public void merge(final IOPath fromIOp0, final IOPath fromIOp1, final IOPath toIOp) throws IOException {
         final long size0 = this.size(fromIOp0);
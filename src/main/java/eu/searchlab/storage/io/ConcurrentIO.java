@@ -20,33 +20,173 @@
 package eu.searchlab.storage.io;
 
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPOutputStream;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 /**
- * Use lock files to get exclusive access to shared files.
+ * Use leases to get exclusive access to shared files.
+ * A lease is a lock file which names its owner, a fencing token and an expiry time.
+ * Lock files are only created, renewed, taken over and removed with conditional writes,
+ * so only one of several competing processes can win a lock. The holder of a lease renews it
+ * in the background; if a holder crashes, its lease expires and can be taken over by another process.
+ * The fencing token is increased with every new lease on the same lock file; to keep the token,
+ * a released lease is not removed but written as expired lease.
  */
 public final class ConcurrentIO {
 
+    public static long defaultLeaseTime = 30000L;
+    private final static long MIN_BACKOFF = 1L, MAX_BACKOFF = 500L;
+    private final static String hostName, hostAddress; // written into the lock files; computed once because the lookup may ask the dns
+    static {
+        String name = "localhost", address = "127.0.0.1";
+        try {
+            final InetAddress localhost = InetAddress.getLocalHost();
+            name = localhost.getCanonicalHostName();
+            address = localhost.getHostAddress();
+        } catch (final UnknownHostException e) {}
+        hostName = name;
+        hostAddress = address;
+    }
+
+    private final static ScheduledExecutorService renewScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread t = new Thread(r, "ConcurrentIO.renew");
+        t.setDaemon(true);
+        return t;
+    });
+
     private final GenericIO io;
+    private final long leaseTime;
 
     /**
      * ConcurrentIO
      * @param io
      */
     public ConcurrentIO(final GenericIO io) {
+        this(io, defaultLeaseTime);
+    }
+
+    /**
+     * ConcurrentIO
+     * @param io
+     * @param leaseTime the time in milliseconds after that a lease expires if it is not renewed
+     */
+    public ConcurrentIO(final GenericIO io, final long leaseTime) {
         this.io = io;
+        this.leaseTime = leaseTime;
     }
 
     public final GenericIO getIO() {
         return this.io;
     }
 
+    /**
+     * A lease on a set of lock files. The lease is renewed in the background until it is closed.
+     */
+    public final class Lease implements Closeable {
+
+        private final String owner;
+        private final IOPath[] lockFiles;
+        private final byte[][] leases; // the current content of the lock files
+        private final long[] tokens;
+        private ScheduledFuture<?> renewal;
+        private boolean valid;
+        private long expires; // the earliest expiry time of the lock files as written with the last successful acquire or renewal
+
+        private Lease(final String owner, final IOPath[] lockFiles) {
+            this.owner = owner;
+            this.lockFiles = lockFiles;
+            this.leases = new byte[lockFiles.length][];
+            this.tokens = new long[lockFiles.length];
+            this.renewal = null;
+            this.valid = true;
+            this.expires = Long.MAX_VALUE;
+        }
+
+        public String getOwner() {
+            return this.owner;
+        }
+
+        /**
+         * get the fencing token of a lock file; a storage which remembers the highest token it has seen
+         * can reject writes of a holder whose lease was taken over
+         * @param i the index of the locked path
+         * @return the token
+         */
+        public long getToken(final int i) {
+            return this.tokens[i];
+        }
+
+        /**
+         * @return true if the lease has not been lost, closed or expired
+         */
+        public synchronized boolean isValid() {
+            return this.valid && System.currentTimeMillis() < this.expires;
+        }
+
+        /**
+         * throw an exception if the lease has been lost, i.e. because renewal failed and another process took it over,
+         * or if the lease expired because renewals failed for longer than the lease time
+         * @throws IOException
+         */
+        public void check() throws IOException {
+            if (!isValid()) throw new IOException("lease lost for " + this.lockFiles[0].toString());
+        }
+
+        private synchronized void renew() {
+            if (!this.valid) return;
+            final long next_expires = System.currentTimeMillis() + ConcurrentIO.this.leaseTime;
+            try {
+                for (int i = 0; i < this.lockFiles.length; i++) {
+                    final byte[] next = lease(this.owner, this.tokens[i], next_expires);
+                    if (!ConcurrentIO.this.io.compareAndSet(this.lockFiles[i], this.leases[i], next)) {
+                        this.valid = false;
+                        if (this.renewal != null) this.renewal.cancel(false);
+                        return;
+                    }
+                    this.leases[i] = next;
+                }
+                this.expires = next_expires;
+            } catch (final IOException e) {
+                // try again with the next renewal; the lease is valid until the expiry time of the last successful renewal
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (this.renewal != null) this.renewal.cancel(false);
+            IOException ee = null;
+            for (int i = 0; i < this.lockFiles.length; i++) {
+                if (this.leases[i] == null) continue;
+                try {
+                    ConcurrentIO.this.io.compareAndSet(this.lockFiles[i], this.leases[i], lease(this.owner, this.tokens[i], 0));
+                } catch (final IOException e) {
+                    ee = e; // the lease will expire
+                }
+                this.leases[i] = null;
+            }
+            this.valid = false;
+            if (ee != null) throw ee;
+        }
+    }
+
     private final static IOPath[] lockFile(final IOPath... iops) {
         final IOPath[] lockFiles = new IOPath[iops.length];
         for (int i = 0; i < iops.length; i++) {
@@ -63,64 +203,121 @@ public final class ConcurrentIO {
         return lockFile(iops);
     }
 
-    private final IOObject readLockFile(final IOPath lockFile) throws IOException {
-        assert this.io.exists(lockFile);
+    private final JSONObject readLockFile(final IOPath lockFile) throws IOException {
         final byte[] a = this.io.readAll(lockFile);
-        return new IOObject(lockFile, a);
+        try {
+            return new JSONObject(new JSONTokener(new String(a, StandardCharsets.UTF_8)));
+        } catch (final JSONException e) {
+            throw new IOException(e.getMessage());
+        }
     }
 
-    private final void writeLockFile(final IOPath... lockFiles) throws IOException {
-        for (int i = 0; i < lockFiles.length; i++) {
-            final IOPath lockFile = lockFiles[i];
-            assert !this.io.exists(lockFile);
-            final InetAddress localhost = InetAddress.getLocalHost();
-            final long time = System.currentTimeMillis();
-            try {
-                final JSONObject json = new JSONObject(true)
-                        .put("host", localhost.getCanonicalHostName())
-                        .put("ip", localhost.getHostAddress())
-                        .put("time", time);
-                this.io.write(lockFile, json.toString(2).getBytes(StandardCharsets.UTF_8));
-            } catch (final JSONException e) {
-                throw new IOException(e.getMessage());
-            }
+    private final static byte[] lease(final String owner, final long token, final long expires) throws IOException {
+        try {
+            final JSONObject json = new JSONObject(true)
+                    .put("owner", owner)
+                    .put("token", token)
+                    .put("expires", expires)
+                    .put("host", hostName)
+                    .put("ip", hostAddress)
+                    .put("time", System.currentTimeMillis());
+            return json.toString(2).getBytes(StandardCharsets.UTF_8);
+        } catch (final JSONException e) {
+            throw new IOException(e.getMessage());
         }
     }
 
-    private final void releaseeLockFile(final IOPath... lockFiles) throws IOException {
-        for (int i = 0; i < lockFiles.length; i++) {
-            final IOPath lockFile = lockFiles[i];
-            assert this.io.exists(lockFile);
-            this.io.remove(lockFile);
+    // the expiry time of a lease; lock files of older versions have no expiry time and expire a lease time after their creation
+    private final long expires(final JSONObject json) {
+        if (json.has("expires")) return json.optLong("expires", 0);
+        return json.optLong("time", 0) + this.leaseTime;
+    }
+
+    /**
+     * try to get a lease on a lock file
+     * @param lease the lease which gets the lock file
+     * @param i the index of the lock file in the lease
+     * @return true if the lease was acquired
+     * @throws IOException
+     */
+    private final boolean tryAcquire(final Lease lease, final int i) throws IOException {
+        final IOPath lockFile = lease.lockFiles[i];
+        byte[] current = null;
+        long token = 1;
+        if (this.io.exists(lockFile)) {
+            try {
+                current = this.io.readAll(lockFile);
+            } catch (final IOException e) {
+                return false; // removed concurrently; try again
+            }
+            JSONObject json;
+            try {
+                json = new JSONObject(new JSONTokener(new String(current, StandardCharsets.UTF_8)));
+            } catch (final JSONException e) {
+                json = new JSONObject(); // a damaged lock file is handled like an expired lease
+            }
+            if (expires(json) > System.currentTimeMillis()) return false;
+            token = json.optLong("token", 0) + 1;
         }
+        final long expires = System.currentTimeMillis() + this.leaseTime;
+        final byte[] next = lease(lease.owner, token, expires);
+        if (!this.io.compareAndSet(lockFile, current, next)) return false;
+        lease.leases[i] = next;
+        lease.tokens[i] = token;
+        lease.expires = Math.min(lease.expires, expires);
+        return true;
     }
 
-    private final boolean waitUntilUnlock(final long waitingtime, final IOPath... lockFiles) {
-        if (waitingtime <= 0) return true;
+    /**
+     * get a lease on the given paths. The paths are locked in a canonical order, so concurrent
+     * leases on overlapping sets of paths cannot deadlock. The lease must be closed to release the locks.
+     * @param waitingtime the maximum time in milliseconds to wait for the lease; if not positive, the lease is tried only once
+     * @param iops the paths to lock
+     * @return the lease
+     * @throws IOException if the lease could not be acquired within the waiting time
+     */
+    public final Lease lock(final long waitingtime, final IOPath... iops) throws IOException {
+        final IOPath[] lockFiles = lockFile(iops);
+        final Lease lease = new Lease(UUID.randomUUID().toString(), lockFiles);
+        final Integer[] order = new Integer[lockFiles.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> lockFiles[a].toString().compareTo(lockFiles[b].toString()));
         final long timeout = System.currentTimeMillis() + waitingtime;
-        waitloop: while (System.currentTimeMillis() < timeout) {
-            for (int i = 0; i < lockFiles.length; i++) {
-                if (this.io.exists(lockFiles[i])) {
-                    try {Thread.sleep(1000);} catch (final InterruptedException e) {}
-                    continue waitloop;
+        long backoff = MIN_BACKOFF;
+        int acquired = 0;
+        try {
+            while (acquired < order.length) {
+                if (tryAcquire(lease, order[acquired])) {
+                    acquired++;
+                    continue;
+                }
+                final long remaining = timeout - System.currentTimeMillis();
+                if (remaining <= 0) throw new IOException("timeout waiting for lease on " + lockFiles[order[acquired]].toString());
+                // exponential backoff with jitter, so competing waiters do not retry in lockstep
+                try {
+                    Thread.sleep(Math.min(remaining, ThreadLocalRandom.current().nextLong(backoff, 2 * backoff + 1)));
+                } catch (final InterruptedException e) {
+                    throw new IOException("interrupted while waiting for lease on " + lockFiles[order[acquired]].toString());
                 }
+                backoff = Math.min(MAX_BACKOFF, backoff * 2);
             }
-            // none of the lock files exist, this is a success!
-            return true;
+        } catch (final IOException e) {
+            lease.close();
+            throw e;
         }
-        return false;
+        final long renewInterval = Math.max(1, this.leaseTime / 3);
+        lease.renewal = renewScheduler.scheduleAtFixedRate(lease::renew, renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+        return lease;
     }
 
     public final void write(final long waitingtime, final IOObject... ioos) throws IOException {
-        final IOPath[] lockFiles = lockFile(ioos);
-        if (waitUntilUnlock(waitingtime, lockFiles)) {
-            writeLockFile(lockFiles);
+        final IOPath[] iops = new IOPath[ioos.length];
+        for (int i = 0; i < ioos.length; i++) iops[i] = ioos[i].getPath();
+        try (final Lease lease = lock(waitingtime, iops)) {
             for (int i = 0; i < ioos.length; i++) {
+                lease.check();
                 this.io.write(ioos[i].getPath(), ioos[i].getObject());
             }
-            releaseeLockFile(lockFiles);
-        } else {
-            throw new IOException("timeout waiting for lock disappearance");
         }
     }
 
@@ -143,19 +340,15 @@ public final class ConcurrentIO {
     }
 
     public final IOObject[] read(final long waitingtime, final IOPath... iops) throws IOException {
-        final IOPath[] lockFiles = lockFile(iops);
         final IOObject[] as = new IOObject[iops.length];
-        if (waitUntilUnlock(waitingtime, lockFiles)) {
-            writeLockFile(lockFiles);
+        try (final Lease lease = lock(waitingtime, iops)) {
             for (int i = 0; i < iops.length; i++) {
                 final byte[] a = this.io.readAll(iops[i]);
                 as[i] = new IOObject(iops[i], a);
             }
-            releaseeLockFile(lockFiles);
-            return as;
-        } else {
-            throw new IOException("timeout waiting for lock disappearance");
+            lease.check();
         }
+        return as;
     }
 
     public final IOObject[] readForced(final long waitingtime, final IOPath... iops) throws IOException {
@@ -168,15 +361,11 @@ public final class ConcurrentIO {
     }
 
     public final void remove(final long waitingtime, final IOPath... iops) throws IOException {
-        final IOPath[] lockFiles = lockFile(iops);
-        if (waitUntilUnlock(waitingtime, lockFiles)) {
-            writeLockFile(lockFiles);
+        try (final Lease lease = lock(waitingtime, iops)) {
             for (int i = 0; i < iops.length; i++) {
+                lease.check();
                 this.io.remove(iops[i]);
             }
-            releaseeLockFile(lockFiles);
-        } else {
-            throw new IOException("timeout waiting for lock disappearance");
         }
     }
 
@@ -189,14 +378,29 @@ public final class ConcurrentIO {
         }
     }
 
+    /**
+     * check if any of the paths has a lease which is not expired
+     * @param iop
+     * @return true if a path is locked
+     */
     public final boolean isLocked(final IOPath... iop) {
         final IOPath[] lockFiles = lockFile(iop);
+        final long now = System.currentTimeMillis();
         for (int i = 0; i < lockFiles.length; i++) {
-            if (this.io.exists(lockFiles[i])) return true;
+            if (!this.io.exists(lockFiles[i])) continue;
+            try {
+                if (expires(readLockFile(lockFiles[i])) > now) return true;
+            } catch (final IOException e) {
+                // removed concurrently or damaged
+            }
         }
         return false;
     }
 
+    /**
+     * remove the lock files of the paths regardless of their owner
+     * @param iop
+     */
     public final void deleteLock(final IOPath... iop) {
         final IOPath[] lockFiles = lockFile(iop);
         try {
@@ -206,49 +410,118 @@ public final class ConcurrentIO {
         } catch (final IOException e) {}
     }
 
-    public final String lockedByHost(final IOPath iop) throws IOException {
+    private final JSONObject lockedBy(final IOPath iop) throws IOException {
         final IOPath[] lockFiles = lockFile(iop);
         for (int i = 0; i < lockFiles.length; i++) {
             if (this.io.exists(lockFiles[i])) {
-                final IOObject ioo = readLockFile(lockFiles[i]);
-                try {
-                    return ioo.getJSONObject().getString("host");
-                } catch (final JSONException e) {
-                    throw new IOException(e.getMessage());
-                }
+                final JSONObject json = readLockFile(lockFiles[i]);
+                if (expires(json) > System.currentTimeMillis()) return json;
             }
         }
         throw new IOException("no lockfile exist");
     }
 
+    public final String lockedByHost(final IOPath iop) throws IOException {
+        try {
+            return lockedBy(iop).getString("host");
+        } catch (final JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
     public final String lockedByIP(final IOPath iop) throws IOException {
-        final IOPath[] lockFiles = lockFile(iop);
-        for (int i = 0; i < lockFiles.length; i++) {
-            if (this.io.exists(lockFiles[i])) {
-                final IOObject ioo = readLockFile(lockFiles[i]);
-                try {
-                    return ioo.getJSONObject().getString("ip");
-                } catch (final JSONException e) {
-                    throw new IOException(e.getMessage());
-                }
-            }
+        try {
+            return lockedBy(iop).getString("ip");
+        } catch (final JSONException e) {
+            throw new IOException(e.getMessage());
         }
-        throw new IOException("no lockfile exist");
     }
 
     public final long lockedByTime(final IOPath iop) throws IOException {
-        final IOPath[] lockFiles = lockFile(iop);
-        for (int i = 0; i < lockFiles.length; i++) {
-            if (this.io.exists(lockFiles[i])) {
-                final IOObject ioo = readLockFile(lockFiles[i]);
-                try {
-                    return ioo.getJSONObject().getLong("time");
-                } catch (final JSONException e) {
-                    throw new IOException(e.getMessage());
-                }
+        try {
+            return lockedBy(iop).getLong("time");
+        } catch (final JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public final String lockedByOwner(final IOPath iop) throws IOException {
+        try {
+            return lockedBy(iop).getString("owner");
+        } catch (final JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * self-test of the leases against the local file system:
+     * contention of several threads, takeover of an expired lease and renewal of a held lease
+     * @param args
+     */
+    public static void main(final String[] args) {
+        try {
+            final File base = Files.createTempDirectory("concurrentio").toFile();
+            final ConcurrentIO cio = new ConcurrentIO(new FileIO(base), 300L);
+            final IOPath counter = new IOPath("test", "a/counter.txt");
+
+            // contention: all threads increment a counter while they hold the lease
+            final int threads = 8, rounds = 50;
+            cio.io.write(counter, "0".getBytes(StandardCharsets.UTF_8));
+            final AtomicInteger holders = new AtomicInteger(0), overlaps = new AtomicInteger(0), failures = new AtomicInteger(0);
+            final Thread[] t = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                t[i] = new Thread(() -> {
+                    for (int j = 0; j < rounds; j++) {
+                        try (final Lease lease = cio.lock(60000L, counter)) {
+                            if (holders.incrementAndGet() > 1) overlaps.incrementAndGet();
+                            final int c = Integer.parseInt(new String(cio.io.readAll(counter), StandardCharsets.UTF_8));
+                            lease.check();
+                            cio.io.write(counter, Integer.toString(c + 1).getBytes(StandardCharsets.UTF_8));
+                            holders.decrementAndGet();
+                        } catch (final IOException e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                });
+                t[i].start();
             }
+            for (int i = 0; i < threads; i++) t[i].join();
+            final int count = Integer.parseInt(new String(cio.io.readAll(counter), StandardCharsets.UTF_8));
+            System.out.println("contention: count = " + count + " (expected " + (threads * rounds) + "), overlaps = " + overlaps.get() + ", failures = " + failures.get());
+
+            // expiry takeover: a holder which stops renewing loses the lease to another process
+            final IOPath takeover = new IOPath("test", "b/takeover.txt");
+            final Lease crashed = cio.lock(1000L, takeover);
+            crashed.renewal.cancel(false); // simulate a crash
+            boolean blocked = false;
+            try {
+                cio.lock(-1, takeover).close();
+            } catch (final IOException e) {
+                blocked = true;
+            }
+            Thread.sleep(500L);
+            final boolean expired = !crashed.isValid(); // without a successful renewal, the holder must not pass check() any more
+            final Lease next = cio.lock(1000L, takeover);
+            crashed.renew();
+            System.out.println("takeover: blocked while valid = " + blocked + ", expired before takeover = " + expired + ", token " + crashed.getToken(0) + " -> " + next.getToken(0) + ", old lease valid = " + crashed.isValid());
+            next.close();
+
+            // renewal: a held lease outlives its lease time
+            final IOPath renewed = new IOPath("test", "c/renewed.txt");
+            final Lease held = cio.lock(1000L, renewed);
+            Thread.sleep(1000L);
+            boolean stolen = true;
+            try {
+                cio.lock(-1, renewed).close();
+            } catch (final IOException e) {
+                stolen = false;
+            }
+            System.out.println("renewal: valid = " + held.isValid() + ", locked = " + cio.isLocked(renewed) + ", stolen = " + stolen);
+            held.close();
+            System.out.println("released: locked = " + cio.isLocked(renewed));
+        } catch (final IOException | InterruptedException e) {
+            e.printStackTrace();
         }
-        throw new IOException("no lockfile exist");
     }
 
 }
@@ -29,12 +29,24 @@ import java.io.InputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class FileIO extends AbstractIO implements GenericIO {
 
+    // conditional operations are serialized with a lock on this file in the base path; this works across processes
+    private final static String CAS_MUTEX_NAME = ".cas.lock";
+    private final static Map<String, Object> casMutexes = new ConcurrentHashMap<>();
+
     private final File basePath;
 
     public FileIO(final File basePath) throws IOException {
@@ -106,6 +118,7 @@ public class FileIO extends AbstractIO implements GenericIO {
     @Override
     public void write(final IOPath iop, final byte[] object) throws IOException {
         final File f = getObjectFile(iop);
+        f.getParentFile().mkdirs();
         final FileOutputStream fos = new FileOutputStream(f);
         fos.write(object);
         fos.close();
@@ -154,6 +167,21 @@ public class FileIO extends AbstractIO implements GenericIO {
         if (ea[0] != null) throw ea[0];
     }
 
+    @Override
+    public void write(final IOPath iop, final InputStream stream, final long len) throws IOException {
+        final File f = getObjectFile(iop);
+        final byte[] buffer = new byte[4096];
+        long remaining = len < 0 ? Long.MAX_VALUE : len;
+        int l;
+        try (final FileOutputStream fos = new FileOutputStream(f)) {
+            while (remaining > 0 && (l = stream.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+                fos.write(buffer, 0, l);
+                remaining -= l;
+            }
+        }
+        if (len >= 0 && remaining > 0) throw new IOException("stream for " + iop.toString() + " ended " + remaining + " bytes early");
+    }
+
     @Override
     public void copy(final IOPath fromIOp, final IOPath toIOp) throws IOException {
         final File from = getObjectFile(fromIOp);
@@ -205,10 +233,54 @@ public class FileIO extends AbstractIO implements GenericIO {
         f.delete();
     }
 
+    @Override
+    public boolean compareAndSet(final IOPath iop, final byte[] expected, final byte[] object) throws IOException {
+        final File f = getObjectFile(iop);
+        synchronized (casMutex()) {
+            try (final FileChannel channel = FileChannel.open(new File(this.basePath, CAS_MUTEX_NAME).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 final FileLock lock = channel.lock()) {
+                if (!matches(f, expected)) return false;
+                // replace the object atomically, readers without lock must never see a partial object
+                f.getParentFile().mkdirs();
+                final File tmp = new File(f.getParentFile(), f.getName() + ".cas");
+                Files.write(tmp.toPath(), object);
+                Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean compareAndRemove(final IOPath iop, final byte[] expected) throws IOException {
+        final File f = getObjectFile(iop);
+        synchronized (casMutex()) {
+            try (final FileChannel channel = FileChannel.open(new File(this.basePath, CAS_MUTEX_NAME).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 final FileLock lock = channel.lock()) {
+                if (expected == null || !matches(f, expected)) return false;
+                return f.delete();
+            }
+        }
+    }
+
+    // a file lock is held per JVM, so threads must be serialized before they ask for the file lock
+    private Object casMutex() {
+        return casMutexes.computeIfAbsent(this.basePath.getAbsolutePath(), k -> new Object());
+    }
+
+    private static boolean matches(final File f, final byte[] expected) throws IOException {
+        if (!f.exists()) return expected == null;
+        try {
+            return expected != null && Arrays.equals(Files.readAllBytes(f.toPath()), expected);
+        } catch (final NoSuchFileException e) {
+            return expected == null;
+        }
+    }
+
     @Override
     public List<IOMeta> list(final String bucketName, final String prefix) throws IOException {
         final File f = getObjectFile(bucketName, prefix);
         final String[] u = f.list();
+        if (u == null) return new ArrayList<>(0); // the folder does not exist
         final List<IOMeta> list = new ArrayList<>(u.length);
         for (final String objectName: u) {
             final File fc = new File(f, objectName);
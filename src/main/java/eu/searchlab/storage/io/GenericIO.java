@@ -100,6 +100,27 @@ public interface GenericIO {
      */
     public void write(final IOPath iop, final PipedOutputStream pos, final long len) throws IOException;
 
+    /**
+     * write a stream with known size (len >= 0) or unknown size (len < 0)
+     * @param iop
+     * @param stream
+     * @param len
+     * @throws IOException
+     */
+    public void write(final IOPath iop, final InputStream stream, final long len) throws IOException;
+
+    /**
+     * write a stream with known size (len >= 0) or unknown size (len < 0) in parts which are uploaded in parallel.
+     * Every part is retried if its upload fails. Implementations without multipart support write the stream sequentially.
+     * @param iop
+     * @param stream
+     * @param len
+     * @param partSize the size of one part in bytes
+     * @param concurrency the maximum number of parts which are uploaded at the same time
+     * @throws IOException
+     */
+    public void writeParallel(final IOPath iop, final InputStream stream, final long len, final long partSize, final int concurrency) throws IOException;
+
     /**
      * client-side merge of two objects into a new object
      * @param fromIOp0
@@ -196,6 +217,17 @@ public interface GenericIO {
      */
     public InputStream read(final IOPath iop, final long offset, final long len) throws IOException;
 
+    /**
+     * reading of an object with ranged reads which are done in parallel; the ranges are returned in order.
+     * Every range is retried if it fails.
+     * @param iop
+     * @param partSize the size of one range in bytes
+     * @param concurrency the maximum number of ranges which are read at the same time
+     * @return InputStream
+     * @throws IOException
+     */
+    public InputStream readParallel(final IOPath iop, final long partSize, final int concurrency) throws IOException;
+
     /**
      * removal of an object
      * @param iop
@@ -203,6 +235,26 @@ public interface GenericIO {
      */
     public void remove(final IOPath iop) throws IOException;
 
+    /**
+     * conditional write of an object: the object is only written if the current object has the expected content.
+     * This is the building block for locks on shared objects.
+     * @param iop
+     * @param expected the expected content of the current object or null if the object must not exist
+     * @param object the new content
+     * @return true if the object was written, false if the current object did not match
+     * @throws IOException
+     */
+    public boolean compareAndSet(final IOPath iop, final byte[] expected, final byte[] object) throws IOException;
+
+    /**
+     * conditional removal of an object: the object is only removed if it has the expected content
+     * @param iop
+     * @param expected the expected content of the object
+     * @return true if the object was removed, false if the object did not exist or did not match
+     * @throws IOException
+     */
+    public boolean compareAndRemove(final IOPath iop, final byte[] expected) throws IOException;
+
     /**
      * listing of object names in a given prefix path
      * @param bucketName
@@ -27,7 +27,9 @@ import java.io.PipedOutputStream;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +40,7 @@ import io.minio.CopyObjectArgs;
 import io.minio.CopySource;
 import io.minio.GetObjectArgs;
 import io.minio.ListObjectsArgs;
+import io.minio.CreateMultipartUploadResponse;
 import io.minio.MakeBucketArgs;
 import io.minio.MinioClient;
 import io.minio.PutObjectArgs;
@@ -47,6 +50,7 @@ import io.minio.Result;
 import io.minio.SelectObjectContentArgs;
 import io.minio.StatObjectArgs;
 import io.minio.StatObjectResponse;
+import io.minio.UploadPartResponse;
 import io.minio.errors.ErrorResponseException;
 import io.minio.errors.InsufficientDataException;
 import io.minio.errors.InternalException;
@@ -58,27 +62,29 @@ import io.minio.messages.FileHeaderInfo;
 import io.minio.messages.InputSerialization;
 import io.minio.messages.Item;
 import io.minio.messages.OutputSerialization;
+import io.minio.messages.Part;
 import io.minio.messages.QuoteFields;
 
 public class MinioS3IO extends AbstractIO implements GenericIO {
 
     // one "proper" part size
     private final long partSize = 10 * 1024 * 1024; // proper is a number between 5MB and 5GB
+    private final static long minPartSize = 5 * 1024 * 1024; // the minimum size of all parts but the last one
 
     // caches
     private final Map<String, Bucket> bucketListCache = new ConcurrentHashMap<>();
     private final Map<String, LinkedHashMap<String, Item>> objectListCache = new ConcurrentHashMap<>();
 
     // the connection
-    private final MinioClient mc;
+    private final MultipartClient mc;
     private final String endpointURL, accessKey, secretKey;
 
     public MinioS3IO(final String endpointURL, final String accessKey, final String secretKey) {
-        this.mc =
+        this.mc = new MultipartClient(
                 MinioClient.builder()
                 .endpoint(endpointURL)
                 .credentials(accessKey, secretKey)
-                .build();
+                .build());
         this.endpointURL = endpointURL;
         this.accessKey = accessKey;
         this.secretKey = secretKey;
@@ -203,6 +209,7 @@ public class MinioS3IO extends AbstractIO implements GenericIO {
      * @param len
      * @throws IOException
      */
+    @Override
     public void write(final IOPath iop, final InputStream stream, final long len) throws IOException {
         try {
             if (len < 0) {
@@ -236,6 +243,65 @@ public class MinioS3IO extends AbstractIO implements GenericIO {
         this.write(iop, new ByteArrayInputStream(object), object.length);
     }
 
+    /**
+     * write a stream as multipart upload where the parts are uploaded in parallel.
+     * The stream is read sequentially into part buffers; at most <concurrency> parts are held in memory.
+     * Objects which fit into one part are written with a single put.
+     * @param iop
+     * @param stream
+     * @param len
+     * @param partSize
+     * @param concurrency
+     * @throws IOException
+     */
+    @Override
+    public void writeParallel(final IOPath iop, final InputStream stream, final long len, final long partSize, final int concurrency) throws IOException {
+        final int ps = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(minPartSize, partSize));
+        ParallelPartUpload.upload(new ParallelPartUpload.Target() {
+            @Override
+            public void put(final byte[] object) throws IOException {
+                MinioS3IO.this.write(iop, object);
+            }
+            @Override
+            public String create() throws IOException {
+                return MinioS3IO.this.mc.createUpload(iop);
+            }
+            @Override
+            public String uploadPart(final String uploadId, final int partNumber, final byte[] data) throws IOException {
+                return MinioS3IO.this.mc.uploadPart(iop, uploadId, partNumber, data);
+            }
+            @Override
+            public void complete(final String uploadId, final String[] etags) throws IOException {
+                final Part[] parts = new Part[etags.length];
+                for (int i = 0; i < parts.length; i++) parts[i] = new Part(i + 1, etags[i]);
+                MinioS3IO.this.mc.completeUpload(iop, uploadId, parts);
+            }
+            @Override
+            public void abort(final String uploadId) throws IOException {
+                MinioS3IO.this.mc.abortUpload(iop, uploadId);
+            }
+        }, iop.toString(), stream, ps, concurrency, defaultRetries, transferExecutor);
+    }
+
+    /**
+     * ranged parallel download; the size is taken from the object metadata
+     */
+    @Override
+    public InputStream readParallel(final IOPath iop, final long partSize, final int concurrency) throws IOException {
+        final long size;
+        try {
+            size = this.mc.statObject(StatObjectArgs.builder().bucket(iop.getBucket()).object(iop.getPath()).build()).size();
+        } catch (InvalidKeyException | ErrorResponseException
+                | InsufficientDataException | InternalException
+                | InvalidResponseException | NoSuchAlgorithmException
+                | ServerException | XmlParserException
+                | IllegalArgumentException | IOException e) {
+            throw new IOException(e.getMessage());
+        }
+        if (size <= partSize || concurrency <= 1) return read(iop);
+        return new ParallelRangeInputStream(this, iop, size, partSize, concurrency, defaultRetries, transferExecutor);
+    }
+
     /**
      * server-side copy of an object to another object
      * @param fromBucketName
@@ -389,6 +455,85 @@ public class MinioS3IO extends AbstractIO implements GenericIO {
         }
     }
 
+    /**
+     * conditional write using the If-None-Match and If-Match preconditions of the S3 api:
+     * a new object is only created if no object exists and an existing object is only replaced
+     * if it was not changed since its content was compared with the expected content.
+     */
+    @Override
+    public boolean compareAndSet(final IOPath iop, final byte[] expected, final byte[] object) throws IOException {
+        final Map<String, String> headers = new HashMap<>();
+        if (expected == null) {
+            headers.put("If-None-Match", "*");
+        } else {
+            final String etag = matchingETag(iop, expected);
+            if (etag == null) return false;
+            headers.put("If-Match", etag);
+        }
+        try {
+            this.mc.putObject(
+                    PutObjectArgs.builder()
+                    .bucket(iop.getBucket())
+                    .object(iop.getPath())
+                    .headers(headers)
+                    .stream(new ByteArrayInputStream(object), object.length, -1)
+                    .contentType("application/octet-stream")
+                    .build());
+            return true;
+        } catch (final ErrorResponseException e) {
+            if (isPreconditionFailure(e)) return false;
+            throw new IOException(e.getMessage());
+        } catch (InvalidKeyException
+                | InsufficientDataException | InternalException
+                | InvalidResponseException | NoSuchAlgorithmException
+                | ServerException | XmlParserException
+                | IllegalArgumentException | IOException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * conditional removal; S3 has no precondition for removals of objects, therefore the object
+     * is removed after a successful comparison which leaves a short time window for concurrent writes.
+     */
+    @Override
+    public boolean compareAndRemove(final IOPath iop, final byte[] expected) throws IOException {
+        if (expected == null || matchingETag(iop, expected) == null) return false;
+        remove(iop);
+        return true;
+    }
+
+    /**
+     * read an object and compare it with the expected content
+     * @param iop
+     * @param expected
+     * @return the etag of the object if the object exists and has the expected content, null otherwise
+     * @throws IOException
+     */
+    private String matchingETag(final IOPath iop, final byte[] expected) throws IOException {
+        try {
+            final StatObjectResponse sor = this.mc.statObject(StatObjectArgs.builder().bucket(iop.getBucket()).object(iop.getPath()).build());
+            if (sor.deleteMarker() || sor.size() != expected.length) return null;
+            final String etag = sor.etag();
+            try (final InputStream is = this.mc.getObject(GetObjectArgs.builder().bucket(iop.getBucket()).object(iop.getPath()).matchETag(etag).build())) {
+                return Arrays.equals(readAll(is, -1), expected) ? etag : null;
+            }
+        } catch (final ErrorResponseException e) {
+            if (isPreconditionFailure(e) || "NoSuchKey".equals(e.errorResponse().code())) return null;
+            throw new IOException(e.getMessage());
+        } catch (InvalidKeyException
+                | InsufficientDataException | InternalException
+                | InvalidResponseException | NoSuchAlgorithmException
+                | ServerException | XmlParserException
+                | IllegalArgumentException | IOException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private static boolean isPreconditionFailure(final ErrorResponseException e) {
+        return "PreconditionFailed".equals(e.errorResponse().code()) || (e.response() != null && e.response().code() == 412);
+    }
+
     /**
      * listing of object names in a given prefix path
      * @param bucketName
@@ -512,4 +657,64 @@ public class MinioS3IO extends AbstractIO implements GenericIO {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * The multipart operations of the minio client are not public; this client makes them available.
+     */
+    private static class MultipartClient extends MinioClient {
+
+        private MultipartClient(final MinioClient client) {
+            super(client);
+        }
+
+        private String createUpload(final IOPath iop) throws IOException {
+            try {
+                final CreateMultipartUploadResponse response = this.createMultipartUpload(iop.getBucket(), null, iop.getPath(), null, null);
+                return response.result().uploadId();
+            } catch (InvalidKeyException | ErrorResponseException
+                    | InsufficientDataException | InternalException
+                    | InvalidResponseException | NoSuchAlgorithmException
+                    | ServerException | XmlParserException
+                    | IllegalArgumentException | IOException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+
+        private String uploadPart(final IOPath iop, final String uploadId, final int partNumber, final byte[] data) throws IOException {
+            try {
+                final UploadPartResponse response = this.uploadPart(iop.getBucket(), null, iop.getPath(), data, data.length, uploadId, partNumber, null, null);
+                return response.etag();
+            } catch (InvalidKeyException | ErrorResponseException
+                    | InsufficientDataException | InternalException
+                    | InvalidResponseException | NoSuchAlgorithmException
+                    | ServerException | XmlParserException
+                    | IllegalArgumentException | IOException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+
+        private void completeUpload(final IOPath iop, final String uploadId, final Part[] parts) throws IOException {
+            try {
+                this.completeMultipartUpload(iop.getBucket(), null, iop.getPath(), uploadId, parts, null, null);
+            } catch (InvalidKeyException | ErrorResponseException
+                    | InsufficientDataException | InternalException
+                    | InvalidResponseException | NoSuchAlgorithmException
+                    | ServerException | XmlParserException
+                    | IllegalArgumentException | IOException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+
+        private void abortUpload(final IOPath iop, final String uploadId) throws IOException {
+            try {
+                this.abortMultipartUpload(iop.getBucket(), null, iop.getPath(), uploadId, null, null);
+            } catch (InvalidKeyException | ErrorResponseException
+                    | InsufficientDataException | InternalException
+                    | InvalidResponseException | NoSuchAlgorithmException
+                    | ServerException | XmlParserException
+                    | IllegalArgumentException | IOException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+    }
+
+}
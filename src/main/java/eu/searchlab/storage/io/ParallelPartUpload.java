@@ -0,0 +1,257 @@
+/**
+ *  ParallelPartUpload
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.searchlab.storage.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A multipart upload of a stream where the parts are uploaded in parallel.
+ * The stream is read sequentially into part buffers; at most <concurrency> parts are held in memory.
+ * Every part is uploaded again if it fails, up to the given number of retries. If a part fails finally,
+ * no more parts are read from the stream and the upload is aborted.
+ * Objects which fit into one part are written with a single put.
+ */
+public class ParallelPartUpload {
+
+    /**
+     * the multipart operations of a storage
+     */
+    public interface Target {
+
+        /**
+         * write an object which fits into one part
+         */
+        public void put(byte[] object) throws IOException;
+
+        /**
+         * start a multipart upload
+         * @return the upload id
+         */
+        public String create() throws IOException;
+
+        /**
+         * upload one part
+         * @param uploadId
+         * @param partNumber the number of the part, starting with 1
+         * @param data
+         * @return the etag of the part
+         */
+        public String uploadPart(String uploadId, int partNumber, byte[] data) throws IOException;
+
+        /**
+         * finish a multipart upload
+         * @param uploadId
+         * @param etags the etags of all parts in the order of the parts
+         */
+        public void complete(String uploadId, String[] etags) throws IOException;
+
+        /**
+         * remove the uploaded parts of a multipart upload which failed
+         * @param uploadId
+         */
+        public void abort(String uploadId) throws IOException;
+    }
+
+    /**
+     * upload a stream
+     * @param target the storage
+     * @param name the name of the object, used in error messages
+     * @param stream the stream which is read until its end
+     * @param partSize the size of one part
+     * @param concurrency the number of parts which are uploaded in parallel
+     * @param retries the number of additional attempts for each part
+     * @param executor the executor which uploads the parts
+     * @throws IOException
+     */
+    public static void upload(final Target target, final String name, final InputStream stream, final int partSize, final int concurrency, final int retries, final ExecutorService executor) throws IOException {
+        final byte[] first = readPart(stream, partSize);
+        if (first.length < partSize) {
+            target.put(first);
+            return;
+        }
+        final String uploadId = target.create();
+        final Semaphore slots = new Semaphore(Math.max(1, concurrency)); // one slot for each part in memory
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final List<Future<String>> parts = new ArrayList<>();
+        try {
+            slots.acquire();
+            byte[] b = first;
+            while (true) {
+                final byte[] data = b;
+                final int n = parts.size() + 1;
+                parts.add(executor.submit(() -> {
+                    try {
+                        return uploadPart(target, name, uploadId, n, data, retries);
+                    } catch (final IOException | RuntimeException e) {
+                        failed.set(true);
+                        throw e;
+                    } finally {
+                        slots.release();
+                    }
+                }));
+                if (data.length < partSize) break; // the last part
+                slots.acquire();
+                if (failed.get()) {
+                    // the upload fails anyway, the rest of the stream is not read
+                    slots.release();
+                    break;
+                }
+                b = readPart(stream, partSize);
+                if (b.length == 0) {
+                    slots.release();
+                    break;
+                }
+            }
+            final String[] etags = new String[parts.size()];
+            for (int i = 0; i < etags.length; i++) etags[i] = parts.get(i).get();
+            target.complete(uploadId, etags);
+        } catch (final InterruptedException | ExecutionException | IOException e) {
+            for (final Future<String> f: parts) f.cancel(true);
+            try {target.abort(uploadId);} catch (final IOException ee) {}
+            final Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage());
+        }
+    }
+
+    private static String uploadPart(final Target target, final String name, final String uploadId, final int partNumber, final byte[] data, final int retries) throws IOException {
+        IOException last = null;
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            try {
+                return target.uploadPart(uploadId, partNumber, data);
+            } catch (final IOException e) {
+                last = e;
+                if (attempt == retries) break; // report the failure at once
+                try {Thread.sleep(100L << Math.min(attempt, 6));} catch (final InterruptedException ee) {break;}
+            }
+        }
+        throw new IOException("cannot upload part " + partNumber + " of " + name + ": " + (last == null ? "interrupted" : last.getMessage()));
+    }
+
+    private static byte[] readPart(final InputStream stream, final int partSize) throws IOException {
+        final byte[] b = new byte[partSize];
+        int p = 0, l;
+        while (p < partSize && (l = stream.read(b, p, partSize - p)) != -1) p += l;
+        return p == partSize ? b : Arrays.copyOf(b, p);
+    }
+
+    /**
+     * an in-memory storage which can fail a part; used for the self-test
+     */
+    private static class TestTarget implements Target {
+        private final int failPart;
+        private final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+        private final AtomicInteger running = new AtomicInteger(0), maxRunning = new AtomicInteger(0);
+        private byte[] object = null;
+        private boolean aborted = false;
+        private TestTarget(final int failPart) {
+            this.failPart = failPart;
+        }
+        @Override
+        public void put(final byte[] o) {
+            this.object = o;
+        }
+        @Override
+        public String create() {
+            return "upload";
+        }
+        @Override
+        public String uploadPart(final String uploadId, final int partNumber, final byte[] data) throws IOException {
+            this.maxRunning.accumulateAndGet(this.running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(10);
+                if (partNumber == this.failPart) throw new IOException("part " + partNumber + " failed");
+                this.parts.put(partNumber, data.clone());
+                return "etag" + partNumber;
+            } catch (final InterruptedException e) {
+                throw new IOException("interrupted");
+            } finally {
+                this.running.decrementAndGet();
+            }
+        }
+        @Override
+        public void complete(final String uploadId, final String[] etags) throws IOException {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            for (int i = 0; i < etags.length; i++) {
+                if (!etags[i].equals("etag" + (i + 1))) throw new IOException("wrong etag " + etags[i]);
+                baos.write(this.parts.get(i + 1));
+            }
+            this.object = baos.toByteArray();
+        }
+        @Override
+        public void abort(final String uploadId) {
+            this.aborted = true;
+            this.parts.clear();
+        }
+    }
+
+    /**
+     * self-test of the upload against an in-memory storage
+     * @param args
+     */
+    public static void main(final String[] args) {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final int partSize = 1000, concurrency = 3;
+        for (final int size: new int[]{500, 1000, 10000, 10500}) {
+            final byte[] object = new byte[size];
+            for (int i = 0; i < size; i++) object[i] = (byte) (i * 31 + i / 7);
+            final TestTarget target = new TestTarget(-1);
+            try {
+                upload(target, "test", new ByteArrayInputStream(object), partSize, concurrency, 1, executor);
+                System.out.println("size " + size + ": " + (Arrays.equals(object, target.object) ? "ok" : "WRONG") + ", parts = " + target.parts.size() + ", max parallel = " + target.maxRunning.get());
+            } catch (final IOException e) {
+                System.out.println("size " + size + ": failed " + e.getMessage());
+            }
+        }
+
+        // a failing part stops reading the stream
+        final AtomicLong read = new AtomicLong(0);
+        final InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                read.incrementAndGet();
+                return 1;
+            }
+        };
+        final TestTarget target = new TestTarget(3);
+        try {
+            upload(target, "test", endless, partSize, concurrency, 0, executor);
+            System.out.println("failure: not detected");
+        } catch (final IOException e) {
+            System.out.println("failure: " + e.getMessage() + ", aborted = " + target.aborted + ", bytes read = " + read.get());
+        }
+        executor.shutdown();
+    }
+}
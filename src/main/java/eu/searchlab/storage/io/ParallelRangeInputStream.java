@@ -0,0 +1,254 @@
+/**
+ *  ParallelRangeInputStream
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.searchlab.storage.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An input stream which reads an object in ranges. Up to <concurrency> ranges are loaded in parallel,
+ * the stream returns them in the order of the object. Every range is read again if it fails,
+ * up to the given number of retries. The memory which is used by the stream is about
+ * <concurrency> * <partSize> bytes.
+ */
+public class ParallelRangeInputStream extends InputStream {
+
+    /**
+     * the range reads of a storage
+     */
+    public interface Source {
+
+        /**
+         * read a range of the object
+         * @param offset the offset of the range
+         * @param len the length of the range
+         * @return a stream of the range
+         */
+        public InputStream read(long offset, long len) throws IOException;
+    }
+
+    private final Source source;
+    private final String name;
+    private final long size, partSize;
+    private final int concurrency, retries;
+    private final ExecutorService executor;
+    private final ArrayDeque<Future<byte[]>> pending;
+    private long nextOffset; // the offset of the next range which is submitted
+    private byte[] part;
+    private int pos;
+    private volatile boolean closed;
+
+    /**
+     * open a ranged stream
+     * @param io the storage which holds the object
+     * @param iop the object path
+     * @param size the size of the object
+     * @param partSize the size of one range
+     * @param concurrency the number of ranges which are loaded in parallel
+     * @param retries the number of additional attempts for each range
+     * @param executor the executor which loads the ranges
+     */
+    public ParallelRangeInputStream(final GenericIO io, final IOPath iop, final long size, final long partSize, final int concurrency, final int retries, final ExecutorService executor) {
+        this((offset, len) -> io.read(iop, offset, len), iop.toString(), size, partSize, concurrency, retries, executor);
+    }
+
+    /**
+     * open a ranged stream
+     * @param source the range reads of the object
+     * @param name the name of the object, used in error messages
+     * @param size the size of the object
+     * @param partSize the size of one range
+     * @param concurrency the number of ranges which are loaded in parallel
+     * @param retries the number of additional attempts for each range
+     * @param executor the executor which loads the ranges
+     */
+    public ParallelRangeInputStream(final Source source, final String name, final long size, final long partSize, final int concurrency, final int retries, final ExecutorService executor) {
+        this.source = source;
+        this.name = name;
+        this.size = size;
+        this.partSize = Math.max(1, partSize);
+        this.concurrency = Math.max(1, concurrency);
+        this.retries = Math.max(0, retries);
+        this.executor = executor;
+        this.pending = new ArrayDeque<>();
+        this.nextOffset = 0;
+        this.part = new byte[0];
+        this.pos = 0;
+        this.closed = false;
+        fill();
+    }
+
+    private void fill() {
+        while (this.pending.size() < this.concurrency && this.nextOffset < this.size) {
+            final long offset = this.nextOffset;
+            final long len = Math.min(this.partSize, this.size - offset);
+            this.pending.add(this.executor.submit(() -> loadRange(offset, len)));
+            this.nextOffset += len;
+        }
+    }
+
+    private byte[] loadRange(final long offset, final long len) throws IOException {
+        IOException last = null;
+        for (int attempt = 0; attempt <= this.retries; attempt++) {
+            if (this.closed) throw new IOException("stream closed");
+            try (InputStream is = this.source.read(offset, len)) {
+                final byte[] b = AbstractIO.readAll(is, (int) len);
+                if (b.length != len) throw new IOException("range " + offset + "+" + len + " returned " + b.length + " bytes");
+                return b;
+            } catch (final IOException e) {
+                last = e;
+                if (attempt == this.retries) break; // report the failure at once
+                try {Thread.sleep(100L << Math.min(attempt, 6));} catch (final InterruptedException ee) {break;}
+            }
+        }
+        throw new IOException("cannot read range " + offset + "+" + len + " of " + this.name + ": " + (last == null ? "interrupted" : last.getMessage()));
+    }
+
+    /**
+     * make the next range the current range
+     * @return false if the end of the object was reached
+     * @throws IOException
+     */
+    private boolean next() throws IOException {
+        if (this.closed) throw new IOException("stream closed");
+        final Future<byte[]> f = this.pending.poll();
+        if (f == null) return false;
+        try {
+            this.part = f.get();
+            this.pos = 0;
+        } catch (final InterruptedException e) {
+            throw new IOException("interrupted while reading " + this.name);
+        } catch (final ExecutionException | CancellationException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(e.getMessage());
+        }
+        fill();
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (this.pos >= this.part.length) if (!next()) return -1;
+        return this.part[this.pos++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) return 0;
+        while (this.pos >= this.part.length) if (!next()) return -1;
+        final int l = Math.min(len, this.part.length - this.pos);
+        System.arraycopy(this.part, this.pos, b, off, l);
+        this.pos += l;
+        return l;
+    }
+
+    @Override
+    public int available() {
+        return this.part.length - this.pos;
+    }
+
+    @Override
+    public void close() {
+        if (this.closed) return;
+        this.closed = true;
+        for (final Future<byte[]> f: this.pending) f.cancel(true);
+        this.pending.clear();
+        this.part = new byte[0];
+        this.pos = 0;
+    }
+
+    /**
+     * an in-memory object with random response times which can fail a range; used for the self-test
+     */
+    private static class TestSource implements Source {
+        private final byte[] object;
+        private final int failures; // the number of times that each range fails before it is delivered
+        private final Set<Long> offsets = ConcurrentHashMap.newKeySet();
+        private final ConcurrentHashMap<Long, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        private final AtomicInteger running = new AtomicInteger(0), maxRunning = new AtomicInteger(0);
+        private TestSource(final byte[] object, final int failures) {
+            this.object = object;
+            this.failures = failures;
+        }
+        @Override
+        public InputStream read(final long offset, final long len) throws IOException {
+            this.maxRunning.accumulateAndGet(this.running.incrementAndGet(), Math::max);
+            try {
+                // later ranges are often finished before earlier ones
+                Thread.sleep(ThreadLocalRandom.current().nextInt(20));
+                if (this.attempts.computeIfAbsent(offset, o -> new AtomicInteger(0)).incrementAndGet() <= this.failures) throw new IOException("range " + offset + " failed");
+                this.offsets.add(offset);
+                return new ByteArrayInputStream(this.object, (int) offset, (int) Math.min(len, this.object.length - offset));
+            } catch (final InterruptedException e) {
+                throw new IOException("interrupted");
+            } finally {
+                this.running.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * self-test of the ranged stream against an in-memory object
+     * @param args
+     */
+    public static void main(final String[] args) {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final int partSize = 1000, concurrency = 4;
+        for (final int size: new int[]{1000, 10000, 10500}) {
+            final byte[] object = new byte[size];
+            for (int i = 0; i < size; i++) object[i] = (byte) (i * 31 + i / 7);
+            for (final int failures: new int[]{0, 1}) {
+                final TestSource source = new TestSource(object, failures);
+                try (final ParallelRangeInputStream is = new ParallelRangeInputStream(source, "test", size, partSize, concurrency, 1, executor)) {
+                    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                    final byte[] b = new byte[777]; // not aligned with the ranges
+                    int l;
+                    while ((l = is.read(b)) != -1) baos.write(b, 0, l);
+                    System.out.println("size " + size + ", failures " + failures + ": " + (Arrays.equals(object, baos.toByteArray()) ? "ok" : "WRONG") + ", ranges = " + source.offsets.size() + ", max parallel = " + source.maxRunning.get());
+                } catch (final IOException e) {
+                    System.out.println("size " + size + ", failures " + failures + ": failed " + e.getMessage());
+                }
+            }
+        }
+
+        // a range which fails more often than it is retried fails the stream
+        final TestSource source = new TestSource(new byte[5000], 2);
+        try (final ParallelRangeInputStream is = new ParallelRangeInputStream(source, "test", 5000, partSize, concurrency, 1, executor)) {
+            while (is.read() != -1) {}
+            System.out.println("failure: not detected");
+        } catch (final IOException e) {
+            System.out.println("failure: " + e.getMessage());
+        }
+        executor.shutdown();
+    }
+}
@@ -19,48 +19,243 @@
 
 package eu.searchlab.storage.json;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import eu.searchlab.storage.io.GenericIO;
+import eu.searchlab.storage.io.IOMeta;
 import eu.searchlab.storage.io.IOPath;
 
+/**
+ * A cord which is persisted as a journal: every mutation is written as a small segment object
+ * which contains only the changed entries, so the cost of a mutation does not depend on the size of the cord.
+ * The segments are stored next to the cord object in a folder with the name of the cord object plus ".journal":
+ * - segment-<seq>.json: a json array of operations; an operation is one of
+ *   {"op":"append","value":{..}}, {"op":"set","p":n,"value":{..}} or {"op":"remove","p":n}
+ * - snapshot-<seq>.json: the whole cord after all segments up to the sequence number had been applied
+ * When a cord is opened, the latest readable snapshot is loaded and all later segments are replayed.
+ * If there is no snapshot, the cord object itself is the base. When the number of segments exceeds
+ * the compaction threshold, a new snapshot is written in the background and older segments are removed.
+ * The cord object is also rewritten during compaction, so readers of the plain cord object see all
+ * changes up to the latest compaction.
+ * A cord must only be written by one process at a time.
+ */
 public class PersistentCord extends AbstractCord implements Cord {
 
+    public static int defaultCompactionThreshold = 100;
+
+    private final static String SEGMENT_PREFIX = "segment-", SNAPSHOT_PREFIX = "snapshot-", SUFFIX = ".json";
+
+    private final static Logger log = Logger.getLogger(PersistentCord.class.getName()); // this package does not depend on the grid logger
+
+    private final static ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        final Thread t = new Thread(r, "PersistentCord.compact");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final String journal; // the path of the journal folder
+    private final int compactionThreshold;
+    private final TreeMap<Long, IOPath> segments; // segments which are newer than the snapshot
+    private long snapshotSeq, seq;
+    private boolean compacting;
+
     protected PersistentCord(GenericIO io, IOPath iop) {
+        this(io, iop, defaultCompactionThreshold);
+    }
+
+    protected PersistentCord(GenericIO io, IOPath iop, int compactionThreshold) {
         super(io, iop);
+        this.journal = iop.getPath() + ".journal";
+        this.compactionThreshold = compactionThreshold;
+        this.segments = new TreeMap<>();
+        this.snapshotSeq = 0;
+        this.seq = 0;
+        this.compacting = false;
+    }
+
+    private IOPath journalPath(final String prefix, final long s) {
+        return new IOPath(this.iop.getBucket(), this.journal + "/" + prefix + String.format("%019d", s) + SUFFIX);
     }
 
+    private static long journalSeq(final String name, final String prefix) {
+        if (!name.startsWith(prefix) || !name.endsWith(SUFFIX)) return -1;
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - SUFFIX.length()));
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
 
+    /**
+     * load the latest snapshot and replay all later segments
+     */
     @Override
-    public Cord append(JSONObject value) throws IOException {
+    protected void ensureLoaded() throws IOException {
+        if (this.array != null) return;
+        final TreeMap<Long, IOPath> snapshots = new TreeMap<>();
+        this.segments.clear();
+        for (final IOMeta meta: this.io.list(this.iop.getBucket(), this.journal)) {
+            final IOPath p = meta.getIOPath();
+            final String name = p.getPath().substring(p.getPath().lastIndexOf('/') + 1);
+            long s;
+            if ((s = journalSeq(name, SEGMENT_PREFIX)) >= 0) this.segments.put(s, p);
+            else if ((s = journalSeq(name, SNAPSHOT_PREFIX)) >= 0) snapshots.put(s, p);
+        }
+
+        // load the base: the latest snapshot which can be read, or the cord object
+        JSONArray base = null;
+        this.snapshotSeq = 0;
+        for (final Long s: snapshots.descendingKeySet()) {
+            try {
+                base = readArray(snapshots.get(s));
+                this.snapshotSeq = s;
+                break;
+            } catch (final IOException e) {
+                // a snapshot which was not written completely; try the previous one
+            }
+        }
+        if (base == null) base = this.io.exists(this.iop) ? readArray(this.iop) : new JSONArray();
+
+        // replay the segments
+        this.segments.headMap(this.snapshotSeq, true).clear();
+        this.seq = this.segments.isEmpty() ? this.snapshotSeq : this.segments.lastKey();
+        for (final Long s: this.segments.keySet()) {
+            JSONArray ops;
+            try {
+                ops = readArray(this.segments.get(s));
+            } catch (final IOException e) {
+                if (s.longValue() == this.seq) break; // the last segment was not written completely
+                throw e;
+            }
+            try {
+                for (int i = 0; i < ops.length(); i++) apply(base, ops.getJSONObject(i));
+            } catch (final JSONException e) {
+                throw new IOException("bad journal segment " + this.segments.get(s).toString() + ": " + e.getMessage());
+            }
+        }
+        this.array = base;
+    }
+
+    private JSONArray readArray(final IOPath p) throws IOException {
+        try {
+            return new JSONArray(new JSONTokener(new InputStreamReader(this.io.read(p), StandardCharsets.UTF_8)));
+        } catch (final JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private static void apply(final JSONArray a, final JSONObject op) throws JSONException {
+        switch (op.getString("op")) {
+            case "append": a.put(op.getJSONObject("value")); break;
+            case "set":    a.put(op.getInt("p"), op.getJSONObject("value")); break;
+            case "remove": a.remove(op.getInt("p")); break;
+            default: throw new JSONException("unknown operation " + op.getString("op"));
+        }
+    }
+
+    private static JSONObject appendOp(final JSONObject value) {
+        return new JSONObject(true).put("op", "append").put("value", value);
+    }
+
+    private static JSONObject setOp(final int p, final JSONObject value) {
+        return new JSONObject(true).put("op", "set").put("p", p).put("value", value);
+    }
+
+    private static JSONObject removeOp(final int p) {
+        return new JSONObject(true).put("op", "remove").put("p", p);
+    }
+
+    /**
+     * write a journal segment; must be called while synchronized on the mutex
+     * @param ops the operations which had been applied to the array
+     * @throws IOException
+     */
+    private void journal(final JSONArray ops) throws IOException {
+        final long s = this.seq + 1;
+        final IOPath p = journalPath(SEGMENT_PREFIX, s);
+        this.io.write(p, ops.toString().getBytes(StandardCharsets.UTF_8));
+        this.seq = s;
+        this.segments.put(s, p);
+        if (this.segments.size() > this.compactionThreshold && !this.compacting) {
+            this.compacting = true;
+            compactor.submit(() -> {
+                try {
+                    compact();
+                } catch (final Throwable e) {
+                    // the segments are kept, compaction is tried again with the next mutation
+                    log.log(Level.WARNING, "PersistentCord compaction of " + this.journal + " failed", e);
+                } finally {
+                    synchronized (this.mutex) {
+                        this.compacting = false;
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * write a snapshot of the cord and remove the segments which are included in the snapshot
+     * @throws IOException
+     */
+    public void compact() throws IOException {
+        final JSONArray copy = new JSONArray();
+        final long s;
+        final List<IOPath> compacted;
+        final long previousSnapshot;
         synchronized (this.mutex) {
             this.ensureLoaded();
-            this.array.put(value);
-            this.commitInternal();
-            return this;
+            for (int i = 0; i < this.array.length(); i++) copy.put(this.array.get(i));
+            s = this.seq;
+            compacted = new ArrayList<>(this.segments.headMap(s, true).values());
+            previousSnapshot = this.snapshotSeq;
+        }
+        if (s == previousSnapshot) return;
+
+        // write the snapshot, then the cord object, then remove the journal entries which are now obsolete
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        write(baos, copy);
+        final byte[] b = baos.toByteArray();
+        this.io.write(journalPath(SNAPSHOT_PREFIX, s), b);
+        this.io.write(this.iop, b);
+        synchronized (this.mutex) {
+            this.snapshotSeq = s;
+            this.segments.headMap(s, true).clear();
         }
+        for (final IOPath p: compacted) this.io.remove(p);
+        if (previousSnapshot > 0) this.io.remove(journalPath(SNAPSHOT_PREFIX, previousSnapshot));
     }
 
     @Override
-    public Cord prepend(JSONObject value) throws IOException {
+    public Cord append(JSONObject value) throws IOException {
         synchronized (this.mutex) {
             this.ensureLoaded();
-            try {
-                this.array.put(0, value);
-            } catch (final JSONException e) {
-                throw new IOException(e.getMessage());
-            }
-            this.commitInternal();
+            this.array.put(value);
+            this.journal(new JSONArray().put(appendOp(value)));
             return this;
         }
     }
 
+    @Override
+    public Cord prepend(JSONObject value) throws IOException {
+        return this.insert(value, 0);
+    }
+
     @Override
     public Cord insert(JSONObject value, int p) throws IOException {
         synchronized (this.mutex) {
@@ -70,7 +265,7 @@ public class PersistentCord extends AbstractCord implements Cord {
             } catch (final JSONException e) {
                 throw new IOException(e.getMessage());
             }
-            this.commitInternal();
+            this.journal(new JSONArray().put(setOp(p, value)));
             return this;
         }
     }
@@ -81,7 +276,7 @@ public class PersistentCord extends AbstractCord implements Cord {
             this.ensureLoaded();
             final Object o = this.array.remove(p);
             assert o instanceof JSONObject;
-            this.commitInternal();
+            this.journal(new JSONArray().put(removeOp(p)));
             return (JSONObject) o;
         }
     }
@@ -95,10 +290,7 @@ public class PersistentCord extends AbstractCord implements Cord {
     public JSONObject removeLast() throws IOException {
         synchronized (this.mutex) {
             this.ensureLoaded();
-            final Object o = this.array.remove(this.array.length() - 1);
-            this.commitInternal();
-            assert o instanceof JSONObject;
-            return (JSONObject) o;
+            return this.remove(this.array.length() - 1);
         }
     }
 
@@ -108,19 +300,22 @@ public class PersistentCord extends AbstractCord implements Cord {
         synchronized (this.mutex) {
             this.ensureLoaded();
             final Iterator<Object> i = this.array.iterator();
-            boolean changed = false;
+            final JSONArray ops = new JSONArray();
+            int p = 0;
             while (i.hasNext()) {
                 final Object o = i.next();
-                if (!(o instanceof JSONObject)) continue;
-                final Object v = ((JSONObject) o).opt(key);
-                if (!(v instanceof String)) continue;
-                if (((String) v).equals(value)) {
-                    list.add((JSONObject) o);
-                    i.remove();
-                    changed = true;
+                if (o instanceof JSONObject) {
+                    final Object v = ((JSONObject) o).opt(key);
+                    if (v instanceof String && ((String) v).equals(value)) {
+                        list.add((JSONObject) o);
+                        i.remove();
+                        ops.put(removeOp(p));
+                        continue;
+                    }
                 }
+                p++;
             }
-            if (changed) this.commitInternal();
+            if (ops.length() > 0) this.journal(ops);
             return list;
         }
     }
@@ -131,19 +326,22 @@ public class PersistentCord extends AbstractCord implements Cord {
         synchronized (this.mutex) {
             this.ensureLoaded();
             final Iterator<Object> i = this.array.iterator();
-            boolean changed = false;
+            final JSONArray ops = new JSONArray();
+            int p = 0;
             while (i.hasNext()) {
                 final Object o = i.next();
-                if (!(o instanceof JSONObject)) continue;
-                final Object v = ((JSONObject) o).opt(key);
-                if (!(v instanceof Long) && !(v instanceof Integer)) continue;
-                if (((Long) v).longValue() == value) {
-                    list.add((JSONObject) o);
-                    i.remove();
-                    changed = true;
+                if (o instanceof JSONObject) {
+                    final Object v = ((JSONObject) o).opt(key);
+                    if ((v instanceof Long || v instanceof Integer) && ((Number) v).longValue() == value) {
+                        list.add((JSONObject) o);
+                        i.remove();
+                        ops.put(removeOp(p));
+                        continue;
+                    }
                 }
+                p++;
             }
-            if (changed) this.commitInternal();
+            if (ops.length() > 0) this.journal(ops);
             return list;
         }
     }
@@ -152,17 +350,12 @@ public class PersistentCord extends AbstractCord implements Cord {
     public JSONObject removeOneWhere(String key, String value) throws IOException {
         synchronized (this.mutex) {
             this.ensureLoaded();
-            final Iterator<Object> i = this.array.iterator();
-            while (i.hasNext()) {
-                final Object o = i.next();
+            for (int p = 0; p < this.array.length(); p++) {
+                final Object o = this.array.opt(p);
                 if (!(o instanceof JSONObject)) continue;
                 final Object v = ((JSONObject) o).opt(key);
                 if (!(v instanceof String)) continue;
-                if (((String) v).equals(value)) {
-                    i.remove();
-                    this.commitInternal();
-                    return (JSONObject) o;
-                }
+                if (((String) v).equals(value)) return this.remove(p);
             }
             return null;
         }
@@ -172,17 +365,12 @@ public class PersistentCord extends AbstractCord implements Cord {
     public JSONObject removeOneWhere(String key, long value) throws IOException {
         synchronized (this.mutex) {
             this.ensureLoaded();
-            final Iterator<Object> i = this.array.iterator();
-            while (i.hasNext()) {
-                final Object o = i.next();
+            for (int p = 0; p < this.array.length(); p++) {
+                final Object o = this.array.opt(p);
                 if (!(o instanceof JSONObject)) continue;
                 final Object v = ((JSONObject) o).opt(key);
                 if (!(v instanceof Long) && !(v instanceof Integer)) continue;
-                if (((Long) v).longValue() == value) {
-                    i.remove();
-                    this.commitInternal();
-                    return (JSONObject) o;
-                }
+                if (((Number) v).longValue() == value) return this.remove(p);
             }
             return null;
         }
@@ -196,7 +384,9 @@ public class PersistentCord extends AbstractCord implements Cord {
 
     @Override
     public void close() {
-        this.array = null;
+        synchronized (this.mutex) {
+            this.array = null;
+        }
     }
 
 }
@@ -20,16 +20,22 @@
 package net.yacy.grid.http;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
 
 import org.json.JSONObject;
 
+import net.yacy.grid.tools.BufferPool;
 import net.yacy.grid.tools.Logger;
 
 @SuppressWarnings("serial")
@@ -37,6 +43,7 @@ public abstract class AbstractAPIHandler extends HttpServlet implements APIHandl
 
     public static final Long defaultCookieTime = (long) (60 * 60 * 24 * 7);
     public static final Long defaultAnonymousTime = (long) (60 * 60 * 24);
+    private static final int LOG_PREFIX_LENGTH = 512;
 
     public AbstractAPIHandler() {
     }
@@ -84,10 +91,21 @@ public abstract class AbstractAPIHandler extends HttpServlet implements APIHandl
     @Override
     protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
         final Query query = RemoteAccess.evaluate(request);
-        query.initPOST(RemoteAccess.getPostMap(request));
+        final Map<String, Part> streams = new HashMap<>();
+        query.initPOST(RemoteAccess.getPostMap(request, getStreamedParts(), streams));
+        query.initPOSTStreams(streams);
         process(request, response, query);
     }
 
+    /**
+     * Servlets which receive large uploads can read multipart parts as streams instead of having them
+     * in memory. The named parts are not part of the post map but are available with Query.getPart().
+     * @return the names of the parts which shall be streamed
+     */
+    protected Set<String> getStreamedParts() {
+        return Collections.emptySet();
+    }
+
     private void process(final HttpServletRequest request, final HttpServletResponse response, final Query query) throws ServletException, IOException {
 
         final long startTime = System.currentTimeMillis();
@@ -113,13 +131,14 @@ public abstract class AbstractAPIHandler extends HttpServlet implements APIHandl
             query.setResponse(response, serviceResponse.getMimeType());
             response.setCharacterEncoding("UTF-8");
             if (serviceResponse.isObject() || serviceResponse.isArray()) {
-                final PrintWriter sos = response.getWriter();
-                if (jsonp) sos.print(callback + "(");
-                final String out = serviceResponse.toString(minified);
-                sos.print(out);
-                if (jsonp) sos.println(");");
-                sos.println();
-                logClient(startTime, query, 200, "ok: " + (minified ? out : serviceResponse.toString(true)));
+                // stream the json to the client; the log gets the first characters of the written content
+                final ResponseWriter writer = new ResponseWriter(response.getOutputStream(), LOG_PREFIX_LENGTH);
+                if (jsonp) writer.write(callback + "(");
+                serviceResponse.write(writer, minified);
+                if (jsonp) writer.write(");\n");
+                writer.write('\n');
+                writer.close();
+                logClient(startTime, query, 200, "ok: " + writer.getPrefix());
             } else if (serviceResponse.isString()) {
                 final PrintWriter sos = response.getWriter();
                 final String out = serviceResponse.toString(false);
@@ -129,6 +148,14 @@ public abstract class AbstractAPIHandler extends HttpServlet implements APIHandl
                 response.getOutputStream().write(serviceResponse.getByteArray());
                 response.setHeader("Access-Control-Allow-Origin", "*");
                 logClient(startTime, query, 200, "ok (ByteArray)");
+            } else if (serviceResponse.isStream()) {
+                // pipe the stream to the client without buffering the whole content
+                response.setHeader("Access-Control-Allow-Origin", "*");
+                final long count;
+                try (InputStream is = serviceResponse.getStream()) {
+                    count = BufferPool.copy(is, response.getOutputStream());
+                }
+                logClient(startTime, query, 200, "ok (Stream, " + count + " bytes)");
             }
         } catch (final APIException e) {
             final String message = e.getMessage();
@@ -144,12 +171,12 @@ public abstract class AbstractAPIHandler extends HttpServlet implements APIHandl
             final int httpResponseCode,
             String message) {
         final String host = query.getClientHost();
-        String q = query.toString(512);
-        if (q.length() > 512) q = q.substring(0, 512) + "...";
+        String q = query.toString(LOG_PREFIX_LENGTH);
+        if (q.length() > LOG_PREFIX_LENGTH) q = q.substring(0, LOG_PREFIX_LENGTH) + "...";
         final long t = System.currentTimeMillis() - startTime;
         String path = getAPIPath();
         if (q.length() > 0) path = path + "?" + q;
-        if (message.length() > 512) message = message.substring(0, 512) + "...";
+        if (message.length() > LOG_PREFIX_LENGTH) message = message.substring(0, LOG_PREFIX_LENGTH) + "...";
         final String m = host + " - " + httpResponseCode + " - " + t + "ms - " + path + " - " + message;
         Logger.info(this.getClass(), m);
     }
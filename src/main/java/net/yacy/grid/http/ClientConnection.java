@@ -21,7 +21,6 @@ package net.yacy.grid.http;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -79,6 +78,8 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 import org.json.JSONTokener;
 
+import net.yacy.grid.tools.BufferPool;
+import net.yacy.grid.tools.CompositeBuffer;
 import net.yacy.grid.tools.Logger;
 
 public class ClientConnection {
@@ -188,6 +189,28 @@ public class ClientConnection {
         this(urlstring, map, true);
     }
 
+    /**
+     * POST request with a streamed part; the stream is sent without buffering it in memory
+     * @param urlstring
+     * @param map
+     * @param streamName the name of the streamed part
+     * @param stream the content of the streamed part
+     * @throws ClientProtocolException
+     * @throws IOException
+     */
+    public ClientConnection(final String urlstring, final Map<String, byte[]> map, final String streamName, final InputStream stream) throws ClientProtocolException, IOException {
+        this.request = new HttpPost(urlstring);
+        final MultipartEntityBuilder entityBuilder = MultipartEntityBuilder.create();
+        entityBuilder.setMode(HttpMultipartMode.BROWSER_COMPATIBLE);
+        for (final Map.Entry<String, byte[]> entry: map.entrySet()) {
+            entityBuilder.addBinaryBody(entry.getKey(), entry.getValue());
+        }
+        entityBuilder.addBinaryBody(streamName, stream, ContentType.APPLICATION_OCTET_STREAM, streamName);
+        ((HttpPost) this.request).setEntity(entityBuilder.build());
+        this.request.setHeader("User-Agent", ClientIdentification.getAgent(ClientIdentification.yacyInternetCrawlerAgentName).userAgent);
+        this.init();
+    }
+
     /**
      * get a connection manager
      * @param trustAllCerts allow opportunistic encryption if needed
@@ -320,10 +343,8 @@ public class ClientConnection {
             final ClientConnection connection = new ClientConnection(source_url);
             try {
                 final OutputStream os = new BufferedOutputStream(new FileOutputStream(target_file));
-                int count;
-                final byte[] buffer = new byte[2048];
                 try {
-                    while ((count = connection.inputStream.read(buffer)) > 0) os.write(buffer, 0, count);
+                    BufferPool.copy(connection.inputStream, os);
                 } catch (final IOException e) {
                     Logger.warn(e.getMessage());
                 } finally {
@@ -368,17 +389,16 @@ public class ClientConnection {
 
     public byte[] load() throws IOException {
         if (this.inputStream == null) return null;
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        int count;
-        final byte[] buffer = new byte[2048];
-        try {
-            while ((count = this.inputStream.read(buffer)) > 0) baos.write(buffer, 0, count);
-        } catch (final IOException e) {
-            Logger.warn(this.getClass(), e.getMessage());
-        } finally {
-            this.close();
+        try (final CompositeBuffer cb = new CompositeBuffer()) {
+            try {
+                cb.readFrom(this.inputStream);
+            } catch (final IOException e) {
+                Logger.warn(this.getClass(), e.getMessage());
+            } finally {
+                this.close();
+            }
+            return cb.toByteArray();
         }
-        return baos.toByteArray();
     }
 
     public static JSONArray loadJSONArray(final String source_url) throws IOException {
@@ -47,6 +47,7 @@ import org.eclipse.jetty.util.resource.PathResource;
 import org.eclipse.jetty.util.resource.Resource;
 
 import net.yacy.grid.tools.ByteBuffer;
+import net.yacy.grid.tools.DateParser;
 import net.yacy.grid.tools.Logger;
 
 
@@ -111,7 +112,7 @@ public class FileHandler extends ResourceHandler implements Handler {
         }
 
         // expires: define how long the file shall stay in a cache if cache-control is not used for this information
-        response.setDateHeader(HttpHeader.EXPIRES.asString(), System.currentTimeMillis() + expiresSeconds * 1000);
+        response.setHeader(HttpHeader.EXPIRES.asString(), DateParser.formatHTTPDate(System.currentTimeMillis() + expiresSeconds * 1000L));
     }
 
     @Override
@@ -19,7 +19,6 @@
 
 package net.yacy.grid.http;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
@@ -30,19 +29,20 @@ import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONTokener;
 
-import com.google.common.io.ByteStreams;
-
+import net.yacy.grid.tools.CompositeBuffer;
 import net.yacy.grid.tools.DateParser;
 
 public class Query {
 
     private HttpServletRequest request;
     private Map<String, byte[]> qm;
+    private Map<String, Part> streams;
     
     public Query(final HttpServletRequest request) {
         this.qm = new LinkedHashMap<>();
@@ -63,6 +63,18 @@ public class Query {
         if (this.qm == null) this.qm = map; else this.qm.putAll(map);
         return this;
     }
+    public Query initPOSTStreams(final Map<String, Part> streams) {
+        this.streams = streams;
+        return this;
+    }
+    /**
+     * get a multipart part which was not read into memory, see AbstractAPIHandler.getStreamedParts()
+     * @param key the part name
+     * @return the part or null if no such part was posted
+     */
+    public Part getPart(String key) {
+        return this.streams == null ? null : this.streams.get(key);
+    }
     public String getClientHost() {
         return this.request.getRemoteHost();
     }
@@ -84,7 +96,7 @@ public class Query {
             byte[] b = this.qm.get(key);
             if (b != null) return b;
         }
-        assert false; // that should not happen!
+        // parameters of get requests and url-encoded post requests are strings
         String val = this.request == null ? null : this.request.getParameter(key);
         return val == null ? dflt : val.getBytes(StandardCharsets.UTF_8);
     }
@@ -132,10 +144,11 @@ public class Query {
     }
     public JSONObject getJSONBody() {
         try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ByteStreams.copy(request.getInputStream(), baos);
-            baos.close();
-            String data = new String(baos.toByteArray(), StandardCharsets.UTF_8);
+            String data;
+            try (CompositeBuffer cb = new CompositeBuffer()) {
+                cb.readFrom(request.getInputStream());
+                data = cb.toString(StandardCharsets.UTF_8);
+            }
             if (data == null || data.length() == 0) return null;
             data = data.trim();
             if (data.charAt(0) =='{' && data.charAt(data.length() - 1) == '}') try {
@@ -154,8 +167,8 @@ public class Query {
     }
     public void setResponse(final HttpServletResponse response, final String mime) {
         long access_time = System.currentTimeMillis();
-        response.setDateHeader("Last-Modified", access_time);
-        response.setDateHeader("Expires", access_time + 1000);
+        response.setHeader("Last-Modified", DateParser.formatHTTPDate(access_time));
+        response.setHeader("Expires", DateParser.formatHTTPDate(access_time + 1000));
         response.setContentType(mime);
         response.setHeader("X-Robots-Tag",  "noindex,noarchive,nofollow,nosnippet");
         response.setCharacterEncoding("UTF-8");
@@ -26,6 +26,7 @@ import java.net.InetAddress;
 import java.net.URLDecoder;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -145,6 +146,18 @@ public class RemoteAccess {
     }
 
     public static Map<String, byte[]> getPostMap(HttpServletRequest request) throws IOException {
+        return getPostMap(request, Collections.emptySet(), null);
+    }
+
+    /**
+     * get the post parameters of a request
+     * @param request the request
+     * @param streamedParts the names of multipart parts which shall not be read into memory
+     * @param streams a map where the streamed parts are put into; can be null if streamedParts is empty
+     * @return a map of all other parameters
+     * @throws IOException
+     */
+    public static Map<String, byte[]> getPostMap(HttpServletRequest request, Set<String> streamedParts, Map<String, Part> streams) throws IOException {
         Map<String, byte[]> map = new HashMap<>();
         Map<String, String[]> pm = request.getParameterMap();
         if (pm != null && pm.size() > 0) {
@@ -157,6 +170,10 @@ public class RemoteAccess {
             final byte[] b = new byte[1024];
             for (Part part: request.getParts()) {
                 String name = part.getName();
+                if (streamedParts.contains(name)) {
+                    streams.put(name, part);
+                    continue;
+                }
                 InputStream is = part.getInputStream();
                 final ByteArrayOutputStream baos = new ByteArrayOutputStream();
                 int c;
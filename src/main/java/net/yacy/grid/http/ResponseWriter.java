@@ -0,0 +1,163 @@
+/**
+ *  ResponseWriter
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * A writer which encodes characters as UTF-8 directly into an output stream.
+ * The encoding buffer is allocated once per thread and re-used for all responses
+ * which are written by that thread. The writer also keeps a copy of the first characters
+ * which had been written, so the content can be logged without serializing it again.
+ * A ResponseWriter must only be used by the thread which created it.
+ */
+public class ResponseWriter extends Writer {
+
+    private final static int BUFFER_SIZE = 8192;
+    private final static ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private final OutputStream os;
+    private final byte[] buffer;
+    private final StringBuilder prefix;
+    private final int prefixLimit;
+    private int pos;
+    private long count;
+    private char highSurrogate;
+
+    /**
+     * create a response writer
+     * @param os the target stream
+     * @param prefixLimit the number of characters that are recorded for getPrefix()
+     */
+    public ResponseWriter(final OutputStream os, final int prefixLimit) {
+        this.os = os;
+        this.buffer = buffers.get();
+        this.prefixLimit = prefixLimit;
+        this.prefix = new StringBuilder(Math.min(prefixLimit, 1024));
+        this.pos = 0;
+        this.count = 0;
+        this.highSurrogate = 0;
+    }
+
+    @Override
+    public void write(final int c) throws IOException {
+        writeChar((char) c);
+    }
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+        recordPrefix(cbuf, off, len);
+        for (int i = off; i < off + len; i++) encode(cbuf[i]);
+        this.count += len;
+    }
+
+    @Override
+    public void write(final String s, final int off, final int len) throws IOException {
+        if (this.prefix.length() < this.prefixLimit) this.prefix.append(s, off, off + Math.min(len, this.prefixLimit - this.prefix.length()));
+        for (int i = off; i < off + len; i++) encode(s.charAt(i));
+        this.count += len;
+    }
+
+    private void writeChar(final char c) throws IOException {
+        if (this.prefix.length() < this.prefixLimit) this.prefix.append(c);
+        encode(c);
+        this.count++;
+    }
+
+    private void recordPrefix(final char[] cbuf, final int off, final int len) {
+        if (this.prefix.length() < this.prefixLimit) this.prefix.append(cbuf, off, Math.min(len, this.prefixLimit - this.prefix.length()));
+    }
+
+    private void encode(final char c) throws IOException {
+        if (this.pos + 4 > BUFFER_SIZE) flushBuffer();
+        if (this.highSurrogate != 0) {
+            final char h = this.highSurrogate;
+            this.highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                final int cp = Character.toCodePoint(h, c);
+                this.buffer[this.pos++] = (byte) (0xf0 | (cp >> 18));
+                this.buffer[this.pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                this.buffer[this.pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                this.buffer[this.pos++] = (byte) (0x80 | (cp & 0x3f));
+                return;
+            }
+            this.buffer[this.pos++] = (byte) '?'; // unpaired surrogate
+            if (this.pos + 4 > BUFFER_SIZE) flushBuffer();
+        }
+        if (c < 0x80) {
+            this.buffer[this.pos++] = (byte) c;
+        } else if (c < 0x800) {
+            this.buffer[this.pos++] = (byte) (0xc0 | (c >> 6));
+            this.buffer[this.pos++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            this.highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            this.buffer[this.pos++] = (byte) '?'; // unpaired surrogate
+        } else {
+            this.buffer[this.pos++] = (byte) (0xe0 | (c >> 12));
+            this.buffer[this.pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            this.buffer[this.pos++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (this.pos > 0) {
+            this.os.write(this.buffer, 0, this.pos);
+            this.pos = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        this.os.flush();
+    }
+
+    /**
+     * flush the content to the output stream; the output stream is not closed
+     * because it is owned by the servlet container
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.highSurrogate != 0) {
+            this.highSurrogate = 0;
+            if (this.pos + 1 > BUFFER_SIZE) flushBuffer();
+            this.buffer[this.pos++] = (byte) '?';
+        }
+        flush();
+    }
+
+    /**
+     * get the first characters which had been written
+     * @return the recorded prefix, followed by "..." if the content was longer than the prefix
+     */
+    public String getPrefix() {
+        return this.count > this.prefix.length() ? this.prefix.toString() + "..." : this.prefix.toString();
+    }
+
+    /**
+     * @return the number of characters which had been written
+     */
+    public long getCount() {
+        return this.count;
+    }
+}
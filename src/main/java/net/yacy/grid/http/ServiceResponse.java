@@ -19,20 +19,26 @@
 
 package net.yacy.grid.http;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import net.yacy.grid.tools.CompositeBuffer;
+
 /**
  * wrapper class for the result type of services: either
- * JSONObject, JSONArray,  String, or byte[]
+ * JSONObject, JSONArray,  String, byte[] or an InputStream
  */
 public class ServiceResponse {
 
     private Object object;
     private boolean setCORS;
+    private String mimeType;
     
     public ServiceResponse(JSONObject json) {
         this.object = json;
@@ -54,11 +60,30 @@ public class ServiceResponse {
         this.setCORS = false;
     }
 
+    /**
+     * a response which is streamed to the client; the stream is closed after it was written
+     * @param stream the response content
+     */
+    public ServiceResponse(InputStream stream) {
+        this.object = stream;
+        this.setCORS = false;
+    }
+
     public ServiceResponse setCORS() {
         this.setCORS = true;
         return this;
     }
 
+    /**
+     * set the mime type of the response, i.e. for streams which would be delivered as application/octet-stream otherwise
+     * @param mimeType the mime type
+     * @return this
+     */
+    public ServiceResponse setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+        return this;
+    }
+
     public boolean allowCORS() {
         return this.setCORS;
     }
@@ -77,6 +102,10 @@ public class ServiceResponse {
     public boolean isByteArray() {
         return this.object instanceof byte[];
     }
+
+    public boolean isStream() {
+        return this.object instanceof InputStream;
+    }
     
     public JSONObject getObject() throws JSONException {
         if (!isObject()) throw new JSONException("object type is not JSONObject: " + this.object.getClass().getName());
@@ -98,7 +127,13 @@ public class ServiceResponse {
         return (byte[]) this.object;
     }
     
+    public InputStream getStream() throws JSONException {
+        if (!isStream()) throw new JSONException("object type is not InputStream: " + this.object.getClass().getName());
+        return (InputStream) this.object;
+    }
+
     public String getMimeType() {
+        if (this.mimeType != null) return this.mimeType;
         if (isObject() || isArray()) return "application/javascript";
         if (isString()) {
         	return getString().startsWith("<?xml") ? "application/xml" : "text/plain";
@@ -111,14 +146,49 @@ public class ServiceResponse {
         if (isArray()) return getArray().toString(minified ? 0 : 2);
         if (isString()) return getString();
         if (isByteArray()) return new String((byte[]) this.object, StandardCharsets.UTF_8);
+        if (isStream()) return new String(readStream(), StandardCharsets.UTF_8);
         return null;
     }
     
+    /**
+     * write the response to a writer without creating a string of the whole content first
+     * @param writer the target writer
+     * @param minified if true, no indentation is written
+     * @throws IOException
+     */
+    public void write(Writer writer, boolean minified) throws IOException {
+        try {
+            if (isObject()) getObject().write(writer, minified ? 0 : 2, 0);
+            else if (isArray()) getArray().write(writer, minified ? 0 : 2, 0);
+            else if (isString()) writer.write(getString());
+            else if (isByteArray()) writer.write(new String((byte[]) this.object, StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            // the json writer wraps IOExceptions of the target writer, i.e. if the client disconnects
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw e;
+        }
+    }
+
     public byte[] toByteArray(boolean minified) {
         if (isObject()) return getObject().toString(minified ? 0 : 2).getBytes(StandardCharsets.UTF_8);
         if (isArray()) return getArray().toString(minified ? 0 : 2).getBytes(StandardCharsets.UTF_8);
         if (isString()) return getString().getBytes(StandardCharsets.UTF_8);
         if (isByteArray()) return (byte[]) this.object;
+        if (isStream()) return readStream();
         return null;
     }
+
+    /**
+     * read a stream response completely; the response then becomes a byte[] response
+     * @return the content of the stream
+     */
+    private byte[] readStream() {
+        try (InputStream is = getStream(); CompositeBuffer cb = new CompositeBuffer()) {
+            cb.readFrom(is);
+            this.object = cb.toByteArray();
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        return (byte[]) this.object;
+    }
 }
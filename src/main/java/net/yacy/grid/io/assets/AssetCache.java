@@ -0,0 +1,243 @@
+/**
+ *  AssetCache
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.io.assets;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.yacy.grid.tools.Digest;
+import net.yacy.grid.tools.Logger;
+
+/**
+ * A size-bounded cache for assets on the local disk.
+ * Every asset is stored in its own file together with its path and a xxHash64 checksum of the content;
+ * entries which fail the checksum test are removed. Files are written to a temporary file and moved
+ * into place atomically, so readers never see partially written entries. If the sum of all entry sizes
+ * exceeds the size limit, the least recently used entries are removed.
+ * The cache directory can be shared by several processes on the same host: an entry which is not known
+ * to this process is looked up in the directory and adopted if it exists. Each process applies the
+ * size limit to the entries it has written or read.
+ */
+public class AssetCache {
+
+    private final static int MAGIC = 0x59414332; // "YAC2"
+    private final static String SUFFIX = ".asset";
+    private final static String TMP_SUFFIX = ".tmp";
+    private final static long TMP_TIMEOUT = 3600000L; // temporary files of other processes which are older are left-overs
+
+    private final File dir;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries; // file name to file size, in access order
+    private long totalBytes;
+    private final AtomicLong hits, misses, puts, evictions, invalidations, checksumFailures;
+
+    /**
+     * create or open an asset cache
+     * @param dir the cache directory
+     * @param maxBytes the maximum number of bytes of all cache files
+     */
+    public AssetCache(final File dir, final long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.totalBytes = 0;
+        this.hits = new AtomicLong(0);
+        this.misses = new AtomicLong(0);
+        this.puts = new AtomicLong(0);
+        this.evictions = new AtomicLong(0);
+        this.invalidations = new AtomicLong(0);
+        this.checksumFailures = new AtomicLong(0);
+        if (!dir.exists()) dir.mkdirs();
+
+        // re-use the entries of a previous run, oldest first to restore the lru order
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+            for (final File f: files) {
+                if (f.getName().endsWith(SUFFIX)) {
+                    this.entries.put(f.getName(), f.length());
+                    this.totalBytes += f.length();
+                } else if (System.currentTimeMillis() - f.lastModified() > TMP_TIMEOUT) {
+                    f.delete(); // left-over temporary file; newer ones may be written by another process right now
+                }
+            }
+        }
+        synchronized (this.entries) {
+            evict();
+        }
+        Logger.info(this.getClass(), "AssetCache opened at " + dir + " with " + this.entries.size() + " entries, " + this.totalBytes + " bytes");
+    }
+
+    /**
+     * get an asset from the cache
+     * @param path the asset path
+     * @return the asset content or null if the asset is not in the cache or the cache entry is damaged
+     */
+    public byte[] get(final String path) {
+        final String name = fileName(path);
+        final File f = new File(this.dir, name);
+        final boolean known;
+        synchronized (this.entries) {
+            known = this.entries.get(name) != null;
+        }
+        if (!known && !f.exists()) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        try (final DataInputStream dis = new DataInputStream(new FileInputStream(f))) {
+            if (dis.readInt() != MAGIC) throw new IOException("bad magic");
+            final String storedPath = dis.readUTF();
+            if (!storedPath.equals(path)) throw new IOException("path mismatch: " + storedPath); // a hash collision
+            final long checksum = dis.readLong();
+            final int length = dis.readInt();
+            // the length is checked before the allocation; a damaged length must not cause an OutOfMemoryError
+            if (length < 0 || length > f.length()) throw new IOException("bad length " + length + " in file of size " + f.length());
+            final byte[] b = new byte[length];
+            dis.readFully(b);
+            if (Digest.xxHash64(b) != checksum) {
+                this.checksumFailures.incrementAndGet();
+                throw new IOException("checksum failure");
+            }
+            if (!known) adopt(name, f); // written by another process
+            this.hits.incrementAndGet();
+            return b;
+        } catch (final IOException e) {
+            // the file was evicted concurrently or is damaged
+            Logger.debug(this.getClass(), "AssetCache.get failed for " + path + ": " + e.getMessage());
+            remove(name, f);
+            this.misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * write an asset to the cache
+     * @param path the asset path
+     * @param asset the asset content
+     */
+    public void put(final String path, final byte[] asset) {
+        if (asset.length > this.maxBytes) {
+            invalidate(path); // an older version must not be served
+            return;
+        }
+        final String name = fileName(path);
+        final File f = new File(this.dir, name);
+        final long checksum = Digest.xxHash64(asset);
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(name + ".", TMP_SUFFIX, this.dir); // unique also between processes
+            try (final DataOutputStream dos = new DataOutputStream(new FileOutputStream(tmp))) {
+                dos.writeInt(MAGIC);
+                dos.writeUTF(path);
+                dos.writeLong(checksum);
+                dos.writeInt(asset.length);
+                dos.write(asset);
+            }
+            final long size = tmp.length();
+            synchronized (this.entries) {
+                Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                final Long old = this.entries.put(name, size);
+                if (old != null) this.totalBytes -= old;
+                this.totalBytes += size;
+                evict();
+            }
+            this.puts.incrementAndGet();
+        } catch (final IOException e) {
+            Logger.warn(this.getClass(), "AssetCache.put failed for " + path, e);
+            if (tmp != null) tmp.delete();
+        }
+    }
+
+    /**
+     * remove an asset from the cache, i.e. because the asset was deleted in the storage
+     * @param path the asset path
+     */
+    public void invalidate(final String path) {
+        final String name = fileName(path);
+        if (remove(name, new File(this.dir, name))) this.invalidations.incrementAndGet();
+    }
+
+    private boolean remove(final String name, final File f) {
+        synchronized (this.entries) {
+            final Long size = this.entries.remove(name);
+            if (size != null) this.totalBytes -= size;
+            // the file is deleted even if it is not known here because another process may have written it
+            return f.delete() || size != null;
+        }
+    }
+
+    private void adopt(final String name, final File f) {
+        synchronized (this.entries) {
+            if (this.entries.containsKey(name)) return;
+            final long size = f.length();
+            this.entries.put(name, size);
+            this.totalBytes += size;
+            evict();
+        }
+    }
+
+    // must be called while synchronized on entries
+    private void evict() {
+        final Iterator<Map.Entry<String, Long>> i = this.entries.entrySet().iterator();
+        while (this.totalBytes > this.maxBytes && i.hasNext()) {
+            final Map.Entry<String, Long> entry = i.next();
+            i.remove();
+            this.totalBytes -= entry.getValue();
+            new File(this.dir, entry.getKey()).delete(); // readers which opened the file already can still read it
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    private static String fileName(final String path) {
+        return Digest.encodeHex(Digest.encodeMD5Raw(path.getBytes(StandardCharsets.UTF_8))) + SUFFIX;
+    }
+
+    /**
+     * get the cache statistics
+     * @return a map with the size of the cache and the counters of cache events
+     */
+    public Map<String, Object> getStatistics() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this.entries) {
+            stats.put("entries", this.entries.size());
+            stats.put("bytes", this.totalBytes);
+        }
+        stats.put("max_bytes", this.maxBytes);
+        stats.put("hits", this.hits.get());
+        stats.put("misses", this.misses.get());
+        stats.put("puts", this.puts.get());
+        stats.put("evictions", this.evictions.get());
+        stats.put("invalidations", this.invalidations.get());
+        stats.put("checksum_failures", this.checksumFailures.get());
+        return stats;
+    }
+}
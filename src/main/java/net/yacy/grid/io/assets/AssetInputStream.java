@@ -0,0 +1,110 @@
+/**
+ *  AssetInputStream
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.io.assets;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import net.yacy.grid.tools.BufferPool;
+
+/**
+ * An input stream for an asset which runs a completion action when it is closed,
+ * i.e. to finish a transfer, give back a connection or delete the asset after reading.
+ * The action is told whether the stream was read to its end: an asset must only be
+ * deleted after it was read completely, not when a reader gives up and closes the stream.
+ * A reader which has read everything but failed to process the content calls abort() instead of close().
+ */
+public class AssetInputStream extends FilterInputStream {
+
+    public interface CloseAction {
+        /**
+         * @param complete true if the stream was read to its end and not aborted
+         * @throws IOException
+         */
+        public void close(boolean complete) throws IOException;
+    }
+
+    private final CloseAction action;
+    private boolean eof, closed;
+
+    public AssetInputStream(final InputStream in, final CloseAction action) {
+        super(in);
+        this.action = action;
+        this.eof = false;
+        this.closed = false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b < 0) this.eof = true;
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int l = super.read(b, off, len);
+        if (l < 0) this.eof = true;
+        return l;
+    }
+
+    /**
+     * @return true if the end of the stream was reached
+     */
+    public boolean isComplete() {
+        return this.eof;
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(this.eof);
+    }
+
+    /**
+     * close the stream without completing the asset, even if it was read to its end
+     * @throws IOException
+     */
+    public void abort() throws IOException {
+        close(false);
+    }
+
+    private void close(final boolean complete) throws IOException {
+        if (this.closed) return;
+        this.closed = true;
+        try {
+            super.close();
+        } finally {
+            this.action.close(complete);
+        }
+    }
+
+    /**
+     * copy a stream to another stream; none of the streams is closed
+     * @param in the source stream
+     * @param out the target stream
+     * @return the number of copied bytes
+     * @throws IOException
+     */
+    public static long copy(final InputStream in, final OutputStream out) throws IOException {
+        return BufferPool.copy(in, out);
+    }
+}
@@ -0,0 +1,418 @@
+/**
+ *  FTPConnectionPool
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.io.assets;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.net.ftp.FTPClient;
+
+import net.yacy.grid.tools.Logger;
+
+/**
+ * A bounded pool of logged-in FTP connections to one ftp server.
+ * Connections are re-used as long as they are healthy: a connection which was idle for some time
+ * is checked with a NOOP command before it is handed out again, connections which are idle for too long
+ * are closed by a background eviction task and connections are recycled after a maximum lifetime.
+ * If all connections are in use, a borrow waits until a connection is released or the borrow timeout is reached.
+ */
+public class FTPConnectionPool implements Closeable {
+
+    public static int defaultMaxTotal = 8;
+    public static long defaultBorrowTimeout = 20000L;
+    public static long defaultMaxIdleTime = 60000L;
+    public static long defaultMaxLifetime = 600000L;
+    public static long defaultValidationInterval = 2000L;
+    private final static long EVICTION_INTERVAL = 10000L;
+
+    // all open pools; this is used to report the pool statistics in the status servlet
+    private final static List<FTPConnectionPool> pools = new CopyOnWriteArrayList<>();
+
+    private final static ScheduledExecutorService evictionScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread t = new Thread(r, "FTPConnectionPool.evict");
+        t.setDaemon(true);
+        return t;
+    });
+    static {
+        evictionScheduler.scheduleWithFixedDelay(() -> {
+            for (final FTPConnectionPool pool: pools) try {
+                pool.evict();
+            } catch (final Throwable e) {
+                Logger.warn(FTPConnectionPool.class, "FTPConnectionPool eviction failed for " + pool.name, e);
+            }
+        }, EVICTION_INTERVAL, EVICTION_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A connector opens and logs in a new connection
+     */
+    public interface Connector {
+        public FTPClient connect() throws IOException;
+    }
+
+    /**
+     * a connection from the pool; must be given back with release() or invalidate()
+     */
+    public static class Connection {
+        public final FTPClient ftp;
+        private final long created;
+        private long lastUsed;
+
+        private Connection(final FTPClient ftp) {
+            this.ftp = ftp;
+            this.created = System.currentTimeMillis();
+            this.lastUsed = this.created;
+        }
+    }
+
+    private final String name;
+    private final Connector connector;
+    private final int maxTotal;
+    private final long borrowTimeout, maxIdleTime, maxLifetime, validationInterval;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<Connection> idle;
+    private final AtomicLong created, destroyed, borrowed, reused, invalidated, timeouts;
+    private volatile boolean closed;
+
+    /**
+     * create a connection pool with default settings
+     * @param name the name of the pool, i.e. the connection url without password
+     * @param connector the connector that creates new connections
+     */
+    public FTPConnectionPool(final String name, final Connector connector) {
+        this(name, connector, defaultMaxTotal, defaultBorrowTimeout, defaultMaxIdleTime, defaultMaxLifetime, defaultValidationInterval);
+    }
+
+    /**
+     * create a connection pool
+     * @param name the name of the pool, i.e. the connection url without password
+     * @param connector the connector that creates new connections
+     * @param maxTotal the maximum number of connections, idle and borrowed
+     * @param borrowTimeout the maximum time in milliseconds that a borrow waits for a free connection
+     * @param maxIdleTime the time in milliseconds after that an idle connection is closed
+     * @param maxLifetime the time in milliseconds after that a connection is closed instead of re-used
+     * @param validationInterval the idle time in milliseconds after that a connection is checked with NOOP before it is re-used
+     */
+    public FTPConnectionPool(final String name, final Connector connector, final int maxTotal, final long borrowTimeout, final long maxIdleTime, final long maxLifetime, final long validationInterval) {
+        this.name = name;
+        this.connector = connector;
+        this.maxTotal = maxTotal;
+        this.borrowTimeout = borrowTimeout;
+        this.maxIdleTime = maxIdleTime;
+        this.maxLifetime = maxLifetime;
+        this.validationInterval = validationInterval;
+        this.permits = new Semaphore(maxTotal, true);
+        this.idle = new LinkedBlockingDeque<>();
+        this.created = new AtomicLong(0);
+        this.destroyed = new AtomicLong(0);
+        this.borrowed = new AtomicLong(0);
+        this.reused = new AtomicLong(0);
+        this.invalidated = new AtomicLong(0);
+        this.timeouts = new AtomicLong(0);
+        this.closed = false;
+        pools.add(this);
+    }
+
+    /**
+     * borrow a connection from the pool. If no idle connection is available, a new one is created.
+     * @return a logged-in connection
+     * @throws IOException if no connection could be created or the borrow timeout was reached
+     */
+    public Connection borrow() throws IOException {
+        if (this.closed) throw new IOException("connection pool " + this.name + " is closed");
+        try {
+            if (!this.permits.tryAcquire(this.borrowTimeout, TimeUnit.MILLISECONDS)) {
+                this.timeouts.incrementAndGet();
+                throw new IOException("timeout after " + this.borrowTimeout + " milliseconds waiting for a connection to " + this.name);
+            }
+        } catch (final InterruptedException e) {
+            throw new IOException("interrupted while waiting for a connection to " + this.name);
+        }
+        try {
+            Connection c;
+            // take the most recently used connection first, this lets unused connections expire
+            while ((c = this.idle.pollFirst()) != null) {
+                final long now = System.currentTimeMillis();
+                if (now - c.created > this.maxLifetime) {
+                    destroy(c);
+                    continue;
+                }
+                if (now - c.lastUsed > this.validationInterval && !validate(c)) {
+                    this.invalidated.incrementAndGet();
+                    destroy(c);
+                    continue;
+                }
+                this.borrowed.incrementAndGet();
+                this.reused.incrementAndGet();
+                return c;
+            }
+            c = new Connection(this.connector.connect());
+            this.created.incrementAndGet();
+            this.borrowed.incrementAndGet();
+            return c;
+        } catch (final IOException | RuntimeException e) {
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * give a healthy connection back to the pool
+     * @param c the connection
+     */
+    public void release(final Connection c) {
+        c.lastUsed = System.currentTimeMillis();
+        if (this.closed || c.lastUsed - c.created > this.maxLifetime || !c.ftp.isConnected()) {
+            destroy(c);
+        } else {
+            this.idle.offerFirst(c);
+        }
+        this.permits.release();
+    }
+
+    /**
+     * give a connection back which must not be re-used, i.e. after an IOException
+     * @param c the connection
+     */
+    public void invalidate(final Connection c) {
+        this.invalidated.incrementAndGet();
+        destroy(c);
+        this.permits.release();
+    }
+
+    private boolean validate(final Connection c) {
+        try {
+            return c.ftp.isConnected() && c.ftp.sendNoOp();
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    private void destroy(final Connection c) {
+        this.destroyed.incrementAndGet();
+        try {
+            if (c.ftp.isConnected()) c.ftp.logout();
+        } catch (final IOException e) {
+        } finally {
+            try {c.ftp.disconnect();} catch (final Throwable e) {}
+        }
+    }
+
+    /**
+     * close idle connections which reached the maximum idle time or the maximum lifetime
+     */
+    private void evict() {
+        final long now = System.currentTimeMillis();
+        for (final Connection c: this.idle) {
+            if ((now - c.lastUsed > this.maxIdleTime || now - c.created > this.maxLifetime) && this.idle.remove(c)) {
+                destroy(c);
+            }
+        }
+    }
+
+    /**
+     * get the pool statistics
+     * @return a map with the pool name, the connection counts and the counters of pool events
+     */
+    public Map<String, Object> getStatistics() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        final int idleCount = this.idle.size();
+        stats.put("name", this.name);
+        stats.put("max", this.maxTotal);
+        stats.put("active", this.maxTotal - this.permits.availablePermits());
+        stats.put("idle", idleCount);
+        stats.put("waiting", this.permits.getQueueLength());
+        stats.put("created", this.created.get());
+        stats.put("destroyed", this.destroyed.get());
+        stats.put("borrowed", this.borrowed.get());
+        stats.put("reused", this.reused.get());
+        stats.put("invalidated", this.invalidated.get());
+        stats.put("timeouts", this.timeouts.get());
+        return stats;
+    }
+
+    /**
+     * get the statistics of all open pools
+     * @return a list of statistics, one for each pool
+     */
+    public static List<Map<String, Object>> getAllStatistics() {
+        final List<Map<String, Object>> list = new ArrayList<>();
+        for (final FTPConnectionPool pool: pools) list.add(pool.getStatistics());
+        return list;
+    }
+
+    /**
+     * close all idle connections; borrowed connections are closed when they are released
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        pools.remove(this);
+        Connection c;
+        while ((c = this.idle.pollFirst()) != null) destroy(c);
+    }
+
+    /**
+     * a minimal ftp server which only knows the login and NOOP; used for the self-test
+     */
+    private static class TestServer implements Closeable {
+        private final ServerSocket server;
+        private final List<Socket> sessions = new CopyOnWriteArrayList<>();
+        private final AtomicInteger accepted = new AtomicInteger(0);
+        private TestServer() throws IOException {
+            this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            final Thread t = new Thread(() -> {
+                try {
+                    while (true) {
+                        final Socket socket = this.server.accept();
+                        this.accepted.incrementAndGet();
+                        this.sessions.add(socket);
+                        new Thread(() -> session(socket)).start();
+                    }
+                } catch (final IOException e) {
+                    // the server was closed
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+        }
+        private int getPort() {
+            return this.server.getLocalPort();
+        }
+        private void session(final Socket socket) {
+            try {
+                final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                final OutputStream out = socket.getOutputStream();
+                reply(out, "220 test server ready");
+                String line;
+                while ((line = in.readLine()) != null) {
+                    final String command = line.split(" ", 2)[0].toUpperCase();
+                    if (command.equals("USER")) reply(out, "331 password required");
+                    else if (command.equals("PASS")) reply(out, "230 logged in");
+                    else if (command.equals("NOOP")) reply(out, "200 ok");
+                    else if (command.equals("QUIT")) {reply(out, "221 bye"); break;}
+                    else reply(out, "502 not implemented");
+                }
+            } catch (final IOException e) {
+                // the connection was dropped
+            } finally {
+                this.sessions.remove(socket);
+                try {socket.close();} catch (final IOException e) {}
+            }
+        }
+        private static void reply(final OutputStream out, final String line) throws IOException {
+            out.write((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+        /**
+         * drop all open connections, like a server restart
+         */
+        private void drop() {
+            for (final Socket socket: this.sessions) try {socket.close();} catch (final IOException e) {}
+        }
+        @Override
+        public void close() throws IOException {
+            drop();
+            this.server.close();
+        }
+    }
+
+    /**
+     * self-test of the pool against an in-process ftp server:
+     * borrow and release, invalidate after an IOException, reconnect after the server dropped the connections
+     * and the borrow timeout of an exhausted pool
+     * @param args
+     */
+    public static void main(final String[] args) {
+        try (final TestServer server = new TestServer()) {
+            final Connector connector = () -> {
+                final FTPClient ftp = new FTPClient();
+                ftp.setDefaultTimeout(2000);
+                ftp.connect(InetAddress.getLoopbackAddress(), server.getPort());
+                if (!ftp.login("test", "test")) {
+                    try {ftp.disconnect();} catch (final Throwable e) {}
+                    throw new IOException("login failure");
+                }
+                return ftp;
+            };
+            final FTPConnectionPool pool = new FTPConnectionPool("ftp://test@localhost:" + server.getPort(), connector, 2, 200L, 60000L, 600000L, 50L);
+
+            // borrow and release: the released connection is re-used
+            final Connection c1 = pool.borrow();
+            pool.release(c1);
+            final Connection c2 = pool.borrow();
+            System.out.println("re-use: same connection = " + (c1 == c2) + ", connections = " + server.accepted.get());
+
+            // invalidate: a connection which failed with an IOException is not re-used
+            server.drop();
+            try {
+                if (!c2.ftp.sendNoOp()) throw new IOException("NOOP failed");
+                pool.release(c2);
+                System.out.println("invalidate: failure not detected");
+            } catch (final IOException e) {
+                pool.invalidate(c2);
+            }
+            final Connection c3 = pool.borrow();
+            System.out.println("invalidate: new connection = " + (c3 != c2) + ", alive = " + c3.ftp.sendNoOp() + ", connections = " + server.accepted.get());
+            pool.release(c3);
+
+            // reconnect: an idle connection which was dropped by the server is replaced when it is borrowed again
+            server.drop();
+            Thread.sleep(100L); // longer than the validation interval, so the idle connection is checked
+            final Connection c4 = pool.borrow();
+            System.out.println("reconnect: new connection = " + (c4 != c3) + ", alive = " + c4.ftp.sendNoOp() + ", connections = " + server.accepted.get());
+
+            // timeout: a borrow from an exhausted pool fails after the borrow timeout
+            final Connection c5 = pool.borrow();
+            boolean timeout = false;
+            try {
+                pool.release(pool.borrow());
+            } catch (final IOException e) {
+                timeout = true;
+            }
+            pool.release(c4);
+            pool.release(c5);
+            System.out.println("timeout: exhausted pool timed out = " + timeout);
+            System.out.println("statistics: " + pool.getStatistics());
+            pool.close();
+        } catch (final IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -20,8 +20,8 @@
 package net.yacy.grid.io.assets;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
@@ -30,6 +30,8 @@ import org.apache.commons.net.ftp.FTPReply;
 
 import net.yacy.grid.YaCyServices;
 import net.yacy.grid.mcp.Configuration;
+import net.yacy.grid.tools.CompositeBuffer;
+import net.yacy.grid.tools.Digest;
 import net.yacy.grid.tools.Logger;
 
 public class FTPStorageFactory implements StorageFactory<byte[]> {
@@ -39,6 +41,7 @@ public class FTPStorageFactory implements StorageFactory<byte[]> {
     private String server, username, password;
     private int port;
     private Storage<byte[]> ftpClient;
+    private final FTPConnectionPool pool;
     private boolean deleteafterread, active;
 
     public FTPStorageFactory(final String server, final int port, final String username, final String password, final boolean deleteafterread, final boolean active) throws IOException {
@@ -48,46 +51,22 @@ public class FTPStorageFactory implements StorageFactory<byte[]> {
         this.port = port;
         this.deleteafterread = deleteafterread;
         this.active = active;
+        this.pool = new FTPConnectionPool("ftp://" + (this.username.length() > 0 ? this.username + "@" : "") + this.getHost() + ":" + this.getPort(), () -> initConnection());
 
         this.ftpClient = new Storage<byte[]>() {
 
             @Override
             public StorageFactory<byte[]> checkConnection() throws IOException {
-                if (this.initConnection() == null) throw new IOException("FTPClient is NULL");
+                FTPStorageFactory.this.pool.release(FTPStorageFactory.this.pool.borrow());
                 return FTPStorageFactory.this;
             }
 
-            private FTPClient initConnection() throws IOException {
-                final FTPClient ftp = new FTPClient();
-                ftp.setDataTimeout(3000);
-                ftp.setConnectTimeout(20000);
-                if (FTPStorageFactory.this.port < 0 || FTPStorageFactory.this.port == DEFAULT_PORT) {
-                    ftp.connect(FTPStorageFactory.this.server);
-                } else {
-                    ftp.connect(FTPStorageFactory.this.server, FTPStorageFactory.this.port);
-                }
-                if (FTPStorageFactory.this.active)
-                    ftp.enterLocalActiveMode(); // The data transfer process establishes the data connection
-                else
-                    ftp.enterLocalPassiveMode(); // The server opens a data port to which the client conducts data transfers
-                final int reply = ftp.getReplyCode();
-                if(!FTPReply.isPositiveCompletion(reply)) {
-                    if (ftp != null) try {ftp.disconnect();} catch (final Throwable ee) {}
-                    throw new IOException("bad connection to ftp server: " + reply);
-                }
-                if (!ftp.login(FTPStorageFactory.this.username, FTPStorageFactory.this.password)) {
-                    if (ftp != null) try {ftp.disconnect();} catch (final Throwable ee) {}
-                    throw new IOException("login failure");
-                }
-                ftp.setFileType(FTP.BINARY_FILE_TYPE);
-                ftp.setBufferSize(8192);
-                return ftp;
-            }
-
             @Override
             public StorageFactory<byte[]> store(final String path, final byte[] asset) throws IOException {
                 final long t0 = System.currentTimeMillis();
-                final FTPClient ftp = this.initConnection();
+                final FTPConnectionPool.Connection connection = FTPStorageFactory.this.pool.borrow();
+                final FTPClient ftp = connection.ftp;
+                boolean success = false;
                 try {
                     final long t1 = System.currentTimeMillis();
                     final String file = this.cdPath(ftp, path);
@@ -96,55 +75,118 @@ public class FTPStorageFactory implements StorageFactory<byte[]> {
                         ftp.enterLocalActiveMode(); // The data transfer process establishes the data connection
                     else
                         ftp.enterLocalPassiveMode(); // The server opens a data port to which the client conducts data transfers
-                    final boolean success = ftp.storeFile(file, new ByteArrayInputStream(asset));
+                    final boolean stored = ftp.storeFile(file, new ByteArrayInputStream(asset));
                     final long t3 = System.currentTimeMillis();
-                    if (!success) throw new IOException("storage to path " + path + " was not successful (storeFile=false)");
+                    if (!stored) throw new IOException("storage to path " + path + " was not successful (storeFile=false)");
                     Logger.debug(this.getClass(), "FTPStorageFactory.store ftp store successfull: check connection = " + (t1 - t0) + ", cdPath = " + (t2 - t1) + ", store = " + (t3 - t2));
-                } catch (final IOException e) {
-                    throw e;
+                    success = true;
                 } finally {
-                    if (ftp != null) try {ftp.disconnect();} catch (final Throwable ee) {}
+                    // a connection in an unknown state must not be re-used
+                    if (success) FTPStorageFactory.this.pool.release(connection); else FTPStorageFactory.this.pool.invalidate(connection);
                 }
                 return FTPStorageFactory.this;
             }
 
             @Override
             public Asset<byte[]> load(String path) throws IOException {
-                final FTPClient ftp = this.initConnection();
-                ByteArrayOutputStream baos = null;
+                final FTPConnectionPool.Connection connection = FTPStorageFactory.this.pool.borrow();
+                final FTPClient ftp = connection.ftp;
                 byte[] b = null;
+                boolean success = false;
+                try (final CompositeBuffer cb = new CompositeBuffer()) {
+                    final String file = this.cdPath(ftp, path);
+                    if (FTPStorageFactory.this.active)
+                        ftp.enterLocalActiveMode(); // The data transfer process establishes the data connection
+                    else
+                        ftp.enterLocalPassiveMode(); // The server opens a data port to which the client conducts data transfers
+                    ftp.retrieveFile(file, cb);
+                    b = cb.toByteArray();
+                    if (FTPStorageFactory.this.deleteafterread) this.delete(ftp, file, path);
+                    success = true;
+                } finally {
+                    if (success) FTPStorageFactory.this.pool.release(connection); else FTPStorageFactory.this.pool.invalidate(connection);
+                }
+                return new Asset<>(FTPStorageFactory.this, b);
+            }
+
+            @Override
+            public StorageFactory<byte[]> store(final String path, final InputStream stream, final long length) throws IOException {
+                final FTPConnectionPool.Connection connection = FTPStorageFactory.this.pool.borrow();
+                final FTPClient ftp = connection.ftp;
+                boolean success = false;
                 try {
                     final String file = this.cdPath(ftp, path);
-                    baos = new ByteArrayOutputStream();
                     if (FTPStorageFactory.this.active)
                         ftp.enterLocalActiveMode(); // The data transfer process establishes the data connection
                     else
                         ftp.enterLocalPassiveMode(); // The server opens a data port to which the client conducts data transfers
-                    ftp.retrieveFile(file, baos);
-                    b = baos.toByteArray();
-                    if (FTPStorageFactory.this.deleteafterread) try {
-                        final boolean deleted = ftp.deleteFile(file);
-                        final FTPFile[] remaining = ftp.listFiles();
-                        if (remaining.length == 0) {
-                            ftp.cwd("/");
-                            if (path.startsWith("/")) path = path.substring(1);
-                            final int p = path.indexOf('/');
-                            if (p > 0) path = path.substring(0, p);
-                            ftp.removeDirectory(path);
-                        }
-                    } catch (final Throwable e) {
-                        Logger.warn(this.getClass(), "FTPStorageFactory.load failed to remove asset " + path, e );
+                    // the bytes are counted and hashed while they are sent; a stream which ends early leaves a truncated file
+                    final Digest.HashingInputStream hashing = new Digest.HashingInputStream(stream);
+                    final boolean stored = ftp.storeFile(file, hashing);
+                    if (!stored) throw new IOException("storage to path " + path + " was not successful (storeFile=false)");
+                    if (length >= 0 && hashing.count() != length) {
+                        ftp.deleteFile(file);
+                        throw new IOException("storage to path " + path + " was not successful: the stream had " + hashing.count() + " of " + length + " bytes");
                     }
-                } catch (final IOException e) {
-                    throw e;
+                    Logger.debug(this.getClass(), "FTPStorageFactory.store stored " + path + ": " + hashing.count() + " bytes, md5 " + Digest.encodeHex(hashing.digest()));
+                    success = true;
                 } finally {
-                    if (ftp != null) try {ftp.disconnect();} catch (final Throwable ee) {}
+                    if (success) FTPStorageFactory.this.pool.release(connection); else FTPStorageFactory.this.pool.invalidate(connection);
                 }
-                return new Asset<>(FTPStorageFactory.this, b);
+                return FTPStorageFactory.this;
+            }
+
+            @Override
+            public InputStream openStream(final String path) throws IOException {
+                final FTPConnectionPool.Connection connection = FTPStorageFactory.this.pool.borrow();
+                final FTPClient ftp = connection.ftp;
+                final String file;
+                final InputStream is;
+                boolean success = false;
+                try {
+                    file = this.cdPath(ftp, path);
+                    if (FTPStorageFactory.this.active)
+                        ftp.enterLocalActiveMode(); // The data transfer process establishes the data connection
+                    else
+                        ftp.enterLocalPassiveMode(); // The server opens a data port to which the client conducts data transfers
+                    is = ftp.retrieveFileStream(file);
+                    if (is == null) throw new IOException("cannot read asset " + path + ": " + ftp.getReplyString());
+                    success = true;
+                } finally {
+                    if (!success) FTPStorageFactory.this.pool.invalidate(connection);
+                }
+                // the connection is busy until the stream is closed; then the transfer must be completed
+                return new AssetInputStream(is, complete -> {
+                    boolean completed = false;
+                    try {
+                        if (!ftp.completePendingCommand()) throw new IOException("transfer of asset " + path + " failed: " + ftp.getReplyString());
+                        if (complete && FTPStorageFactory.this.deleteafterread) this.delete(ftp, file, path);
+                        completed = true;
+                    } finally {
+                        if (completed) FTPStorageFactory.this.pool.release(connection); else FTPStorageFactory.this.pool.invalidate(connection);
+                    }
+                });
             }
 
             @Override
             public void close() {
+                FTPStorageFactory.this.pool.close();
+            }
+
+            private void delete(final FTPClient ftp, final String file, String path) {
+                try {
+                    final boolean deleted = ftp.deleteFile(file);
+                    final FTPFile[] remaining = ftp.listFiles();
+                    if (remaining.length == 0) {
+                        ftp.cwd("/");
+                        if (path.startsWith("/")) path = path.substring(1);
+                        final int p = path.indexOf('/');
+                        if (p > 0) path = path.substring(0, p);
+                        ftp.removeDirectory(path);
+                    }
+                } catch (final Throwable e) {
+                    Logger.warn(this.getClass(), "FTPStorageFactory.load failed to remove asset " + path, e );
+                }
             }
 
             private String cdPath(final FTPClient ftp, String path) throws IOException {
@@ -170,6 +212,34 @@ public class FTPStorageFactory implements StorageFactory<byte[]> {
         };
     }
 
+    private FTPClient initConnection() throws IOException {
+        final FTPClient ftp = new FTPClient();
+        ftp.setDataTimeout(3000);
+        ftp.setConnectTimeout(20000);
+        ftp.setDefaultTimeout(20000); // socket timeout of the control connection; pooled connections must not hang forever
+        if (this.port < 0 || this.port == DEFAULT_PORT) {
+            ftp.connect(this.server);
+        } else {
+            ftp.connect(this.server, this.port);
+        }
+        if (this.active)
+            ftp.enterLocalActiveMode(); // The data transfer process establishes the data connection
+        else
+            ftp.enterLocalPassiveMode(); // The server opens a data port to which the client conducts data transfers
+        final int reply = ftp.getReplyCode();
+        if(!FTPReply.isPositiveCompletion(reply)) {
+            if (ftp != null) try {ftp.disconnect();} catch (final Throwable ee) {}
+            throw new IOException("bad connection to ftp server: " + reply);
+        }
+        if (!ftp.login(this.username, this.password)) {
+            if (ftp != null) try {ftp.disconnect();} catch (final Throwable ee) {}
+            throw new IOException("login failure");
+        }
+        ftp.setFileType(FTP.BINARY_FILE_TYPE);
+        ftp.setBufferSize(8192);
+        return ftp;
+    }
+
     @Override
     public String getSystem() {
         return "ftp";
@@ -20,7 +20,11 @@
 package net.yacy.grid.io.assets;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 
 import net.yacy.grid.tools.Logger;
@@ -56,19 +60,50 @@ public class FilesystemStorageFactory implements StorageFactory<byte[]> {
                 return FilesystemStorageFactory.this;
             }
 
+            @Override
+            public StorageFactory<byte[]> store(String path, InputStream stream, long length) throws IOException {
+                File f = new File(basePath, path);
+                File f1 = new File(basePath, path + ".bkp");
+                if (f1.exists()) f1.delete();
+                if (f.exists()) f.renameTo(f1);
+                f.getParentFile().mkdirs();
+                try (OutputStream os = new FileOutputStream(f)) {
+                    AssetInputStream.copy(stream, os);
+                } catch (IOException e) {
+                    f.delete();
+                    if (f1.exists()) f1.renameTo(f);
+                    throw e;
+                }
+                if (f1.exists()) f1.delete();
+                return FilesystemStorageFactory.this;
+            }
+
             @Override
             public Asset<byte[]> load(String path) throws IOException {
                 File f = new File(basePath, path);
                 if (!f.exists()) throw new IOException("asset " + path + " does not exist");
                 byte[] b = Files.readAllBytes(f.toPath());
-                if (FilesystemStorageFactory.this.deleteafterread) try {
+                if (FilesystemStorageFactory.this.deleteafterread) delete(f);
+                return new Asset<byte[]>(FilesystemStorageFactory.this, b);
+            }
+
+            @Override
+            public InputStream openStream(String path) throws IOException {
+                File f = new File(basePath, path);
+                if (!f.exists()) throw new IOException("asset " + path + " does not exist");
+                return new AssetInputStream(new FileInputStream(f), complete -> {
+                    if (complete && FilesystemStorageFactory.this.deleteafterread) delete(f);
+                });
+            }
+
+            private void delete(File f) {
+                try {
                     f.delete();
                     File parent = f.getParentFile();
                     if (parent.list().length == 0) parent.delete();
                 } catch (Throwable e) {
                     Logger.warn(this.getClass(), "FileSystemStorageFactory.load ", e);
                 }
-                return new Asset<byte[]>(FilesystemStorageFactory.this, b);
             }
 
             @Override
@@ -19,11 +19,17 @@
 
 package net.yacy.grid.io.assets;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import eu.searchlab.storage.io.AbstractIO;
 import net.yacy.grid.tools.Logger;
 import net.yacy.grid.tools.MultiProtocolURL;
 
@@ -32,11 +38,15 @@ public class GridStorage extends PeerStorage implements Storage<byte[]> {
     private final boolean deleteafterread;
     private final AtomicInteger s3_fail = new AtomicInteger(0);
     private final AtomicInteger ftp_fail = new AtomicInteger(0);
+    private AssetCache cache; // a local disk cache for assets from remote storage; can be NULL
+    private ExecutorService consumer; // loads assets which had been served from the cache to delete them in the remote storage
 
     // connector details
     private String host, username, password; // host has the shape of <bucket>.<endpoint-host> in case of a s3 host
     private int port;
     private boolean active;
+    private long s3PartSize; // the size of the parts of streamed s3 transfers
+    private int s3Concurrency; // the number of parts of a streamed s3 transfer which are transferred in parallel
 
     /**
      * create a grid storage.
@@ -52,6 +62,52 @@ public class GridStorage extends PeerStorage implements Storage<byte[]> {
         this.password = null;
         this.port = -1;
         this.active = true;
+        this.cache = null;
+        this.consumer = null;
+        this.s3PartSize = AbstractIO.defaultPartSize;
+        this.s3Concurrency = AbstractIO.defaultConcurrency;
+    }
+
+    /**
+     * set the part size and the number of parallel parts of streamed s3 uploads and downloads.
+     * This must be called before the s3 storage is connected.
+     * @param partSize the size of one part in bytes
+     * @param concurrency the number of parts which are transferred in parallel
+     */
+    public void setS3Transfer(final long partSize, final int concurrency) {
+        this.s3PartSize = partSize;
+        this.s3Concurrency = concurrency;
+    }
+
+    /**
+     * enable a local disk cache for assets. Stored assets are written to the cache as well,
+     * loaded assets are served from the cache if possible.
+     * @param cachePath the cache directory
+     * @param maxBytes the maximum size of all cache files
+     */
+    public void setCache(final File cachePath, final long maxBytes) {
+        this.cache = new AssetCache(cachePath, maxBytes);
+        if (this.deleteafterread) this.consumer = Executors.newSingleThreadExecutor(r -> {
+            final Thread t = new Thread(r, "GridStorage.consumer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * the cache is only used for remote storage; the local peer storage does not need a cache
+     * @return true if assets are cached
+     */
+    private boolean isCached() {
+        return this.cache != null && (isS3Connected() || isFTPConnected() || isMCPConnected());
+    }
+
+    /**
+     * get the statistics of the asset cache
+     * @return the statistics or NULL if no cache is enabled
+     */
+    public Map<String, Object> getCacheStatistics() {
+        return this.cache == null ? null : this.cache.getStatistics();
     }
 
     /**
@@ -91,7 +147,7 @@ public class GridStorage extends PeerStorage implements Storage<byte[]> {
 
     public boolean checkConnectionS3() {
         try {
-            final StorageFactory<byte[]> s3 = new S3StorageFactory(this.host, this.port, this.username, this.password, this.deleteafterread);
+            final StorageFactory<byte[]> s3 = new S3StorageFactory(this.host, this.port, this.username, this.password, this.deleteafterread, this.s3PartSize, this.s3Concurrency);
             s3.getStorage().checkConnection(); // test the connection
             this.factory = s3;
             return true;
@@ -127,12 +183,15 @@ public class GridStorage extends PeerStorage implements Storage<byte[]> {
     }
 
     public boolean checkConnectionFTP() {
+        StorageFactory<byte[]> ftp = null;
         try {
-            final StorageFactory<byte[]> ftp = new FTPStorageFactory(this.host, this.port, this.username, this.password, this.deleteafterread, this.active);
+            ftp = new FTPStorageFactory(this.host, this.port, this.username, this.password, this.deleteafterread, this.active);
             ftp.getStorage().checkConnection(); // test the connection
+            if (isFTPConnected()) this.factory.close(); // release the pooled connections of the previous factory
             this.factory = ftp;
             return true;
         } catch (final IOException e) {
+            if (ftp != null) ftp.close();
             Logger.debug(this.getClass(), "GridStorage.connectFTP trying to connect to the ftp server at " + this.host + ":" + this.port + " failed");
             return false;
         }
@@ -163,6 +222,12 @@ public class GridStorage extends PeerStorage implements Storage<byte[]> {
     
     @Override
     public StorageFactory<byte[]> store(final String path, final byte[] asset) throws IOException {
+        final StorageFactory<byte[]> sf = storeRemote(path, asset);
+        if (isCached()) this.cache.put(path, asset); // write-through: co-located services read the asset from the cache
+        return sf;
+    }
+
+    private StorageFactory<byte[]> storeRemote(final String path, final byte[] asset) throws IOException {
         if (isS3Connected() && this.s3_fail.get() < 10) {
             try {
                 final StorageFactory<byte[]> sf = this.factory.getStorage().store(path, asset);
@@ -209,46 +274,130 @@ public class GridStorage extends PeerStorage implements Storage<byte[]> {
         } catch (final IOException e) {
             // do nothing, we will try again with alternative methods
         }
+        final byte[] b = loadCache(path);
+        if (b != null) return new Asset<>(this.factory, b);
+        final Asset<byte[]> asset = loadRemote(path);
+        if (isCached()) {
+            if (this.deleteafterread) this.cache.invalidate(path); else this.cache.put(path, asset.getPayload());
+        }
+        return asset;
+    }
+
+    /**
+     * load an asset from the cache
+     * @param path the asset path
+     * @return the asset or null if the asset is not cached
+     */
+    private byte[] loadCache(final String path) {
+        if (!isCached()) return null;
+        final byte[] b = this.cache.get(path);
+        if (b != null && this.deleteafterread) consume(path);
+        return b;
+    }
+
+    /**
+     * remove a consumed asset from the cache and from the remote storage,
+     * which deletes assets only as a side effect of a load
+     * @param path the asset path
+     */
+    private void consume(final String path) {
+        this.cache.invalidate(path);
+        this.consumer.execute(() -> {
+            try {
+                loadRemote(path);
+            } catch (final IOException e) {
+                Logger.debug(this.getClass(), "GridStorage.load failed to delete consumed asset " + path + ": " + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public StorageFactory<byte[]> store(final String path, final InputStream stream, final long length) throws IOException {
+        // streamed assets are not cached, an old cache entry must not be served any more
+        if (isCached()) this.cache.invalidate(path);
+        if (isS3Connected() || isFTPConnected() || isMCPConnected()) {
+            // a stream can be read only once, therefore there is no fail-over to other storage systems
+            return this.factory.getStorage().store(path, stream, length);
+        }
+        return super.store(path, stream, length);
+    }
+
+    @Override
+    public InputStream openStream(final String path) throws IOException {
+        if (isCached()) {
+            final byte[] b = this.cache.get(path);
+            // a cached asset is consumed only when the stream was read completely
+            if (b != null) return new AssetInputStream(new ByteArrayInputStream(b), complete -> {
+                if (complete && this.deleteafterread) consume(path);
+            });
+            if (this.deleteafterread) this.cache.invalidate(path);
+        }
+        if (isS3Connected() || isFTPConnected() || isMCPConnected()) return openRemote(path);
+        return super.openStream(path);
+    }
+
+    private Asset<byte[]> loadRemote(final String path) throws IOException {
+        return remote("load", storage -> storage.load(path));
+    }
+
+    private InputStream openRemote(final String path) throws IOException {
+        return remote("openStream", storage -> storage.openStream(path));
+    }
+
+    @FunctionalInterface
+    private interface RemoteCall<T> {
+        public T apply(Storage<byte[]> storage) throws IOException;
+    }
+
+    /**
+     * run a read operation on the remote storage with the fail counters of the storage systems and the ftp retry loop
+     * @param name the name of the operation, used for logging
+     * @param call the operation
+     * @return the result of the operation
+     * @throws IOException if no storage system could do the operation
+     */
+    private <T> T remote(final String name, final RemoteCall<T> call) throws IOException {
         if (isS3Connected() && this.s3_fail.get() < 10) {
                 try {
-                    final Asset<byte[]> asset = this.factory.getStorage().load(path);
+                    final T result = call.apply(this.factory.getStorage());
                     this.s3_fail.set(0);
-                    return asset;
+                    return result;
                 } catch (final IOException e) {
-                    Logger.debug(this.getClass(), "GridStorage.load trying to connect to the s3 server failed", e);
+                    Logger.debug(this.getClass(), "GridStorage." + name + " trying to connect to the s3 server failed", e);
                 }
             this.s3_fail.incrementAndGet();
         }
         if (isFTPConnected() && this.ftp_fail.get() < 10) {
             retryloop: for (int retry = 0; retry < 40; retry++) {
                 try {
-                    final Asset<byte[]> asset = this.factory.getStorage().load(path);
+                    final T result = call.apply(this.factory.getStorage());
                     this.ftp_fail.set(0);
-                    return asset;
+                    return result;
                 } catch (final IOException e) {
-                    final String cause = e.getMessage();
+                    final String cause = e.getMessage() == null ? "" : e.getMessage();
                     // possible causes:
                     // 421 too many connections. possible counteractions: in apacheftpd, set i.e. ftpserver.user.anonymous.maxloginnumber=200 and ftpserver.user.anonymous.maxloginperip=200
                     if (cause.indexOf("421") >= 0) {try {Thread.sleep(retry * 500);} catch (final InterruptedException e1) {} continue retryloop;}
                     if (cause.indexOf("refused") >= 0) break retryloop; // this will not go anywhere
-                    Logger.debug(this.getClass(), "GridStorage.load trying to connect to the ftp server failed, attempt " + retry + ": " + cause, e);
+                    Logger.debug(this.getClass(), "GridStorage." + name + " trying to connect to the ftp server failed, attempt " + retry + ": " + cause, e);
                 }
             }
             this.ftp_fail.incrementAndGet();
         }
         if (isMCPConnected()) try {
-            return this.factory.getStorage().load(path);
+            return call.apply(this.factory.getStorage());
         } catch (final IOException e) {
-            Logger.debug(this.getClass(), "GridStorage.load trying to connect to the mcp failed: " + e.getMessage(), e);
+            Logger.debug(this.getClass(), "GridStorage." + name + " trying to connect to the mcp failed: " + e.getMessage(), e);
         }
         // no options left
-        throw new IOException("no storage factory available to load asset");
+        throw new IOException("GridStorage." + name + ": no storage factory available for asset");
     }
 
     @Override
     public void close() {
         if (isS3Connected()) try {this.factory.close();} catch (final Throwable e) {}
         if (isFTPConnected()) try {this.factory.close();} catch (final Throwable e) {}
+        if (this.consumer != null) this.consumer.shutdown();
         try {super.close();} catch (final Throwable e) {}
     }
 
@@ -20,15 +20,18 @@
 package net.yacy.grid.io.assets;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
 
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import net.yacy.grid.YaCyServices;
 import net.yacy.grid.http.APIHandler;
+import net.yacy.grid.http.ClientConnection;
 import net.yacy.grid.http.ObjectAPIHandler;
 import net.yacy.grid.http.ServiceResponse;
 import net.yacy.grid.io.index.MCPIndexFactory;
@@ -125,6 +128,40 @@ public class MCPStorageFactory implements StorageFactory<byte[]> {
                 return new Asset<byte[]>(MCPStorageFactory.this, sr.getByteArray());
             }
 
+            @Override
+            public StorageFactory<byte[]> store(final String path, final InputStream stream, final long length) throws IOException {
+                final Map<String, byte[]> params = new HashMap<>();
+                params.put("path", path.getBytes(StandardCharsets.UTF_8));
+                final String urlstring = MCPStorageFactory.this.getConnectionURL() + Service.instance.config.getAPI(StoreService.NAME).getAPIPath();
+                final ClientConnection connection = new ClientConnection(urlstring, params, "asset", stream);
+                final byte[] b = connection.load();
+                if (b == null || b.length == 0) throw new IOException("response empty");
+                final JSONObject response = new JSONObject(new JSONTokener(new String(b, StandardCharsets.UTF_8)));
+                if (response.has(ObjectAPIHandler.SUCCESS_KEY) && response.getBoolean(ObjectAPIHandler.SUCCESS_KEY)) {
+                    connectMCP(response);
+                    return MCPStorageFactory.this;
+                } else {
+                    throw handleError(response);
+                }
+            }
+
+            @Override
+            public InputStream openStream(final String path) throws IOException {
+                final Map<String, byte[]> params = new HashMap<>();
+                params.put("path", path.getBytes(StandardCharsets.UTF_8));
+                final String urlstring = MCPStorageFactory.this.getConnectionURL() + Service.instance.config.getAPI(LoadService.NAME).getAPIPath();
+                final ClientConnection connection = new ClientConnection(urlstring, params);
+                // the mcp responds with an empty document if the asset is not available
+                final InputStream is = connection.inputStream;
+                is.mark(1);
+                if (is.read() < 0) {
+                    connection.close();
+                    throw new IOException("asset " + path + " not available at mcp");
+                }
+                is.reset();
+                return new AssetInputStream(is, complete -> connection.close());
+            }
+
             @Override
             public void close() {
             }
@@ -21,6 +21,7 @@ package net.yacy.grid.io.assets;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
 public class PeerStorage implements Storage<byte[]> {
 
@@ -48,6 +49,18 @@ public class PeerStorage implements Storage<byte[]> {
         return this.factory.getStorage().load(path);
     }
 
+    @Override
+    public StorageFactory<byte[]> store(String path, InputStream stream, long length) throws IOException {
+        if (this.factory == null) throw new IOException("peer storage not enabled");
+        return this.factory.getStorage().store(path, stream, length);
+    }
+
+    @Override
+    public InputStream openStream(String path) throws IOException {
+        if (this.factory == null) throw new IOException("peer storage not enabled");
+        return this.factory.getStorage().openStream(path);
+    }
+
     @Override
     public void close() {
         if (this.factory != null) this.factory.close();
@@ -20,8 +20,10 @@
 package net.yacy.grid.io.assets;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
+import eu.searchlab.storage.io.AbstractIO;
 import eu.searchlab.storage.io.GenericIO;
 import eu.searchlab.storage.io.IOPath;
 import eu.searchlab.storage.io.MinioS3IO;
@@ -33,8 +35,25 @@ public class S3StorageFactory  implements StorageFactory<byte[]> {
     private int port;
     private final Storage<byte[]> s3client;
     private boolean deleteafterread;
+    private final long partSize;
+    private final int concurrency;
 
     public S3StorageFactory(final String bucket_endpoint, final int port, final String accessKey, final String secretKey, final boolean deleteafterread) throws IOException {
+        this(bucket_endpoint, port, accessKey, secretKey, deleteafterread, AbstractIO.defaultPartSize, AbstractIO.defaultConcurrency);
+    }
+
+    /**
+     * create a s3 storage factory
+     * @param bucket_endpoint must be <bucketname>"."<hostname>
+     * @param port
+     * @param accessKey
+     * @param secretKey
+     * @param deleteafterread
+     * @param partSize the size of the parts of streamed uploads and downloads
+     * @param concurrency the number of parts which are transferred in parallel
+     * @throws IOException
+     */
+    public S3StorageFactory(final String bucket_endpoint, final int port, final String accessKey, final String secretKey, final boolean deleteafterread, final long partSize, final int concurrency) throws IOException {
         // we expect that the server is constructed as <bucket>.<endpointHost>
         // so we deconstruct the bucket and endpoint information from the given server
         Logger.info("creating S3StorageFactory with bucket_endpoint " + bucket_endpoint);
@@ -47,6 +66,8 @@ public class S3StorageFactory  implements StorageFactory<byte[]> {
         this.accessKey = accessKey == null ? "" : accessKey;
         this.secretKey = secretKey == null ? "" : secretKey;
         this.deleteafterread = deleteafterread;
+        this.partSize = partSize;
+        this.concurrency = concurrency;
 
         this.s3client = new Storage<byte[]>() {
             private GenericIO io = null;
@@ -110,6 +131,39 @@ public class S3StorageFactory  implements StorageFactory<byte[]> {
                 return new Asset<>(S3StorageFactory.this, b);
             }
 
+            @Override
+            public StorageFactory<byte[]> store(final String path, final InputStream stream, final long length) throws IOException {
+                if (this.io == null) this.io = initConnection();
+                final IOPath iop = new IOPath(S3StorageFactory.this.bucket, path);
+                try {
+                    this.io.writeParallel(iop, stream, length, S3StorageFactory.this.partSize, S3StorageFactory.this.concurrency);
+                } catch (final IOException e) {
+                    // we cannot try again because the stream is consumed; but the next request shall use a fresh connection
+                    this.io = null;
+                    throw e;
+                }
+                return S3StorageFactory.this;
+            }
+
+            @Override
+            public InputStream openStream(final String path) throws IOException {
+                if (this.io == null) this.io = initConnection();
+                final IOPath iop = new IOPath(S3StorageFactory.this.bucket, path);
+                InputStream is = null;
+                try {
+                    is = this.io.readParallel(iop, S3StorageFactory.this.partSize, S3StorageFactory.this.concurrency);
+                } catch (final IOException e) {
+                    // try again
+                    this.io = initConnection();
+                    is = this.io.readParallel(iop, S3StorageFactory.this.partSize, S3StorageFactory.this.concurrency);
+                }
+                if (is == null) throw new IOException("cannot read s3://" + S3StorageFactory.this.bucket + "." + S3StorageFactory.this.endpoint + "/" + iop.toString());
+                final GenericIO sio = this.io;
+                return new AssetInputStream(is, complete -> {
+                    if (complete && S3StorageFactory.this.deleteafterread) sio.remove(iop);
+                });
+            }
+
             @Override
             public void close() {
                 this.io = null;
@@ -20,6 +20,7 @@
 package net.yacy.grid.io.assets;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Grid-Service storage Interface for grid-wide assets
@@ -33,7 +34,29 @@ public interface Storage<A> {
     public StorageFactory<A> store(String path, A asset) throws IOException;
     
     public Asset<A> load(String path) throws IOException;
-    
+
+    /**
+     * store an asset from a stream without holding the whole asset in memory.
+     * The stream is read until its end but not closed; because a stream can be read only once,
+     * there is no retry or fail-over to another storage if the transfer fails.
+     * @param path the asset path
+     * @param stream the asset content
+     * @param length the size of the asset or -1 if the size is not known
+     * @return the storage factory which stored the asset
+     * @throws IOException
+     */
+    public StorageFactory<A> store(String path, InputStream stream, long length) throws IOException;
+
+    /**
+     * open a stream to read an asset without loading the whole asset into memory.
+     * The stream must be closed after reading; storages which delete assets after reading
+     * do that when the stream is closed after it was read to its end.
+     * @param path the asset path
+     * @return a stream with the asset content
+     * @throws IOException
+     */
+    public InputStream openStream(String path) throws IOException;
+
     public void close();
     
 }
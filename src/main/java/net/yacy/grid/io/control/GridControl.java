@@ -87,13 +87,12 @@ public class GridControl {
     }
 
     public static long computeThrottling(final String id, final String url, final int depth, final int crawlingDepth, final boolean loaderHeadless, final int priority) {
-        MultiProtocolURL u;
+        final String host;
         try {
-            u = new MultiProtocolURL(url);
+            host = MultiProtocolURL.getHost(url);
         } catch (final MalformedURLException e) {
             return 250;
         }
-        final String host = u.getHost();
         final Long lastLoadTime = loaderAccess.get(host);
         if (lastLoadTime == null) {
             // the host was never loaded!
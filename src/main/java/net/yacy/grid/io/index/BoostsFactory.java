@@ -19,6 +19,7 @@
 
 package net.yacy.grid.io.index;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -45,19 +46,49 @@ public class BoostsFactory {
             WebMapping webMapping = WebMapping.valueOf(entry.getKey());
             QUERY_DEFAULT_FIELDS.put(webMapping, Float.parseFloat(entry.getValue()));
         }
+        queryDefaultFieldBoosts = fieldBoosts(QUERY_DEFAULT_FIELDS);
+        YaCyQuery.clearCache(); // cached queries were compiled with the old boosts
+    }
+
+    // the field name to boost map of the default boosts; this is shared by all Boosts objects which are not patched
+    private static volatile Map<String, Float> queryDefaultFieldBoosts = fieldBoosts(QUERY_DEFAULT_FIELDS);
+
+    private static Map<String, Float> fieldBoosts(final Map<WebMapping, Float> boosts) {
+        final Map<String, Float> fieldBoosts = new LinkedHashMap<>();
+        boosts.forEach((mapping, boost) -> fieldBoosts.put(mapping.getMapping().name(), boost));
+        return Collections.unmodifiableMap(fieldBoosts);
     }
 
     public static Boosts getBoosts() {
-        return new Boosts(QUERY_DEFAULT_FIELDS);
+        return new Boosts(QUERY_DEFAULT_FIELDS, queryDefaultFieldBoosts);
     }
 
     public static class Boosts extends LinkedHashMap<WebMapping, Float> {
 
         private static final long serialVersionUID = -8298697781874655425L;
 
-        private Boosts(Map<WebMapping, Float> defaultMapping) {
+        private Map<String, Float> fieldBoosts;
+
+        private Boosts(Map<WebMapping, Float> defaultMapping, Map<String, Float> defaultFieldBoosts) {
             super();
             defaultMapping.forEach((key, boost) -> this.put(key, boost));
+            this.fieldBoosts = defaultFieldBoosts;
+        }
+
+        @Override
+        public Float put(WebMapping key, Float value) {
+            this.fieldBoosts = null;
+            return super.put(key, value);
+        }
+
+        /**
+         * get the boosts as a map from the index field name to the boost value;
+         * this is the form which can be used directly in elasticsearch query builders
+         * @return an unmodifiable map of field names to boost values
+         */
+        public Map<String, Float> getFieldBoosts() {
+            if (this.fieldBoosts == null) this.fieldBoosts = fieldBoosts(this);
+            return this.fieldBoosts;
         }
 
         public void patchWithModifier(String modifier) {
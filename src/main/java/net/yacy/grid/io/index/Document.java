@@ -177,7 +177,7 @@ public class Document extends JSONObject {
 
     public Document putDate(MappingDeclaration declaration, Date date) {
         if (!isDate(declaration)) return this;
-        this.put(declaration.getMapping().name(), DateParser.iso8601MillisFormat.format(date));
+        this.put(declaration.getMapping().name(), DateParser.formatISO8601Millis(date));
         return this;
     }
     
@@ -32,9 +32,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.elasticsearch.client.transport.NoNodeAvailableException;
 import org.elasticsearch.common.unit.Fuzziness;
+import org.elasticsearch.index.IndexNotFoundException;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.Operator;
 import org.elasticsearch.index.query.QueryBuilder;
@@ -45,6 +47,7 @@ import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import net.yacy.grid.io.index.ElasticsearchClient.BulkEntry;
+import net.yacy.grid.io.index.Index.QueryLanguage;
 import net.yacy.grid.mcp.Configuration;
 import net.yacy.grid.tools.Classification;
 import net.yacy.grid.tools.JSONList;
@@ -58,12 +61,29 @@ public class ElasticIndexFactory implements IndexFactory {
     private String elasticsearchAddress;
     private String elasticsearchClusterName;
     private Index index;
+    private final File existenceFilterPath;
+    private final Map<String, ExistenceFilter> existenceFilters;
 
     public ElasticIndexFactory(String elasticsearchAddress, String elasticsearchClusterName) throws IOException {
+        this(elasticsearchAddress, elasticsearchClusterName, null);
+    }
+
+    /**
+     * create an index factory for elasticsearch
+     * @param elasticsearchAddress the host:port of the elasticsearch transport client
+     * @param elasticsearchClusterName the cluster name
+     * @param existenceFilterPath a path where existence filters for exist/existBulk requests are stored, or null if no filters shall be used.
+     *   Existence filters must only be used if all documents are written to the index using this factory.
+     * @throws IOException
+     */
+    public ElasticIndexFactory(String elasticsearchAddress, String elasticsearchClusterName, File existenceFilterPath) throws IOException {
         if (elasticsearchAddress == null || elasticsearchAddress.length() == 0) throw new IOException("the elasticsearch Address must be given");
 
         this.elasticsearchAddress = elasticsearchAddress;
         this.elasticsearchClusterName = elasticsearchClusterName;
+        this.existenceFilterPath = existenceFilterPath;
+        this.existenceFilters = new ConcurrentHashMap<>();
+        if (existenceFilterPath != null) Logger.warn(this.getClass(), "existence filters are switched on: all documents must be written to the index through this process");
 
         // create elasticsearch connection
         this.elasticsearchClient = new ElasticsearchClient(new String[]{this.elasticsearchAddress}, this.elasticsearchClusterName.length() == 0 ? null : this.elasticsearchClusterName);
@@ -99,97 +119,155 @@ public class ElasticIndexFactory implements IndexFactory {
 
             @Override
             public IndexFactory addBulk(String indexName, String typeName, final Map<String, JSONObject> objects) throws IOException {
-                if (objects.size() > 0) {
-                    List<BulkEntry> entries = new ArrayList<>();
-                    objects.forEach((id, obj) -> {
-                        entries.add(new BulkEntry(id, typeName, null, obj.toMap()));
-                    });
-                    ElasticIndexFactory.this.elasticsearchClient.writeMapBulk(indexName, entries);
+                try {
+                    // add the ids to the existence filter first to prevent that a concurrent exist request misses them
+                    ExistenceFilter filter = getExistenceFilter(indexName);
+                    if (filter != null) filter.add(objects.keySet());
+                    if (objects.size() > 0) {
+                        List<BulkEntry> entries = new ArrayList<>();
+                        objects.forEach((id, obj) -> {
+                            entries.add(new BulkEntry(id, typeName, null, obj.toMap()));
+                        });
+                        ElasticIndexFactory.this.elasticsearchClient.writeMapBulk(indexName, entries);
+                    }
+                    return ElasticIndexFactory.this;
+                } catch (NoNodeAvailableException e) {
+                    throw new IOException(e.getMessage(), e);
                 }
-                return ElasticIndexFactory.this;
             }
 
             @Override
             public IndexFactory add(String indexName, String typeName, String id, JSONObject object) throws IOException {
-                ElasticIndexFactory.this.elasticsearchClient.writeMap(indexName, typeName, id, object.toMap());
-                return ElasticIndexFactory.this;
+                try {
+                    ExistenceFilter filter = getExistenceFilter(indexName);
+                    if (filter != null) filter.add(id);
+                    ElasticIndexFactory.this.elasticsearchClient.writeMap(indexName, typeName, id, object.toMap());
+                    return ElasticIndexFactory.this;
+                } catch (NoNodeAvailableException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
             }
 
             @Override
             public boolean exist(String indexName, String id) throws IOException {
-                return ElasticIndexFactory.this.elasticsearchClient.exist(indexName, id);
+                try {
+                    ExistenceFilter filter = getExistenceFilter(indexName);
+                    if (filter != null && filter.isReady() && !filter.mightContain(id)) return false;
+                    return ElasticIndexFactory.this.elasticsearchClient.exist(indexName, id);
+                } catch (NoNodeAvailableException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
             }
 
             @Override
             public Set<String> existBulk(String indexName, Collection<String> ids) throws IOException {
-                return ElasticIndexFactory.this.elasticsearchClient.existBulk(indexName, ids);
+                try {
+                    // only ids which pass the existence filter must be confirmed with elasticsearch
+                    ExistenceFilter filter = getExistenceFilter(indexName);
+                    if (filter != null && filter.isReady()) {
+                        Set<String> candidates = filter.mightContain(ids);
+                        if (candidates.isEmpty()) return candidates;
+                        return ElasticIndexFactory.this.elasticsearchClient.existBulk(indexName, candidates);
+                    }
+                    return ElasticIndexFactory.this.elasticsearchClient.existBulk(indexName, ids);
+                } catch (NoNodeAvailableException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
             }
 
             @Override
             public long count(String indexName, QueryLanguage language, String query) throws IOException {
-                QueryBuilder qb = getQuery(language, query);
-                return ElasticIndexFactory.this.elasticsearchClient.count(qb, indexName);
+                try {
+                    QueryBuilder qb = getQuery(language, query);
+                    return ElasticIndexFactory.this.elasticsearchClient.count(qb, indexName);
+                } catch (NoNodeAvailableException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
             }
 
             @Override
             public JSONObject query(String indexName, String id) throws IOException {
-                Map<String, Object> map = ElasticIndexFactory.this.elasticsearchClient.readMap(indexName, id);
-                if (map == null) return null;
-                return new JSONObject(map);
+                try {
+                    Map<String, Object> map = ElasticIndexFactory.this.elasticsearchClient.readMap(indexName, id);
+                    if (map == null) return null;
+                    return new JSONObject(map);
+                } catch (NoNodeAvailableException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
             }
 
             @Override
             public Map<String, JSONObject> queryBulk(String indexName, Collection<String> ids) throws IOException {
-                Map<String, Map<String, Object>> bulkresponse = ElasticIndexFactory.this.elasticsearchClient.readMapBulk(indexName, ids);
-                Map<String, JSONObject> response = new HashMap<>();
-                bulkresponse.forEach((id, obj) -> response.put(id, new JSONObject(obj)));
-                return response;
+                try {
+                    Map<String, Map<String, Object>> bulkresponse = ElasticIndexFactory.this.elasticsearchClient.readMapBulk(indexName, ids);
+                    Map<String, JSONObject> response = new HashMap<>();
+                    bulkresponse.forEach((id, obj) -> response.put(id, new JSONObject(obj)));
+                    return response;
+                } catch (NoNodeAvailableException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
             }
 
             @Override
             public JSONList query(String indexName, QueryLanguage language, String query, int start, int count) throws IOException {
-                QueryBuilder qb = getQuery(language, query);
-                ElasticsearchClient.Query q = ElasticIndexFactory.this.elasticsearchClient.query(indexName, qb, null, Sort.DEFAULT, null, 0, start, count, 0, false);
-                List<Map<String, Object>> results = q.results;
-                JSONList list = new JSONList();
-                for (int hitc = 0; hitc < results.size(); hitc++) {
-                    Map<String, Object> map = results.get(hitc);
-                    list.add(new JSONObject(map));
+                try {
+                    QueryBuilder qb = getQuery(language, query);
+                    ElasticsearchClient.Query q = ElasticIndexFactory.this.elasticsearchClient.query(indexName, qb, null, Sort.DEFAULT, null, 0, start, count, 0, false);
+                    List<Map<String, Object>> results = q.results;
+                    JSONList list = new JSONList();
+                    for (int hitc = 0; hitc < results.size(); hitc++) {
+                        Map<String, Object> map = results.get(hitc);
+                        list.add(new JSONObject(map));
+                    }
+                    return list;
+                } catch (NoNodeAvailableException e) {
+                    throw new IOException(e.getMessage(), e);
                 }
-                return list;
             }
 
             @Override
             public JSONObject query(final String indexName, final QueryBuilder queryBuilder, final QueryBuilder postFilter, final Sort sort, final HighlightBuilder hb, int timezoneOffset, int from, int resultCount, int aggregationLimit, boolean explain, WebMapping... aggregationFields) throws IOException {
-                ElasticsearchClient.Query q = ElasticIndexFactory.this.elasticsearchClient.query(indexName, queryBuilder, postFilter, sort, hb, timezoneOffset, from, resultCount, aggregationLimit, explain, aggregationFields);
-                JSONObject queryResult = new JSONObject(true);
+                try {
+                    ElasticsearchClient.Query q = ElasticIndexFactory.this.elasticsearchClient.query(indexName, queryBuilder, postFilter, sort, hb, timezoneOffset, from, resultCount, aggregationLimit, explain, aggregationFields);
+                    JSONObject queryResult = new JSONObject(true);
+
+                    int hitCount = q.hitCount;
+                    queryResult.put("hitCount", hitCount);
+
+                    List<Map<String, Object>> results = q.results;
+                    JSONList list = new JSONList();
+                    for (int hitc = 0; hitc < results.size(); hitc++) {
+                        Map<String, Object> map = results.get(hitc);
+                        list.add(new JSONObject(map));
+                    }
+                    queryResult.put("results", list);
 
-                int hitCount = q.hitCount;
-                queryResult.put("hitCount", hitCount);
+                    List<String> explanations = q.explanations;
+                    queryResult.put("explanations", explanations);
 
-                List<Map<String, Object>> results = q.results;
-                JSONList list = new JSONList();
-                for (int hitc = 0; hitc < results.size(); hitc++) {
-                    Map<String, Object> map = results.get(hitc);
-                    list.add(new JSONObject(map));
+                    return queryResult;
+                } catch (NoNodeAvailableException e) {
+                    throw new IOException(e.getMessage(), e);
                 }
-                queryResult.put("results", list);
-
-                List<String> explanations = q.explanations;
-                queryResult.put("explanations", explanations);
-
-                return queryResult;
             }
 
             @Override
             public boolean delete(String indexName, String typeName, String id) throws IOException {
-                return ElasticIndexFactory.this.elasticsearchClient.delete(indexName, typeName, id);
+                try {
+                    return ElasticIndexFactory.this.elasticsearchClient.delete(indexName, typeName, id);
+                } catch (NoNodeAvailableException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
             }
 
             @Override
             public long delete(String indexName, QueryLanguage language, String query) throws IOException {
-                QueryBuilder qb = getQuery(language, query);
-                return ElasticIndexFactory.this.elasticsearchClient.deleteByQuery(indexName, qb);
+                try {
+                    QueryBuilder qb = getQuery(language, query);
+                    return ElasticIndexFactory.this.elasticsearchClient.deleteByQuery(indexName, qb);
+                } catch (NoNodeAvailableException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
             }
 
             @Override
@@ -201,27 +279,92 @@ public class ElasticIndexFactory implements IndexFactory {
             public void close() {
             }
 
-            private QueryBuilder getQuery(QueryLanguage language, String query) {
-                QueryBuilder qb = QueryBuilders.boolQuery();
-                if (language == QueryLanguage.fields) {
-                    qb = QueryBuilders.boolQuery();
-                    JSONObject json = new JSONObject(query);
-                    for (String key: json.keySet()) {
-                        ((BoolQueryBuilder) qb).filter(QueryBuilders.termQuery(key, json.get(key)));
+        };
+    }
+
+    /**
+     * translate a query of the given query language into an elasticsearch query
+     * @param language the query language
+     * @param query the query string
+     * @return an elasticsearch query builder
+     */
+    public static QueryBuilder getQuery(final QueryLanguage language, final String query) {
+        QueryBuilder qb = QueryBuilders.boolQuery();
+        if (language == QueryLanguage.fields) {
+            qb = QueryBuilders.boolQuery();
+            JSONObject json = new JSONObject(query);
+            for (String key: json.keySet()) {
+                ((BoolQueryBuilder) qb).filter(QueryBuilders.termQuery(key, json.get(key)));
+            }
+        } else if (language == QueryLanguage.elastic) {
+            QueryStringQueryBuilder qsqb = QueryBuilders.queryStringQuery(query);
+            qsqb.useDisMax(false); // we want a boolean query here
+            qsqb.defaultOperator(Operator.AND);
+            qsqb.fuzziness(Fuzziness.ZERO);
+            qb = qsqb;
+        } else if (language == QueryLanguage.gsa || language == QueryLanguage.yacy) {
+            qb = YaCyQuery.getQuery(query, null, Classification.ContentDomain.ALL, 0).queryBuilder;
+        }
+        return qb;
+    }
+
+    /**
+     * get the existence filter for an index. A new filter is warmed up in the background with the ids of all
+     * documents in the index; until that is finished the filter is not ready and must not be used for exist requests.
+     * Filters are only used if they are switched on with grid.elasticsearch.existFilter = true (the default is false)
+     * because negative answers are only correct if this process is the single writer of the index: documents which
+     * other grid services write directly to elasticsearch are not added to the filter and are reported as not existing.
+     * @param indexName the name of the index
+     * @return the existence filter or null if no filters are used
+     */
+    private ExistenceFilter getExistenceFilter(final String indexName) {
+        if (this.existenceFilterPath == null) return null;
+        return this.existenceFilters.computeIfAbsent(indexName, name -> {
+            try {
+                final ExistenceFilter filter = new ExistenceFilter(this.existenceFilterPath, name, 1000000L, 0.01d);
+                // even a ready filter is refreshed because documents may have been written while this process was down
+                final Thread warmup = new Thread() {
+                    @Override
+                    public void run() {
+                        for (int attempt = 0; ; attempt++) try {
+                            final ElasticsearchClient client = ElasticIndexFactory.this.elasticsearchClient;
+                            if (client == null) throw new IllegalStateException("no elasticsearch client");
+                            final long start = System.currentTimeMillis();
+                            final long count = client.forEachId(name, id -> filter.add(id));
+                            filter.setReady(true);
+                            Logger.info(ElasticIndexFactory.class, "ExistenceFilter warm-up for index " + name + " finished: " + count + " ids, " + (System.currentTimeMillis() - start) + " ms");
+                            return;
+                        } catch (final RuntimeException e) {
+                            if (isIndexNotFound(e)) {
+                                // a fresh installation: the index is created with the first document, which is added to the filter anyway
+                                filter.setReady(true);
+                                Logger.info(ElasticIndexFactory.class, "ExistenceFilter warm-up for index " + name + " finished: index does not exist yet");
+                                return;
+                            }
+                            final long delay = Math.min(600000L, 5000L << Math.min(attempt, 7));
+                            Logger.warn(ElasticIndexFactory.class, "ExistenceFilter warm-up for index " + name + " failed, retrying in " + (delay / 1000) + " seconds", e);
+                            try {Thread.sleep(delay);} catch (final InterruptedException ee) {return;}
+                        }
                     }
-                } else if (language == QueryLanguage.elastic) {
-                    QueryStringQueryBuilder qsqb = QueryBuilders.queryStringQuery(query);
-                    qsqb.useDisMax(false); // we want a boolean query here
-                    qsqb.defaultOperator(Operator.AND);
-                    qsqb.fuzziness(Fuzziness.ZERO);
-                    qb = qsqb;
-                } else if (language == QueryLanguage.gsa || language == QueryLanguage.yacy) {
-                    qb = new YaCyQuery(query, null, Classification.ContentDomain.ALL, 0).queryBuilder;
-                }
-                return qb;
+                };
+                warmup.setName("ExistenceFilter warm-up " + name);
+                warmup.setDaemon(true);
+                warmup.start();
+                return filter;
+            } catch (final IOException e) {
+                Logger.warn(ElasticIndexFactory.class, "cannot open existence filter for index " + name, e);
+                return null;
             }
+        });
+    }
 
-        };
+    private static boolean isIndexNotFound(Throwable e) {
+        // the exception may arrive wrapped, i.e. in a RemoteTransportException
+        while (e != null) {
+            if (e instanceof IndexNotFoundException) return true;
+            e = e.getCause();
+        }
+        return false;
     }
 
     public ElasticsearchClient getClient() {
@@ -255,6 +398,8 @@ public class ElasticIndexFactory implements IndexFactory {
 
     @Override
     public void close() {
+        for (final ExistenceFilter filter: this.existenceFilters.values()) filter.close();
+        this.existenceFilters.clear();
         this.elasticsearchClient.close();
     }
 
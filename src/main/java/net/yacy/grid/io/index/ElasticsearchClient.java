@@ -34,9 +34,20 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.apache.lucene.search.Explanation;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.DocWriteResponse;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
 import org.elasticsearch.action.admin.cluster.stats.ClusterStatsAction;
@@ -82,10 +93,13 @@ import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms.Bucket;
 import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
 import org.elasticsearch.search.fetch.subphase.highlight.HighlightField;
+import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.transport.client.PreBuiltTransportClient;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
+import org.json.JSONObject;
 
+import net.yacy.grid.tools.CircuitBreaker;
 import net.yacy.grid.tools.Logger;
 
 /**
@@ -100,10 +114,33 @@ public class ElasticsearchClient {
     private static long throttling_time_threshold = 2000L; // update time high limit
     private static long throttling_ops_threshold = 1000L; // messages per second low limit
     private static double throttling_factor = 1.0d; // factor applied on update duration if both thresholds are passed
+    private static int deleteBatchSize = 1000; // number of documents in one bulk delete request
+    private static int deleteConcurrency = 4; // maximum number of concurrent bulk delete requests of one delete task
+    private static int deleteAttempts = 3; // number of bulk delete requests for each document before its deletion counts as failed
+    private static long deleteTaskRetention = 3600000L; // time in milliseconds that a finished delete task can be polled
+    private static final AtomicLong deleteTaskCounter = new AtomicLong(0);
+    private static int retryAttempts = 5; // number of attempts for each request before it fails
+    private static long retryBaseDelay = 100L; // base time in milliseconds for the exponential backoff between attempts
+    private static long retryMaxDelay = 5000L; // maximum time in milliseconds between two attempts
+    private static long reconnectMinInterval = 5000L; // minimum time in milliseconds between two reconnects
+    private static int breakerFailureThreshold = 10; // number of consecutive failures which open the circuit breaker
+    private static long breakerOpenTime = 10000L; // time in milliseconds that requests fail fast when the circuit breaker is open
+
+    // a shared scheduler for delayed retries of asynchronous requests
+    private static final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ElasticsearchClient retry scheduler");
+        t.setDaemon(true);
+        return t;
+    });
 
     private String[] addresses;
     private String clusterName;
-    private Client elasticsearchClient;
+    private volatile Client elasticsearchClient;
+    private final Map<String, DeleteByQueryTask> deleteTasks = new ConcurrentHashMap<>();
+    private final CircuitBreaker circuitBreaker;
+    private final AtomicLong connectionGeneration = new AtomicLong(0);
+    private final Object reconnectLock = new Object();
+    private long lastReconnect = 0;
 
     /**
      * create a elasticsearch transport client (remote elasticsearch)
@@ -114,6 +151,7 @@ public class ElasticsearchClient {
         Logger.info(this.getClass(), "ElasticsearchClient initiated client, address: " + addresses[0] + ", clusterName: " + clusterName);
         this.addresses = addresses;
         this.clusterName = clusterName;
+        this.circuitBreaker = new CircuitBreaker("elasticsearch " + addresses[0], breakerFailureThreshold, breakerOpenTime);
         connect();
     }
 
@@ -163,6 +201,149 @@ public class ElasticsearchClient {
         }.start();
     }
 
+    /**
+     * Reconnect coordinator: all threads which observed a failure with the same client generation
+     * share one reconnect. Threads which come late find a new generation and do not reconnect again.
+     * @param observedGeneration the connection generation which was used when the failure happened
+     */
+    private void reconnect(final long observedGeneration) {
+        synchronized (this.reconnectLock) {
+            if (this.connectionGeneration.get() != observedGeneration) return; // another thread already reconnected
+            if (System.currentTimeMillis() - this.lastReconnect < reconnectMinInterval) return;
+            connect();
+            this.lastReconnect = System.currentTimeMillis();
+            this.connectionGeneration.incrementAndGet();
+        }
+    }
+
+    private static boolean isRetryable(final Throwable e) {
+        return e instanceof NoNodeAvailableException || e instanceof IllegalStateException || e instanceof ClusterBlockException || e instanceof SearchPhaseExecutionException;
+    }
+
+    private static boolean needsReconnect(final Throwable e) {
+        // only a lost connection or a closed client can be repaired with a new client
+        return e instanceof NoNodeAvailableException || e instanceof IllegalStateException;
+    }
+
+    private NoNodeAvailableException circuitOpen(final String name) {
+        return new NoNodeAvailableException("ElasticsearchClient " + name + " rejected, circuit breaker is open");
+    }
+
+    /**
+     * Run a synchronous request with a bounded number of attempts.
+     * Between the attempts a jittered exponential backoff time is waited. If the circuit breaker is open,
+     * the request fails immediately with a NoNodeAvailableException.
+     * @param name the name of the request, used for logging
+     * @param call the request
+     * @return the result of the request
+     * @throws NoNodeAvailableException if the elasticsearch cluster cannot be reached
+     */
+    private <T> T retry(final String name, final Supplier<T> call) {
+        RuntimeException last = null;
+        for (int attempt = 0; attempt < retryAttempts; attempt++) {
+            if (!this.circuitBreaker.allowRequest()) throw circuitOpen(name);
+            final long generation = this.connectionGeneration.get();
+            try {
+                T result = call.get();
+                this.circuitBreaker.recordSuccess();
+                return result;
+            } catch (NoNodeAvailableException | IllegalStateException | ClusterBlockException | SearchPhaseExecutionException e) {
+                last = e;
+                this.circuitBreaker.recordFailure();
+                Logger.info(this.getClass(), "ElasticsearchClient " + name + " failed with " + e.getMessage() + ", attempt " + (attempt + 1) + "/" + retryAttempts);
+                if (attempt + 1 >= retryAttempts) break;
+                try {
+                    Thread.sleep(CircuitBreaker.backoff(attempt, retryBaseDelay, retryMaxDelay));
+                } catch (InterruptedException ee) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (needsReconnect(e)) reconnect(generation);
+            } catch (RuntimeException e) {
+                // any other reply, i.e. a missing index or a mapping error, shows that the cluster is reachable
+                this.circuitBreaker.recordSuccess();
+                throw e;
+            }
+        }
+        throw last instanceof NoNodeAvailableException ? (NoNodeAvailableException) last : new NoNodeAvailableException("ElasticsearchClient " + name + " failed", last);
+    }
+
+    /**
+     * A request which is executed asynchronously with the given client and reports to the listener
+     */
+    @FunctionalInterface
+    private interface AsyncCall<R> {
+        public void execute(Client client, ActionListener<R> listener);
+    }
+
+    /**
+     * Run an asynchronous request with the same retry and circuit breaker rules as retry() but without
+     * blocking the calling thread. Retries are scheduled with a shared scheduler.
+     * @param name the name of the request, used for logging
+     * @param call the request
+     * @param transform a transformation of the elasticsearch response into the result
+     * @return a future for the result of the request
+     */
+    private <R, T> CompletableFuture<T> async(final String name, final AsyncCall<R> call, final Function<R, T> transform) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        asyncAttempt(name, call, transform, future, 0);
+        return future;
+    }
+
+    private <R, T> void asyncAttempt(final String name, final AsyncCall<R> call, final Function<R, T> transform, final CompletableFuture<T> future, final int attempt) {
+        if (!this.circuitBreaker.allowRequest()) {
+            future.completeExceptionally(circuitOpen(name));
+            return;
+        }
+        final long generation = this.connectionGeneration.get();
+        try {
+            call.execute(this.elasticsearchClient, new ActionListener<R>() {
+                @Override
+                public void onResponse(R response) {
+                    ElasticsearchClient.this.circuitBreaker.recordSuccess();
+                    try {
+                        future.complete(transform.apply(response));
+                    } catch (RuntimeException e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+                @Override
+                public void onFailure(Exception e) {
+                    asyncFailure(name, call, transform, future, attempt, generation, e);
+                }
+            });
+        } catch (RuntimeException e) {
+            asyncFailure(name, call, transform, future, attempt, generation, e);
+        }
+    }
+
+    private <R, T> void asyncFailure(final String name, final AsyncCall<R> call, final Function<R, T> transform, final CompletableFuture<T> future, final int attempt, final long generation, final Exception e) {
+        if (!isRetryable(e)) {
+            // the cluster is reachable, the request itself failed
+            this.circuitBreaker.recordSuccess();
+            future.completeExceptionally(e);
+            return;
+        }
+        this.circuitBreaker.recordFailure();
+        Logger.info(this.getClass(), "ElasticsearchClient " + name + " failed with " + e.getMessage() + ", attempt " + (attempt + 1) + "/" + retryAttempts);
+        if (attempt + 1 >= retryAttempts) {
+            future.completeExceptionally(e);
+            return;
+        }
+        retryScheduler.schedule(() -> {
+            if (needsReconnect(e)) reconnect(generation);
+            asyncAttempt(name, call, transform, future, attempt + 1);
+        }, CircuitBreaker.backoff(attempt, retryBaseDelay, retryMaxDelay), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * get the state of the circuit breaker which guards all requests to the elasticsearch cluster
+     * @return the circuit breaker state
+     */
+    public CircuitBreaker.State getCircuitBreakerState() {
+        return this.circuitBreaker.getState();
+    }
+
     @SuppressWarnings("unused")
     private ClusterStatsNodes getClusterStatsNodes() {
         ClusterStatsRequest clusterStatsRequest =
@@ -299,13 +480,7 @@ public class ElasticsearchClient {
      * @return the count of all documents in the index which matches with the query
      */
     public long count(final QueryBuilder q, final String indexName) {
-        while (true) try {
-            return countInternal(q, indexName);
-        } catch (NoNodeAvailableException | IllegalStateException | ClusterBlockException | SearchPhaseExecutionException e) {
-            Logger.info(this.getClass(), "ElasticsearchClient count failed with " + e.getMessage() + ", retrying to connect node...");
-            try {Thread.sleep(1000);} catch (InterruptedException ee) {}
-            connect();
-        }
+        return retry("count", () -> countInternal(q, indexName));
     }
 
     public long countInternal(final QueryBuilder q, final String indexName) {
@@ -320,13 +495,7 @@ public class ElasticsearchClient {
      * @return the document, if it exists or null otherwise;
      */
     public boolean exist(String indexName, final String id) {
-        while (true) try {
-            return existInternal(indexName, id);
-        } catch (NoNodeAvailableException | IllegalStateException | ClusterBlockException | SearchPhaseExecutionException e) {
-            Logger.info(this.getClass(), "ElasticsearchClient exist failed with " + e.getMessage() + ", retrying to connect node...");
-            try {Thread.sleep(1000);} catch (InterruptedException ee) {}
-            connect();
-        }
+        return retry("exist", () -> existInternal(indexName, id));
     }
 
     public boolean existInternal(String indexName, final String id) {
@@ -340,14 +509,7 @@ public class ElasticsearchClient {
     }
 
     public Set<String> existBulk(String indexName, final Collection<String> ids) {
-        while (true) try {
-            return existBulkInternal(indexName, ids);
-        } catch (NoNodeAvailableException | IllegalStateException | ClusterBlockException | SearchPhaseExecutionException e) {
-            Logger.info(this.getClass(), "ElasticsearchClient existBulk failed with " + e.getMessage() + ", retrying to connect node...");
-            try {Thread.sleep(1000);} catch (InterruptedException ee) {}
-            connect();
-            continue;
-        }
+        return retry("existBulk", () -> existBulkInternal(indexName, ids));
     }
 
     private Set<String> existBulkInternal(String indexName, final Collection<String> ids) {
@@ -365,6 +527,42 @@ public class ElasticsearchClient {
         return er;
     }
 
+    /**
+     * Iterate over the ids of all documents in an index. This is done with a scroll which does not fetch the document source.
+     * If the scroll fails, it is repeated from the start, so the consumer may see ids more than once.
+     * @param indexName the name of the index
+     * @param consumer the consumer of the ids
+     * @return the number of ids which had been passed to the consumer in the last, complete iteration
+     */
+    public long forEachId(final String indexName, final Consumer<String> consumer) {
+        return retry("forEachId", () -> forEachIdInternal(indexName, consumer));
+    }
+
+    private long forEachIdInternal(final String indexName, final Consumer<String> consumer) {
+        SearchResponse response = this.elasticsearchClient.prepareSearch(indexName)
+                .setScroll(scrollKeepAlive)
+                .setQuery(QueryBuilders.matchAllQuery())
+                .addSort("_doc", SortOrder.ASC) // the most efficient sort order for scrolls
+                .setFetchSource(false)
+                .setSize(1000)
+                .execute().actionGet();
+        long count = 0;
+        try {
+            while (true) {
+                SearchHit[] hits = response.getHits().getHits();
+                if (hits.length == 0) break;
+                for (SearchHit hit : hits) consumer.accept(hit.getId());
+                count += hits.length;
+                response = this.elasticsearchClient.prepareSearchScroll(response.getScrollId()).setScroll(scrollKeepAlive).execute().actionGet();
+            }
+        } finally {
+            try {
+                this.elasticsearchClient.prepareClearScroll().addScrollId(response.getScrollId()).execute().actionGet();
+            } catch (NoNodeAvailableException | IllegalStateException | ClusterBlockException | SearchPhaseExecutionException e) {}
+        }
+        return count;
+    }
+
     /**
      * Get the type name of a document or null if the document does not exist.
      * This is a replacement of the exist() method which does exactly the same as exist()
@@ -395,14 +593,7 @@ public class ElasticsearchClient {
      * @return true if the document existed and was deleted, false otherwise
      */
     public boolean delete(String indexName, String typeName, final String id) {
-        while (true) try {
-            return deleteInternal(indexName, typeName, id);
-        } catch (NoNodeAvailableException | IllegalStateException | ClusterBlockException | SearchPhaseExecutionException e) {
-            Logger.info(this.getClass(), "ElasticsearchClient delete failed with " + e.getMessage() + ", retrying to connect node...");
-            try {Thread.sleep(1000);} catch (InterruptedException ee) {}
-            connect();
-            continue;
-        }
+        return retry("delete", () -> deleteInternal(indexName, typeName, id));
     }
 
     private boolean deleteInternal(String indexName, String typeName, final String id) {
@@ -416,61 +607,249 @@ public class ElasticsearchClient {
      * in later versions. Instead, there is a plugin which iterates over search results,
      * see https://www.elastic.co/guide/en/elasticsearch/plugins/current/plugins-delete-by-query.html
      * We simulate the same behaviour here without the need of that plugin.
+     * The deletion is streamed: every scroll page is turned into one bulk delete request right away,
+     * so the size of the matching document set does not affect the memory footprint.
      *
      * @param q
      * @return delete document count
+     * @throws IOException if the deletion was not complete, i.e. because documents could not be deleted or the task was aborted
      */
-    public int deleteByQuery(String indexName, final QueryBuilder q) {
-        while (true) try {
-            return deleteByQueryInternal(indexName, q);
-        } catch (NoNodeAvailableException | IllegalStateException | ClusterBlockException | SearchPhaseExecutionException e) {
-            Logger.info(this.getClass(), "ElasticsearchClient deleteByQuery failed with " + e.getMessage() + ", retrying to connect node...");
-            try {Thread.sleep(1000);} catch (InterruptedException ee) {}
-            connect();
-            continue;
+    public long deleteByQuery(String indexName, final QueryBuilder q) throws IOException {
+        DeleteByQueryTask task = new DeleteByQueryTask(indexName, q);
+        task.run();
+        if (task.error != null || task.getFailed() > 0) {
+            throw new IOException("deleteByQuery in index " + indexName + " is incomplete: " + task.toJSON().toString());
         }
+        return task.getDeleted();
     }
 
-    private int deleteByQueryInternal(String indexName, final QueryBuilder q) {
-        Map<String, String> ids = new TreeMap<>();
-        SearchRequestBuilder request = this.elasticsearchClient.prepareSearch(indexName);
-        request
-            .setSearchType(SearchType.QUERY_THEN_FETCH)
-            .setScroll(scrollKeepAlive)
-            .setQuery(q)
-            .setSize(100);
-        SearchResponse response = request.execute().actionGet();
-        while (true) {
-            // accumulate the ids here, don't delete them right now to prevent an interference of the delete with the
-            // scroll
-            for (SearchHit hit : response.getHits().getHits()) {
-                ids.put(hit.getId(), hit.getType());
+    /**
+     * Start a deletion by query as background task. The returned task can be used to monitor the progress
+     * of the deletion; it can also be retrieved later with getDeleteTask() using the task id.
+     * @param indexName
+     * @param q
+     * @return the running delete task
+     */
+    public DeleteByQueryTask deleteByQueryAsync(String indexName, final QueryBuilder q) {
+        // remove finished tasks which had been kept long enough for polling
+        final long now = System.currentTimeMillis();
+        this.deleteTasks.values().removeIf(task -> task.isFinished() && now - task.finish > deleteTaskRetention);
+        final DeleteByQueryTask task = new DeleteByQueryTask(indexName, q);
+        this.deleteTasks.put(task.getId(), task);
+        Thread t = new Thread(task);
+        t.setName("deleteByQuery " + indexName + " " + task.getId());
+        t.setDaemon(true);
+        t.start();
+        return task;
+    }
+
+    /**
+     * get a delete task which had been started with deleteByQueryAsync
+     * @param taskId the id of the task
+     * @return the task or null if no such task exists
+     */
+    public DeleteByQueryTask getDeleteTask(String taskId) {
+        return this.deleteTasks.get(taskId);
+    }
+
+    /**
+     * A deletion by query which streams the scroll pages of the query into bounded bulk delete requests.
+     * At most deleteConcurrency bulk requests are in flight at the same time. Documents which could not be
+     * deleted are submitted again with the next bulk requests, up to deleteAttempts times; only then they count as failed.
+     * The task can be run synchronously or within its own thread, the progress can be monitored using the getter methods or toJSON().
+     */
+    public class DeleteByQueryTask implements Runnable {
+
+        private final String id, indexName;
+        private final QueryBuilder q;
+        private final AtomicLong scanned, deleted, failed, batches;
+        private final ConcurrentLinkedQueue<Deletion> retries; // deletions which failed and are submitted again
+        private final long start;
+        private volatile long finish;
+        private volatile String error;
+
+        private DeleteByQueryTask(final String indexName, final QueryBuilder q) {
+            this.id = Long.toHexString(deleteTaskCounter.incrementAndGet()) + Long.toHexString(System.currentTimeMillis());
+            this.indexName = indexName;
+            this.q = q;
+            this.scanned = new AtomicLong(0);
+            this.deleted = new AtomicLong(0);
+            this.failed = new AtomicLong(0);
+            this.batches = new AtomicLong(0);
+            this.retries = new ConcurrentLinkedQueue<>();
+            this.start = System.currentTimeMillis();
+            this.finish = 0;
+            this.error = null;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // it is safe to repeat the whole deletion because already deleted documents do not appear in the scroll any more
+                retry("deleteByQuery", () -> {
+                    deleteByQueryInternal();
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                this.error = e.getMessage();
+                Logger.warn(ElasticsearchClient.this.getClass(), "ElasticsearchClient deleteByQuery failed", e);
+            } finally {
+                this.finish = System.currentTimeMillis();
+                Logger.info(ElasticsearchClient.this.getClass(), "ElasticsearchClient deleteByQuery in index " + this.indexName + " finished: " + toJSON().toString());
+            }
+        }
+
+        private void deleteByQueryInternal() {
+            // a repeated run scans the documents again which failed in the previous run
+            this.failed.set(0);
+            this.retries.clear();
+            final Semaphore inflight = new Semaphore(deleteConcurrency);
+            SearchResponse response = ElasticsearchClient.this.elasticsearchClient.prepareSearch(this.indexName)
+                .setSearchType(SearchType.QUERY_THEN_FETCH)
+                .setScroll(scrollKeepAlive)
+                .setQuery(this.q)
+                .setFetchSource(false)
+                .setSize(deleteBatchSize)
+                .execute().actionGet();
+            try {
+                while (true) {
+                    SearchHit[] hits = response.getHits().getHits();
+                    // termination
+                    if (hits.length == 0) break;
+                    // the scroll context is a snapshot of the index, therefore deleting while scrolling does not interfere with the scroll
+                    List<Deletion> deletions = new ArrayList<>(hits.length);
+                    for (SearchHit hit : hits) deletions.add(new Deletion(hit.getId(), hit.getType(), 0));
+                    this.scanned.addAndGet(hits.length);
+                    submit(deletions, inflight);
+                    submitRetries(inflight);
+                    // scroll
+                    response = ElasticsearchClient.this.elasticsearchClient.prepareSearchScroll(response.getScrollId()).setScroll(scrollKeepAlive).execute().actionGet();
+                }
+                // wait until all bulk requests are processed and submit the failed deletions again until no attempts are left
+                for (int round = 0; ; round++) {
+                    inflight.acquireUninterruptibly(deleteConcurrency);
+                    inflight.release(deleteConcurrency);
+                    if (this.retries.isEmpty()) break;
+                    try {
+                        Thread.sleep(CircuitBreaker.backoff(round, retryBaseDelay, retryMaxDelay));
+                    } catch (InterruptedException e) {
+                        // the remaining deletions are not tried again
+                        Thread.currentThread().interrupt();
+                        while (this.retries.poll() != null) this.failed.incrementAndGet();
+                        break;
+                    }
+                    submitRetries(inflight);
+                }
+            } finally {
+                // wait until all bulk requests are processed
+                inflight.acquireUninterruptibly(deleteConcurrency);
+                inflight.release(deleteConcurrency);
+                try {
+                    ElasticsearchClient.this.elasticsearchClient.prepareClearScroll().addScrollId(response.getScrollId()).execute().actionGet();
+                } catch (NoNodeAvailableException | IllegalStateException | ClusterBlockException | SearchPhaseExecutionException e) {}
+            }
+        }
+
+        private void submitRetries(final Semaphore inflight) {
+            List<Deletion> deletions = new ArrayList<>();
+            Deletion d;
+            while ((d = this.retries.poll()) != null) {
+                deletions.add(d);
+                if (deletions.size() >= deleteBatchSize) {
+                    submit(deletions, inflight);
+                    deletions = new ArrayList<>();
+                }
+            }
+            if (!deletions.isEmpty()) submit(deletions, inflight);
+        }
+
+        private void submit(final List<Deletion> deletions, final Semaphore inflight) {
+            BulkRequestBuilder bulkRequest = ElasticsearchClient.this.elasticsearchClient.prepareBulk();
+            for (Deletion d: deletions) {
+                bulkRequest.add(new DeleteRequest().id(d.id).index(this.indexName).type(d.type));
+            }
+            inflight.acquireUninterruptibly();
+            bulkRequest.execute(new ActionListener<BulkResponse>() {
+                @Override
+                public void onResponse(BulkResponse bulkResponse) {
+                    try {
+                        for (BulkItemResponse r: bulkResponse.getItems()) {
+                            if (r.isFailed()) failed(deletions.get(r.getItemId()));
+                            else if (r.getResponse().getResult() == DocWriteResponse.Result.DELETED) DeleteByQueryTask.this.deleted.incrementAndGet();
+                        }
+                        long b = DeleteByQueryTask.this.batches.incrementAndGet();
+                        if (b % 100 == 0) Logger.info(ElasticsearchClient.this.getClass(), "ElasticsearchClient deleteByQuery in index " + DeleteByQueryTask.this.indexName + " progress: " + toJSON().toString());
+                    } finally {
+                        inflight.release();
+                    }
+                }
+                @Override
+                public void onFailure(Exception e) {
+                    try {
+                        for (Deletion d: deletions) failed(d);
+                        DeleteByQueryTask.this.batches.incrementAndGet();
+                    } finally {
+                        inflight.release();
+                    }
+                    Logger.warn(ElasticsearchClient.this.getClass(), "ElasticsearchClient deleteByQuery bulk delete failed", e);
+                }
+            });
+        }
+
+        private void failed(final Deletion d) {
+            if (d.attempt + 1 < deleteAttempts) {
+                this.retries.add(new Deletion(d.id, d.type, d.attempt + 1));
+            } else {
+                this.failed.incrementAndGet();
             }
-            // termination
-            if (response.getHits().getHits().length == 0) break;
-            // scroll
-            response = this.elasticsearchClient.prepareSearchScroll(response.getScrollId()).setScroll(scrollKeepAlive).execute().actionGet();
         }
-        return deleteBulk(indexName, ids);
+
+        public String getId() {
+            return this.id;
+        }
+
+        public long getScanned() {
+            return this.scanned.get();
+        }
+
+        public long getDeleted() {
+            return this.deleted.get();
+        }
+
+        public long getFailed() {
+            return this.failed.get();
+        }
+
+        public boolean isFinished() {
+            return this.finish > 0;
+        }
+
+        public JSONObject toJSON() {
+            JSONObject json = new JSONObject(true);
+            json.put("task", this.id);
+            json.put("index", this.indexName);
+            json.put("finished", isFinished());
+            json.put("scanned", this.scanned.get());
+            json.put("deleted", this.deleted.get());
+            json.put("failed", this.failed.get());
+            json.put("batches", this.batches.get());
+            json.put("time", (isFinished() ? this.finish : System.currentTimeMillis()) - this.start);
+            if (this.error != null) json.put("error", this.error);
+            return json;
+        }
     }
 
     /**
-     * Delete a list of documents for a given set of ids
-     * ATTENTION: read about the time-out of version number checking in the method above.
-     *
-     * @param ids
-     *            a map from the unique identifier of a document to the document type
-     * @return the number of deleted documents
+     * a document which shall be deleted by a DeleteByQueryTask
      */
-    private int deleteBulk(String indexName, Map<String, String> ids) {
-        // bulk-delete the ids
-        if (ids == null || ids.size() == 0) return 0;
-        BulkRequestBuilder bulkRequest = this.elasticsearchClient.prepareBulk();
-        for (Map.Entry<String, String> id : ids.entrySet()) {
-            bulkRequest.add(new DeleteRequest().id(id.getKey()).index(indexName).type(id.getValue()));
+    private static class Deletion {
+        private final String id, type;
+        private final int attempt;
+        private Deletion(final String id, final String type, final int attempt) {
+            this.id = id;
+            this.type = type;
+            this.attempt = attempt;
         }
-        bulkRequest.execute().actionGet();
-        return ids.size();
     }
 
     /**
@@ -499,14 +878,7 @@ public class ElasticsearchClient {
      * @return the document as json, matched on a Map<String, Object> object instance
      */
     public Map<String, Object> readMap(final String indexName, final String id) {
-        while (true) try {
-            return readMapInternal(indexName, id);
-        } catch (NoNodeAvailableException | IllegalStateException | ClusterBlockException | SearchPhaseExecutionException e) {
-            Logger.info(this.getClass(), "ElasticsearchClient readMap failed with " + e.getMessage() + ", retrying to connect node...");
-            try {Thread.sleep(1000);} catch (InterruptedException ee) {}
-            connect();
-            continue;
-        }
+        return retry("readMap", () -> readMapInternal(indexName, id));
     }
 
     private Map<String, Object> readMapInternal(final String indexName, final String id) {
@@ -516,14 +888,7 @@ public class ElasticsearchClient {
     }
 
     public Map<String, Map<String, Object>> readMapBulk(final String indexName, final Collection<String> ids) {
-        while (true) try {
-            return readMapBulkInternal(indexName, ids);
-        } catch (NoNodeAvailableException | IllegalStateException | ClusterBlockException | SearchPhaseExecutionException e) {
-            Logger.info(this.getClass(), "ElasticsearchClient readMapBulk failed with " + e.getMessage() + ", retrying to connect node...");
-            try {Thread.sleep(1000);} catch (InterruptedException ee) {}
-            connect();
-            continue;
-        }
+        return retry("readMapBulk", () -> readMapBulkInternal(indexName, ids));
     }
 
     private Map<String, Map<String, Object>> readMapBulkInternal(final String indexName, final Collection<String> ids) {
@@ -562,14 +927,7 @@ public class ElasticsearchClient {
      * @return true if the document with given id did not exist before, false if it existed and was overwritten
      */
     public boolean writeMap(String indexName, String typeName, String id, final Map<String, Object> jsonMap) {
-        while (true) try {
-            return writeMapInternal(indexName, typeName, id, jsonMap);
-        } catch (NoNodeAvailableException | IllegalStateException | ClusterBlockException | SearchPhaseExecutionException e) {
-            Logger.info(this.getClass(), "ElasticsearchClient writeMap failed with " + e.getMessage() + ", retrying to connect node...");
-            try {Thread.sleep(1000);} catch (InterruptedException ee) {}
-            connect();
-            continue;
-        }
+        return retry("writeMap", () -> writeMapInternal(indexName, typeName, id, jsonMap));
     }
 
     // internal method used for a re-try after NoNodeAvailableException | IllegalStateException
@@ -610,14 +968,7 @@ public class ElasticsearchClient {
      *            This must be a list, because keys may appear several times.
      */
     public BulkWriteResult writeMapBulk(final String indexName, final List<BulkEntry> jsonMapList) {
-        while (true) try {
-            return writeMapBulkInternal(indexName, jsonMapList);
-        } catch (NoNodeAvailableException | IllegalStateException | ClusterBlockException | SearchPhaseExecutionException e) {
-            Logger.info(this.getClass(), "ElasticsearchClient writeMapBulk failed with " + e.getMessage() + ", retrying to connect node...");
-            try {Thread.sleep(1000);} catch (InterruptedException ee) {}
-            connect();
-            continue;
-        }
+        return retry("writeMapBulk", () -> writeMapBulkInternal(indexName, jsonMapList));
     }
 
     private BulkWriteResult writeMapBulkInternal(final String indexName, final List<BulkEntry> jsonMapList) {
@@ -696,22 +1047,109 @@ public class ElasticsearchClient {
         }
     }
 
+    // Asynchronous API: these methods do not block the calling thread. They use the same
+    // retry and circuit breaker rules as the synchronous methods above. Requests which fail
+    // because the cluster is not reachable complete the future exceptionally.
+
+    public CompletableFuture<Long> countAsync(final QueryBuilder q, final String indexName) {
+        return this.<SearchResponse, Long>async("countAsync",
+                (client, listener) -> client.prepareSearch(indexName).setQuery(q).setSize(0).execute(listener),
+                response -> response.getHits().getTotalHits());
+    }
+
+    public CompletableFuture<Boolean> existAsync(final String indexName, final String id) {
+        return this.<GetResponse, Boolean>async("existAsync",
+                (client, listener) -> client.prepareGet(indexName, null, id).setFetchSource(false).execute(listener),
+                response -> response.isExists());
+    }
+
+    public CompletableFuture<Set<String>> existBulkAsync(final String indexName, final Collection<String> ids) {
+        if (ids == null || ids.size() == 0) return CompletableFuture.completedFuture(new HashSet<>());
+        return this.<MultiGetResponse, Set<String>>async("existBulkAsync",
+                (client, listener) -> client.prepareMultiGet().add(indexName, null, ids).execute(listener),
+                response -> {
+                    Set<String> er = new HashSet<>();
+                    for (MultiGetItemResponse itemResponse : response) {
+                        GetResponse gr = itemResponse.getResponse();
+                        if (gr != null && gr.isExists()) er.add(gr.getId());
+                    }
+                    return er;
+                });
+    }
+
+    public CompletableFuture<Map<String, Object>> readMapAsync(final String indexName, final String id) {
+        return this.<GetResponse, Map<String, Object>>async("readMapAsync",
+                (client, listener) -> client.prepareGet(indexName, null, id).execute(listener),
+                response -> getMap(response));
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(final String indexName, final String typeName, final String id) {
+        return this.<DeleteResponse, Boolean>async("deleteAsync",
+                (client, listener) -> client.prepareDelete(indexName, typeName, id).execute(listener),
+                response -> response.getResult() == DocWriteResponse.Result.DELETED);
+    }
+
+    public CompletableFuture<Boolean> writeMapAsync(final String indexName, final String typeName, final String id, final Map<String, Object> jsonMap) {
+        final Map<String, Object> doc = new LinkedHashMap<>(jsonMap);
+        doc.remove("_version");
+        return this.<UpdateResponse, Boolean>async("writeMapAsync",
+                (client, listener) -> client.prepareUpdate(indexName, typeName, id).setDoc(doc).setUpsert(doc).execute(listener),
+                response -> response != null && response.status() == RestStatus.CREATED);
+    }
+
+    public CompletableFuture<Query> queryAsync(final String indexName, final QueryBuilder queryBuilder, final QueryBuilder postFilter, final Sort sort, final HighlightBuilder hb, int from, int resultCount, int aggregationLimit, boolean explain, WebMapping... aggregationFields) {
+        return this.<SearchResponse, Query>async("queryAsync",
+                (client, listener) -> searchRequest(indexName, queryBuilder, postFilter, sort, hb, from, resultCount, aggregationLimit, explain, aggregationFields).execute(listener),
+                response -> new Query(response, explain, aggregationFields));
+    }
+
+    /**
+     * Searches using a elasticsearch query.
+     * @param indexName the name of the search index
+     * @param queryBuilder a query for the search
+     * @param postFilter a filter that does not affect aggregations
+     * @param timezoneOffset - an offset in minutes that is applied on dates given in the query of the form since:date until:date
+     * @param from - a filter that is applied on the document date and excludes all documents older than from
+     * @param resultCount - the number of messages in the result; can be zero if only aggregations are wanted
+     * @param aggregationLimit - the maximum count of facet entities, not search results
+     * @param aggregationFields - names of the aggregation fields. If no aggregation is wanted, pass no (zero) field(s)
+     * @throws NoNodeAvailableException if the elasticsearch cluster cannot be reached
+     */
     public Query query(final String indexName, final QueryBuilder queryBuilder, final QueryBuilder postFilter, final Sort sort, final HighlightBuilder hb, int timezoneOffset, int from, int resultCount, int aggregationLimit, boolean explain, WebMapping... aggregationFields) {
-        Exception ee = null;
-        while (true) {
-            for (int t = 0; t < 10; t++) try {
-                return new Query(indexName,  queryBuilder, postFilter, sort, hb, timezoneOffset, from, resultCount, aggregationLimit, explain, aggregationFields);
-            } catch (NoNodeAvailableException | IllegalStateException | ClusterBlockException | SearchPhaseExecutionException e) {
-                ee = e;
-                Logger.info(this.getClass(), "ElasticsearchClient query failed with " + e.getMessage() + ", retrying attempt " + t + " ...");
-                try {Thread.sleep(100);} catch (InterruptedException eee) {}
-                continue;
-            }
-            Logger.info(this.getClass(), "ElasticsearchClient query failed with " + ee.getMessage() + ", retrying to connect node...");
-            try {Thread.sleep(1000);} catch (InterruptedException eee) {}
-            connect();
-            continue;
+        return retry("query", () -> new Query(
+                searchRequest(indexName, queryBuilder, postFilter, sort, hb, from, resultCount, aggregationLimit, explain, aggregationFields).execute().actionGet(),
+                explain, aggregationFields));
+    }
+
+    /**
+     * Prepare a search request.
+     * @param indexName the name of the search index
+     * @param queryBuilder a query for the search
+     * @param postFilter a filter that does not affect aggregations
+     * @param from - a filter that is applied on the document date and excludes all documents older than from
+     * @param resultCount - the number of messages in the result; can be zero if only aggregations are wanted
+     * @param aggregationLimit - the maximum count of facet entities, not search results
+     * @param aggregationFields - names of the aggregation fields. If no aggregation is wanted, pass no (zero) field(s)
+     */
+    private SearchRequestBuilder searchRequest(final String indexName, final QueryBuilder queryBuilder, final QueryBuilder postFilter, final Sort sort, final HighlightBuilder hb, int from, int resultCount, int aggregationLimit, boolean explain, WebMapping... aggregationFields) {
+        SearchRequestBuilder request = this.elasticsearchClient.prepareSearch(indexName);
+        request
+                .setExplain(explain)
+                .setSearchType(SearchType.QUERY_THEN_FETCH)
+                .setQuery(queryBuilder)
+                .setSearchType(SearchType.DFS_QUERY_THEN_FETCH) // DFS_QUERY_THEN_FETCH is slower but provides stability of search results
+                .setFrom(from)
+                .setSize(resultCount);
+        if (hb != null) request.highlighter(hb);
+        //HighlightBuilder hb = new HighlightBuilder().field("message").preTags("<foo>").postTags("<bar>");
+        if (postFilter != null) request.setPostFilter(postFilter);
+        request.clearRescorers();
+        for (WebMapping field: aggregationFields) {
+            request.addAggregation(AggregationBuilders.terms(field.getMapping().name()).field(field.getMapping().name()).minDocCount(1).size(aggregationLimit));
         }
+        // apply sort
+        request = sort.sort(request);
+        return request;
     }
 
     public class Query {
@@ -722,37 +1160,12 @@ public class ElasticsearchClient {
         public Map<String, List<Map.Entry<String, Long>>> aggregations;
 
         /**
-         * Searches using a elasticsearch query.
-         * @param indexName the name of the search index
-         * @param queryBuilder a query for the search
-         * @param postFilter a filter that does not affect aggregations
-         * @param timezoneOffset - an offset in minutes that is applied on dates given in the query of the form since:date until:date
-         * @param from - a filter that is applied on the document date and excludes all documents older than from
-         * @param resultCount - the number of messages in the result; can be zero if only aggregations are wanted
-         * @param aggregationLimit - the maximum count of facet entities, not search results
-         * @param aggregationFields - names of the aggregation fields. If no aggregation is wanted, pass no (zero) field(s)
+         * Evaluate the response of a search request, see searchRequest()
+         * @param response the response of the search request
+         * @param explain if true, the explanations of the hits are collected
+         * @param aggregationFields - names of the aggregation fields which had been requested
          */
-        private Query(final String indexName, final QueryBuilder queryBuilder, final QueryBuilder postFilter, final Sort sort, final HighlightBuilder hb, int timezoneOffset, int from, int resultCount, int aggregationLimit, boolean explain, WebMapping... aggregationFields) {
-            // prepare request
-            SearchRequestBuilder request = ElasticsearchClient.this.elasticsearchClient.prepareSearch(indexName);
-            request
-                    .setExplain(explain)
-                    .setSearchType(SearchType.QUERY_THEN_FETCH)
-                    .setQuery(queryBuilder)
-                    .setSearchType(SearchType.DFS_QUERY_THEN_FETCH) // DFS_QUERY_THEN_FETCH is slower but provides stability of search results
-                    .setFrom(from)
-                    .setSize(resultCount);
-            if (hb != null) request.highlighter(hb);
-            //HighlightBuilder hb = new HighlightBuilder().field("message").preTags("<foo>").postTags("<bar>");
-            if (postFilter != null) request.setPostFilter(postFilter);
-            request.clearRescorers();
-            for (WebMapping field: aggregationFields) {
-                request.addAggregation(AggregationBuilders.terms(field.getMapping().name()).field(field.getMapping().name()).minDocCount(1).size(aggregationLimit));
-            }
-            // apply sort
-            request = sort.sort(request);
-            // get response
-            SearchResponse response = request.execute().actionGet();
+        private Query(final SearchResponse response, boolean explain, WebMapping... aggregationFields) {
             SearchHits searchHits = response.getHits();
             this.hitCount = (int) searchHits.getTotalHits();
 
@@ -0,0 +1,315 @@
+/**
+ *  ExistenceFilter
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.io.index;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.yacy.grid.tools.Logger;
+
+/**
+ * A scalable bloom filter for document ids, stored in memory-mapped files.
+ * The filter answers the question if a document id might exist in an index: a negative
+ * answer is always correct as long as all ids which are written to the index are also
+ * added to the filter, a positive answer must be confirmed with the index.
+ *
+ * The filter consists of a chain of stages. Each stage is a classic bloom filter in its own file.
+ * If a stage reaches its capacity, a new stage with double capacity and half of the false positive
+ * probability is appended, so the total false positive probability stays below the given limit.
+ */
+public class ExistenceFilter implements Closeable {
+
+    private final static int MAGIC = 0x59424631; // "YBF1"
+    private final static int HEADER_SIZE = 64;
+    private final static int POS_MAGIC = 0, POS_HASHCOUNT = 4, POS_CAPACITY = 8, POS_BITCOUNT = 16, POS_COUNT = 24, POS_CLEAN = 32;
+    private final static long MAX_BITS = (Integer.MAX_VALUE - HEADER_SIZE) * 8L;
+
+    private final File dir;
+    private final String name;
+    private final long initialCapacity;
+    private final double fpp;
+    private final List<Stage> stages;
+    private volatile boolean ready;
+
+    /**
+     * open or create an existence filter
+     * @param dir the directory where the filter files are stored
+     * @param name the name of the filter, i.e. the index name
+     * @param initialCapacity the number of entries in the first stage
+     * @param fpp the maximum false positive probability of the whole filter
+     * @throws IOException
+     */
+    public ExistenceFilter(final File dir, final String name, final long initialCapacity, final double fpp) throws IOException {
+        this.dir = dir;
+        this.name = name;
+        this.initialCapacity = initialCapacity;
+        this.fpp = fpp;
+        this.stages = new CopyOnWriteArrayList<>();
+        if (!dir.exists()) dir.mkdirs();
+
+        // open existing stages; the filter is only trusted if all stages had been closed properly
+        boolean clean = true;
+        for (int i = 0; ; i++) {
+            final File f = stageFile(i);
+            if (!f.exists()) break;
+            try {
+                final Stage stage = new Stage(f);
+                clean = clean && stage.isClean();
+                this.stages.add(stage);
+            } catch (final IOException e) {
+                Logger.warn(this.getClass(), "ExistenceFilter " + name + ": cannot open stage " + f, e);
+                clean = false;
+                break;
+            }
+        }
+        if (!clean || this.stages.isEmpty()) {
+            // start again from scratch
+            for (final Stage stage: this.stages) stage.close();
+            this.stages.clear();
+            for (int i = 0; ; i++) {
+                final File f = stageFile(i);
+                if (!f.exists()) break;
+                f.delete();
+            }
+            this.stages.add(new Stage(stageFile(0), initialCapacity, stageFpp(0)));
+        }
+        // even a clean filter misses the ids which were written to the index after it was closed:
+        // it becomes ready only after the owner refreshed it with all ids of the index
+        this.ready = false;
+        // mark all stages as in-use; a crash then leaves unclean stages which are not trusted on next start
+        for (final Stage stage: this.stages) stage.setClean(false);
+    }
+
+    private File stageFile(final int i) {
+        return new File(this.dir, this.name + "." + i + ".bloom");
+    }
+
+    private double stageFpp(final int i) {
+        return this.fpp * Math.pow(0.5d, i + 1);
+    }
+
+    /**
+     * A filter is ready if it has seen all ids of the index, i.e. after the warm-up.
+     * A new or re-opened filter is not ready; it must be set ready after it was refreshed with the ids of the index.
+     * @return true if negative answers of the filter can be trusted
+     */
+    public boolean isReady() {
+        return this.ready;
+    }
+
+    public void setReady(final boolean ready) {
+        this.ready = ready;
+    }
+
+    /**
+     * check if an id might be contained in the filter
+     * @param id the document id
+     * @return false if the id is certainly not contained, true if it might be contained
+     */
+    public boolean mightContain(final String id) {
+        final long h1 = hash(id, 0xcbf29ce484222325L);
+        final long h2 = hash(id, 0x84222325cbf29ce4L) | 1L;
+        for (final Stage stage: this.stages) {
+            if (stage.mightContain(h1, h2)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * filter a collection of ids
+     * @param ids the document ids
+     * @return the ids which might be contained in the filter
+     */
+    public Set<String> mightContain(final Collection<String> ids) {
+        final Set<String> candidates = new HashSet<>();
+        for (final String id: ids) if (mightContain(id)) candidates.add(id);
+        return candidates;
+    }
+
+    /**
+     * add an id to the filter
+     * @param id the document id
+     */
+    public void add(final String id) {
+        final long h1 = hash(id, 0xcbf29ce484222325L);
+        final long h2 = hash(id, 0x84222325cbf29ce4L) | 1L;
+        for (final Stage stage: this.stages) {
+            if (stage.mightContain(h1, h2)) return; // prevent that the stages fill up with double entries
+        }
+        synchronized (this.stages) {
+            Stage last = this.stages.get(this.stages.size() - 1);
+            if (last.count() >= last.capacity) {
+                final int i = this.stages.size();
+                try {
+                    last = new Stage(stageFile(i), this.initialCapacity << Math.min(i, 30), stageFpp(i));
+                    last.setClean(false);
+                    this.stages.add(last);
+                    Logger.info(this.getClass(), "ExistenceFilter " + this.name + ": added stage " + i + " with capacity " + last.capacity);
+                } catch (final IOException e) {
+                    // we continue to use the full stage; this only increases the false positive rate
+                    Logger.warn(this.getClass(), "ExistenceFilter " + this.name + ": cannot create stage " + i, e);
+                }
+            }
+            last.put(h1, h2);
+        }
+    }
+
+    public void add(final Collection<String> ids) {
+        for (final String id: ids) add(id);
+    }
+
+    /**
+     * get the number of entries in the filter
+     * @return the number of added ids without double counts
+     */
+    public long size() {
+        long count = 0;
+        for (final Stage stage: this.stages) count += stage.count();
+        return count;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this.stages) {
+            for (final Stage stage: this.stages) {
+                stage.setClean(this.ready);
+                stage.close();
+            }
+        }
+    }
+
+    /**
+     * a 64 bit FNV-1a hash with a murmur3 finalizer
+     */
+    private static long hash(final String s, final long seed) {
+        long h = seed;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static class Stage {
+
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buffer;
+        private final long capacity, bitCount;
+        private final int hashCount;
+        private long count;
+
+        /**
+         * create a new stage
+         */
+        private Stage(final File f, final long capacity, final double fpp) throws IOException {
+            final double ln2 = Math.log(2.0d);
+            this.capacity = capacity;
+            this.bitCount = Math.max(64L, Math.min(MAX_BITS, (long) Math.ceil(-capacity * Math.log(fpp) / (ln2 * ln2))));
+            this.hashCount = Math.max(1, (int) Math.round(((double) this.bitCount) / capacity * ln2));
+            this.count = 0;
+            this.raf = new RandomAccessFile(f, "rw");
+            final long size = HEADER_SIZE + (this.bitCount + 7) / 8;
+            this.raf.setLength(size);
+            this.buffer = this.raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            this.buffer.putInt(POS_MAGIC, MAGIC);
+            this.buffer.putInt(POS_HASHCOUNT, this.hashCount);
+            this.buffer.putLong(POS_CAPACITY, this.capacity);
+            this.buffer.putLong(POS_BITCOUNT, this.bitCount);
+            this.buffer.putLong(POS_COUNT, this.count);
+        }
+
+        /**
+         * open an existing stage
+         */
+        private Stage(final File f) throws IOException {
+            this.raf = new RandomAccessFile(f, "rw");
+            final long size = this.raf.length();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                this.raf.close();
+                throw new IOException("bad file size " + size);
+            }
+            this.buffer = this.raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (this.buffer.getInt(POS_MAGIC) != MAGIC) {
+                this.raf.close();
+                throw new IOException("bad magic");
+            }
+            this.hashCount = this.buffer.getInt(POS_HASHCOUNT);
+            this.capacity = this.buffer.getLong(POS_CAPACITY);
+            this.bitCount = this.buffer.getLong(POS_BITCOUNT);
+            this.count = this.buffer.getLong(POS_COUNT);
+            if (HEADER_SIZE + (this.bitCount + 7) / 8 != size) {
+                this.raf.close();
+                throw new IOException("bad bit count " + this.bitCount);
+            }
+        }
+
+        private boolean mightContain(final long h1, final long h2) {
+            for (int i = 0; i < this.hashCount; i++) {
+                final long bit = Math.floorMod(h1 + i * h2, this.bitCount);
+                if ((this.buffer.get(HEADER_SIZE + (int) (bit >>> 3)) & (1 << (bit & 7))) == 0) return false;
+            }
+            return true;
+        }
+
+        private synchronized void put(final long h1, final long h2) {
+            for (int i = 0; i < this.hashCount; i++) {
+                final long bit = Math.floorMod(h1 + i * h2, this.bitCount);
+                final int p = HEADER_SIZE + (int) (bit >>> 3);
+                this.buffer.put(p, (byte) (this.buffer.get(p) | (1 << (bit & 7))));
+            }
+            this.count++;
+            this.buffer.putLong(POS_COUNT, this.count);
+        }
+
+        private synchronized long count() {
+            return this.count;
+        }
+
+        private boolean isClean() {
+            return this.buffer.getInt(POS_CLEAN) == 1;
+        }
+
+        private void setClean(final boolean clean) {
+            this.buffer.putInt(POS_CLEAN, clean ? 1 : 0);
+            this.buffer.force();
+        }
+
+        private void close() {
+            this.buffer.force();
+            try {
+                this.raf.close();
+            } catch (final IOException e) {}
+        }
+    }
+}
@@ -19,6 +19,7 @@
 
 package net.yacy.grid.io.index;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
@@ -59,8 +60,10 @@ public class GridIndex implements Index {
     private String mcp_host;
     private int mcp_port;
     private boolean shallRun;
+    private File existenceFilterPath;
 
     public GridIndex() {
+        this.existenceFilterPath = null;
         this.elastic_address = null;
         this.elasticIndexFactory = null;
         this.mcpIndexFactory = null;
@@ -69,6 +72,16 @@ public class GridIndex implements Index {
         this.shallRun = true;
     }
 
+    /**
+     * Activate existence filters for exist and existBulk requests on the elasticsearch connection.
+     * This must be called before connectElasticsearch() and should only be done if all index writes
+     * are done through this GridIndex, otherwise documents written by other clients may be missed.
+     * @param existenceFilterPath the path where the filter files are stored
+     */
+    public void setExistenceFilterPath(final File existenceFilterPath) {
+        this.existenceFilterPath = existenceFilterPath;
+    }
+
     public boolean isConnected() {
         return this.elastic_address != null && this.elasticIndexFactory != null;
     }
@@ -97,7 +110,7 @@ public class GridIndex implements Index {
         }
         loop: while (this.shallRun) {
             try {
-                this.elasticIndexFactory = new ElasticIndexFactory(address, cluster);
+                this.elasticIndexFactory = new ElasticIndexFactory(address, cluster, this.existenceFilterPath);
                 Logger.info(this.getClass(), "Index/Client: connected to elasticsearch at " + address);
                 this.elastic_address = address;
                 return true;
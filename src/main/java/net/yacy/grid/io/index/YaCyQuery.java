@@ -47,9 +47,11 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 
 import net.yacy.grid.io.index.BoostsFactory.Boosts;
+import net.yacy.grid.tools.ARC;
 import net.yacy.grid.tools.Classification;
 import net.yacy.grid.tools.DateParser;
 import net.yacy.grid.tools.Logger;
+import net.yacy.grid.tools.TinyLFUARC;
 
 public class YaCyQuery {
 
@@ -77,6 +79,10 @@ public class YaCyQuery {
     private final static Pattern term4ORPattern = Pattern.compile("(?:^| )(\\S*(?: OR \\S*)+)(?: |$)"); // Pattern.compile("(^\\s*(?: OR ^\\s*+)+)");
     private final static Pattern tokenizerPattern = Pattern.compile("([^\"]\\S*|\".+?\")\\s*"); // tokenizes Strings into terms respecting quoted parts
 
+    // cache for parsed queries; the key is the query string together with all parse options
+    private final static int QUERY_CACHE_SIZE = 1000;
+    private final static ARC<String, YaCyQuery> queryCache = new TinyLFUARC<>(QUERY_CACHE_SIZE);
+
     public QueryBuilder queryBuilder;
     public Date since;
     public Date until;
@@ -84,6 +90,45 @@ public class YaCyQuery {
     public Boosts boosts;
     public HashSet<String> yacyModifiers;
     public HashSet<String> positiveBag, negativeBag;
+    private boolean timeDependent; // true if the query contains relative dates like since:day which must not be cached
+
+    /**
+     * get a parsed query from the query cache or parse the query and put it into the cache.
+     * Queries are shared between all callers, therefore the returned object and its query builder
+     * must not be modified. Queries which contain relative dates (i.e. since:hour) are not cached.
+     * A cache hit returns the complete query builder, so repeated queries are neither parsed nor built again.
+     * Elasticsearch search templates with bound parameters are not used: the structure of the query depends on
+     * the tokens of the query string (OR groups, quoted phrases, negations, modifiers), so the string must be
+     * parsed for each new query anyway and a template would be needed for every query shape.
+     * @param q the query string
+     * @param collections the collections constraint or null
+     * @param contentdom the content domain
+     * @param timezoneOffset the timezone offset of the client in minutes
+     * @return the parsed query
+     */
+    public static YaCyQuery getQuery(String q, final String[] collections, final Classification.ContentDomain contentdom, final int timezoneOffset) {
+        q = q.trim();
+        final StringBuilder key = new StringBuilder(q.length() + 32).append(q).append('\n');
+        if (collections != null) for (final String c: collections) key.append(c).append(',');
+        key.append('\n').append(contentdom == null ? "" : contentdom.name()).append('\n').append(timezoneOffset);
+        final String k = key.toString();
+        YaCyQuery yq = queryCache.get(k);
+        if (yq != null) return yq;
+        yq = new YaCyQuery(q, collections, contentdom, timezoneOffset);
+        if (!yq.timeDependent) queryCache.insert(k, yq);
+        return yq;
+    }
+
+    /**
+     * remove all entries from the query cache; this must be called if the default boosts are changed
+     */
+    public static void clearCache() {
+        queryCache.clear();
+    }
+
+    private static boolean isRelativeDate(final String date) {
+        return "now".equals(date) || "hour".equals(date) || "day".equals(date) || "week".equals(date);
+    }
 
     public YaCyQuery(final String q, final String[] collections, final Classification.ContentDomain contentdom, final int timezoneOffset) {
         // default values for since and util
@@ -331,16 +376,20 @@ public class YaCyQuery {
             final Collection<String> c = modifier.get("collection");
             this.collections = c.toArray(new String[c.size()]);
         }
+        for (final String m: new String[] {"since", "until"}) {
+            if (modifier.containsKey(m) && isRelativeDate(modifier.get(m).iterator().next())) this.timeDependent = true;
+        }
         if (modifier.containsKey("daterange")) {
             final String dr = modifier.get("daterange").iterator().next();
             if (dr.length() > 0) {
                 final String from_to[] = dr.endsWith("..") ? new String[]{dr.substring(0, dr.length() - 2), ""} : dr.startsWith("..") ? new String[]{"", dr.substring(2)} : dr.split("\\.\\.");
                 if (from_to.length == 2)  {
+                    if (isRelativeDate(from_to[0]) || isRelativeDate(from_to[1])) this.timeDependent = true;
                     if (from_to[0] != null && from_to[0].length() > 0) try {
-                        modifier.put("since", DateParser.dayDateFormat.format(DateParser.parse(from_to[0], timezoneOffset).getTime()));
+                        modifier.put("since", DateParser.formatGSAFS(DateParser.parse(from_to[0], timezoneOffset).getTime()));
                     } catch (final ParseException e) {}
                     if (from_to[1] != null && from_to[1].length() > 0) try {
-                        modifier.put("until", DateParser.dayDateFormat.format(DateParser.parse(from_to[1], timezoneOffset).getTime()));
+                        modifier.put("until", DateParser.formatGSAFS(DateParser.parse(from_to[1], timezoneOffset).getTime()));
                     } catch (final ParseException e) {}
                 }
             }
@@ -396,13 +445,13 @@ public class YaCyQuery {
                 .multiMatchQuery(q)
                 .operator(or ? Operator.OR : Operator.AND)
                 .zeroTermsQuery(ZeroTermsQuery.ALL);
-        boosts.forEach((mapping, boost) -> qb.field(mapping.getMapping().name(), boost));
+        qb.fields(boosts.getFieldBoosts());
         return qb;
     }
 
     public static QueryBuilder exactMatchQueryBuilder(final String q, final Boosts boosts) {
         final BoolQueryBuilder qb = QueryBuilders.boolQuery();
-        boosts.forEach((mapping, boost) -> qb.should(QueryBuilders.termQuery(mapping.getMapping().name(), q)));
+        for (final String field: boosts.getFieldBoosts().keySet()) qb.should(QueryBuilders.termQuery(field, q));
         qb.minimumShouldMatch(1);
         return qb;
     }
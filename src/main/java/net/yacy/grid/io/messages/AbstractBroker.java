@@ -188,7 +188,7 @@ public abstract class AbstractBroker implements Broker {
     }
 
     private int hash(final Services service, final GridQueue[] queues, final String hashingKey) throws IOException {
-        return hashingKey.hashCode() % queues.length;
+        return Math.floorMod(hashingKey.hashCode(), queues.length); // keeps the queue of every key whose hash code is not negative
     }
 
     private int lookup(final Services service, final GridQueue[] queues, final String hashingKey) throws IOException {
@@ -22,8 +22,9 @@ package net.yacy.grid.io.messages;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.regex.Pattern;
+import java.util.Arrays;
 
+import ai.susi.mind.SusiAttachment;
 import net.yacy.grid.Services;
 import net.yacy.grid.YaCyServices;
 import net.yacy.grid.mcp.Configuration;
@@ -135,18 +136,33 @@ public class GridBroker extends PeerBroker implements Broker {
         }
     }
 
-    private final static Pattern SPACE2 = Pattern.compile("  ");
+    private final static int PP_LENGTH = 1000; // the maximum number of message bytes which are logged
 
     private final static String messagePP(final byte[] message) {
         if (message == null) return "NULL";
-        String m = new String(message, 0, Math.min(1000, message.length), StandardCharsets.UTF_8);
-        m = m.replace('\n', ' ');
-        while (true) {
-            final int l = m.length();
-            m = SPACE2.matcher(m).replaceAll(" ");
-            if (m.length() == l) break;
-        }
-        return m;
+        final int offset = SusiAttachment.isContainer(message) ? 8 : 0; // log the envelope of containers
+        final String m = new String(message, offset, Math.min(PP_LENGTH, message.length - offset), StandardCharsets.UTF_8);
+        // replace line breaks with spaces and collapse runs of spaces
+        final StringBuilder sb = new StringBuilder(m.length());
+        for (int i = 0; i < m.length(); i++) {
+            final char c = m.charAt(i) == '\n' ? ' ' : m.charAt(i);
+            if (c == ' ' && sb.length() > 0 && sb.charAt(sb.length() - 1) == ' ') continue;
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    // the pretty-printed message is computed only if the log line is written; the log event only keeps
+    // a copy of the logged prefix of the message, so events in the log queue do not hold whole messages
+    private final static Object lazyPP(final byte[] message) {
+        if (message == null) return "NULL";
+        final byte[] prefix = Arrays.copyOf(message, Math.min(message.length, PP_LENGTH + 8));
+        return new Object() {
+            @Override
+            public String toString() {
+                return messagePP(prefix);
+            }
+        };
     }
 
     @Override
@@ -159,7 +175,7 @@ public class GridBroker extends PeerBroker implements Broker {
             this.rabbitMQ_host = null;
         } else try {
             this.rabbitQueueFactory.getQueue(serviceQueueName(serviceName, queueName)).send(message);
-            Logger.info(this.getClass(), "Broker/Client: send rabbitMQ service '" + serviceName + "', queue '" + queueName + "', message:" + messagePP(message));
+            Logger.info(this.getClass(), "Broker/Client: send rabbitMQ service '{}', queue '{}', message:{}", serviceName, queueName, lazyPP(message));
             return this.rabbitQueueFactory;
         } catch (final IOException e) {
             String m = e.getMessage();
@@ -183,7 +199,7 @@ public class GridBroker extends PeerBroker implements Broker {
         }
         if (this.mcpQueueFactory != null) try {
             this.mcpQueueFactory.getQueue(serviceQueueName(serviceName, queueName)).send(message);
-            Logger.info(this.getClass(), "Broker/Client: send mcp service '" + serviceName + "', queue '" + queueName + "', message:" + messagePP(message));
+            Logger.info(this.getClass(), "Broker/Client: send mcp service '{}', queue '{}', message:{}", serviceName, queueName, lazyPP(message));
             return this.mcpQueueFactory;
         } catch (final IOException e) {
             Logger.debug(this.getClass(), "Broker/Client: send mcp service '" + serviceName + "', queue '" + queueName + "',mcp fail", e);
@@ -203,7 +219,7 @@ public class GridBroker extends PeerBroker implements Broker {
         } else try {
             final Queue rabbitQueue = this.rabbitQueueFactory.getQueue(serviceQueueName(serviceName, queueName));
             final MessageContainer mc = rabbitQueue.receive(timeout, autoAck);
-            if (mc != null && mc.getPayload() != null && mc.getPayload().length > 0) Logger.info(this.getClass(), "Broker/Client: received rabbitMQ service '" + serviceName + "', queue '" + queueName + "', message:" + messagePP(mc.getPayload()));
+            if (mc != null && mc.getPayload() != null && mc.getPayload().length > 0) Logger.info(this.getClass(), "Broker/Client: received rabbitMQ service '{}', queue '{}', message:{}", serviceName, queueName, lazyPP(mc.getPayload()));
             return mc;
         } catch (final IOException e) {
             Logger.debug(this.getClass(), "Broker/Client: receive rabbitMQ service '" + serviceName + "', queue '" + queueName + "',rabbitmq fail", e);
@@ -218,14 +234,14 @@ public class GridBroker extends PeerBroker implements Broker {
         if (this.mcpQueueFactory != null) try {
             final Queue mcpQueue = this.mcpQueueFactory.getQueue(serviceQueueName(serviceName, queueName));
             final MessageContainer mc = mcpQueue.receive(timeout, autoAck);
-            if (mc != null && mc.getPayload() != null && mc.getPayload().length > 0) Logger.info(this.getClass(), "Broker/Client: receive mcp service '" + serviceName + "', queue '" + queueName + "', message:" + messagePP(mc.getPayload()));
+            if (mc != null && mc.getPayload() != null && mc.getPayload().length > 0) Logger.info(this.getClass(), "Broker/Client: receive mcp service '{}', queue '{}', message:{}", serviceName, queueName, lazyPP(mc.getPayload()));
             return mc;
         } catch (final IOException e) {
             Logger.debug(this.getClass(), "Broker/Client: receive mcp service '" + serviceName + "', queue '" + queueName + "',mcp fail", e);
         }
         //Logger.info(this.getClass(), "Broker/Client: receive() on peer broker/local db");
         final MessageContainer mc = super.receive(serviceName, queueName, timeout, autoAck);
-        if (mc != null && mc.getPayload() != null && mc.getPayload().length > 0) Logger.info(this.getClass(), "Broker/Client: received peer broker/local db service '" + serviceName + "', queue '" + queueName + "', message:" + messagePP(mc.getPayload()));
+        if (mc != null && mc.getPayload() != null && mc.getPayload().length > 0) Logger.info(this.getClass(), "Broker/Client: received peer broker/local db service '{}', queue '{}', message:{}", serviceName, queueName, lazyPP(mc.getPayload()));
         return mc;
     }
 
@@ -21,9 +21,13 @@ package net.yacy.grid.io.messages;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
+import ai.susi.mind.SusiAttachment;
 import net.yacy.grid.YaCyServices;
 import net.yacy.grid.http.APIHandler;
 import net.yacy.grid.http.ObjectAPIHandler;
@@ -90,8 +94,11 @@ public class MCPQueueFactory implements QueueFactory {
 
             @Override
             public Queue send(final byte[] message) throws IOException {
-                params.put("message", new String(message, StandardCharsets.UTF_8));
-                final JSONObject response = getResponse(Service.instance.config.getAPI(SendService.NAME));
+                // the message is sent as binary part of the post request; this keeps attachment containers intact
+                final Map<String, byte[]> post = ObjectAPIHandler.json2map(params);
+                post.put("message", message);
+                final String protocolhostportstub = MCPQueueFactory.this.getConnectionURL();
+                final JSONObject response = Service.instance.config.getAPI(SendService.NAME).serviceImpl(protocolhostportstub, post).getObject();
 
                 // read the broker to store the service definition of the remote queue, if exists
                 if (success(response)) {
@@ -106,7 +113,20 @@ public class MCPQueueFactory implements QueueFactory {
             public MessageContainer receive(final long timeout, final boolean autoAck) throws IOException {
                 params.put("timeout", Long.toString(timeout));
                 params.put("autoAck", Boolean.toString(autoAck));
-                final JSONObject response = getResponse(Service.instance.config.getAPI(ReceiveService.NAME));
+                params.put("attachments", "true");
+                final String protocolhostportstub = MCPQueueFactory.this.getConnectionURL();
+                final ServiceResponse sr = Service.instance.config.getAPI(ReceiveService.NAME).serviceImpl(protocolhostportstub, params);
+                if (sr.isByteArray()) {
+                    // the message has attachments: the response json is the envelope of a container
+                    final Map<String, byte[]> attachments = new LinkedHashMap<>();
+                    final byte[] envelope = SusiAttachment.unpack(sr.getByteArray(), attachments);
+                    final JSONObject response = new JSONObject(new JSONTokener(new String(envelope, StandardCharsets.UTF_8)));
+                    if (!success(response)) throw handleError(response);
+                    connectMCP(response);
+                    final byte[] message = SusiAttachment.pack(response.getString(ObjectAPIHandler.MESSAGE_KEY).getBytes(StandardCharsets.UTF_8), attachments);
+                    return new MessageContainer(MCPQueueFactory.this, message, response.optLong(ObjectAPIHandler.DELIVERY_TAG));
+                }
+                final JSONObject response = sr.getObject();
 
                 // read the broker to store the service definition of the remote queue, if exists
                 if (success(response)) {
@@ -26,10 +26,14 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.json.JSONObject;
 import org.json.JSONTokener;
 
+import ai.susi.mind.SusiAttachment;
 import eu.searchlab.storage.io.AWSS3IO;
 import eu.searchlab.storage.io.FileIO;
 import eu.searchlab.storage.io.GenericIO;
@@ -39,6 +43,8 @@ import eu.searchlab.storage.json.PersistentCord;
 
 public class S3QueueFactory extends PersistentCord implements QueueFactory {
 
+    private final static AtomicLong attachmentCounter = new AtomicLong(0);
+
     private URL url;
     private final String endpointURL;
     private final IOPath iop;
@@ -85,18 +91,44 @@ public class S3QueueFactory extends PersistentCord implements QueueFactory {
         return this.endpointURL;
     }
 
-    private static JSONObject message2json(final byte[] message) {
+    private JSONObject message2json(final byte[] message) throws IOException {
         if (message == null) return new JSONObject();
         if (message[0] == '{') {
             // consider that this is already json
             return new JSONObject(new JSONTokener(new String(message, StandardCharsets.UTF_8)));
         }
+        if (SusiAttachment.isContainer(message)) {
+            // write the attachments as separate objects, the queue entry only gets the envelope and the attachment paths
+            final Map<String, byte[]> attachments = new LinkedHashMap<>();
+            final byte[] envelope = SusiAttachment.unpack(message, attachments);
+            final JSONObject paths = new JSONObject(true);
+            final String prefix = this.iop.getPath() + ".attachments/" + System.currentTimeMillis() + "-" + attachmentCounter.incrementAndGet() + "-";
+            for (final Map.Entry<String, byte[]> entry: attachments.entrySet()) {
+                final IOPath aiop = new IOPath(this.iop.getBucket(), prefix + entry.getKey() + ".bin");
+                this.io.write(aiop, entry.getValue());
+                paths.put(entry.getKey(), aiop.getPath());
+            }
+            final JSONObject json = new JSONObject(true);
+            json.put("envelope", new JSONObject(new JSONTokener(new String(envelope, StandardCharsets.UTF_8))));
+            json.put("attachments", paths);
+            return json;
+        }
         final JSONObject json = new JSONObject();
         json.put("message", Base64.getEncoder().encodeToString(message));
         return json;
     }
 
-    private static byte[] json2message(final JSONObject json) {
+    private byte[] json2message(final JSONObject json) throws IOException {
+        if (json.has("envelope") && json.has("attachments")) {
+            final JSONObject paths = json.getJSONObject("attachments");
+            final Map<String, byte[]> attachments = new LinkedHashMap<>();
+            for (final String id: paths.keySet()) {
+                final IOPath aiop = new IOPath(this.iop.getBucket(), paths.getString(id));
+                attachments.put(id, this.io.readAll(aiop));
+                this.io.remove(aiop);
+            }
+            return SusiAttachment.pack(json.getJSONObject("envelope").toString(0).getBytes(StandardCharsets.UTF_8), attachments);
+        }
         if (json.has("message")) {
             final String message = json.optString("message", "");
             if (message.length() > 0) {
@@ -20,7 +20,6 @@
 package net.yacy.grid.mcp;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -29,9 +28,10 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
+import ai.susi.mind.LazyThought;
 import ai.susi.mind.SusiAction;
+import ai.susi.mind.SusiAttachment;
 import ai.susi.mind.SusiThought;
 import net.yacy.grid.Services;
 import net.yacy.grid.YaCyServices;
@@ -257,9 +257,28 @@ public abstract class AbstractBrokerListener implements BrokerListener {
     private ActionResult handleMessage(final MessageContainer mc, final String processName, final int processNumber) {
         Thread.currentThread().setName(processName + "-" + processNumber + "-running");
 
-        final String payload = new String(mc.getPayload(), StandardCharsets.UTF_8);
-        final JSONObject json = new JSONObject(new JSONTokener(payload));
-        final SusiThought process = new SusiThought(json);
+        // read only the routing attributes first; messages which are not for this service are forwarded without parsing them
+        final LazyThought message = new LazyThought(mc.getPayload());
+        if (message.getActionCount() == 1) {
+            final String type = message.getActionStringAttr(0, "type");
+            final String queue = message.getActionStringAttr(0, "queue");
+            if (type.length() == 0 || queue.length() == 0) {
+                Logger.info(this.getClass(), "bad message in queue, continue");
+                return ActionResult.SUCCESS;
+            }
+            if (!type.equals(this.service.name())) {
+                Logger.info(this.getClass(), "wrong message in queue: " + type + ", continue");
+                try {
+                    this.config.gridBroker.send(YaCyServices.valueOf(type), new GridQueue(queue), message.getMessage()); // put that into the correct queue
+                } catch (final Throwable e) {
+                    if (GridBroker.TARGET_LIMIT_MESSAGE.equals(e.getMessage())) return ActionResult.FAIL_RETRY;
+                    Logger.warn(this.getClass(), e);
+                }
+                return ActionResult.SUCCESS;
+            }
+        }
+
+        final SusiThought process = message.getThought();
         final JSONArray data = process.getData();
         final List<SusiAction> actions = process.getActions();
 
@@ -333,7 +352,7 @@ public abstract class AbstractBrokerListener implements BrokerListener {
         final JSONObject nextProcess = new JSONObject()
                 .put("data", json)
                 .put("actions", new JSONArray().put(action.toJSONClone()));
-        final byte[] b = nextProcess.toString(2).getBytes(StandardCharsets.UTF_8);
+        final byte[] b = SusiAttachment.toBytes(nextProcess);
         this.config.gridBroker.send(YaCyServices.valueOf(type), new GridQueue(queue), b);
     }
 
@@ -31,6 +31,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.Servlet;
 
+import eu.searchlab.storage.io.AbstractIO;
 import net.yacy.grid.YaCyServices;
 import net.yacy.grid.http.APIHandler;
 import net.yacy.grid.io.assets.GridStorage;
@@ -106,6 +107,15 @@ public class Configuration {
         final File assetsPath = new File(this.gridServicePath, "assets");
         final boolean deleteafterread = this.properties.containsKey("grid.assets.delete") && this.properties.get("grid.assets.delete").equals("true");
         this.gridStorage = new GridStorage(deleteafterread, localStorage ? assetsPath : null);
+        final long assetCacheSize = this.properties.containsKey("grid.assets.cache.size") ? Long.parseLong(this.properties.get("grid.assets.cache.size")) : 0;
+        if (assetCacheSize > 0) {
+            // the cache is shared by all grid services on this host, therefore it is not inside the service path
+            final String assetCachePath = this.properties.get("grid.assets.cache.path");
+            this.gridStorage.setCache(assetCachePath == null || assetCachePath.length() == 0 ? new File(this.data_dir, "assetcache") : new File(assetCachePath), assetCacheSize * 1024L * 1024L);
+        }
+        final long s3PartSize = this.properties.containsKey("grid.s3.partSize") ? Long.parseLong(this.properties.get("grid.s3.partSize")) * 1024L * 1024L : AbstractIO.defaultPartSize;
+        final int s3Concurrency = this.properties.containsKey("grid.s3.concurrency") ? Integer.parseInt(this.properties.get("grid.s3.concurrency")) : AbstractIO.defaultConcurrency;
+        this.gridStorage.setS3Transfer(s3PartSize, s3Concurrency);
 
         // create index
         this.gridIndex = new GridIndex();
@@ -227,6 +237,9 @@ public class Configuration {
                 if (!OS.portIsOpen(address)) continue;
                 try {
                     this.gridIndex = new GridIndex();
+                    if ("true".equals(this.properties.get("grid.elasticsearch.existFilter"))) {
+                        this.gridIndex.setExistenceFilterPath(new File(this.gridServicePath, "existfilter"));
+                    }
                     this.gridIndex.connectElasticsearch(ElasticIndexFactory.PROTOCOL_PREFIX + address + "/" + elasticsearchClusterName);
                     break;
                 } catch (final Exception e) {
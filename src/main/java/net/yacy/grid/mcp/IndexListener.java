@@ -19,17 +19,18 @@
 
 package net.yacy.grid.mcp;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.Date;
+import java.io.InputStream;
+import java.util.Iterator;
 
+import org.elasticsearch.client.transport.NoNodeAvailableException;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import ai.susi.mind.SusiAction;
 import net.yacy.grid.YaCyServices;
-import net.yacy.grid.io.assets.Asset;
+import net.yacy.grid.io.assets.AssetInputStream;
 import net.yacy.grid.io.index.CrawlerDocument;
 import net.yacy.grid.io.index.CrawlerDocument.Status;
 import net.yacy.grid.io.index.CrawlerMapping;
@@ -38,6 +39,7 @@ import net.yacy.grid.io.index.WebMapping;
 import net.yacy.grid.tools.CronBox.Telemetry;
 import net.yacy.grid.tools.DateParser;
 import net.yacy.grid.tools.JSONList;
+import net.yacy.grid.tools.JSONListReader;
 import net.yacy.grid.tools.Logger;
 import net.yacy.grid.tools.MultiProtocolURL;
 
@@ -55,63 +57,100 @@ public class IndexListener extends AbstractBrokerListener implements BrokerListe
         if (sourceasset_path == null || sourceasset_path.length() == 0) return ActionResult.FAIL_IRREVERSIBLE;
 
         try {
-            // get the message with parsed documents
+            // get the message with parsed documents; documents from the storage are streamed, so the size of a batch is not limited by memory
             JSONList jsonlist = null;
             if (action.hasAsset(sourceasset_path)) {
                 jsonlist = action.getJSONListAsset(sourceasset_path);
                }
+            InputStream asset = null;
+            JSONListReader reader = null;
             if (jsonlist == null || jsonlist.length() == 0) try {
-                final Asset<byte[]> asset = this.config.gridStorage.load(sourceasset_path);
-                final byte[] source = asset.getPayload();
-                jsonlist = new JSONList(new ByteArrayInputStream(source));
+                asset = this.config.gridStorage.openStream(sourceasset_path);
+                reader = new JSONListReader(asset);
             } catch (final IOException e) {
+                if (asset != null) abort(asset);
                 Logger.warn(this.getClass(), "MCP.processAction could not read asset from storage: " + sourceasset_path, e);
                 return ActionResult.FAIL_IRREVERSIBLE;
             }
+            final Iterator<?> documents = reader == null ? jsonlist.iterator() : reader;
 
             // for each document, write search index and crawler index
-            indexloop: for (int line = 0; line < jsonlist.length(); line++) try {
-                final JSONObject json = jsonlist.get(line);
-                if (json.has("index")) continue indexloop; // this is an elasticsearch index directive, we just skip that
+            boolean complete = false;
+            try {
+                int line = -1;
+                indexloop: while (documents.hasNext()) try {
+                    line++;
+                    final JSONObject json = (JSONObject) documents.next();
+                    if (json.has("index")) continue indexloop; // this is an elasticsearch index directive, we just skip that
 
-                // write search index
-                String date = null;
-                if (date == null && json.has(WebMapping.last_modified.getMapping().name())) date = WebMapping.last_modified.getMapping().name();
-                if (date == null && json.has(WebMapping.load_date_dt.getMapping().name())) date = WebMapping.load_date_dt.getMapping().name();
-                if (date == null && json.has(WebMapping.fresh_date_dt.getMapping().name())) date = WebMapping.fresh_date_dt.getMapping().name();
-                final String url = json.getString(WebMapping.url_s.getMapping().name());
-                final String urlid = MultiProtocolURL.getDigest(url);
-                final boolean created = this.config.gridIndex.getElasticClient().writeMap(
-                                    this.config.properties.getOrDefault("grid.elasticsearch.indexName.web", GridIndex.DEFAULT_INDEXNAME_WEB),
-                                    this.config.properties.getOrDefault("grid.elasticsearch.typeName", GridIndex.DEFAULT_TYPENAME),
-                                    urlid, json.toMap());
-                Logger.info(this.getClass(), "MCP.processAction indexed " + ((line + 1)/2)  + "/" + jsonlist.length()/2 + "(" + (created ? "created" : "updated")+ "): " + url);
-                //BulkEntry be = new BulkEntry(json.getString("url_s"), "crawler", date, null, json.toMap());
-                //bulk.add(be);
+                    // write search index
+                    String date = null;
+                    if (date == null && json.has(WebMapping.last_modified.getMapping().name())) date = WebMapping.last_modified.getMapping().name();
+                    if (date == null && json.has(WebMapping.load_date_dt.getMapping().name())) date = WebMapping.load_date_dt.getMapping().name();
+                    if (date == null && json.has(WebMapping.fresh_date_dt.getMapping().name())) date = WebMapping.fresh_date_dt.getMapping().name();
+                    final String url = json.getString(WebMapping.url_s.getMapping().name());
+                    final String urlid = MultiProtocolURL.getDigest(url);
+                    // write through the index factory which keeps the existence filter of the index up to date
+                    this.config.gridIndex.getElasticIndex().add(
+                                        this.config.properties.getOrDefault("grid.elasticsearch.indexName.web", GridIndex.DEFAULT_INDEXNAME_WEB),
+                                        this.config.properties.getOrDefault("grid.elasticsearch.typeName", GridIndex.DEFAULT_TYPENAME),
+                                        urlid, json);
+                    Logger.info(this.getClass(), "MCP.processAction indexed " + ((line + 1)/2) + (reader == null ? "/" + jsonlist.length()/2 : "") + ": " + url);
+                    //BulkEntry be = new BulkEntry(json.getString("url_s"), "crawler", date, null, json.toMap());
+                    //bulk.add(be);
 
-                // write crawler index
-                try {
-                    final JSONObject updater = new JSONObject()
-                            .put(CrawlerMapping.status_s.getMapping().name(), Status.indexed.name())
-                            .put(CrawlerMapping.status_date_dt.getMapping().name(), DateParser.iso8601MillisFormat.format(new Date()));
-                    CrawlerDocument.update(this.config, this.config.gridIndex, urlid, updater);
-                    // check with http://localhost:9200/crawler/_search?q=status_s:indexed
-                } catch (final IOException e) {
-                    // well that should not happen
-                    Logger.warn(this.getClass(), "could not write crawler index", e);
+                    // write crawler index
+                    try {
+                        final JSONObject updater = new JSONObject()
+                                .put(CrawlerMapping.status_s.getMapping().name(), Status.indexed.name())
+                                .put(CrawlerMapping.status_date_dt.getMapping().name(), DateParser.formatISO8601Millis(System.currentTimeMillis()));
+                        CrawlerDocument.update(this.config, this.config.gridIndex, urlid, updater);
+                        // check with http://localhost:9200/crawler/_search?q=status_s:indexed
+                    } catch (final IOException e) {
+                        // well that should not happen
+                        Logger.warn(this.getClass(), "could not write crawler index", e);
+                    }
+                } catch (final JSONException je) {
+                    Logger.warn(this.getClass(), "", je);
+                }
+                complete = true;
+            } finally {
+                // the asset of a failed batch must not be completed: a storage which deletes assets after reading would delete it
+                if (reader != null) {
+                    if (complete) reader.close(); else abort(asset);
                 }
-            } catch (final JSONException je) {
-                Logger.warn(this.getClass(), "", je);
             }
             //Configuration.index.writeMapBulk(GridIndex.WEB_INDEX_NAME, bulk);
             Logger.info(this.getClass(), "MCP.processAction processed indexing message from queue: " + sourceasset_path);
             return ActionResult.SUCCESS;
         } catch (final Throwable e) {
+            if (isIndexUnavailable(e)) {
+                // the index is not reachable or the circuit breaker is open: the batch can be indexed later
+                Logger.warn(this.getClass(), "MCP.processAction index not available, indexing of " + sourceasset_path + " is retried: " + e.getMessage());
+                return ActionResult.FAIL_RETRY;
+            }
             Logger.warn(this.getClass(), "MCP.processAction", e);
             return ActionResult.FAIL_IRREVERSIBLE;
         }
     }
 
+    private void abort(final InputStream asset) {
+        try {
+            if (asset instanceof AssetInputStream) ((AssetInputStream) asset).abort(); else asset.close();
+        } catch (final IOException e) {
+            Logger.warn(this.getClass(), "MCP.processAction could not close asset", e);
+        }
+    }
+
+    private static boolean isIndexUnavailable(Throwable e) {
+        // the index factories wrap the exceptions of the elasticsearch client
+        while (e != null) {
+            if (e instanceof NoNodeAvailableException) return true;
+            e = e.getCause();
+        }
+        return false;
+    }
+
      @Override
      public Telemetry getTelemetry() {
          return null;
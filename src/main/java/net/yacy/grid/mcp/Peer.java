@@ -135,26 +135,26 @@ public class Peer extends JSONObject {
     }
    
     public Peer setLastseen(Date lastseen) {
-        this.put("lastseen", DateParser.iso8601Format.format(lastseen));
+        this.put("lastseen", DateParser.formatISO8601(lastseen));
         return this;
     }
     
     public Date getLastseen() {
         try {
-            return DateParser.iso8601Format.parse(this.getString("lastseen"));
+            return DateParser.parseISO8601(this.getString("lastseen"));
         } catch (JSONException | ParseException e) {
             return null;
         }
     }
     
     public Peer setLastping(Date lastping) {
-        this.put("lastping", DateParser.iso8601Format.format(lastping));
+        this.put("lastping", DateParser.formatISO8601(lastping));
         return this;
     }
     
     public Date getLastping() {
         try {
-            return DateParser.iso8601Format.parse(this.getString("lastping"));
+            return DateParser.parseISO8601(this.getString("lastping"));
         } catch (JSONException | ParseException e) {
             return null;
         }
@@ -21,7 +21,6 @@ package net.yacy.grid.mcp.api.admin;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.Date;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -66,7 +65,7 @@ public class InquirySubmitService extends ObjectAPIHandler implements APIHandler
             message.put("userid", userid);
             message.put("messageid", messageid);
             message.put("time", time);
-            message.put("date", DateParser.formatRFC1123(new Date(time)));
+            message.put("date", DateParser.formatRFC1123(time));
             message.put("action", action);
             message.put("host", host);
             message.put("depth", Integer.parseInt(depth));
@@ -20,6 +20,7 @@
 package net.yacy.grid.mcp.api.assets;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -27,7 +28,6 @@ import net.yacy.grid.http.APIHandler;
 import net.yacy.grid.http.ObjectAPIHandler;
 import net.yacy.grid.http.Query;
 import net.yacy.grid.http.ServiceResponse;
-import net.yacy.grid.io.assets.Asset;
 import net.yacy.grid.mcp.Service;
 import net.yacy.grid.tools.Logger;
 
@@ -50,16 +50,16 @@ public class LoadService extends ObjectAPIHandler implements APIHandler {
     @Override
     public ServiceResponse serviceImpl(final Query call, final HttpServletResponse response) {
         final String path = call.get("path", "");
-        byte[] a = null;
         if (path.length() > 0) {
             try {
-                final Asset<byte[]> asset = Service.instance.config.gridStorage.load(path);
-                a = asset.getPayload();
+                // the asset is piped to the client without loading it into memory
+                final InputStream asset = Service.instance.config.gridStorage.openStream(path);
+                return new ServiceResponse(asset);
             } catch (final IOException e) {
                 Logger.error(this.getClass(), e.getMessage(), e);
             }
         }
         // TODO: set Mime Type using the path extension
-        return new ServiceResponse(a);
+        return new ServiceResponse((byte[]) null);
     }
 }
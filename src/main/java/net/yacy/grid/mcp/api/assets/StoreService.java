@@ -19,9 +19,14 @@
 
 package net.yacy.grid.mcp.api.assets;
 
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Set;
 
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
 
 import org.json.JSONObject;
 
@@ -43,20 +48,42 @@ public class StoreService extends ObjectAPIHandler implements APIHandler {
     private static final long serialVersionUID = 8578378303032749879L;
     public static final String NAME = "store";
     private final static byte[] EMPTY_ASSET = new byte[0];
+    private final static Set<String> STREAMED_PARTS = Collections.singleton("asset");
+    private final static long STREAM_THRESHOLD = 1024 * 1024;
 
     @Override
     public String getAPIPath() {
         return "/yacy/grid/mcp/assets/" + NAME + ".json";
     }
 
+    @Override
+    protected Set<String> getStreamedParts() {
+        return STREAMED_PARTS;
+    }
+
     @Override
     public ServiceResponse serviceImpl(final Query call, final HttpServletResponse response) {
         final String path = call.get("path", "");
-        final byte[] asset = call.get("asset", EMPTY_ASSET);
+        final Part part = call.getPart("asset");
         final JSONObject json = new JSONObject(true);
         if (path.length() > 0) {
             try {
-                final StorageFactory<byte[]> factory = Service.instance.config.gridStorage.store(path, asset);
+                final StorageFactory<byte[]> factory;
+                if (part == null) {
+                    factory = Service.instance.config.gridStorage.store(path, call.get("asset", EMPTY_ASSET));
+                } else if (part.getSize() <= STREAM_THRESHOLD) {
+                    // small assets are stored as byte[] which allows a fail-over to other storage systems
+                    final byte[] asset = new byte[(int) part.getSize()];
+                    try (DataInputStream is = new DataInputStream(part.getInputStream())) {
+                        is.readFully(asset);
+                    }
+                    factory = Service.instance.config.gridStorage.store(path, asset);
+                } else {
+                    // large uploads are piped into the storage without loading them into memory
+                    try (InputStream is = part.getInputStream()) {
+                        factory = Service.instance.config.gridStorage.store(path, is, part.getSize());
+                    }
+                }
                 final String url = factory.getConnectionURL();
                 json.put(ObjectAPIHandler.SUCCESS_KEY, true);
                 if (url != null) json.put(ObjectAPIHandler.SERVICE_KEY, url);
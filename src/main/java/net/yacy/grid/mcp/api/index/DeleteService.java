@@ -29,6 +29,9 @@ import net.yacy.grid.http.APIHandler;
 import net.yacy.grid.http.ObjectAPIHandler;
 import net.yacy.grid.http.Query;
 import net.yacy.grid.http.ServiceResponse;
+import net.yacy.grid.io.index.ElasticIndexFactory;
+import net.yacy.grid.io.index.ElasticsearchClient;
+import net.yacy.grid.io.index.ElasticsearchClient.DeleteByQueryTask;
 import net.yacy.grid.io.index.Index;
 import net.yacy.grid.io.index.Index.QueryLanguage;
 import net.yacy.grid.mcp.Service;
@@ -37,6 +40,10 @@ import net.yacy.grid.mcp.Service;
  * tests:
  * http://127.0.0.1:8100/yacy/grid/mcp/index/delete.json?index=web&type=crawler&id=31bf58014628ee9e28b5ffb8b91ddf3e
  *
+ * deletions by query can be started as background task with async=true; the response then contains a task id
+ * which can be used to poll the progress of the deletion:
+ * http://127.0.0.1:8100/yacy/grid/mcp/index/delete.json?index=crawler&type=crawler&language=fields&query={"crawl_id_s":"xyz"}&async=true
+ * http://127.0.0.1:8100/yacy/grid/mcp/index/delete.json?task=<taskid>
  */
 public class DeleteService extends ObjectAPIHandler implements APIHandler {
 
@@ -56,8 +63,32 @@ public class DeleteService extends ObjectAPIHandler implements APIHandler {
         final String id = call.get("id", "");
         final QueryLanguage language = QueryLanguage.valueOf(call.get("language", "yacy"));
         final String query = call.get("query", "");
+        final boolean async = call.get("async", false);
+        final String taskId = call.get("task", "");
         final JSONObject json = new JSONObject(true);
-        if (indexName.length() > 0 && typeName.length() > 0 && id.length() > 0) {
+        if (taskId.length() > 0) {
+            final ElasticsearchClient client = Service.instance.config.gridIndex.isConnected() ? Service.instance.config.gridIndex.getElasticClient() : null;
+            final DeleteByQueryTask task = client == null ? null : client.getDeleteTask(taskId);
+            if (task == null) {
+                json.put(ObjectAPIHandler.SUCCESS_KEY, false);
+                json.put(ObjectAPIHandler.COMMENT_KEY, "no delete task with id " + taskId);
+            } else {
+                json.put(ObjectAPIHandler.SUCCESS_KEY, true);
+                json.put("count", task.getDeleted());
+                json.putAll(task.toJSON());
+            }
+        } else if (indexName.length() > 0 && typeName.length() > 0 && query.length() > 0 && async) {
+            final ElasticsearchClient client = Service.instance.config.gridIndex.isConnected() ? Service.instance.config.gridIndex.getElasticClient() : null;
+            if (client == null) {
+                json.put(ObjectAPIHandler.SUCCESS_KEY, false);
+                json.put(ObjectAPIHandler.COMMENT_KEY, "asynchronous deletion requires an elasticsearch connection");
+            } else {
+                final DeleteByQueryTask task = client.deleteByQueryAsync(indexName, ElasticIndexFactory.getQuery(language, query));
+                json.put(ObjectAPIHandler.SUCCESS_KEY, true);
+                json.put("count", task.getDeleted());
+                json.putAll(task.toJSON());
+            }
+        } else if (indexName.length() > 0 && typeName.length() > 0 && id.length() > 0) {
             try {
                 final Index index = Service.instance.config.gridIndex.getElasticIndex();
                 final String url = index.checkConnection().getConnectionURL();
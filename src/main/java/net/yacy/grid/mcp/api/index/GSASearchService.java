@@ -102,7 +102,7 @@ public class GSASearchService extends ObjectAPIHandler implements APIHandler {
         final String queryXML = XML.escape(q);
 
         // prepare a query
-        final YaCyQuery yq = new YaCyQuery(translatedQ, sites, contentdom, timezoneOffset);
+        final YaCyQuery yq = YaCyQuery.getQuery(translatedQ, sites, contentdom, timezoneOffset);
 
         final ElasticsearchClient ec = Service.instance.config.gridIndex.getElasticClient();
         final HighlightBuilder hb = new HighlightBuilder().field(WebMapping.text_t.getMapping().name()).preTags("").postTags("").fragmentSize(140);
@@ -84,7 +84,7 @@ public class YaCySearchService extends ObjectAPIHandler implements APIHandler {
         for (final String s: facetFields.split(",")) facetFieldMapping.add(WebMapping.valueOf(s));
         final Sort sort = new Sort(call.get("sort", ""));
 
-        final YaCyQuery yq = new YaCyQuery(q, collections, contentdom, timezoneOffset);
+        final YaCyQuery yq = YaCyQuery.getQuery(q, collections, contentdom, timezoneOffset);
         final ElasticsearchClient ec = Service.instance.config.gridIndex.getElasticClient();
         final HighlightBuilder hb = new HighlightBuilder().field(WebMapping.text_t.getMapping().name()).preTags("").postTags("").fragmentSize(140);
         final ElasticsearchClient.Query query = ec.query(
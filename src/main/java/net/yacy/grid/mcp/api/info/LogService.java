@@ -19,8 +19,6 @@
 
 package net.yacy.grid.mcp.api.info;
 
-import java.util.List;
-
 import javax.servlet.http.HttpServletResponse;
 
 import net.yacy.grid.http.APIHandler;
@@ -46,12 +44,8 @@ public class LogService extends ObjectAPIHandler implements APIHandler {
     @Override
     public ServiceResponse serviceImpl(Query post, HttpServletResponse response) {
         int count = post.get("count", 10000);
-        final StringBuilder buffer = new StringBuilder(100000);
-        List<String> lines = Logger.getLines(count);
-        for (int i = 0; i < lines.size(); i++) {
-            buffer.append(lines.get(i)); // lines are stored with \n at end
-        }
-        return new ServiceResponse(buffer.toString());
+        // the lines are streamed from the log tail, they are not concatenated into a buffer
+        return new ServiceResponse(Logger.getLinesStream(count)).setMimeType("text/plain");
     }
 
 }
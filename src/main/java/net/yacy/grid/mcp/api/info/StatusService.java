@@ -20,6 +20,7 @@
 package net.yacy.grid.mcp.api.info;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletResponse;
@@ -30,8 +31,11 @@ import net.yacy.grid.http.APIHandler;
 import net.yacy.grid.http.ObjectAPIHandler;
 import net.yacy.grid.http.Query;
 import net.yacy.grid.http.ServiceResponse;
+import net.yacy.grid.io.assets.FTPConnectionPool;
 import net.yacy.grid.mcp.Service;
+import net.yacy.grid.tools.BufferPool;
 import net.yacy.grid.tools.OS;
+import net.yacy.grid.tools.TimeoutRequest;
 
 // test: http://localhost:8100/yacy/grid/mcp/info/status.json
 public class StatusService extends ObjectAPIHandler implements APIHandler {
@@ -75,6 +79,12 @@ public class StatusService extends ObjectAPIHandler implements APIHandler {
         //system.put("load_system_cpu", OS.getSystemCpuLoad());
         status.put("load_process_cpu", OS.getProcessCpuLoad());
         status.put("server_threads", Service.instance == null ? 0 : Service.instance.getServerThreads());
+        final List<Map<String, Object>> ftpPools = FTPConnectionPool.getAllStatistics();
+        if (!ftpPools.isEmpty()) status.put("ftp_pools", ftpPools);
+        final Map<String, Object> assetCache = Service.instance == null ? null : Service.instance.config.gridStorage.getCacheStatistics();
+        if (assetCache != null) status.put("asset_cache", assetCache);
+        status.put("timeout_requests", TimeoutRequest.getStatistics());
+        status.put("buffer_pools", BufferPool.getAllStatistics());
         return status;
     }
 
@@ -19,15 +19,15 @@
 
 package net.yacy.grid.mcp.api.messages;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
 import java.util.List;
 
 import javax.servlet.http.HttpServletResponse;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
+import ai.susi.mind.SusiAttachment;
 import net.yacy.grid.YaCyServices;
 import net.yacy.grid.http.APIHandler;
 import net.yacy.grid.http.ObjectAPIHandler;
@@ -36,6 +36,7 @@ import net.yacy.grid.http.ServiceResponse;
 import net.yacy.grid.io.messages.GridQueue;
 import net.yacy.grid.io.messages.MessageContainer;
 import net.yacy.grid.mcp.Service;
+import net.yacy.grid.tools.Logger;
 
 /**
  * test: call
@@ -74,9 +75,13 @@ public class PeekService extends ObjectAPIHandler implements APIHandler {
             count = Math.min(100, count);
             final List<MessageContainer> messages = Service.instance.config.gridBroker.peek(service, queue, count);
             for (final MessageContainer message: messages) {
-                final String payload = message.getPayload() == null ? null : new String(message.getPayload(), StandardCharsets.UTF_8);
-                final JSONObject payloadjson = payload == null ? null : new JSONObject(new JSONTokener(payload));
-                if (payloadjson != null) messageArray.put(payloadjson);
+                // attachments are written as Base64 strings in the json response
+                try {
+                    final JSONObject payloadjson = message.getPayload() == null ? null : SusiAttachment.parse(message.getPayload());
+                    if (payloadjson != null) messageArray.put(payloadjson);
+                } catch (final IOException e) {
+                    Logger.warn(this.getClass(), "PeekService: cannot parse message: " + e.getMessage());
+                }
             }
             json.put(ObjectAPIHandler.SUCCESS_KEY, true);
         } else {
@@ -21,11 +21,14 @@ package net.yacy.grid.mcp.api.messages;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletResponse;
 
 import org.json.JSONObject;
 
+import ai.susi.mind.SusiAttachment;
 import net.yacy.grid.YaCyServices;
 import net.yacy.grid.http.APIHandler;
 import net.yacy.grid.http.ObjectAPIHandler;
@@ -55,6 +58,7 @@ public class ReceiveService extends ObjectAPIHandler implements APIHandler {
         final String queueName = call.get("queueName", "");
         final boolean autoAck = "true".equals(call.get("autoAck", "true"));
         final long timeout = call.get("timeout", -1);
+        final boolean attachments = "true".equals(call.get("attachments", "false")); // the client can read attachment containers
         final JSONObject json = new JSONObject(true);
         if (serviceName.length() > 0 && queueName.length() > 0) {
             try {
@@ -66,7 +70,19 @@ public class ReceiveService extends ObjectAPIHandler implements APIHandler {
                 } else {
                     final String url = message.getFactory().getConnectionURL();
                     final byte[] payload = message.getPayload();
-                    json.put(ObjectAPIHandler.MESSAGE_KEY, payload == null ? "" : new String(payload, StandardCharsets.UTF_8));
+                    if (attachments && SusiAttachment.isContainer(payload)) {
+                        // respond with a container: the response json is the envelope and contains the message envelope,
+                        // the attachments of the message are the attachments of the response
+                        final Map<String, byte[]> a = new LinkedHashMap<>();
+                        final byte[] envelope = SusiAttachment.unpack(payload, a);
+                        json.put(ObjectAPIHandler.MESSAGE_KEY, new String(envelope, StandardCharsets.UTF_8));
+                        json.put(ObjectAPIHandler.DELIVERY_TAG, message.getDeliveryTag());
+                        json.put(ObjectAPIHandler.SUCCESS_KEY, true);
+                        if (url != null) json.put(ObjectAPIHandler.SERVICE_KEY, url);
+                        return new ServiceResponse(SusiAttachment.pack(json.toString(0).getBytes(StandardCharsets.UTF_8), a));
+                    }
+                    // clients without container support get the attachments as Base64 strings
+                    json.put(ObjectAPIHandler.MESSAGE_KEY, payload == null ? "" : SusiAttachment.isContainer(payload) ? SusiAttachment.parse(payload).toString(0) : new String(payload, StandardCharsets.UTF_8));
                     json.put(ObjectAPIHandler.DELIVERY_TAG, message.getDeliveryTag());
                     json.put(ObjectAPIHandler.SUCCESS_KEY, true);
                     if (url != null) json.put(ObjectAPIHandler.SERVICE_KEY, url);
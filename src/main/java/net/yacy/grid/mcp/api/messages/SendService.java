@@ -20,7 +20,6 @@
 package net.yacy.grid.mcp.api.messages;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -44,6 +43,7 @@ public class SendService extends ObjectAPIHandler implements APIHandler {
 
     private static final long serialVersionUID = 8578478303032749879L;
     public static final String NAME = "send";
+    private static final byte[] EMPTY_MESSAGE = new byte[0];
 
     @Override
     public String getAPIPath() {
@@ -54,11 +54,11 @@ public class SendService extends ObjectAPIHandler implements APIHandler {
     public ServiceResponse serviceImpl(final Query call, final HttpServletResponse response) {
         final String serviceName = call.get("serviceName", "");
         final String queueName = call.get("queueName", "");
-        final String message = call.get("message", "");
+        final byte[] message = call.get("message", EMPTY_MESSAGE); // binary-safe if sent as multipart post
         final JSONObject json = new JSONObject(true);
-        if (serviceName.length() > 0 && queueName.length() > 0 && message.length() > 0) {
+        if (serviceName.length() > 0 && queueName.length() > 0 && message.length > 0) {
             try {
-                final QueueFactory factory = Service.instance.config.gridBroker.send(YaCyServices.valueOf(serviceName), new GridQueue(queueName), message.getBytes(StandardCharsets.UTF_8));
+                final QueueFactory factory = Service.instance.config.gridBroker.send(YaCyServices.valueOf(serviceName), new GridQueue(queueName), message);
                 final String url = factory.getConnectionURL();
                 json.put(ObjectAPIHandler.SUCCESS_KEY, true);
                 if (url != null) json.put(ObjectAPIHandler.SERVICE_KEY, url);
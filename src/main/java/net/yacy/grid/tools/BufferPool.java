@@ -0,0 +1,354 @@
+/**
+ *  BufferPool
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of reference-counted byte buffers in power-of-two size classes from 256 bytes to 1MB.
+ * A buffer is handed out with a reference count of one; every retain() must be matched by a release()
+ * and the buffer goes back to the pool when the count drops to zero. A released buffer must not be used
+ * any more. Larger buffers are not pooled. Buffers which are never released are simply garbage-collected;
+ * with leak detection switched on (system property yacy.grid.bufferpool.leakdetection=true, for tests),
+ * such buffers are logged together with the stack trace of their allocation.
+ */
+public final class BufferPool {
+
+    public final static int MIN_SIZE = 256, MAX_SIZE = 1 << 20;
+    private final static int MIN_SHIFT = 8, CLASSES = 13;
+    private final static int COPY_SIZE = 16384;
+
+    public static boolean leakDetection = Boolean.getBoolean("yacy.grid.bufferpool.leakdetection");
+
+    public final static BufferPool HEAP = new BufferPool("heap", false, 64L * 1024L * 1024L);
+    public final static BufferPool DIRECT = new BufferPool("direct", true, 64L * 1024L * 1024L);
+
+    /**
+     * a buffer from the pool
+     */
+    public final class Buffer {
+        private final java.nio.ByteBuffer nio;
+        private final int sizeClass; // -1 for buffers which are not pooled
+        private final AtomicInteger refCnt;
+        private final Leak leak;
+
+        private Buffer(final java.nio.ByteBuffer nio, final int sizeClass) {
+            this.nio = nio;
+            this.sizeClass = sizeClass;
+            this.refCnt = new AtomicInteger(1);
+            this.leak = leakDetection ? new Leak(this) : null;
+        }
+
+        /**
+         * @return the nio buffer; position and limit are free for use by the owner
+         */
+        public java.nio.ByteBuffer nio() {
+            if (this.refCnt.get() <= 0) throw new IllegalStateException("buffer is released");
+            return this.nio;
+        }
+
+        /**
+         * @return the backing array of a heap buffer
+         */
+        public byte[] array() {
+            return nio().array();
+        }
+
+        public int capacity() {
+            return this.nio.capacity();
+        }
+
+        public int refCnt() {
+            return this.refCnt.get();
+        }
+
+        public Buffer retain() {
+            int c;
+            do {
+                c = this.refCnt.get();
+                if (c <= 0) throw new IllegalStateException("buffer is released");
+            } while (!this.refCnt.compareAndSet(c, c + 1));
+            return this;
+        }
+
+        /**
+         * decrement the reference count and give the buffer back to the pool if the count drops to zero
+         * @return true if the buffer was given back
+         */
+        public boolean release() {
+            final int c = this.refCnt.decrementAndGet();
+            if (c > 0) return false;
+            if (c < 0) {
+                this.refCnt.set(0);
+                throw new IllegalStateException("buffer is released twice");
+            }
+            if (this.leak != null) this.leak.close();
+            recycle(this);
+            return true;
+        }
+    }
+
+    // a weak reference to a buffer which is enqueued when the buffer is garbage-collected
+    private final static class Leak extends WeakReference<Buffer> {
+        private final Throwable trace;
+
+        private Leak(final Buffer buffer) {
+            super(buffer, leakQueue);
+            this.trace = new Throwable("allocation of a " + buffer.capacity() + " bytes buffer");
+            openLeaks.add(this);
+        }
+
+        private void close() {
+            openLeaks.remove(this);
+            this.clear();
+        }
+    }
+
+    private final static ReferenceQueue<Buffer> leakQueue = new ReferenceQueue<>();
+    private final static Set<Leak> openLeaks = ConcurrentHashMap.newKeySet();
+    private final static LongAdder leaks = new LongAdder();
+
+    private final String name;
+    private final boolean direct;
+    private final ArrayBlockingQueue<java.nio.ByteBuffer>[] free;
+    private final LongAdder allocations, reused, unpooled, recycled, discarded;
+
+    /**
+     * create a pool
+     * @param name the name of the pool in the statistics
+     * @param direct true for direct buffers, false for heap buffers
+     * @param maxBytes the maximum number of bytes in free buffers of each size class
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(final String name, final boolean direct, final long maxBytes) {
+        this.name = name;
+        this.direct = direct;
+        this.free = (ArrayBlockingQueue<java.nio.ByteBuffer>[]) new ArrayBlockingQueue<?>[CLASSES];
+        for (int i = 0; i < CLASSES; i++) {
+            this.free[i] = new ArrayBlockingQueue<>((int) Math.max(2, Math.min(1024, maxBytes / CLASSES >> (MIN_SHIFT + i))));
+        }
+        this.allocations = new LongAdder();
+        this.reused = new LongAdder();
+        this.unpooled = new LongAdder();
+        this.recycled = new LongAdder();
+        this.discarded = new LongAdder();
+    }
+
+    /**
+     * get a buffer of at least the given size; the buffer is cleared and has the capacity of its size class
+     * @param size the minimum capacity
+     * @return a buffer with a reference count of one
+     */
+    public Buffer allocate(final int size) {
+        if (leakDetection) reportLeaks();
+        this.allocations.increment();
+        if (size > MAX_SIZE) {
+            this.unpooled.increment();
+            return new Buffer(this.direct ? java.nio.ByteBuffer.allocateDirect(size) : java.nio.ByteBuffer.allocate(size), -1);
+        }
+        final int sizeClass = sizeClass(size);
+        java.nio.ByteBuffer b = this.free[sizeClass].poll();
+        if (b == null) {
+            final int capacity = MIN_SIZE << sizeClass;
+            b = this.direct ? java.nio.ByteBuffer.allocateDirect(capacity) : java.nio.ByteBuffer.allocate(capacity);
+        } else {
+            this.reused.increment();
+        }
+        return new Buffer(b, sizeClass);
+    }
+
+    private static int sizeClass(final int size) {
+        if (size <= MIN_SIZE) return 0;
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    private void recycle(final Buffer buffer) {
+        if (buffer.sizeClass < 0) return;
+        buffer.nio.clear();
+        if (this.free[buffer.sizeClass].offer(buffer.nio)) {
+            this.recycled.increment();
+        } else {
+            this.discarded.increment(); // the size class is full, the buffer is left to the garbage collector
+        }
+    }
+
+    /**
+     * copy a stream to its end into another stream through a pooled heap buffer
+     * @param is the source stream, it is not closed
+     * @param os the target stream, it is not closed
+     * @return the number of copied bytes
+     * @throws IOException
+     */
+    public static long copy(final InputStream is, final OutputStream os) throws IOException {
+        final Buffer buffer = HEAP.allocate(COPY_SIZE);
+        try {
+            final byte[] b = buffer.array();
+            long count = 0;
+            int l;
+            while ((l = is.read(b)) != -1) {
+                os.write(b, 0, l);
+                count += l;
+            }
+            return count;
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * log all buffers which were garbage-collected without being released
+     * @return the number of leaked buffers since the start of the application
+     */
+    public static long reportLeaks() {
+        Leak leak;
+        while ((leak = (Leak) leakQueue.poll()) != null) {
+            if (openLeaks.remove(leak)) {
+                leaks.increment();
+                Logger.warn(BufferPool.class, "BufferPool: a buffer was not released before it was garbage-collected", leak.trace);
+            }
+        }
+        return leaks.sum();
+    }
+
+    public Map<String, Object> getStatistics() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        long freeBytes = 0;
+        for (int i = 0; i < CLASSES; i++) freeBytes += (long) this.free[i].size() * (MIN_SIZE << i);
+        stats.put("free_bytes", freeBytes);
+        stats.put("allocations", this.allocations.sum());
+        stats.put("reused", this.reused.sum());
+        stats.put("unpooled", this.unpooled.sum());
+        stats.put("recycled", this.recycled.sum());
+        stats.put("discarded", this.discarded.sum());
+        return stats;
+    }
+
+    /**
+     * get the statistics of the heap and direct pools
+     * @return a map from the pool name to the pool statistics
+     */
+    public static Map<String, Object> getAllStatistics() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put(HEAP.name, HEAP.getStatistics());
+        stats.put(DIRECT.name, DIRECT.getStatistics());
+        if (leakDetection) stats.put("leaks", reportLeaks());
+        return stats;
+    }
+
+    public static void main(final String[] args) {
+        leakDetection = true;
+
+        // reference counting and re-use
+        final Buffer a = HEAP.allocate(1000);
+        final java.nio.ByteBuffer nio = a.nio();
+        a.retain();
+        boolean ok = a.capacity() == 1024 && !a.release() && a.release();
+        ok = ok && HEAP.allocate(600).nio() == nio; // the buffer of a, this one is left for the leak check
+        try {
+            a.release();
+            ok = false;
+        } catch (final IllegalStateException e) {}
+        System.out.println("reference counting: " + (ok ? "OK" : "FAILED"));
+
+        // composite buffers compared with one array
+        final java.util.Random random = new java.util.Random(1);
+        final java.io.ByteArrayOutputStream expected = new java.io.ByteArrayOutputStream();
+        try (final CompositeBuffer cb = new CompositeBuffer(HEAP, 256)) {
+            for (int i = 0; i < 1000; i++) {
+                final byte[] b = new byte[random.nextInt(3000)];
+                random.nextBytes(b);
+                switch (i % 3) {
+                    case 0: cb.write(b, 0, b.length); break;
+                    case 1: cb.append(b); break;
+                    default:
+                        final Buffer d = DIRECT.allocate(b.length);
+                        d.nio().put(b).flip();
+                        cb.append(d);
+                }
+                expected.write(b, 0, b.length);
+            }
+            final byte[] e = expected.toByteArray();
+            final java.io.ByteArrayOutputStream written = new java.io.ByteArrayOutputStream();
+            cb.writeTo(written);
+            final byte[] read = new byte[e.length];
+            final InputStream is = cb.getInputStream();
+            int p = 0, l;
+            while ((l = is.read(read, p, Math.min(777, read.length - p))) > 0) p += l;
+            System.out.println("composite buffer: " + (cb.size() == e.length && java.util.Arrays.equals(e, cb.toByteArray()) &&
+                    java.util.Arrays.equals(e, written.toByteArray()) && java.util.Arrays.equals(e, read) && is.read() == -1 ? "OK" : "FAILED"));
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+
+        // streams are read into the chunks of both pools
+        for (final BufferPool pool: new BufferPool[]{HEAP, DIRECT}) {
+            final byte[] e = new byte[100000];
+            random.nextBytes(e);
+            try (final CompositeBuffer cb = new CompositeBuffer(pool, 256)) {
+                final long n = cb.readFrom(new java.io.ByteArrayInputStream(e));
+                System.out.println("read into " + pool.name + " buffer: " + (n == e.length && java.util.Arrays.equals(e, cb.toByteArray()) ? "OK" : "FAILED"));
+            } catch (final IOException ee) {
+                ee.printStackTrace();
+            }
+        }
+
+        // leak detection: the second buffer which was allocated above was never released
+        for (int i = 0; i < 10 && reportLeaks() == 0; i++) {
+            System.gc();
+            try {Thread.sleep(100);} catch (final InterruptedException e) {}
+        }
+        System.out.println("leak detection: " + (reportLeaks() == 1 ? "OK" : "FAILED"));
+        leakDetection = false;
+
+        // collecting messages of typical sizes
+        final byte[] chunk = new byte[1000];
+        for (int round = 0; round < 5; round++) {
+            long t = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < 20000; i++) {
+                final java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
+                for (int j = 0; j < i % 100; j++) baos.write(chunk, 0, chunk.length);
+                sum += baos.toByteArray().length;
+            }
+            final long baosTime = System.nanoTime() - t;
+            t = System.nanoTime();
+            for (int i = 0; i < 20000; i++) {
+                try (final CompositeBuffer cb = new CompositeBuffer()) {
+                    for (int j = 0; j < i % 100; j++) cb.write(chunk, 0, chunk.length);
+                    sum -= cb.toByteArray().length;
+                }
+            }
+            final long cbTime = System.nanoTime() - t;
+            System.out.println("ByteArrayOutputStream: " + baosTime / 1000000 + " ms, CompositeBuffer: " + cbTime / 1000000 + " ms" + (sum == 0 ? "" : " FAILED"));
+        }
+        System.out.println(getAllStatistics());
+    }
+}
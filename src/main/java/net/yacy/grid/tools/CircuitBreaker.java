@@ -0,0 +1,123 @@
+/**
+ *  CircuitBreaker
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.tools;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A circuit breaker for calls to a remote service.
+ * After failureThreshold consecutive failures the circuit opens and all requests are rejected
+ * for openTime milliseconds. After that time, a single probe request is allowed (half-open state).
+ * If the probe succeeds the circuit is closed again, otherwise it opens for another openTime period.
+ * Every probe must report its outcome with recordSuccess() or recordFailure(); if a probe does not
+ * report within openTime, i.e. because the caller ended with an unexpected exception, another probe is allowed.
+ */
+public class CircuitBreaker {
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openTime;
+    private final AtomicReference<State> state;
+    private final AtomicInteger failures;
+    private final AtomicLong probeAt; // the start time of the latest probe request
+    private volatile long openedAt;
+
+    /**
+     * create a circuit breaker
+     * @param name the name of the guarded service, used for logging
+     * @param failureThreshold number of consecutive failures which open the circuit
+     * @param openTime time in milliseconds that the circuit stays open before a probe request is allowed
+     */
+    public CircuitBreaker(final String name, final int failureThreshold, final long openTime) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openTime = openTime;
+        this.state = new AtomicReference<>(State.CLOSED);
+        this.failures = new AtomicInteger(0);
+        this.probeAt = new AtomicLong(0);
+        this.openedAt = 0;
+    }
+
+    /**
+     * check if a request may be done
+     * @return true if the request may be done, false if the request must fail fast
+     */
+    public boolean allowRequest() {
+        final State s = this.state.get();
+        if (s == State.CLOSED) return true;
+        final long now = System.currentTimeMillis();
+        if (s == State.OPEN && now - this.openedAt >= this.openTime) {
+            // only one thread wins the transition and may send the probe request
+            this.probeAt.set(now);
+            return this.state.compareAndSet(State.OPEN, State.HALF_OPEN);
+        }
+        if (s == State.HALF_OPEN) {
+            // the probe did not report an outcome in time: one thread may send a new probe
+            final long p = this.probeAt.get();
+            return now - p >= this.openTime && this.probeAt.compareAndSet(p, now);
+        }
+        return false;
+    }
+
+    /**
+     * report a successful request; this closes the circuit
+     */
+    public void recordSuccess() {
+        this.failures.set(0);
+        if (this.state.getAndSet(State.CLOSED) != State.CLOSED) {
+            Logger.info(this.getClass(), "CircuitBreaker " + this.name + " closed");
+        }
+    }
+
+    /**
+     * report a failed request; this may open the circuit
+     */
+    public void recordFailure() {
+        final int f = this.failures.incrementAndGet();
+        final State s = this.state.get();
+        if (s == State.HALF_OPEN || (s == State.CLOSED && f >= this.failureThreshold)) {
+            this.openedAt = System.currentTimeMillis();
+            if (this.state.compareAndSet(s, State.OPEN)) {
+                Logger.warn(this.getClass(), "CircuitBreaker " + this.name + " opened after " + f + " failures");
+            }
+        }
+    }
+
+    public State getState() {
+        return this.state.get();
+    }
+
+    /**
+     * compute a backoff time with full jitter for retry attempts
+     * @param attempt the number of the attempt, starting with 0
+     * @param base the base delay in milliseconds
+     * @param max the maximum delay in milliseconds
+     * @return a random delay between 0 and min(max, base * 2^attempt)
+     */
+    public static long backoff(final int attempt, final long base, final long max) {
+        final long delay = Math.min(max, base << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(delay + 1);
+    }
+}
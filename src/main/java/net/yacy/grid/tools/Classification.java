@@ -23,13 +23,23 @@ package net.yacy.grid.tools;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 
+/**
+ * Classification of documents by file extension and mime type.
+ * The extension lists are compiled into a lookup table which maps an extension directly to a bit mask
+ * of its classes and to its mime type; extensions are read from the file name in place, without creating
+ * a lower-case substring first.
+ */
 public class Classification {
 
+    public static final int HTML = 1, TEXT = 2, IMAGE = 4, AUDIO = 8, VIDEO = 16, APP = 32, CTRL = 64, MEDIA = 128;
+
     private static final Set<String> htmlExtSet = new HashSet<String>();
     private static final Set<String> textExtSet = new HashSet<String>();
     private static final Set<String> mediaExtSet = new HashSet<String>();
@@ -38,6 +48,7 @@ public class Classification {
     private static final Set<String> videoExtSet = new HashSet<String>();
     private static final Set<String> appsExtSet = new HashSet<String>();
     private static final Set<String> ctrlExtSet = new HashSet<String>();
+    private static final Properties mimeTable = new Properties();
 
     public enum ContentDomain {
 
@@ -101,6 +112,139 @@ public class Classification {
         addSet(appsExtSet,  apps);  // application formats
         addSet(ctrlExtSet,  ctrl);  // control formats
         addSet(mediaExtSet, apps + "," + audio + "," + video + "," + image); // all media formats
+        table = new Table();
+    }
+
+    /**
+     * The compiled extension lists. Extensions of up to eight ASCII characters are packed into a long value
+     * and found with linear probing in a power-of-two sized array; all other extensions are in a hash map.
+     * A table is immutable and replaced when the lists change.
+     */
+    private static final class Table {
+        private final long[] keys;
+        private final int[] flags;
+        private final String[] mimes;
+        private final int mask;
+        private final Map<String, Integer> otherFlags;
+        private final Map<String, String> otherMimes;
+
+        private Table() {
+            final Map<String, Integer> all = new HashMap<>();
+            addFlags(all, htmlExtSet, HTML);
+            addFlags(all, textExtSet, TEXT);
+            addFlags(all, imageExtSet, IMAGE);
+            addFlags(all, audioExtSet, AUDIO);
+            addFlags(all, videoExtSet, VIDEO);
+            addFlags(all, appsExtSet, APP);
+            addFlags(all, ctrlExtSet, CTRL);
+            addFlags(all, mediaExtSet, MEDIA);
+            final Map<String, String> mime = new HashMap<>();
+            for (final Entry<Object, Object> entry: mimeTable.entrySet()) {
+                final String ext = (String) entry.getKey();
+                if (!ext.equals(ext.toLowerCase())) continue; // ext2mime only finds lower-case keys
+                mime.put(ext, (String) entry.getValue());
+                all.putIfAbsent(ext, 0);
+            }
+            int size = 16;
+            while (size < all.size() * 3) size <<= 1;
+            this.keys = new long[size];
+            this.flags = new int[size];
+            this.mimes = new String[size];
+            this.mask = size - 1;
+            this.otherFlags = new HashMap<>();
+            this.otherMimes = new HashMap<>();
+            for (final Map.Entry<String, Integer> entry: all.entrySet()) {
+                final String ext = entry.getKey();
+                final long key = pack(ext, 0, ext.length());
+                if (key == 0) {
+                    this.otherFlags.put(ext, entry.getValue());
+                    if (mime.containsKey(ext)) this.otherMimes.put(ext, mime.get(ext));
+                    continue;
+                }
+                int i = slot(key);
+                while (this.keys[i] != 0) i = (i + 1) & this.mask;
+                this.keys[i] = key;
+                this.flags[i] = entry.getValue();
+                this.mimes[i] = mime.get(ext);
+            }
+        }
+
+        private static void addFlags(final Map<String, Integer> all, final Set<String> set, final int flag) {
+            for (final String ext: set) all.merge(ext, flag, (a, b) -> a | b);
+        }
+
+        private int slot(long key) {
+            key *= 0x9E3779B97F4A7C15L;
+            return (int) (key ^ (key >>> 32)) & this.mask;
+        }
+
+        /**
+         * find the slot of an extension
+         * @return the slot or -1 if the extension is unknown or must be looked up in the other maps
+         */
+        private int find(final long key) {
+            int i = slot(key);
+            long k;
+            while ((k = this.keys[i]) != 0) {
+                if (k == key) return i;
+                i = (i + 1) & this.mask;
+            }
+            return -1;
+        }
+    }
+
+    private static volatile Table table;
+
+    /**
+     * pack up to eight ASCII characters, lower-cased, into a long value
+     * @return the packed characters or 0 if the text is empty, longer than eight characters or not ASCII
+     */
+    private static long pack(final CharSequence s, final int start, final int end) {
+        if (end - start > 8 || end <= start) return 0;
+        long key = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == 0 || c > 127) return 0;
+            if (c >= 'A' && c <= 'Z') c += 32;
+            key = (key << 8) | c;
+        }
+        return key;
+    }
+
+    /**
+     * get the classification flags of an extension
+     * @param s a text which contains the extension
+     * @param start the first character of the extension
+     * @param end the end of the extension, exclusive
+     * @return a bit mask of HTML, TEXT, IMAGE, AUDIO, VIDEO, APP, CTRL and MEDIA
+     */
+    public static int extensionFlags(final CharSequence s, int start, int end) {
+        // same as trim()
+        while (start < end && s.charAt(start) <= ' ') start++;
+        while (end > start && s.charAt(end - 1) <= ' ') end--;
+        final Table t = table;
+        final long key = pack(s, start, end);
+        if (key != 0) {
+            final int i = t.find(key);
+            return i < 0 ? 0 : t.flags[i];
+        }
+        if (start == end || t.otherFlags.isEmpty()) return 0;
+        final Integer f = t.otherFlags.get(s.subSequence(start, end).toString().toLowerCase());
+        return f == null ? 0 : f;
+    }
+
+    public static int extensionFlags(final String ext) {
+        if (ext == null) return 0;
+        return extensionFlags(ext, 0, ext.length());
+    }
+
+    // the mime type for an extension from the mime table or null
+    private static String mime(final String ext) {
+        final Table t = table;
+        final long key = pack(ext, 0, ext.length());
+        if (key == 0) return t.otherMimes.isEmpty() ? null : t.otherMimes.get(ext.toLowerCase());
+        final int i = t.find(key);
+        return i < 0 ? null : t.mimes[i];
     }
 
     private static void addSet(Set<String> set, final String extString) {
@@ -109,49 +253,39 @@ public class Classification {
     }
 
     public static boolean isHtmlExtension(String htmlExt) {
-        if (htmlExt == null) return false;
-        return htmlExtSet.contains(htmlExt.trim().toLowerCase());
+        return (extensionFlags(htmlExt) & HTML) != 0;
     }
 
     public static boolean isTextExtension(String textExt) {
-        if (textExt == null) return false;
-        return textExtSet.contains(textExt.trim().toLowerCase());
+        return (extensionFlags(textExt) & TEXT) != 0;
     }
 
     public static boolean isMediaExtension(String mediaExt) {
-        if (mediaExt == null) return false;
-        return mediaExtSet.contains(mediaExt.trim().toLowerCase());
+        return (extensionFlags(mediaExt) & MEDIA) != 0;
     }
 
     public static boolean isImageExtension(final String imageExt) {
-        if (imageExt == null) return false;
-        return imageExtSet.contains(imageExt.trim().toLowerCase());
+        return (extensionFlags(imageExt) & IMAGE) != 0;
     }
 
     public static boolean isAudioExtension(final String audioExt) {
-        if (audioExt == null) return false;
-        return audioExtSet.contains(audioExt.trim().toLowerCase());
+        return (extensionFlags(audioExt) & AUDIO) != 0;
     }
 
     public static boolean isVideoExtension(final String videoExt) {
-        if (videoExt == null) return false;
-        return videoExtSet.contains(videoExt.trim().toLowerCase());
+        return (extensionFlags(videoExt) & VIDEO) != 0;
     }
 
     public static boolean isApplicationExtension(final String appsExt) {
-        if (appsExt == null) return false;
-        return appsExtSet.contains(appsExt.trim().toLowerCase());
+        return (extensionFlags(appsExt) & APP) != 0;
     }
 
     public static boolean isControlExtension(final String ctrlExt) {
-        if (ctrlExt == null) return false;
-        return ctrlExtSet.contains(ctrlExt.trim().toLowerCase());
+        return (extensionFlags(ctrlExt) & CTRL) != 0;
     }
 
-    public static boolean isAnyKnownExtension(String ext) {
-        if (ext == null) return false;
-        ext = ext.trim().toLowerCase();
-        return textExtSet.contains(ext) || mediaExtSet.contains(ext) || ctrlExtSet.contains(ext);
+    public static boolean isAnyKnownExtension(final String ext) {
+        return (extensionFlags(ext) & (TEXT | MEDIA | CTRL)) != 0;
     }
 
     /**
@@ -161,12 +295,35 @@ public class Classification {
      * @return the content domain which classifies the content type
      */
     public static ContentDomain getContentDomainFromExt(final String ext) {
-        if (isTextExtension(ext)) return ContentDomain.TEXT;
-        if (isImageExtension(ext)) return ContentDomain.IMAGE;
-        if (isAudioExtension(ext)) return ContentDomain.AUDIO;
-        if (isVideoExtension(ext)) return ContentDomain.VIDEO;
-        if (isApplicationExtension(ext)) return ContentDomain.APP;
-        if (isControlExtension(ext)) return ContentDomain.CTRL;
+        return getContentDomainFromFlags(extensionFlags(ext));
+    }
+
+    /**
+     * Get the content domain of a document according to the extension of a file name, as computed by
+     * MultiProtocolURL.getFileExtension(), without creating a substring for the extension.
+     * @param s a text which contains the file name, i.e. the path of an url
+     * @param start the first character of the file name
+     * @return the content domain which classifies the content type
+     */
+    public static ContentDomain getContentDomainFromFileName(final String s, final int start) {
+        int p = s.lastIndexOf('.');
+        if (p < start) return ContentDomain.ALL;
+        final int q = s.lastIndexOf('?');
+        if (q < start) return getContentDomainFromFlags(extensionFlags(s, p + 1, s.length()));
+        if (p > q) {
+            p = s.lastIndexOf('.', q);
+            if (p < start) return ContentDomain.ALL;
+        }
+        return getContentDomainFromFlags(extensionFlags(s, p + 1, q));
+    }
+
+    private static ContentDomain getContentDomainFromFlags(final int flags) {
+        if ((flags & TEXT) != 0) return ContentDomain.TEXT;
+        if ((flags & IMAGE) != 0) return ContentDomain.IMAGE;
+        if ((flags & AUDIO) != 0) return ContentDomain.AUDIO;
+        if ((flags & VIDEO) != 0) return ContentDomain.VIDEO;
+        if ((flags & APP) != 0) return ContentDomain.APP;
+        if ((flags & CTRL) != 0) return ContentDomain.CTRL;
         return ContentDomain.ALL;
     }
 
@@ -190,8 +347,6 @@ public class Classification {
         return mimeType.toUpperCase().startsWith("IMAGE");
     }
 
-    private static final Properties mimeTable = new Properties();
-
     public static void init(final File mimeFile) {
         if (mimeTable.isEmpty()) {
             // load the mime table
@@ -212,6 +367,7 @@ public class Classification {
             if (mime.startsWith("video/")) videoExtSet.add(ext.toLowerCase());
             if (mime.startsWith("application/")) appsExtSet.add(ext.toLowerCase());
         }
+        table = new Table();
     }
 
     public static int countMimes() {
@@ -219,11 +375,15 @@ public class Classification {
     }
 
     public static String ext2mime(final String ext) {
-        return ext == null ? "application/octet-stream" : mimeTable.getProperty(ext.toLowerCase(), "application/" + (ext == null || ext.length() == 0 ? "octet-stream" : ext));
+        if (ext == null) return "application/octet-stream";
+        final String mime = mime(ext);
+        return mime == null ? "application/" + (ext.length() == 0 ? "octet-stream" : ext) : mime;
     }
 
     public static String ext2mime(final String ext, final String dfltMime) {
-        return ext == null ? dfltMime : mimeTable.getProperty(ext.toLowerCase(), dfltMime);
+        if (ext == null) return dfltMime;
+        final String mime = mime(ext);
+        return mime == null ? dfltMime : mime;
     }
 
     public static String url2mime(final MultiProtocolURL url, final String dfltMime) {
@@ -233,4 +393,71 @@ public class Classification {
     public static String url2mime(final MultiProtocolURL url) {
         return url == null ? "application/octet-stream" : ext2mime(MultiProtocolURL.getFileExtension(url.getFileName()));
     }
+
+    // the classification with the extension sets, as it was done before the table was compiled; used in the test below
+    private static ContentDomain getContentDomainFromSets(String ext) {
+        ext = ext.trim().toLowerCase();
+        if (textExtSet.contains(ext)) return ContentDomain.TEXT;
+        if (imageExtSet.contains(ext)) return ContentDomain.IMAGE;
+        if (audioExtSet.contains(ext)) return ContentDomain.AUDIO;
+        if (videoExtSet.contains(ext)) return ContentDomain.VIDEO;
+        if (appsExtSet.contains(ext)) return ContentDomain.APP;
+        if (ctrlExtSet.contains(ext)) return ContentDomain.CTRL;
+        return ContentDomain.ALL;
+    }
+
+    public static void main(final String[] args) {
+        // optional: a mime table, i.e. defaults/httpd.mime
+        if (args.length > 0) init(new File(args[0]));
+
+        // differential test of the table against the extension sets and the mime table
+        final Set<String> exts = new HashSet<>();
+        final java.util.List<Set<String>> sets = java.util.Arrays.asList(htmlExtSet, textExtSet, mediaExtSet, imageExtSet, audioExtSet, videoExtSet, appsExtSet, ctrlExtSet);
+        for (final Set<String> set: sets) exts.addAll(set);
+        for (final Object ext: mimeTable.keySet()) exts.add((String) ext);
+        final java.util.List<String> tests = new java.util.ArrayList<>();
+        final java.util.Random r = new java.util.Random(0);
+        for (final String ext: exts) {
+            tests.add(ext);
+            tests.add(ext.toUpperCase());
+            tests.add(" " + ext + "\t");
+            tests.add(ext + "x");
+            if (ext.length() > 1) tests.add(ext.substring(1));
+        }
+        final String alphabet = "abcdefghijklmnopqrstuvwxyz0123456789-_.?/ AZ\u00e4\u0130";
+        for (int i = 0; i < 10000; i++) {
+            final char[] c = new char[r.nextInt(10)];
+            for (int j = 0; j < c.length; j++) c[j] = alphabet.charAt(r.nextInt(alphabet.length()));
+            tests.add(new String(c));
+        }
+        int errors = 0;
+        for (final String ext: tests) {
+            final String lc = ext.trim().toLowerCase();
+            final String fileName = "/path/file." + ext;
+            final boolean ok =
+                getContentDomainFromExt(ext) == getContentDomainFromSets(ext) &&
+                getContentDomainFromFileName(fileName, 6) == getContentDomainFromSets(MultiProtocolURL.getFileExtension(fileName.substring(6))) &&
+                getContentDomainFromFileName(ext, 0) == getContentDomainFromSets(MultiProtocolURL.getFileExtension(ext)) &&
+                isHtmlExtension(ext) == htmlExtSet.contains(lc) && isMediaExtension(ext) == mediaExtSet.contains(lc) &&
+                isAnyKnownExtension(ext) == (textExtSet.contains(lc) || mediaExtSet.contains(lc) || ctrlExtSet.contains(lc)) &&
+                ext2mime(ext).equals(mimeTable.getProperty(ext.toLowerCase(), "application/" + (ext.length() == 0 ? "octet-stream" : ext))) &&
+                ext2mime(ext, "x").equals(mimeTable.getProperty(ext.toLowerCase(), "x"));
+            if (!ok && errors++ < 10) System.out.println("difference for '" + ext + "'");
+        }
+        System.out.println("differential test: " + tests.size() + " extensions, " + errors + " differences");
+
+        // microbenchmark: content domain of file names with the sets and with the table
+        final String[] names = new String[tests.size()];
+        for (int i = 0; i < names.length; i++) names[i] = "file." + tests.get(i);
+        for (int round = 0; round < 5; round++) {
+            int h = 0;
+            long t = System.nanoTime();
+            for (int k = 0; k < 20; k++) for (final String name: names) h += getContentDomainFromSets(MultiProtocolURL.getFileExtension(name)).ordinal();
+            final long setTime = System.nanoTime() - t;
+            t = System.nanoTime();
+            for (int k = 0; k < 20; k++) for (final String name: names) h += getContentDomainFromFileName(name, 0).ordinal();
+            final long tableTime = System.nanoTime() - t;
+            System.out.println("round " + round + " (" + (h & 1) + "), ns per file name: sets " + setTime / names.length / 20 + ", table " + tableTime / names.length / 20);
+        }
+    }
 }
@@ -0,0 +1,266 @@
+/**
+ *  CompositeBuffer
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sequence of bytes which is stored in a list of components instead of one array.
+ * Written bytes go into chunks from a BufferPool, which grow in size up to BufferPool.MAX_SIZE;
+ * existing arrays and pooled buffers can be appended without copying them.
+ * This replaces ByteArrayOutputStream where the content is collected only to be written or converted once:
+ * growing the content never copies, and the chunks are re-used after close().
+ * The content must be read before the composite buffer is closed.
+ */
+public final class CompositeBuffer extends OutputStream {
+
+    private final BufferPool pool;
+    private final List<java.nio.ByteBuffer> components; // the content of a component is between 0 and its position
+    private final List<BufferPool.Buffer> owned;
+    private java.nio.ByteBuffer tail; // the component which is written, or null
+    private int nextChunkSize;
+    private long size;
+    private boolean closed;
+
+    public CompositeBuffer() {
+        this(BufferPool.HEAP, 4096);
+    }
+
+    /**
+     * create a composite buffer
+     * @param pool the pool for the chunks of written bytes
+     * @param chunkSize the size of the first chunk; each following chunk is twice as large
+     */
+    public CompositeBuffer(final BufferPool pool, final int chunkSize) {
+        this.pool = pool;
+        this.components = new ArrayList<>(4);
+        this.owned = new ArrayList<>(4);
+        this.tail = null;
+        this.nextChunkSize = Math.max(BufferPool.MIN_SIZE, Math.min(BufferPool.MAX_SIZE, chunkSize));
+        this.size = 0;
+        this.closed = false;
+    }
+
+    private void ensureOpen() {
+        if (this.closed) throw new IllegalStateException("composite buffer is closed");
+    }
+
+    private void nextChunk() {
+        final BufferPool.Buffer chunk = this.pool.allocate(this.nextChunkSize);
+        this.nextChunkSize = Math.min(BufferPool.MAX_SIZE, this.nextChunkSize * 2);
+        this.owned.add(chunk);
+        this.tail = chunk.nio();
+        this.components.add(this.tail);
+    }
+
+    @Override
+    public void write(final int b) {
+        ensureOpen();
+        if (this.tail == null || !this.tail.hasRemaining()) nextChunk();
+        this.tail.put((byte) b);
+        this.size++;
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) {
+        ensureOpen();
+        this.size += len;
+        while (len > 0) {
+            if (this.tail == null || !this.tail.hasRemaining()) nextChunk();
+            final int l = Math.min(len, this.tail.remaining());
+            this.tail.put(b, off, l);
+            off += l;
+            len -= l;
+        }
+    }
+
+    /**
+     * read a stream to its end into this buffer
+     * @param is the stream, it is not closed
+     * @return the number of bytes read
+     * @throws IOException
+     */
+    public long readFrom(final InputStream is) throws IOException {
+        ensureOpen();
+        long count = 0;
+        byte[] bounce = null; // streams cannot read into the chunks of a direct pool
+        while (true) {
+            if (this.tail == null || !this.tail.hasRemaining()) nextChunk();
+            final int l;
+            if (this.tail.hasArray()) {
+                l = is.read(this.tail.array(), this.tail.arrayOffset() + this.tail.position(), this.tail.remaining());
+                if (l > 0) this.tail.position(this.tail.position() + l);
+            } else {
+                if (bounce == null) bounce = new byte[8192];
+                l = is.read(bounce, 0, Math.min(bounce.length, this.tail.remaining()));
+                if (l > 0) this.tail.put(bounce, 0, l);
+            }
+            if (l < 0) return count;
+            this.size += l;
+            count += l;
+        }
+    }
+
+    /**
+     * append an array without copying it; the array must not be changed afterwards
+     * @param b the array
+     * @return this
+     */
+    public CompositeBuffer append(final byte[] b) {
+        ensureOpen();
+        if (b.length == 0) return this;
+        final java.nio.ByteBuffer component = java.nio.ByteBuffer.wrap(b);
+        component.position(b.length);
+        this.components.add(component);
+        this.tail = null;
+        this.size += b.length;
+        return this;
+    }
+
+    /**
+     * append the bytes between position and limit of a pooled buffer without copying them.
+     * The composite buffer takes over the reference of the caller and releases it when it is closed.
+     * @param buffer the buffer
+     * @return this
+     */
+    public CompositeBuffer append(final BufferPool.Buffer buffer) {
+        ensureOpen();
+        final java.nio.ByteBuffer component = buffer.nio().slice();
+        component.position(component.limit());
+        this.owned.add(buffer);
+        this.components.add(component);
+        this.tail = null;
+        this.size += component.limit();
+        return this;
+    }
+
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * @return the content in one array
+     */
+    public byte[] toByteArray() {
+        ensureOpen();
+        if (this.size > Integer.MAX_VALUE - 8) throw new OutOfMemoryError("content of " + this.size + " bytes is too large for an array");
+        if (this.components.size() == 1 && this.owned.isEmpty()) return this.components.get(0).array(); // an appended array
+        final byte[] b = new byte[(int) this.size];
+        int p = 0;
+        for (final java.nio.ByteBuffer component: this.components) {
+            final java.nio.ByteBuffer c = component.duplicate();
+            c.flip();
+            final int l = c.remaining();
+            c.get(b, p, l);
+            p += l;
+        }
+        return b;
+    }
+
+    public String toString(final Charset charset) {
+        return new String(toByteArray(), charset);
+    }
+
+    /**
+     * write the content to a stream
+     * @param os the target stream, it is not closed
+     * @throws IOException
+     */
+    public void writeTo(final OutputStream os) throws IOException {
+        ensureOpen();
+        byte[] copy = null;
+        for (final java.nio.ByteBuffer component: this.components) {
+            final java.nio.ByteBuffer c = component.duplicate();
+            c.flip();
+            if (c.hasArray()) {
+                os.write(c.array(), c.arrayOffset(), c.remaining());
+            } else {
+                if (copy == null) copy = new byte[8192];
+                while (c.hasRemaining()) {
+                    final int l = Math.min(copy.length, c.remaining());
+                    c.get(copy, 0, l);
+                    os.write(copy, 0, l);
+                }
+            }
+        }
+    }
+
+    /**
+     * get a stream which reads the content without copying it; the stream must be read before this buffer is closed
+     * @return the stream
+     */
+    public InputStream getInputStream() {
+        ensureOpen();
+        final List<java.nio.ByteBuffer> parts = new ArrayList<>(this.components.size());
+        for (final java.nio.ByteBuffer component: this.components) {
+            final java.nio.ByteBuffer c = component.duplicate();
+            c.flip();
+            parts.add(c);
+        }
+        return new InputStream() {
+            private int i = 0;
+
+            private java.nio.ByteBuffer current() {
+                while (this.i < parts.size() && !parts.get(this.i).hasRemaining()) this.i++;
+                return this.i < parts.size() ? parts.get(this.i) : null;
+            }
+
+            @Override
+            public int read() {
+                final java.nio.ByteBuffer c = current();
+                return c == null ? -1 : c.get() & 0xff;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) {
+                if (len == 0) return 0;
+                final java.nio.ByteBuffer c = current();
+                if (c == null) return -1;
+                final int l = Math.min(len, c.remaining());
+                c.get(b, off, l);
+                return l;
+            }
+
+            @Override
+            public int available() {
+                final java.nio.ByteBuffer c = current();
+                return c == null ? 0 : c.remaining();
+            }
+        };
+    }
+
+    /**
+     * give the chunks and appended pooled buffers back to their pool; the content is not available afterwards
+     */
+    @Override
+    public void close() {
+        if (this.closed) return;
+        this.closed = true;
+        for (final BufferPool.Buffer buffer: this.owned) buffer.release();
+        this.owned.clear();
+        this.components.clear();
+        this.tail = null;
+    }
+}
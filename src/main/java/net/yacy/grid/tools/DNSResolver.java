@@ -0,0 +1,383 @@
+/**
+ *  DNSResolver
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.tools;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An asynchronous host name resolver with a positive and a negative cache.
+ * Every cache entry has its own expiry time; failed lookups are remembered for a much shorter time
+ * than successful ones so a host which is temporary unavailable is asked again soon.
+ * Concurrent lookups of the same host are coalesced into a single request to the upstream resolver,
+ * and the number of concurrent upstream requests is bounded by the size of the lookup thread pool.
+ * A lookup which is rejected because the pool is saturated or which times out is not cached.
+ *
+ * The upstream is pluggable, the default asks the operating system with InetAddress.getByName().
+ * For tests the in-memory StubUpstream can be used which does not need any network access.
+ */
+public class DNSResolver {
+
+    public static long defaultPositiveTTL = 600000L;
+    public static long defaultNegativeTTL = 30000L;
+    public static int defaultConcurrency = 32;
+    public static int defaultQueueSize = 1000;
+
+    /**
+     * An upstream resolver
+     */
+    public interface Upstream {
+        /**
+         * resolve a host name
+         * @param host the host name in lower case
+         * @return the address of the host
+         * @throws UnknownHostException if the host does not exist
+         * @throws IOException if the upstream resolver cannot be asked
+         */
+        public InetAddress lookup(String host) throws IOException;
+    }
+
+    public final static Upstream SYSTEM = host -> InetAddress.getByName(host);
+
+    /**
+     * An in-memory upstream for tests. Unknown hosts throw UnknownHostException.
+     * Every lookup can be delayed to simulate a slow name server.
+     */
+    public static class StubUpstream implements Upstream {
+        private final Map<String, InetAddress> hosts = new ConcurrentHashMap<>();
+        private final AtomicInteger lookups = new AtomicInteger(0);
+        private volatile long delay = 0;
+
+        public StubUpstream put(final String host, final InetAddress address) {
+            this.hosts.put(host, address);
+            return this;
+        }
+
+        public StubUpstream remove(final String host) {
+            this.hosts.remove(host);
+            return this;
+        }
+
+        public StubUpstream setDelay(final long delay) {
+            this.delay = delay;
+            return this;
+        }
+
+        /**
+         * @return the number of lookups which reached this upstream
+         */
+        public int getLookups() {
+            return this.lookups.get();
+        }
+
+        @Override
+        public InetAddress lookup(final String host) throws IOException {
+            this.lookups.incrementAndGet();
+            if (this.delay > 0) try {Thread.sleep(this.delay);} catch (final InterruptedException e) {
+                throw new IOException("interrupted");
+            }
+            final InetAddress address = this.hosts.get(host);
+            if (address == null) throw new UnknownHostException(host);
+            return address;
+        }
+    }
+
+    /**
+     * A cache policy decides if a resolved address is put into the positive cache.
+     */
+    public interface CachePolicy {
+        public boolean cacheable(String host, InetAddress address);
+    }
+
+    private final static class Entry {
+        private final InetAddress address;
+        private final long expires;
+        private Entry(final InetAddress address, final long expires) {
+            this.address = address;
+            this.expires = expires;
+        }
+    }
+
+    private final String name;
+    private final Upstream upstream;
+    private final CachePolicy policy;
+    private final long positiveTTL, negativeTTL;
+    private final ARC<String, Entry> positive;
+    private final ARC<String, Long> negative; // host to expiry time
+    private final ConcurrentHashMap<String, CompletableFuture<InetAddress>> inflight;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder hits, negativeHits, misses, expired, lookups, coalesced, failures, rejected, timeouts;
+
+    /**
+     * create a resolver with default settings
+     * @param name the name of the resolver, used for the thread names
+     * @param upstream the upstream resolver
+     * @param policy the cache policy
+     * @param positiveSize the maximum number of cached addresses
+     * @param negativeSize the maximum number of cached failures
+     */
+    public DNSResolver(final String name, final Upstream upstream, final CachePolicy policy, final int positiveSize, final int negativeSize) {
+        this(name, upstream, policy, positiveSize, negativeSize, defaultPositiveTTL, defaultNegativeTTL, defaultConcurrency, defaultQueueSize);
+    }
+
+    /**
+     * create a resolver
+     * @param name the name of the resolver, used for the thread names
+     * @param upstream the upstream resolver
+     * @param policy the cache policy
+     * @param positiveSize the maximum number of cached addresses
+     * @param negativeSize the maximum number of cached failures
+     * @param positiveTTL the time in milliseconds that a resolved address is cached
+     * @param negativeTTL the time in milliseconds that a failed lookup is cached
+     * @param concurrency the maximum number of concurrent requests to the upstream
+     * @param queueSize the maximum number of lookups which wait for a free upstream slot
+     */
+    public DNSResolver(final String name, final Upstream upstream, final CachePolicy policy, final int positiveSize, final int negativeSize,
+            final long positiveTTL, final long negativeTTL, final int concurrency, final int queueSize) {
+        this.name = name;
+        this.upstream = upstream;
+        this.policy = policy;
+        this.positiveTTL = positiveTTL;
+        this.negativeTTL = negativeTTL;
+        this.positive = new TinyLFUARC<>(positiveSize);
+        this.negative = new TinyLFUARC<>(negativeSize);
+        this.inflight = new ConcurrentHashMap<>();
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueSize), r -> {
+            final Thread t = new Thread(r, name + ".lookup-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.hits = new LongAdder();
+        this.negativeHits = new LongAdder();
+        this.misses = new LongAdder();
+        this.expired = new LongAdder();
+        this.lookups = new LongAdder();
+        this.coalesced = new LongAdder();
+        this.failures = new LongAdder();
+        this.rejected = new LongAdder();
+        this.timeouts = new LongAdder();
+    }
+
+    /**
+     * look up a host in the cache only
+     * @param host the host name in lower case
+     * @return the address, null if the host is known not to exist
+     * @throws UnknownHostException if the host is not in the cache or the cache entry has expired
+     */
+    public InetAddress getCached(final String host) throws UnknownHostException {
+        final long now = System.currentTimeMillis();
+        final Entry entry = this.positive.get(host);
+        if (entry != null) {
+            if (entry.expires > now) {
+                this.hits.increment();
+                return entry.address;
+            }
+            this.positive.remove(host);
+            this.expired.increment();
+        }
+        final Long expires = this.negative.get(host);
+        if (expires != null) {
+            if (expires.longValue() > now) {
+                this.negativeHits.increment();
+                return null;
+            }
+            this.negative.remove(host);
+            this.expired.increment();
+        }
+        this.misses.increment();
+        throw new UnknownHostException("host not in cache");
+    }
+
+    /**
+     * resolve a host asynchronously. The future completes with null if the host does not exist,
+     * it completes exceptionally if the lookup was rejected because too many lookups are waiting.
+     * @param host the host name in lower case
+     * @return a future for the address
+     */
+    public CompletableFuture<InetAddress> resolveAsync(final String host) {
+        try {
+            return CompletableFuture.completedFuture(getCached(host));
+        } catch (final UnknownHostException e) {}
+
+        // coalesce with a lookup of the same host that is already running
+        final CompletableFuture<InetAddress> future = new CompletableFuture<>();
+        final CompletableFuture<InetAddress> running = this.inflight.putIfAbsent(host, future);
+        if (running != null) {
+            this.coalesced.increment();
+            return running;
+        }
+        try {
+            this.executor.execute(() -> lookup(host, future));
+        } catch (final RejectedExecutionException e) {
+            this.rejected.increment();
+            this.inflight.remove(host, future);
+            future.completeExceptionally(new IOException("too many concurrent lookups in " + this.name));
+        }
+        return future;
+    }
+
+    private void lookup(final String host, final CompletableFuture<InetAddress> future) {
+        this.lookups.increment();
+        InetAddress address = null;
+        Throwable error = null;
+        try {
+            try {
+                address = this.upstream.lookup(host);
+            } catch (final IOException | RuntimeException e) {
+                this.failures.increment();
+            }
+            final long now = System.currentTimeMillis();
+            if (address == null) {
+                this.negative.put(host, now + this.negativeTTL);
+            } else if (this.policy.cacheable(host, address)) {
+                this.positive.put(host, new Entry(address, now + this.positiveTTL));
+                this.negative.remove(host);
+            }
+        } catch (final Throwable e) {
+            // i.e. an Error in the upstream resolver; the future must be completed anyway or all waiting requests for the host hang
+            this.failures.increment();
+            error = e;
+            throw e;
+        } finally {
+            // the cache is written before the lookup is removed; a concurrent request finds either of both
+            this.inflight.remove(host, future);
+            if (error == null) future.complete(address); else future.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * resolve a host and wait for the result
+     * @param host the host name in lower case
+     * @param timeout the maximum waiting time in milliseconds
+     * @return the address or null if the host does not exist or the lookup did not finish in time
+     */
+    public InetAddress resolve(final String host, final long timeout) {
+        try {
+            return resolveAsync(host).get(timeout, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            // the lookup continues in the background and fills the cache when it finishes
+            this.timeouts.increment();
+            return null;
+        } catch (final InterruptedException | ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * put an address into the cache which is known from a different source
+     * @param host the host name in lower case
+     * @param address the address
+     */
+    public void put(final String host, final InetAddress address) {
+        this.positive.put(host, new Entry(address, System.currentTimeMillis() + this.positiveTTL));
+        this.negative.remove(host);
+    }
+
+    /**
+     * find the host names that resolve to an address
+     * @param address the address
+     * @return the host names from the positive cache which are not expired
+     */
+    public Collection<String> getHostNames(final InetAddress address) {
+        final long now = System.currentTimeMillis();
+        final Collection<String> hosts = new ArrayList<>(1);
+        for (final Map.Entry<String, Entry> e: this.positive) {
+            final Entry entry = e.getValue();
+            if (entry.expires > now && address.equals(entry.address)) hosts.add(e.getKey());
+        }
+        return hosts;
+    }
+
+    public int positiveSize() {
+        return this.positive.size();
+    }
+
+    public int negativeSize() {
+        return this.negative.size();
+    }
+
+    public void clear() {
+        this.positive.clear();
+        this.negative.clear();
+    }
+
+    /**
+     * get the resolver statistics
+     * @return a map with the cache sizes and the counters of resolver events
+     */
+    public Map<String, Object> getStatistics() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", this.name);
+        stats.put("positive", this.positive.size());
+        stats.put("negative", this.negative.size());
+        stats.put("inflight", this.inflight.size());
+        stats.put("queued", this.executor.getQueue().size());
+        stats.put("hits", this.hits.sum());
+        stats.put("negative_hits", this.negativeHits.sum());
+        stats.put("misses", this.misses.sum());
+        stats.put("expired", this.expired.sum());
+        stats.put("lookups", this.lookups.sum());
+        stats.put("coalesced", this.coalesced.sum());
+        stats.put("failures", this.failures.sum());
+        stats.put("rejected", this.rejected.sum());
+        stats.put("timeouts", this.timeouts.sum());
+        return stats;
+    }
+
+    public static void main(final String[] args) {
+        // an offline test with the stub upstream
+        final StubUpstream stub = new StubUpstream().setDelay(200);
+        try {
+            stub.put("example.org", InetAddress.getByAddress("example.org", new byte[]{93, (byte) 184, (byte) 216, 34}));
+        } catch (final UnknownHostException e) {}
+        final DNSResolver resolver = new DNSResolver("test", stub, (host, address) -> true, 100, 100, 1000, 300, 4, 10);
+        final ArrayList<CompletableFuture<InetAddress>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) futures.add(resolver.resolveAsync("example.org"));
+        for (final CompletableFuture<InetAddress> f: futures) f.join();
+        System.out.println("100 concurrent requests, upstream lookups: " + stub.getLookups());
+        System.out.println("unknown host: " + resolver.resolve("unknown.org", 1000) + ", again: " + resolver.resolve("unknown.org", 1000) + ", upstream lookups: " + stub.getLookups());
+        try {Thread.sleep(400);} catch (final InterruptedException e) {}
+        System.out.println("after negative ttl: " + resolver.resolve("unknown.org", 1000) + ", upstream lookups: " + stub.getLookups());
+        System.out.println("timeout: " + resolver.resolve("slow.org", 50));
+        System.out.println(resolver.getStatistics());
+
+        // an Error in the upstream resolver must not leave the lookup in flight
+        final DNSResolver broken = new DNSResolver("broken", host -> {throw new AssertionError("broken upstream");}, (host, address) -> true, 100, 100);
+        System.out.println("upstream error: " + broken.resolve("error.org", 1000) + ", again: " + broken.resolve("error.org", 1000));
+        System.out.println(broken.getStatistics());
+    }
+}
@@ -21,7 +21,19 @@ package net.yacy.grid.tools;
 
 import java.text.DateFormat;
 import java.text.ParseException;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.SignStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -29,9 +41,16 @@ import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
-import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 
+/**
+ * Date parsing and formatting for index documents, http headers and queries.
+ * The *Formatter fields are immutable java.time formatters which can be shared between threads without locking;
+ * the SimpleDateFormat fields of former versions are kept for compatibility and are deprecated.
+ * The fixed ISO8601 and RFC1123 layouts which are used in every document and response are formatted and
+ * parsed with hand-written code; other variants of these layouts fall back to the java.time formatters.
+ * All dates are UTC.
+ */
 public class DateParser {
 
     public final static long HOUR_MILLIS = 60 * 60 * 1000;
@@ -44,18 +63,32 @@ public class DateParser {
     public final static String PATTERN_MONTHDAYHOURMINUTE = "yyyy-MM-dd HH:mm"; // this is the format which morris.js understands for date-histogram graphs
     public final static String PATTERN_RFC1123 = "EEE, dd MMM yyyy HH:mm:ss Z"; // with numeric time zone indicator as defined in RFC5322
 
-    /** Date formatter/non-sloppy parser for W3C datetime (ISO8601) in GMT/UTC */
-    public final static SimpleDateFormat iso8601Format = new SimpleDateFormat(PATTERN_ISO8601, Locale.US);
-    public final static SimpleDateFormat iso8601MillisFormat = new SimpleDateFormat(PATTERN_ISO8601MILLIS, Locale.US);
-    public final static DateFormat dayDateFormat = new SimpleDateFormat(PATTERN_MONTHDAY, Locale.US);
-    public final static DateFormat minuteDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.US);
-    public final static DateFormat secondDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
-    public final static SimpleDateFormat FORMAT_RFC1123 = new SimpleDateFormat(PATTERN_RFC1123, Locale.US);
+    public final static TimeZone UTCtimeZone = TimeZone.getTimeZone("UTC");
 
-    public final static DateTimeFormatter utcFormatter = ISODateTimeFormat.dateTime().withZoneUTC();
+    /** Date formatter/non-sloppy parser for W3C datetime (ISO8601) in GMT/UTC */
+    public final static DateTimeFormatter iso8601Formatter = DateTimeFormatter.ofPattern(PATTERN_ISO8601, Locale.US).withZone(ZoneOffset.UTC);
+    public final static DateTimeFormatter iso8601MillisFormatter = DateTimeFormatter.ofPattern(PATTERN_ISO8601MILLIS, Locale.US).withZone(ZoneOffset.UTC);
+    public final static DateTimeFormatter dayDateFormatter = DateTimeFormatter.ofPattern(PATTERN_MONTHDAY, Locale.US).withZone(ZoneOffset.UTC);
+    public final static DateTimeFormatter minuteDateFormatter = DateTimeFormatter.ofPattern(PATTERN_MONTHDAYHOURMINUTE, Locale.US).withZone(ZoneOffset.UTC);
+    public final static DateTimeFormatter secondDateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss", Locale.US).withZone(ZoneOffset.UTC);
+    public final static DateTimeFormatter rfc1123Formatter = DateTimeFormatter.ofPattern(PATTERN_RFC1123, Locale.US).withZone(ZoneOffset.UTC);
 
-    public final static Calendar UTCCalendar = Calendar.getInstance();
-    public final static TimeZone UTCtimeZone = TimeZone.getTimeZone("UTC");
+    /** @deprecated not thread-safe, callers must synchronize on the instance; use iso8601Formatter or formatISO8601 */
+    @Deprecated public final static SimpleDateFormat iso8601Format = new SimpleDateFormat(PATTERN_ISO8601, Locale.US);
+    /** @deprecated not thread-safe, callers must synchronize on the instance; use iso8601MillisFormatter or formatISO8601Millis */
+    @Deprecated public final static SimpleDateFormat iso8601MillisFormat = new SimpleDateFormat(PATTERN_ISO8601MILLIS, Locale.US);
+    /** @deprecated not thread-safe, callers must synchronize on the instance; use dayDateFormatter */
+    @Deprecated public final static DateFormat dayDateFormat = new SimpleDateFormat(PATTERN_MONTHDAY, Locale.US);
+    /** @deprecated not thread-safe, callers must synchronize on the instance; use minuteDateFormatter */
+    @Deprecated public final static DateFormat minuteDateFormat = new SimpleDateFormat(PATTERN_MONTHDAYHOURMINUTE, Locale.US);
+    /** @deprecated not thread-safe, callers must synchronize on the instance; use secondDateFormatter */
+    @Deprecated public final static DateFormat secondDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+    /** @deprecated not thread-safe, callers must synchronize on the instance; use rfc1123Formatter or formatRFC1123 */
+    @Deprecated public final static SimpleDateFormat FORMAT_RFC1123 = new SimpleDateFormat(PATTERN_RFC1123, Locale.US);
+    /** @deprecated use iso8601MillisFormatter */
+    @Deprecated public final static org.joda.time.format.DateTimeFormatter utcFormatter = ISODateTimeFormat.dateTime().withZoneUTC();
+    /** @deprecated a shared calendar is not thread-safe; use Calendar.getInstance(UTCtimeZone) */
+    @Deprecated public final static Calendar UTCCalendar = Calendar.getInstance();
     static {
         UTCCalendar.setTimeZone(UTCtimeZone);
         iso8601Format.setCalendar(UTCCalendar);
@@ -66,6 +99,23 @@ public class DateParser {
         FORMAT_RFC1123.setCalendar(UTCCalendar);
     }
 
+    // parsers for the query date formats which accept one-digit months, days and hours like the former SimpleDateFormat parsers
+    private final static DateTimeFormatter dayDateParser = queryDateParser(false, false);
+    private final static DateTimeFormatter minuteDateParser = queryDateParser(true, false);
+    private final static DateTimeFormatter secondDateParser = queryDateParser(true, true);
+
+    private static DateTimeFormatter queryDateParser(final boolean minutes, final boolean seconds) {
+        final DateTimeFormatterBuilder b = new DateTimeFormatterBuilder()
+                .appendValue(ChronoField.YEAR, 1, 9, SignStyle.NORMAL).appendLiteral('-')
+                .appendValue(ChronoField.MONTH_OF_YEAR, 1, 2, SignStyle.NOT_NEGATIVE).appendLiteral('-')
+                .appendValue(ChronoField.DAY_OF_MONTH, 1, 2, SignStyle.NOT_NEGATIVE);
+        if (minutes) b.appendLiteral(' ')
+                .appendValue(ChronoField.HOUR_OF_DAY, 1, 2, SignStyle.NOT_NEGATIVE).appendLiteral(':')
+                .appendValue(ChronoField.MINUTE_OF_HOUR, 1, 2, SignStyle.NOT_NEGATIVE);
+        if (seconds) b.appendLiteral(':').appendValue(ChronoField.SECOND_OF_MINUTE, 1, 2, SignStyle.NOT_NEGATIVE);
+        return b.toFormatter(Locale.US);
+    }
+
     /**
      * parse a date string for a given time zone
      * @param dateString in format "yyyy-MM-dd", "yyyy-MM-dd HH:mm" or "yyyy-MM-dd_HH:mm"
@@ -74,37 +124,45 @@ public class DateParser {
      * @throws ParseException if the format of the date string is not well-formed
      */
     public static Calendar parse(String dateString, final int timezoneOffset) throws ParseException, NumberFormatException {
-        Calendar cal = Calendar.getInstance(UTCtimeZone);
+        final Calendar cal = Calendar.getInstance(UTCtimeZone);
         if ("now".equals(dateString)) return cal;
         if ("hour".equals(dateString)) {cal.setTime(oneHourAgo()); return cal;}
         if ("day".equals(dateString)) {cal.setTime(oneDayAgo()); return cal;}
         if ("week".equals(dateString)) {cal.setTime(oneWeekAgo()); return cal;}
-        dateString = dateString.replaceAll("_", " ");
-        int p = -1;
-        if ((p = dateString.indexOf(':')) > 0) {
-            if (dateString.indexOf(':', p + 1) > 0)
-                synchronized (secondDateFormat) {
-                    cal.setTime(secondDateFormat.parse(dateString));
-                } else synchronized (minuteDateFormat) {
-                    cal.setTime(minuteDateFormat.parse(dateString));
-                }
-        } else synchronized (dayDateFormat) {
-            cal.setTime(dayDateFormat.parse(dateString));
+        dateString = dateString.replace('_', ' ');
+        final int p = dateString.indexOf(':');
+        final long millis;
+        if (p > 0) {
+            final DateTimeFormatter parser = dateString.indexOf(':', p + 1) > 0 ? secondDateParser : minuteDateParser;
+            millis = LocalDateTime.from(parsePrefix(parser, dateString)).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } else {
+            millis = LocalDate.from(parsePrefix(dayDateParser, dateString)).toEpochDay() * DAY_MILLIS;
         }
+        cal.setTimeInMillis(millis);
         cal.add(Calendar.MINUTE, timezoneOffset); // add a correction; i.e. for UTC+1 -60 minutes is added to patch a time given in UTC+1 to the actual time at UTC
         return cal;
     }
 
+    // parse the beginning of a string, trailing characters are ignored
+    private static TemporalAccessor parsePrefix(final DateTimeFormatter parser, final String s) throws ParseException {
+        final ParsePosition pos = new ParsePosition(0);
+        try {
+            return parser.parse(s, pos);
+        } catch (final DateTimeException e) {
+            throw new ParseException("cannot parse date '" + s + "': " + e.getMessage(), pos.getErrorIndex() < 0 ? 0 : pos.getErrorIndex());
+        }
+    }
+
     public static Date iso8601MillisParser(String date) {
         try {
-            return iso8601MillisFormat.parse(date);
-        } catch (ParseException | NumberFormatException e) {
+            return parseISO8601(date);
+        } catch (ParseException e) {
             return new Date();
         }
     }
 
     public static String toPostDate(Date d) {
-        return secondDateFormat.format(d).replace(' ', '_');
+        return secondDateFormatter.format(d.toInstant()).replace(' ', '_');
     }
 
     public static int getTimezoneOffset() {
@@ -125,20 +183,169 @@ public class DateParser {
         return new Date(System.currentTimeMillis() - WEEK_MILLIS);
     }
 
-    private static long lastRFC1123long = 0;
-    private static String lastRFC1123string = "";
+    private final static String[] WEEKDAYS = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
+    private final static String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+    private final static long MAX_FAST_MILLIS = 253402300800000L; // 10000-01-01, the fast formatters write four-digit years only
+
+    /**
+     * Format a date in ISO8601 without milliseconds, i.e. "2026-10-19T12:00:00Z"
+     * @param millis the time in milliseconds since the epoch
+     * @return the date string
+     */
+    public static String formatISO8601(final long millis) {
+        if (millis < 0 || millis >= MAX_FAST_MILLIS) return iso8601Formatter.format(Instant.ofEpochMilli(millis));
+        final char[] c = new char[20];
+        writeDate(c, 0, Math.floorDiv(millis, DAY_MILLIS), '-');
+        c[10] = 'T';
+        writeTime(c, 11, millis);
+        c[19] = 'Z';
+        return new String(c);
+    }
+
+    public static String formatISO8601(final Date date) {
+        return formatISO8601(date.getTime());
+    }
+
+    /**
+     * Format a date in ISO8601 with milliseconds, i.e. "2026-10-19T12:00:00.000Z"
+     * @param millis the time in milliseconds since the epoch
+     * @return the date string
+     */
+    public static String formatISO8601Millis(final long millis) {
+        if (millis < 0 || millis >= MAX_FAST_MILLIS) return iso8601MillisFormatter.format(Instant.ofEpochMilli(millis));
+        final char[] c = new char[24];
+        writeDate(c, 0, Math.floorDiv(millis, DAY_MILLIS), '-');
+        c[10] = 'T';
+        writeTime(c, 11, millis);
+        c[19] = '.';
+        final int ms = (int) (millis % 1000);
+        c[20] = (char) ('0' + ms / 100);
+        c[21] = (char) ('0' + ms / 10 % 10);
+        c[22] = (char) ('0' + ms % 10);
+        c[23] = 'Z';
+        return new String(c);
+    }
+
+    public static String formatISO8601Millis(final Date date) {
+        return formatISO8601Millis(date.getTime());
+    }
+
+    /**
+     * Parse an ISO8601 date in UTC, with or without milliseconds. Dates with a time zone offset
+     * or fractions which are not three digits are parsed with the java.time ISO parser.
+     * @param s the date string
+     * @return the date
+     * @throws ParseException if the string is not an ISO8601 date
+     */
+    public static Date parseISO8601(final String s) throws ParseException {
+        if (s == null) throw new ParseException("date is null", 0);
+        final int l = s.length();
+        if ((l == 20 || l == 24) && s.charAt(4) == '-' && s.charAt(7) == '-' && s.charAt(10) == 'T' && s.charAt(13) == ':' && s.charAt(16) == ':' && s.charAt(l - 1) == 'Z' && (l == 20 || s.charAt(19) == '.')) {
+            final int year = digits(s, 0, 4), month = digits(s, 5, 2), day = digits(s, 8, 2);
+            final int hour = digits(s, 11, 2), minute = digits(s, 14, 2), second = digits(s, 17, 2);
+            final int ms = l == 24 ? digits(s, 20, 3) : 0;
+            if (year >= 0 && validDate(year, month, day) && validTime(hour, minute, second) && ms >= 0) {
+                return new Date(toMillis(year, month, day, hour, minute, second) + ms);
+            }
+        }
+        try {
+            return Date.from(DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(s, Instant::from));
+        } catch (final DateTimeParseException e) {
+            throw new ParseException("cannot parse ISO8601 date '" + s + "'", e.getErrorIndex());
+        }
+    }
+
+    // the formatted current second for http headers, replaced atomically when the second changes
+    private final static class SecondCache {
+        private final long second;
+        private final String formatted;
+        private SecondCache(final long second, final String formatted) {
+            this.second = second;
+            this.formatted = formatted;
+        }
+    }
+    private static volatile SecondCache rfc1123Cache = new SecondCache(Long.MIN_VALUE, "");
+    private static volatile SecondCache httpDateCache = new SecondCache(Long.MIN_VALUE, "");
 
+    /**
+     * Format a date in RFC1123 with numeric time zone, i.e. "Mon, 19 Oct 2026 12:00:00 +0000".
+     * The string of the most recently formatted second is cached because http headers mostly
+     * format the current time.
+     * @param date the date
+     * @return the date string or an empty string if the date is null
+     */
     public static final String formatRFC1123(final Date date) {
         if (date == null) return "";
-        if (Math.abs(date.getTime() - lastRFC1123long) < 1000) {
-            //System.out.println("date cache hit - " + lastRFC1123string);
-            return lastRFC1123string;
+        return formatRFC1123(date.getTime());
+    }
+
+    public static final String formatRFC1123(final long millis) {
+        final long second = Math.floorDiv(millis, 1000L);
+        final SecondCache cache = rfc1123Cache;
+        if (cache.second == second) return cache.formatted;
+        final String s = formatRFC1123Uncached(millis);
+        rfc1123Cache = new SecondCache(second, s);
+        return s;
+    }
+
+    /**
+     * Format a date for http headers like Date, Last-Modified and Expires, i.e. "Mon, 19 Oct 2026 12:00:00 GMT".
+     * This is the RFC1123 layout with the time zone name GMT, as required by RFC7231.
+     * @param millis the date
+     * @return the date string
+     */
+    public static final String formatHTTPDate(final long millis) {
+        final long second = Math.floorDiv(millis, 1000L);
+        final SecondCache cache = httpDateCache;
+        if (cache.second == second) return cache.formatted;
+        final String rfc = formatRFC1123Uncached(millis); // always ends with +0000
+        final String s = rfc.substring(0, rfc.length() - 5) + "GMT";
+        httpDateCache = new SecondCache(second, s);
+        return s;
+    }
+
+    private static String formatRFC1123Uncached(final long millis) {
+        if (millis < 0 || millis >= MAX_FAST_MILLIS) return rfc1123Formatter.format(Instant.ofEpochMilli(millis));
+        final long days = Math.floorDiv(millis, DAY_MILLIS);
+        final char[] c = new char[31];
+        WEEKDAYS[(int) Math.floorMod(days + 4, 7L)].getChars(0, 3, c, 0); // 1970-01-01 was a thursday
+        c[3] = ',';
+        c[4] = ' ';
+        final int[] ymd = civil(days);
+        write2(c, 5, ymd[2]);
+        c[7] = ' ';
+        MONTHS[ymd[1] - 1].getChars(0, 3, c, 8);
+        c[11] = ' ';
+        write4(c, 12, ymd[0]);
+        c[16] = ' ';
+        writeTime(c, 17, millis);
+        " +0000".getChars(0, 6, c, 25);
+        return new String(c);
+    }
+
+    /**
+     * Parse a RFC1123 date, i.e. "Mon, 19 Oct 2026 12:00:00 +0000" or "Mon, 19 Oct 2026 12:00:00 GMT".
+     * Other time zones and one-digit days are parsed with the java.time RFC1123 parser.
+     * @param s the date string
+     * @return the date
+     * @throws ParseException if the string is not a RFC1123 date
+     */
+    public static Date parseRFC1123(final String s) throws ParseException {
+        if (s == null) throw new ParseException("date is null", 0);
+        final int l = s.length();
+        if ((l == 29 && s.endsWith(" GMT") || l == 31 && s.endsWith(" +0000")) && s.charAt(3) == ',' && s.charAt(4) == ' ' && s.charAt(7) == ' ' && s.charAt(11) == ' ' && s.charAt(16) == ' ' && s.charAt(19) == ':' && s.charAt(22) == ':') {
+            int month = 0;
+            for (int m = 0; m < 12; m++) if (s.regionMatches(8, MONTHS[m], 0, 3)) {month = m + 1; break;}
+            final int year = digits(s, 12, 4), day = digits(s, 5, 2);
+            final int hour = digits(s, 17, 2), minute = digits(s, 20, 2), second = digits(s, 23, 2);
+            if (year >= 0 && validDate(year, month, day) && validTime(hour, minute, second)) {
+                return new Date(toMillis(year, month, day, hour, minute, second));
+            }
         }
-        synchronized (FORMAT_RFC1123) {
-            final String s = FORMAT_RFC1123.format(date);
-            lastRFC1123long = date.getTime();
-            lastRFC1123string = s;
-            return s;
+        try {
+            return Date.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(s, Instant::from));
+        } catch (final DateTimeParseException e) {
+            throw new ParseException("cannot parse RFC1123 date '" + s + "'", e.getErrorIndex());
         }
     }
 
@@ -150,10 +357,11 @@ public class DateParser {
      */
     public static final String formatGSAFS(final Date date) {
         if (date == null) return "";
-        synchronized (dayDateFormat) {
-            final String s = dayDateFormat.format(date);
-            return s;
-        }
+        final long millis = date.getTime();
+        if (millis < 0 || millis >= MAX_FAST_MILLIS) return dayDateFormatter.format(date.toInstant());
+        final char[] c = new char[10];
+        writeDate(c, 0, Math.floorDiv(millis, DAY_MILLIS), '-');
+        return new String(c);
     }
 
     /**
@@ -163,11 +371,87 @@ public class DateParser {
      * @see ISO8601Formatter
      */
     public static final Date parseGSAFS(final String datestring) {
-        synchronized (dayDateFormat) { try {
-            return dayDateFormat.parse(datestring);
-        } catch (final ParseException | NumberFormatException e) {
+        try {
+            return new Date(LocalDate.from(parsePrefix(dayDateParser, datestring)).toEpochDay() * DAY_MILLIS);
+        } catch (final ParseException | DateTimeException e) {
             return null;
-        }}
+        }
+    }
+
+    // compute year, month and day from the days since the epoch (proleptic gregorian calendar)
+    private static int[] civil(final long days) {
+        final long z = days + 719468;
+        final long era = Math.floorDiv(z, 146097);
+        final long doe = z - era * 146097;
+        final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final long mp = (5 * doy + 2) / 153;
+        final int d = (int) (doy - (153 * mp + 2) / 5 + 1);
+        final int m = (int) (mp < 10 ? mp + 3 : mp - 9);
+        return new int[]{(int) (yoe + era * 400 + (m <= 2 ? 1 : 0)), m, d};
+    }
+
+    // compute the milliseconds since the epoch for a date and time in UTC
+    private static long toMillis(final int year, final int month, final int day, final int hour, final int minute, final int second) {
+        final long y = month <= 2 ? year - 1 : year;
+        final long era = Math.floorDiv(y, 400);
+        final long yoe = y - era * 400;
+        final long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        final long days = era * 146097 + doe - 719468;
+        return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L;
+    }
+
+    private static boolean validDate(final int year, final int month, final int day) {
+        if (month < 1 || month > 12 || day < 1) return false;
+        if (month == 2) return day <= ((year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28);
+        return day <= (month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31);
+    }
+
+    private static boolean validTime(final int hour, final int minute, final int second) {
+        return hour >= 0 && hour < 24 && minute >= 0 && minute < 60 && second >= 0 && second < 60;
+    }
+
+    // read a fixed number of digits; returns -1 if any char is not a digit
+    private static int digits(final String s, final int offset, final int length) {
+        int v = 0;
+        for (int i = offset; i < offset + length; i++) {
+            final char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static void writeDate(final char[] c, final int offset, final long days, final char separator) {
+        final int[] ymd = civil(days);
+        write4(c, offset, ymd[0]);
+        c[offset + 4] = separator;
+        write2(c, offset + 5, ymd[1]);
+        c[offset + 7] = separator;
+        write2(c, offset + 8, ymd[2]);
+    }
+
+    // write "HH:mm:ss" of the time of day
+    private static void writeTime(final char[] c, final int offset, final long millis) {
+        final int secondOfDay = (int) Math.floorMod(millis / 1000, 86400L);
+        write2(c, offset, secondOfDay / 3600);
+        c[offset + 2] = ':';
+        write2(c, offset + 3, secondOfDay / 60 % 60);
+        c[offset + 5] = ':';
+        write2(c, offset + 6, secondOfDay % 60);
+    }
+
+    private static void write2(final char[] c, final int offset, final int v) {
+        c[offset] = (char) ('0' + v / 10);
+        c[offset + 1] = (char) ('0' + v % 10);
+    }
+
+    private static void write4(final char[] c, final int offset, final int v) {
+        c[offset] = (char) ('0' + v / 1000);
+        c[offset + 1] = (char) ('0' + v / 100 % 10);
+        c[offset + 2] = (char) ('0' + v / 10 % 10);
+        c[offset + 3] = (char) ('0' + v % 10);
     }
 
     public static void main(String[] args) {
@@ -181,5 +465,72 @@ public class DateParser {
         } catch (ParseException | NumberFormatException e) {
             Logger.warn(e);
         }
+
+        // compare the fast formatters and parsers with the java.time formatters from many threads concurrently
+        final int threads = Runtime.getRuntime().availableProcessors() * 2;
+        final java.util.concurrent.atomic.AtomicLong errors = new java.util.concurrent.atomic.AtomicLong(0);
+        final DateTimeFormatter httpDateFormat = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+        final Thread[] t = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final long seed = i;
+            t[i] = new Thread(() -> {
+                final java.util.Random r = new java.util.Random(seed);
+                for (int j = 0; j < 200000; j++) {
+                    final long millis = (long) (r.nextDouble() * MAX_FAST_MILLIS);
+                    final Instant instant = Instant.ofEpochMilli(millis);
+                    try {
+                        final String iso = formatISO8601Millis(millis);
+                        final String rfc = formatRFC1123(millis);
+                        final String http = formatHTTPDate(millis);
+                        if (!iso.equals(iso8601MillisFormatter.format(instant)) ||
+                            !formatISO8601(millis).equals(iso8601Formatter.format(instant)) ||
+                            !rfc.equals(rfc1123Formatter.format(instant)) ||
+                            !http.equals(httpDateFormat.format(instant)) ||
+                            parseRFC1123(http).getTime() != millis / 1000 * 1000 ||
+                            !formatGSAFS(new Date(millis)).equals(dayDateFormatter.format(instant)) ||
+                            parseISO8601(iso).getTime() != millis ||
+                            parseRFC1123(rfc).getTime() != millis / 1000 * 1000) {
+                            if (errors.incrementAndGet() < 10) System.out.println("difference at " + millis + ": " + iso + ", " + rfc);
+                        }
+                    } catch (ParseException e) {
+                        if (errors.incrementAndGet() < 10) System.out.println("parse error at " + millis + ": " + e.getMessage());
+                    }
+                }
+            });
+            t[i].start();
+        }
+        for (int i = 0; i < threads; i++) try {t[i].join();} catch (InterruptedException e) {}
+        System.out.println("stress test with " + threads + " threads: " + errors.get() + " errors");
+
+        // timing of the fast formatters and parsers against the java.time formatters
+        final long[] samples = new long[100000];
+        final java.util.Random r = new java.util.Random(0);
+        for (int i = 0; i < samples.length; i++) samples[i] = 1500000000000L + (long) (r.nextDouble() * 300000000000L);
+        for (int round = 0; round < 3; round++) {
+            long h = 0;
+            long start = System.nanoTime();
+            for (long m: samples) h += iso8601MillisFormatter.format(Instant.ofEpochMilli(m)).length();
+            final long isoTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (long m: samples) h += formatISO8601Millis(m).length();
+            final long isoFast = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (long m: samples) h += rfc1123Formatter.format(Instant.ofEpochMilli(m)).length();
+            final long rfcTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (long m: samples) h += formatRFC1123Uncached(m).length();
+            final long rfcFast = System.nanoTime() - start;
+            final String sample = formatISO8601Millis(samples[0]);
+            start = System.nanoTime();
+            for (int i = 0; i < samples.length; i++) h += Instant.from(iso8601MillisFormatter.parse(sample)).toEpochMilli();
+            final long parseTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < samples.length; i++) try {h += parseISO8601(sample).getTime();} catch (ParseException e) {}
+            final long parseFast = System.nanoTime() - start;
+            System.out.println("round " + round + " (" + (h & 1) + "), ns per operation, java.time/fast: " +
+                    "format ISO8601 " + isoTime / samples.length + "/" + isoFast / samples.length +
+                    ", format RFC1123 " + rfcTime / samples.length + "/" + rfcFast / samples.length +
+                    ", parse ISO8601 " + parseTime / samples.length + "/" + parseFast / samples.length);
+        }
     }
-}
\ No newline at end of file
+}
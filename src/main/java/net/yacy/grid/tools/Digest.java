@@ -20,36 +20,46 @@
 
 package net.yacy.grid.tools;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
 
+/**
+ * Cryptographic digests and fast non-cryptographic hashes.
+ * The md5 methods use one MessageDigest per thread; files are hashed through a memory mapping.
+ * xxHash64 and Murmur3 are meant for cache keys and checksums, where a digest is not required.
+ */
 public class Digest {
 
-	public static Queue<MessageDigest> digestPool = new ConcurrentLinkedQueue<MessageDigest>();
+    /**
+     * @deprecated the md5 methods do not use a pool of digests any more; this field is kept for callers
+     * which still reference it and will be removed. Use {@link #newDigest(String)} for an own instance.
+     */
+    @Deprecated
+    public static Queue<MessageDigest> digestPool = new ConcurrentLinkedQueue<MessageDigest>();
+
+    private final static ThreadLocal<MessageDigest> md5 = ThreadLocal.withInitial(() -> newDigest("MD5"));
+    private final static long MAP_CHUNK = 64 * 1024 * 1024; // the size of a memory mapping while hashing a file
 
     private static final int md5CacheSize = Math.max(1000, Math.min(1000000, (int) (Memory.available() / 50000L)));
     private static ARC<String, byte[]> md5Cache = null;
     static {
         try {
-            md5Cache = new ConcurrentARC<String, byte[]>(md5CacheSize, Math.max(8, 2 * Runtime.getRuntime().availableProcessors()));
+            md5Cache = new TinyLFUARC<String, byte[]>(md5CacheSize);
         } catch (final OutOfMemoryError e) {
-            md5Cache = new ConcurrentARC<String, byte[]>(1000, Math.max(2, Runtime.getRuntime().availableProcessors()));
+            md5Cache = new TinyLFUARC<String, byte[]>(1000);
         }
     }
 
@@ -60,6 +70,26 @@ public class Digest {
     	md5Cache.clear();
     }
 
+    /**
+     * create a new MessageDigest; the instance is not thread-safe
+     * @param algorithm the name of the algorithm, i.e. "MD5" or "SHA-256"
+     * @return the digest
+     */
+    public static MessageDigest newDigest(final String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("unknown digest algorithm " + algorithm, e);
+        }
+    }
+
+    // the md5 digest of the current thread, reset for a new computation
+    private static MessageDigest md5() {
+        final MessageDigest digest = md5.get();
+        digest.reset();
+        return digest;
+    }
+
     public static String encodeHex(final long in, final int length) {
         String s = Long.toHexString(in);
         while (s.length() < length) s = "0" + s;
@@ -110,164 +140,365 @@ public class Digest {
     }
 
     public static byte[] encodeMD5Raw(final String key) {
-
         byte[] h = md5Cache.get(key);
         if (h != null) return h;
+        h = md5().digest(key.getBytes(StandardCharsets.UTF_8));
+        md5Cache.insertIfAbsent(key, h); // prevent expensive MD5 computation and encoding
+        return h;
+    }
 
-    	MessageDigest digest = digestPool.poll();
-    	if (digest == null) {
-    	    // if there are no digest objects left, create some on the fly
-    	    // this is not the most effective way but if we wouldn't do that the encoder would block
-    	    try {
-                digest = MessageDigest.getInstance("MD5");
-                digest.reset();
-            } catch (final NoSuchAlgorithmException e) {
-            }
-    	} else {
-    	    digest.reset(); // they should all be reseted but anyway; this is safe
-    	}
-        byte[] keyBytes;
-        keyBytes = key.getBytes(StandardCharsets.UTF_8);
-        digest.update(keyBytes);
-        final byte[] result = digest.digest();
-        digest.reset(); // to be prepared for next
-        digestPool.add(digest);
-        //System.out.println("Digest Pool size = " + digestPool.size());
-
-        // update the cache
-        md5Cache.insertIfAbsent(key, result); // prevent expensive MD5 computation and encoding
-        return result;
+    /**
+     * compute the md5 of a byte array; the result is not cached
+     * @param b the bytes
+     * @return the md5 digest
+     */
+    public static byte[] encodeMD5Raw(final byte[] b) {
+        return md5().digest(b);
+    }
+
+    /**
+     * compute the md5 of the remaining bytes of a buffer without copying them into an array;
+     * the position of the buffer is not changed
+     * @param b the buffer
+     * @return the md5 digest
+     */
+    public static byte[] encodeMD5Raw(final ByteBuffer b) {
+        final MessageDigest digest = md5();
+        digest.update(b.duplicate());
+        return digest.digest();
+    }
+
+    /**
+     * compute the first 8 bytes of the md5 of a byte array as long value; the result is not cached.
+     * This is used as fixed-width digest for large hash tables of keys.
+     * @param b the bytes
+     * @return the first 8 bytes of the md5, big-endian
+     */
+    public static long encodeMD5Long(final byte[] b) {
+        final byte[] h = md5().digest(b);
+        long l = 0;
+        for (int i = 0; i < 8; i++) l = (l << 8) | (h[i] & 0xff);
+        return l;
     }
 
     public static byte[] encodeMD5Raw(final File file) throws IOException {
-        FileInputStream in = null;
-        try {
-            in = new FileInputStream(file);
-        } catch (final java.io.FileNotFoundException e) {
-            Logger.warn("file not found:" + file.toString(), e);
+        if (!file.isFile()) {
+            Logger.warn("file not found:" + file.toString());
             return null;
         }
-
-        // create a concurrent thread that consumes data as it is read
-        // and computes the md5 while doing IO
-        final md5FilechunkConsumer md5consumer = new md5FilechunkConsumer(1024 * 64, 8);
-        final ExecutorService service = Executors.newSingleThreadExecutor();
-        final Future<MessageDigest> md5result = service.submit(md5consumer);
-        service.shutdown();
-
-        filechunk c;
-        try {
-            while (true) {
-                c = md5consumer.nextFree();
-                if (c == null) throw new IOException("c == null, probably interrupted");
-                c.n = in.read(c.b);
-                if (c.n <= 0) break;
-                md5consumer.consume(c);
+        final MessageDigest digest = md5();
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final FileChannel channel = raf.getChannel();
+            final long size = channel.size();
+            for (long position = 0; position < size; position += MAP_CHUNK) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_CHUNK, size - position)));
             }
         } catch (final IOException e) {
             Logger.warn("file error with " + file.toString() + ": " + e.getMessage(), e);
-            md5consumer.consume(md5FilechunkConsumer.poison);
             throw e;
-        } finally {
-            try {in.close();} catch (final IOException e) {}
         }
-        // put in poison into queue to tell the consumer to stop
-        md5consumer.consume(md5FilechunkConsumer.poison);
+        return digest.digest();
+    }
 
-        // return the md5 digest from future task
-        try {
-            return md5result.get().digest();
-        } catch (final InterruptedException e) {
-            Logger.warn(e);
-            throw new IOException(e);
-        } catch (final ExecutionException e) {
-            Logger.warn(e);
-            throw new IOException(e);
+    /**
+     * An output stream which computes a digest of all bytes written through it, i.e. to compute
+     * the checksum of an asset while it is stored
+     */
+    public static class HashingOutputStream extends FilterOutputStream {
+        private final MessageDigest digest;
+        private long count;
+
+        public HashingOutputStream(final OutputStream out, final String algorithm) {
+            super(out);
+            this.digest = newDigest(algorithm);
+            this.count = 0;
+        }
+
+        public HashingOutputStream(final OutputStream out) {
+            this(out, "MD5");
         }
-    }
 
-    private static class filechunk {
-        public byte[] b;
-        public int n;
-        public filechunk(final int len) {
-            this.b = new byte[len];
-            this.n = 0;
+        @Override
+        public void write(final int b) throws IOException {
+            this.out.write(b);
+            this.digest.update((byte) b);
+            this.count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            this.out.write(b, off, len);
+            this.digest.update(b, off, len);
+            this.count += len;
+        }
+
+        /**
+         * @return the digest of the written bytes; this finishes the digest computation
+         */
+        public byte[] digest() {
+            return this.digest.digest();
+        }
+
+        public long count() {
+            return this.count;
         }
     }
 
-    private static class md5FilechunkConsumer implements Callable<MessageDigest> {
+    /**
+     * An input stream which computes a digest of all bytes read through it, i.e. to verify
+     * the checksum of an asset while it is loaded
+     */
+    public static class HashingInputStream extends FilterInputStream {
+        private final MessageDigest digest;
+        private long count;
+
+        public HashingInputStream(final InputStream in, final String algorithm) {
+            super(in);
+            this.digest = newDigest(algorithm);
+            this.count = 0;
+        }
 
-        private   final BlockingQueue<filechunk> empty;
-        private   final BlockingQueue<filechunk> filed;
-        protected static filechunk poison = new filechunk(0);
-        private   MessageDigest digest;
+        public HashingInputStream(final InputStream in) {
+            this(in, "MD5");
+        }
 
-        public md5FilechunkConsumer(final int bufferSize, final int bufferCount) {
-            this.empty = new ArrayBlockingQueue<filechunk>(bufferCount);
-            this.filed = new LinkedBlockingQueue<filechunk>();
-            // fill the empty queue
-            for (int i = 0; i < bufferCount; i++) this.empty.add(new filechunk(bufferSize));
-            // init digest
-            try {
-                this.digest = MessageDigest.getInstance("MD5");
-            } catch (final NoSuchAlgorithmException e) {
-                System.out.println("Internal Error at md5:" + e.getMessage());
+        @Override
+        public int read() throws IOException {
+            final int b = this.in.read();
+            if (b >= 0) {
+                this.digest.update((byte) b);
+                this.count++;
             }
-            this.digest.reset();
+            return b;
         }
 
-        public void consume(final filechunk c) {
-            try {
-                this.filed.put(c);
-            } catch (final InterruptedException e) {
-                Logger.warn(this.getClass(), "", e);
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = this.in.read(b, off, len);
+            if (n > 0) {
+                this.digest.update(b, off, n);
+                this.count += n;
             }
+            return n;
         }
 
-        public filechunk nextFree() throws IOException {
-            try {
-                return this.empty.take();
-            } catch (final InterruptedException e) {
-                Logger.warn(this.getClass(), "", e);
-                throw new IOException(e);
-            }
+        @Override
+        public long skip(final long n) throws IOException {
+            // skipped bytes must be hashed as well
+            final byte[] b = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            int l;
+            while (skipped < n && (l = read(b, 0, (int) Math.min(b.length, n - skipped))) > 0) skipped += l;
+            return skipped;
         }
 
         @Override
-        public MessageDigest call() {
-            try {
-                filechunk c;
-                while(true) {
-                    c = this.filed.take();
-                    if (c == poison) break;
-                    this.digest.update(c.b, 0, c.n);
-                    this.empty.put(c);
-                }
-            } catch (final InterruptedException e) {
-                Logger.warn(this.getClass(), "", e);
-            }
-            return this.digest;
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * @return the digest of the read bytes; this finishes the digest computation
+         */
+        public byte[] digest() {
+            return this.digest.digest();
         }
 
+        public long count() {
+            return this.count;
+        }
     }
 
-    private static byte[] encodeMD5Raw(final byte[] b) {
-        try {
-            final MessageDigest digest = MessageDigest.getInstance("MD5");
-            digest.reset();
-            final InputStream  in = new ByteArrayInputStream(b);
-            final byte[] buf = new byte[2048];
-            int n;
-            while ((n = in.read(buf)) > 0) digest.update(buf, 0, n);
-            in.close();
-            // now compute the hex-representation of the md5 digest
-            return digest.digest();
-        } catch (final java.security.NoSuchAlgorithmException e) {
-            System.out.println("Internal Error at md5:" + e.getMessage());
-        } catch (final java.io.IOException e) {
-            System.out.println("byte[] error: " + e.getMessage());
-        }
-        return null;
+    private final static long P1 = 0x9E3779B185EBCA87L, P2 = 0xC2B2AE3D27D4EB4FL, P3 = 0x165667B19E3779F9L, P4 = 0x85EBCA77C2B2AE63L, P5 = 0x27D4EB2F165667C5L;
+
+    /**
+     * compute the xxHash64 of a string, encoded as UTF-8
+     * @param s the string
+     * @return the hash
+     */
+    public static long xxHash64(final String s) {
+        final byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        return xxHash64(b, 0, b.length, 0);
+    }
+
+    public static long xxHash64(final byte[] b) {
+        return xxHash64(b, 0, b.length, 0);
+    }
+
+    /**
+     * compute the xxHash64 of a part of a byte array
+     * @param b the bytes
+     * @param off the start offset
+     * @param len the number of bytes
+     * @param seed the seed
+     * @return the hash
+     */
+    public static long xxHash64(final byte[] b, final int off, final int len, final long seed) {
+        final int end = off + len;
+        int p = off;
+        long h;
+        if (len >= 32) {
+            long v1 = seed + P1 + P2, v2 = seed + P2, v3 = seed, v4 = seed - P1;
+            final int limit = end - 32;
+            do {
+                v1 = round(v1, getLongLE(b, p));
+                v2 = round(v2, getLongLE(b, p + 8));
+                v3 = round(v3, getLongLE(b, p + 16));
+                v4 = round(v4, getLongLE(b, p + 24));
+                p += 32;
+            } while (p <= limit);
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += len;
+        while (p + 8 <= end) {
+            h ^= round(0, getLongLE(b, p));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+            p += 8;
+        }
+        if (p + 4 <= end) {
+            h ^= (getIntLE(b, p) & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            p += 4;
+        }
+        while (p < end) {
+            h ^= (b[p] & 0xFF) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+            p++;
+        }
+        return avalanche(h);
+    }
+
+    /**
+     * compute the xxHash64 of the remaining bytes of a buffer without copying them;
+     * the position of the buffer is not changed
+     * @param buffer the buffer, heap or direct
+     * @param seed the seed
+     * @return the hash
+     */
+    public static long xxHash64(final ByteBuffer buffer, final long seed) {
+        if (buffer.hasArray()) return xxHash64(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), seed);
+        final ByteBuffer b = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final int len = b.remaining(), end = b.limit();
+        int p = b.position();
+        long h;
+        if (len >= 32) {
+            long v1 = seed + P1 + P2, v2 = seed + P2, v3 = seed, v4 = seed - P1;
+            final int limit = end - 32;
+            do {
+                v1 = round(v1, b.getLong(p));
+                v2 = round(v2, b.getLong(p + 8));
+                v3 = round(v3, b.getLong(p + 16));
+                v4 = round(v4, b.getLong(p + 24));
+                p += 32;
+            } while (p <= limit);
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += len;
+        while (p + 8 <= end) {
+            h ^= round(0, b.getLong(p));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+            p += 8;
+        }
+        if (p + 4 <= end) {
+            h ^= (b.getInt(p) & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            p += 4;
+        }
+        while (p < end) {
+            h ^= (b.get(p) & 0xFF) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+            p++;
+        }
+        return avalanche(h);
+    }
+
+    private static long round(long acc, final long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long mergeRound(long acc, final long val) {
+        acc ^= round(0, val);
+        return acc * P1 + P4;
+    }
+
+    private static long avalanche(long h) {
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        return h ^ (h >>> 32);
+    }
+
+    private static long getLongLE(final byte[] b, final int p) {
+        return (b[p] & 0xFFL) | (b[p + 1] & 0xFFL) << 8 | (b[p + 2] & 0xFFL) << 16 | (b[p + 3] & 0xFFL) << 24 |
+               (b[p + 4] & 0xFFL) << 32 | (b[p + 5] & 0xFFL) << 40 | (b[p + 6] & 0xFFL) << 48 | (b[p + 7] & 0xFFL) << 56;
+    }
+
+    private static int getIntLE(final byte[] b, final int p) {
+        return (b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 | (b[p + 2] & 0xFF) << 16 | (b[p + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * compute the 32-bit Murmur3 (x86 variant) of a string, encoded as UTF-8
+     * @param s the string
+     * @return the hash
+     */
+    public static int murmur3(final String s) {
+        final byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        return murmur3(b, 0, b.length, 0);
+    }
+
+    /**
+     * compute the 32-bit Murmur3 (x86 variant) of a part of a byte array
+     * @param b the bytes
+     * @param off the start offset
+     * @param len the number of bytes
+     * @param seed the seed
+     * @return the hash
+     */
+    public static int murmur3(final byte[] b, final int off, final int len, final int seed) {
+        final int c1 = 0xcc9e2d51, c2 = 0x1b873593;
+        int h = seed;
+        final int blocks = off + (len & ~3);
+        for (int p = off; p < blocks; p += 4) {
+            int k = getIntLE(b, p);
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        final int tail = len & 3;
+        if (tail > 0) {
+            int k = b[blocks] & 0xff;
+            if (tail > 1) k ^= (b[blocks + 1] & 0xff) << 8;
+            if (tail > 2) k ^= (b[blocks + 2] & 0xff) << 16;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+        }
+        h ^= len;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
     }
 
     public static void main(final String[] s) {
@@ -280,7 +511,7 @@ public class Digest {
         final long start = System.currentTimeMillis();
 
         if (s.length == 0) {
-            System.out.println("usage: -[md5|fingerprint] <arg>");
+            System.out.println("usage: -[md5|strfhex|bench] <arg>");
             System.exit(0);
         }
 
@@ -300,6 +531,35 @@ public class Digest {
             System.out.println(encodeMD5Hex(s[1]));
         }
 
+        // check the hashes against their reference values and compare the speed with md5
+        if (s[0].equals("-bench")) {
+            final byte[] fox = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+            final ByteBuffer direct = ByteBuffer.allocateDirect(fox.length);
+            direct.put(fox);
+            direct.flip();
+            System.out.println("xxHash64 check: " + (xxHash64(new byte[0]) == 0xEF46DB3751D8E999L && xxHash64("abc") == 0x44BC2CF5AD770999L &&
+                    xxHash64(fox) == 0x0B242D361FDA71BCL && xxHash64(direct, 0) == xxHash64(fox)));
+            System.out.println("murmur3 check: " + (murmur3("") == 0 && murmur3("hello") == 0x248bfa47 && murmur3(fox, 0, fox.length, 0) == 0x2e4ff723));
+            for (final int size: new int[]{16, 128, 4096}) {
+                final byte[] b = new byte[size];
+                new java.util.Random(0).nextBytes(b);
+                final int n = 64 * 1024 * 1024 / size;
+                long h = 0;
+                for (int round = 0; round < 3; round++) {
+                    long t = System.nanoTime();
+                    for (int i = 0; i < n; i++) h += encodeMD5Raw(b)[0];
+                    final long md5Time = System.nanoTime() - t;
+                    t = System.nanoTime();
+                    for (int i = 0; i < n; i++) h += xxHash64(b, 0, b.length, i);
+                    final long xxTime = System.nanoTime() - t;
+                    t = System.nanoTime();
+                    for (int i = 0; i < n; i++) h += murmur3(b, 0, b.length, i);
+                    final long murmurTime = System.nanoTime() - t;
+                    System.out.println(size + " bytes, ns per hash: md5 " + md5Time / n + ", xxHash64 " + xxTime / n + ", murmur3 " + murmurTime / n + " (" + (h & 1) + ")");
+                }
+            }
+        }
+
         System.out.println("time: " + (System.currentTimeMillis() - start) + " ms");
 
     }
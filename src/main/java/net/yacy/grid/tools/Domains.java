@@ -42,12 +42,12 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 import com.google.common.net.InetAddresses;
-import com.google.common.util.concurrent.UncheckedTimeoutException;
 
 public class Domains {
 
@@ -57,7 +57,6 @@ public class Domains {
     private static Class<?> InetAddressLocatorClass;
     private static Method InetAddressLocatorGetLocaleInetAddressMethod;
     private static final Set<String> ccSLD_TLD = new HashSet<String>();
-    private static final String PRESENT = "";
     private static final String LOCALHOST_IPv4_PATTERN = "(127\\..*)";
     private static final String LOCALHOST_IPv6_PATTERN = "((\\[?fe80\\:.*)|(\\[?0\\:0\\:0\\:0\\:0\\:0\\:0\\:1.*)|(\\[?\\:\\:1))(/.*|%.*|\\z)";
     private static final String INTRANET_IPv4_PATTERN = "(10\\..*)|(172\\.(1[6-9]|2[0-9]|3[0-1])\\..*)|(169\\.254\\..*)|(192\\.168\\..*)";
@@ -67,15 +66,12 @@ public class Domains {
 
     private static final int MAX_NAME_CACHE_HIT_SIZE = 10000;
     private static final int MAX_NAME_CACHE_MISS_SIZE = 1000;
-    private static final int CONCURRENCY_LEVEL = Runtime.getRuntime().availableProcessors() * 2;
+    public  static       long dnsLookupTimeout = 5000L;
 
     // a dns cache
-    private static final ARC<String, InetAddress> NAME_CACHE_HIT = new ConcurrentARC<>(MAX_NAME_CACHE_HIT_SIZE, CONCURRENCY_LEVEL);
-    private static final ARC<String, String> NAME_CACHE_MISS = new ConcurrentARC<>(MAX_NAME_CACHE_MISS_SIZE, CONCURRENCY_LEVEL);
-    private static final ConcurrentHashMap<String, Object> LOOKUP_SYNC = new ConcurrentHashMap<>(100, 0.75f, Runtime.getRuntime().availableProcessors() * 2);
     private static       List<Pattern> nameCacheNoCachingPatterns = Collections.synchronizedList(new LinkedList<Pattern>());
-    public static long cacheHit_Hit = 0, cacheHit_Miss = 0, cacheHit_Insert = 0; // for statistics only; do not write
-    public static long cacheMiss_Hit = 0, cacheMiss_Miss = 0, cacheMiss_Insert = 0; // for statistics only; do not write
+    private static final DNSResolver.CachePolicy CACHE_POLICY = Domains::cacheable;
+    private static volatile DNSResolver resolver = new DNSResolver("Domains", DNSResolver.SYSTEM, CACHE_POLICY, MAX_NAME_CACHE_HIT_SIZE, MAX_NAME_CACHE_MISS_SIZE);
 
     private static Set<InetAddress> myHostAddresses = new HashSet<InetAddress>();
     private static Set<InetAddress> localHostAddresses = new HashSet<InetAddress>(); // subset of myHostAddresses
@@ -349,29 +345,34 @@ public class Domains {
     }
 
     /**
-    * Does an DNS-Check to resolve a hostname to an IP.
+    * Does an DNS-Check to resolve a hostname to an IP using only the cache.
+    * If the host is not in the cache, a lookup is started in the background
+    * so a later call may find the host in the cache.
     *
     * @param host Hostname of the host in demand.
     * @return String with the ip. null, if the host could not be resolved.
+    * @throws UnknownHostException if the host is not in the cache
     */
     public static InetAddress dnsResolveFromCache(String host) throws UnknownHostException {
         if ((host == null) || host.isEmpty()) return null;
         host = host.toLowerCase().trim();
-
-        // trying to resolve host by doing a name cache lookup
-        InetAddress ip = NAME_CACHE_HIT.get(host);
-        if (ip != null) {
-            cacheHit_Hit++;
-            return ip;
+        try {
+            return resolver.getCached(host);
+        } catch (final UnknownHostException e) {
+            if (!InetAddresses.isInetAddress(host)) resolver.resolveAsync(host);
+            throw e;
         }
-        cacheHit_Miss++;
+    }
 
-        if (NAME_CACHE_MISS.containsKey(host)) {
-            cacheMiss_Hit++;
-            return null;
-        }
-        cacheMiss_Miss++;
-        throw new UnknownHostException("host not in cache");
+    private static boolean cacheable(final String host, final InetAddress ip) {
+        if (ip.isLoopbackAddress() || matchesList(host, nameCacheNoCachingPatterns)) return false;
+
+        // add also the isLocal host name caches
+        final boolean localp = ip.isAnyLocalAddress() || ip.isLinkLocalAddress() || ip.isSiteLocalAddress();
+        if (!localp && globalHosts != null) try {
+            globalHosts.add(host);
+        } catch (final IOException e) {}
+        return true;
     }
 
     public static void setNoCachingPatterns(final String patternList) throws PatternSyntaxException {
@@ -395,11 +396,10 @@ public class Domains {
     }
 
     public static String getHostName(final InetAddress i) {
-        final Collection<String> hosts = NAME_CACHE_HIT.getKeys(i);
+        final Collection<String> hosts = resolver.getHostNames(i);
         if (!hosts.isEmpty()) return hosts.iterator().next();
         final String host = i.getHostName();
-        NAME_CACHE_HIT.insertIfAbsent(host, i);
-        cacheHit_Insert++;
+        resolver.put(host, i);
         return host;
     }
 
@@ -410,8 +410,7 @@ public class Domains {
      * @param host the known host name
      */
     public static void setHostName(final InetAddress i, final String host) {
-        NAME_CACHE_HIT.insertIfAbsent(host, i);
-        cacheHit_Insert++;
+        resolver.put(host, i);
     }
 
     /**
@@ -491,7 +490,9 @@ public class Domains {
     }
 
     /**
-     * resolve a host address using a local DNS cache and a DNS lookup if necessary
+     * resolve a host address using a local DNS cache and a DNS lookup if necessary.
+     * The lookup waits at most dnsLookupTimeout milliseconds; concurrent lookups of the same host
+     * are answered with a single DNS request.
      * @param clienthost
      * @return the hosts InetAddress or null if the address cannot be resolved
      */
@@ -505,106 +506,49 @@ public class Domains {
             return null;
         }
 
-        // try to resolve host by doing a name cache lookup
-        InetAddress ip = NAME_CACHE_HIT.get(host);
-        if (ip != null) {
-            //System.out.println("DNSLOOKUP-CACHE-HIT(CONC) " + host);
-            cacheHit_Hit++;
-            return ip;
-        }
-        cacheHit_Miss++;
-        if (NAME_CACHE_MISS.containsKey(host)) {
-            //System.out.println("DNSLOOKUP-CACHE-MISS(CONC) " + host);
-            cacheMiss_Hit++;
-            return null;
-        }
-        cacheMiss_Miss++;
-
-        // call dnsResolveNetBased(host) using concurrency to interrupt execution in case of a time-out
-        final Object sync_obj_new = new Object();
-        Object sync_obj = LOOKUP_SYNC.putIfAbsent(host, sync_obj_new);
-        if (sync_obj == null) sync_obj = sync_obj_new;
-        synchronized (sync_obj) {
-            // now look again if the host is in the cache where it may be meanwhile because of the synchronization
-
-            ip = NAME_CACHE_HIT.get(host);
-            if (ip != null) {
-                //System.out.println("DNSLOOKUP-CACHE-HIT(SYNC) " + host);
-                LOOKUP_SYNC.remove(host);
-                cacheHit_Hit++;
-                return ip;
-            }
-            cacheHit_Miss++;
-            if (NAME_CACHE_MISS.containsKey(host)) {
-                //System.out.println("DNSLOOKUP-CACHE-MISS(SYNC) " + host);
-                LOOKUP_SYNC.remove(host);
-                cacheMiss_Hit++;
-                return null;
-            }
-            cacheMiss_Miss++;
-
-            // do the dns lookup on the dns server
-            //if (!matchesList(host, nameCacheNoCachingPatterns)) System.out.println("DNSLOOKUP " + host);
+        // ip addresses need no dns lookup
+        if (InetAddresses.isInetAddress(host)) {
             try {
-                //final long t = System.currentTimeMillis();
-                String oldName = Thread.currentThread().getName();
-                Thread.currentThread().setName("Domains: DNS resolve of '" + host + "'"); // thread dump show which host is resolved
-                if (InetAddresses.isInetAddress(host)) {
-                    try {
-                        ip = InetAddresses.forString(host);
-                    } catch (final IllegalArgumentException e) {
-                        ip = null;
-                    }
-                }
-                Thread.currentThread().setName(oldName);
-                if (ip == null) try {
-                    ip = InetAddress.getByName(host);
-                    //ip = TimeoutRequest.getByName(host, 1000); // this makes the DNS request to backbone
-                } catch (final UncheckedTimeoutException e) {
-                    // in case of a timeout - maybe cause of massive requests - do not fill NAME_CACHE_MISS
-                    LOOKUP_SYNC.remove(host);
-                    return null;
-                }
-                //.out.println("DNSLOOKUP-*LOOKUP* " + host + ", time = " + (System.currentTimeMillis() - t) + "ms");
-            } catch (final Throwable e) {
-                // add new entries
-                NAME_CACHE_MISS.insertIfAbsent(host, PRESENT);
-                cacheMiss_Insert++;
-                LOOKUP_SYNC.remove(host);
+                return InetAddresses.forString(host);
+            } catch (final IllegalArgumentException e) {
                 return null;
             }
+        }
 
-            if (ip == null) {
-                // add new entries
-                NAME_CACHE_MISS.insertIfAbsent(host, PRESENT);
-                cacheMiss_Insert++;
-                LOOKUP_SYNC.remove(host);
-                return null;
-            }
+        return resolver.resolve(host, dnsLookupTimeout);
+    }
 
-            if (!ip.isLoopbackAddress() && !matchesList(host, nameCacheNoCachingPatterns)) {
-                // add new ip cache entries
-                NAME_CACHE_HIT.insertIfAbsent(host, ip);
-                cacheHit_Insert++;
-
-                // add also the isLocal host name caches
-                final boolean localp = ip.isAnyLocalAddress() || ip.isLinkLocalAddress() || ip.isSiteLocalAddress();
-                if (!localp) {
-                    if (globalHosts != null) try {
-                        globalHosts.add(host);
-                    } catch (final IOException e) {}
-                }
+    /**
+     * resolve a host address without blocking the caller
+     * @param host0 the host name
+     * @return a future which completes with the hosts InetAddress or null if the address cannot be resolved
+     */
+    public static CompletableFuture<InetAddress> dnsResolveAsync(final String host0) {
+        if (host0 == null || host0.isEmpty() || host0.endsWith(".yacyh")) return CompletableFuture.completedFuture(null);
+        final String host = host0.toLowerCase().trim();
+        if (InetAddresses.isInetAddress(host)) {
+            try {
+                return CompletableFuture.completedFuture(InetAddresses.forString(host));
+            } catch (final IllegalArgumentException e) {
+                return CompletableFuture.completedFuture(null);
             }
-            LOOKUP_SYNC.remove(host);
-            return ip;
         }
+        return resolver.resolveAsync(host);
+    }
+
+    /**
+     * replace the upstream resolver, i.e. with a DNSResolver.StubUpstream for tests.
+     * The dns cache is discarded.
+     * @param upstream the new upstream resolver
+     */
+    public static void setUpstreamResolver(final DNSResolver.Upstream upstream) {
+        resolver = new DNSResolver("Domains", upstream, CACHE_POLICY, MAX_NAME_CACHE_HIT_SIZE, MAX_NAME_CACHE_MISS_SIZE);
     }
 
     public static void clear() {
         try {
+            resolver.clear();
             globalHosts.clear();
-            NAME_CACHE_HIT.clear();
-            NAME_CACHE_MISS.clear();
         } catch (final IOException e) {}
     }
 
@@ -614,17 +558,25 @@ public class Domains {
     * @return int The number of entries in the nameCacheHit map
     */
     public static int nameCacheHitSize() {
-        return NAME_CACHE_HIT.size();
+        return resolver.positiveSize();
     }
 
     public static int nameCacheMissSize() {
-        return NAME_CACHE_MISS.size();
+        return resolver.negativeSize();
     }
 
     public static int nameCacheNoCachingPatternsSize() {
         return nameCacheNoCachingPatterns.size();
     }
 
+    /**
+     * get the statistics of the dns cache and resolver
+     * @return a map with the cache sizes and the counters of resolver events
+     */
+    public static Map<String, Object> getDNSStatistics() {
+        return resolver.getStatistics();
+    }
+
     /**
      * myPublicLocalIP() returns the IP of this host which is reachable in the public network under this address
      * This is deprecated since it should be possible that the host is reachable with more than one IP
@@ -0,0 +1,210 @@
+/**
+ *  HashedWheelTimer
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.tools;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A timer for a large number of short timeouts which are mostly cancelled before they expire.
+ * Timeouts are placed into the bucket of a wheel which is advanced by one bucket per tick;
+ * adding and cancelling a timeout costs constant time and no lock. The timeout task is executed
+ * in the timer thread and must therefore be short, i.e. only cancel a future.
+ * A timeout expires between its deadline and its deadline plus one tick.
+ */
+public class HashedWheelTimer {
+
+    private final static int INIT = 0, CANCELLED = 1, EXPIRED = 2;
+
+    public final class Timeout {
+        private final Runnable task;
+        private final long deadline; // nanoseconds after the start time of the timer
+        private long remainingRounds;
+        private final AtomicInteger state;
+        private Timeout next, prev; // the bucket list, only accessed by the timer thread
+        private Bucket bucket;
+
+        private Timeout(final Runnable task, final long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+            this.state = new AtomicInteger(INIT);
+        }
+
+        /**
+         * cancel the timeout; the task will not be executed after this
+         * @return true if the timeout was cancelled, false if it was already cancelled or expired
+         */
+        public boolean cancel() {
+            if (!this.state.compareAndSet(INIT, CANCELLED)) return false;
+            HashedWheelTimer.this.cancelled.add(this); // removed from the bucket by the timer thread
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return this.state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return this.state.get() == EXPIRED;
+        }
+    }
+
+    private final static class Bucket {
+        private Timeout head, tail;
+
+        private void add(final Timeout timeout) {
+            timeout.bucket = this;
+            if (this.head == null) {
+                this.head = this.tail = timeout;
+            } else {
+                this.tail.next = timeout;
+                timeout.prev = this.tail;
+                this.tail = timeout;
+            }
+        }
+
+        private Timeout remove(final Timeout timeout) {
+            final Timeout next = timeout.next;
+            if (timeout.prev != null) timeout.prev.next = next;
+            if (timeout.next != null) timeout.next.prev = timeout.prev;
+            if (timeout == this.head) this.head = next;
+            if (timeout == this.tail) this.tail = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+    }
+
+    private final String name;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> added, cancelled;
+    private final AtomicBoolean started;
+    private final AtomicLong pending, expired;
+    private volatile long startTime;
+
+    /**
+     * create a timer; the timer thread is started with the first timeout
+     * @param name the name of the timer thread
+     * @param tickMillis the duration of one tick, this is the accuracy of the timer
+     * @param ticksPerWheel the number of buckets, is rounded up to a power of two
+     */
+    public HashedWheelTimer(final String name, final long tickMillis, final int ticksPerWheel) {
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = 1;
+        while (size < ticksPerWheel) size <<= 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) this.wheel[i] = new Bucket();
+        this.mask = size - 1;
+        this.added = new ConcurrentLinkedQueue<>();
+        this.cancelled = new ConcurrentLinkedQueue<>();
+        this.started = new AtomicBoolean(false);
+        this.pending = new AtomicLong(0);
+        this.expired = new AtomicLong(0);
+    }
+
+    /**
+     * schedule a task
+     * @param task the task which is executed in the timer thread when the timeout expires
+     * @param delay the delay in milliseconds
+     * @return the timeout which can be used to cancel the task
+     */
+    public Timeout newTimeout(final Runnable task, final long delay) {
+        if (this.started.compareAndSet(false, true)) {
+            this.startTime = System.nanoTime();
+            final Thread t = new Thread(this::run, this.name);
+            t.setDaemon(true);
+            t.start();
+        }
+        final Timeout timeout = new Timeout(task, System.nanoTime() - this.startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay)));
+        this.pending.incrementAndGet();
+        this.added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return the number of timeouts which are neither expired nor cancelled
+     */
+    public long pending() {
+        return this.pending.get();
+    }
+
+    /**
+     * @return the number of expired timeouts since the timer was created
+     */
+    public long expired() {
+        return this.expired.get();
+    }
+
+    private void run() {
+        long tick = 0;
+        while (true) {
+            // wait for the end of the current tick
+            final long deadline = this.tickNanos * (tick + 1);
+            long sleep;
+            while ((sleep = deadline - (System.nanoTime() - this.startTime)) > 0) LockSupport.parkNanos(this, sleep);
+
+            Timeout timeout;
+            while ((timeout = this.cancelled.poll()) != null) {
+                if (timeout.bucket != null) timeout.bucket.remove(timeout);
+                this.pending.decrementAndGet();
+            }
+
+            // place new timeouts into their buckets; a limit lets the timer advance when timeouts are added faster than they are placed
+            for (int i = 0; i < 100000 && (timeout = this.added.poll()) != null; i++) {
+                if (timeout.isCancelled()) continue; // is decremented in the cancelled queue
+                final long ticks = Math.max(timeout.deadline / this.tickNanos, tick); // deadlines in the past are expired in this tick
+                timeout.remainingRounds = (ticks - tick) / this.wheel.length;
+                this.wheel[(int) (ticks & this.mask)].add(timeout);
+            }
+
+            // expire the timeouts of the current bucket
+            final Bucket bucket = this.wheel[(int) (tick & this.mask)];
+            timeout = bucket.head;
+            while (timeout != null) {
+                if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                    timeout = timeout.next;
+                    continue;
+                }
+                final Timeout next = bucket.remove(timeout);
+                if (timeout.state.compareAndSet(INIT, EXPIRED)) {
+                    this.pending.decrementAndGet();
+                    this.expired.incrementAndGet();
+                    try {
+                        timeout.task.run();
+                    } catch (final Throwable e) {
+                        Logger.warn(this.getClass(), "HashedWheelTimer task failed in " + this.name, e);
+                    }
+                }
+                timeout = next;
+            }
+            tick++;
+        }
+    }
+}
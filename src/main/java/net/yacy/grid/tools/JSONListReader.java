@@ -0,0 +1,163 @@
+/**
+ *  JSONListReader
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.tools;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A reader for jsonlist (flatjson) streams which returns one json object per line.
+ * In contrast to a JSONList, only the current line is held in memory, so streams of any size
+ * can be processed. Gzip-compressed streams are detected and decompressed automatically.
+ * A line which is not valid json or which has content after the json object causes a JSONException in next();
+ * the following lines can still be read.
+ * Lines are split on the bytes of the stream and parsed with the JSONStreamParser without decoding them into strings first.
+ */
+public class JSONListReader implements Iterator<JSONObject>, Iterable<JSONObject>, Closeable {
+
+    private final static int BUFFER_SIZE = 8192;
+
+    private final InputStream source; // the buffered source stream
+    private final InputStream is; // the source stream or the decompressed source stream
+    private final byte[] buffer;
+    private int pos, limit;
+    private byte[] line; // the content of the next line in line[0 .. lineLength]
+    private int lineLength;
+    private boolean hasLine;
+    private long lineCount;
+
+    /**
+     * create a reader for a jsonlist stream; the stream is closed when the reader is closed
+     * @param sourceStream a plain or gzip-compressed jsonlist stream
+     * @throws IOException
+     */
+    public JSONListReader(final InputStream sourceStream) throws IOException {
+        final BufferedInputStream bis = new BufferedInputStream(sourceStream, BUFFER_SIZE);
+        bis.mark(2);
+        final int b0 = bis.read(), b1 = bis.read();
+        bis.reset();
+        this.source = bis;
+        this.is = b0 == 0x1f && b1 == 0x8b ? new GZIPInputStream(bis, BUFFER_SIZE) : bis;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.pos = 0;
+        this.limit = 0;
+        this.line = new byte[BUFFER_SIZE];
+        this.lineLength = 0;
+        this.hasLine = false;
+        this.lineCount = 0;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.hasLine) return true;
+        try {
+            while (readLine()) {
+                if (!isBlank()) return this.hasLine = true;
+            }
+            return false;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * read the next line into the line buffer
+     * @return false if the end of the stream was reached and no content was read
+     * @throws IOException
+     */
+    private boolean readLine() throws IOException {
+        this.lineLength = 0;
+        boolean content = false;
+        for (;;) {
+            if (this.pos >= this.limit) {
+                this.limit = this.is.read(this.buffer, 0, BUFFER_SIZE);
+                this.pos = 0;
+                if (this.limit <= 0) {
+                    this.limit = 0;
+                    // the gzip stream ends at the gzip trailer; the source must be read to its end as well,
+                    // otherwise a source which completes the asset at the end of the stream would never see it
+                    if (this.is != this.source) while (this.source.read(this.buffer, 0, BUFFER_SIZE) >= 0) {}
+                    return content;
+                }
+            }
+            content = true;
+            int i = this.pos;
+            while (i < this.limit && this.buffer[i] != '\n') i++;
+            final int l = i - this.pos;
+            if (this.lineLength + l > this.line.length) {
+                final byte[] b = new byte[Math.max(this.line.length * 2, this.lineLength + l)];
+                System.arraycopy(this.line, 0, b, 0, this.lineLength);
+                this.line = b;
+            }
+            System.arraycopy(this.buffer, this.pos, this.line, this.lineLength, l);
+            this.lineLength += l;
+            this.pos = i;
+            if (i < this.limit) {
+                this.pos++; // skip the line feed
+                return true;
+            }
+        }
+    }
+
+    private boolean isBlank() {
+        for (int i = 0; i < this.lineLength; i++) {
+            final byte b = this.line[i];
+            if (b != ' ' && b != '\r' && b != '\t') return false;
+        }
+        return true;
+    }
+
+    @Override
+    public JSONObject next() throws JSONException {
+        if (!hasNext()) throw new NoSuchElementException();
+        this.hasLine = false;
+        this.lineCount++;
+        final JSONStreamParser parser = new JSONStreamParser(this.line, 0, this.lineLength);
+        final JSONObject json = parser.readObject();
+        if (parser.next() != null) throw new JSONException("unexpected content after the json object in line " + this.lineCount);
+        return json;
+    }
+
+    /**
+     * @return the number of lines which had been returned by next()
+     */
+    public long getLineCount() {
+        return this.lineCount;
+    }
+
+    @Override
+    public Iterator<JSONObject> iterator() {
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.is.close();
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ *  JSONListWriter
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.tools;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A writer for jsonlist (flatjson) streams which appends one json object per line.
+ * Objects are serialized directly into the stream, so the size of the written list is not limited by memory.
+ */
+public class JSONListWriter implements Closeable, Flushable {
+
+    private final static int BUFFER_SIZE = 8192;
+
+    private final JSONStreamWriter writer;
+    private long lineCount;
+
+    /**
+     * create a writer for a jsonlist stream; the stream is closed when the writer is closed
+     * @param targetStream the target stream
+     * @param gzip if true, the stream is written gzip-compressed
+     * @throws IOException
+     */
+    public JSONListWriter(final OutputStream targetStream, final boolean gzip) throws IOException {
+        final OutputStream os = gzip ? new GZIPOutputStream(targetStream, BUFFER_SIZE) : targetStream;
+        this.writer = new JSONStreamWriter(os);
+        this.lineCount = 0;
+    }
+
+    /**
+     * append a json object as one line
+     * @param json the object
+     * @return the writer
+     * @throws IOException
+     */
+    public JSONListWriter write(final JSONObject json) throws IOException {
+        try {
+            this.writer.value(json);
+        } catch (final JSONException e) {
+            throw new IOException(e);
+        }
+        this.writer.newLine();
+        this.lineCount++;
+        return this;
+    }
+
+    /**
+     * append all objects of a jsonlist
+     * @param list the list
+     * @return the writer
+     * @throws IOException
+     */
+    public JSONListWriter write(final JSONList list) throws IOException {
+        for (int i = 0; i < list.length(); i++) write(list.get(i));
+        return this;
+    }
+
+    /**
+     * @return the number of lines which had been written
+     */
+    public long getLineCount() {
+        return this.lineCount;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.writer.flush();
+    }
+
+    /**
+     * finish the gzip stream, if any, and close the target stream
+     */
+    @Override
+    public void close() throws IOException {
+        this.writer.close();
+    }
+}
@@ -0,0 +1,564 @@
+/**
+ *  JSONStreamParser
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A pull parser which reads json directly from UTF-8 bytes.
+ * The parser returns one event for each token; callers which only need some fields of a document can
+ * read the events and skip all other values with skipValue() without creating objects for them.
+ * readValue(), readObject() and readArray() create JSONObject and JSONArray objects with the same value types
+ * as the JSONTokener: objects keep the order of their keys, numbers are Integer, Long or Double and
+ * numbers which do not fit into these types are strings.
+ * In contrast to the JSONTokener, the parser only accepts strict json as defined in RFC 8259.
+ * A stream may contain several json values one after another; next() returns null after the last value.
+ */
+public class JSONStreamParser {
+
+    public enum Event {
+        START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, KEY, STRING, NUMBER, TRUE, FALSE, NULL;
+    }
+
+    private final static int BUFFER_SIZE = 8192;
+
+    // the parser states between two tokens
+    private final static int BEFORE_VALUE = 0, BEFORE_KEY = 1, AFTER_VALUE = 2;
+
+    // the states of the number syntax; a number is complete in the states ZERO, INTEGER, FRACTION and EXPONENT
+    private final static int N_START = 0, N_MINUS = 1, N_ZERO = 2, N_INTEGER = 3, N_POINT = 4, N_FRACTION = 5, N_E = 6, N_SIGN = 7, N_EXPONENT = 8;
+
+    private final InputStream is;
+    private byte[] buffer;
+    private int pos, limit;
+    private long consumed; // the number of bytes which had been consumed before the current buffer content
+
+    private boolean[] objectStack; // true for objects, false for arrays
+    private int depth;
+    private int state;
+    private boolean first; // true directly after a start of an object or array
+    private boolean skipping; // while values are skipped, strings and numbers are not created
+
+    private Event event;
+    private String text; // the string, key or number text of the current event
+    private char[] chars;
+
+    /**
+     * create a parser for a stream; the stream is not closed by the parser
+     * @param is the UTF-8 encoded json stream
+     */
+    public JSONStreamParser(final InputStream is) {
+        this.is = is;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.pos = 0;
+        this.limit = 0;
+        init();
+    }
+
+    /**
+     * create a parser for a part of a byte array
+     * @param b the UTF-8 encoded json
+     * @param off the offset of the json in b
+     * @param len the length of the json
+     */
+    public JSONStreamParser(final byte[] b, final int off, final int len) {
+        this.is = null;
+        this.buffer = b;
+        this.pos = off;
+        this.limit = off + len;
+        init();
+    }
+
+    public JSONStreamParser(final byte[] b) {
+        this(b, 0, b.length);
+    }
+
+    private void init() {
+        this.consumed = -this.pos;
+        this.objectStack = new boolean[16];
+        this.depth = 0;
+        this.state = BEFORE_VALUE;
+        this.first = false;
+        this.skipping = false;
+        this.event = null;
+        this.text = null;
+        this.chars = new char[64];
+    }
+
+    /**
+     * parse a json object from a byte array
+     * @param b the UTF-8 encoded json
+     * @return the object
+     * @throws JSONException if the json is not valid or not an object
+     */
+    public static JSONObject parseObject(final byte[] b) throws JSONException {
+        return new JSONStreamParser(b).readObject();
+    }
+
+    /**
+     * parse a json array from a byte array
+     * @param b the UTF-8 encoded json
+     * @return the array
+     * @throws JSONException if the json is not valid or not an array
+     */
+    public static JSONArray parseArray(final byte[] b) throws JSONException {
+        return new JSONStreamParser(b).readArray();
+    }
+
+    /**
+     * read the next token
+     * @return the event of the token or null if the end of the input was reached
+     * @throws JSONException if the json is not valid
+     * @throws UncheckedIOException if the stream cannot be read
+     */
+    public Event next() throws JSONException {
+        this.text = null;
+        int c = skipWhitespace();
+        if (this.state == AFTER_VALUE) {
+            if (this.depth == 0) {
+                if (c < 0) return this.event = null;
+                this.state = BEFORE_VALUE; // the next top-level value
+            } else if (c == ',') {
+                this.pos++;
+                this.state = this.objectStack[this.depth - 1] ? BEFORE_KEY : BEFORE_VALUE;
+                c = skipWhitespace();
+            } else if (c == '}' || c == ']') {
+                return close(c);
+            } else {
+                throw syntaxError("expected ',' or " + (this.objectStack[this.depth - 1] ? "'}'" : "']'"));
+            }
+        }
+        final boolean wasFirst = this.first;
+        this.first = false;
+        if (this.state == BEFORE_KEY) {
+            if (c == '}' && wasFirst) return close(c);
+            if (c != '"') throw syntaxError("expected a key");
+            this.pos++;
+            this.text = readString();
+            if (skipWhitespace() != ':') throw syntaxError("expected ':' after a key");
+            this.pos++;
+            this.state = BEFORE_VALUE;
+            return this.event = Event.KEY;
+        }
+        // BEFORE_VALUE
+        switch (c) {
+            case -1:
+                if (this.depth == 0) return this.event = null;
+                throw syntaxError("unexpected end of input");
+            case '{':
+                this.pos++;
+                push(true);
+                this.state = BEFORE_KEY;
+                this.first = true;
+                return this.event = Event.START_OBJECT;
+            case '[':
+                this.pos++;
+                push(false);
+                this.state = BEFORE_VALUE;
+                this.first = true;
+                return this.event = Event.START_ARRAY;
+            case ']':
+                if (wasFirst && !this.objectStack[this.depth - 1]) return close(c);
+                throw syntaxError("unexpected ']'");
+            case '"':
+                this.pos++;
+                this.text = readString();
+                this.state = AFTER_VALUE;
+                return this.event = Event.STRING;
+            case 't':
+                readLiteral("true");
+                this.state = AFTER_VALUE;
+                return this.event = Event.TRUE;
+            case 'f':
+                readLiteral("false");
+                this.state = AFTER_VALUE;
+                return this.event = Event.FALSE;
+            case 'n':
+                readLiteral("null");
+                this.state = AFTER_VALUE;
+                return this.event = Event.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    this.text = readNumber();
+                    this.state = AFTER_VALUE;
+                    return this.event = Event.NUMBER;
+                }
+                throw syntaxError("unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private Event close(final int c) {
+        this.pos++;
+        this.depth--;
+        this.state = AFTER_VALUE;
+        this.first = false;
+        return this.event = c == '}' ? Event.END_OBJECT : Event.END_ARRAY;
+    }
+
+    private void push(final boolean object) {
+        if (this.depth == this.objectStack.length) {
+            final boolean[] s = new boolean[this.depth * 2];
+            System.arraycopy(this.objectStack, 0, s, 0, this.depth);
+            this.objectStack = s;
+        }
+        this.objectStack[this.depth++] = object;
+    }
+
+    /**
+     * @return the event of the current token
+     */
+    public Event getEvent() {
+        return this.event;
+    }
+
+    /**
+     * @return the nesting depth of the current token; the depth of a top-level START_OBJECT is 1
+     */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * @return the value of a KEY or STRING token or the text of a NUMBER token
+     */
+    public String getString() {
+        return this.text;
+    }
+
+    /**
+     * @return the value of a NUMBER token as Integer, Long or Double or as string if the number does not fit into these types
+     */
+    public Object getNumber() {
+        return toNumber(this.text);
+    }
+
+    /**
+     * get the value of the current token; objects and arrays are read completely
+     * @return the value as it would be returned from the JSONTokener
+     * @throws JSONException
+     */
+    public Object getValue() throws JSONException {
+        if (this.event == null) throw new JSONException("no value");
+        switch (this.event) {
+            case START_OBJECT: return buildObject();
+            case START_ARRAY:  return buildArray();
+            case KEY:
+            case STRING:       return this.text;
+            case NUMBER:       return toNumber(this.text);
+            case TRUE:         return Boolean.TRUE;
+            case FALSE:        return Boolean.FALSE;
+            case NULL:         return JSONObject.NULL;
+            default: throw syntaxError("unexpected " + this.event.name());
+        }
+    }
+
+    /**
+     * read the next value
+     * @return the value or null if the end of the input was reached
+     * @throws JSONException
+     */
+    public Object readValue() throws JSONException {
+        return next() == null ? null : getValue();
+    }
+
+    /**
+     * read the next value which must be a json object
+     * @return the object
+     * @throws JSONException
+     */
+    public JSONObject readObject() throws JSONException {
+        if (next() != Event.START_OBJECT) throw syntaxError("a json object must begin with '{'");
+        return buildObject();
+    }
+
+    /**
+     * read the next value which must be a json array
+     * @return the array
+     * @throws JSONException
+     */
+    public JSONArray readArray() throws JSONException {
+        if (next() != Event.START_ARRAY) throw syntaxError("a json array must begin with '['");
+        return buildArray();
+    }
+
+    /**
+     * skip the value of the current token: after a KEY the value of the key is skipped,
+     * after START_OBJECT or START_ARRAY the content up to the matching end token is skipped.
+     * @throws JSONException
+     */
+    public void skipValue() throws JSONException {
+        if (this.event == Event.KEY) next();
+        if (this.event != Event.START_OBJECT && this.event != Event.START_ARRAY) return;
+        final int d = this.depth - 1;
+        this.skipping = true;
+        try {
+            while (this.depth > d) {
+                if (next() == null) throw syntaxError("unexpected end of input");
+            }
+        } finally {
+            this.skipping = false;
+        }
+    }
+
+    private JSONObject buildObject() throws JSONException {
+        final JSONObject json = new JSONObject(true);
+        Event e;
+        while ((e = next()) != Event.END_OBJECT) {
+            if (e != Event.KEY) throw syntaxError("expected a key");
+            final String key = this.text;
+            if (next() == null) throw syntaxError("unexpected end of input");
+            final Object value = getValue();
+            if (json.has(key)) throw syntaxError("duplicate key \"" + key + "\"");
+            json.put(key, value);
+        }
+        return json;
+    }
+
+    private JSONArray buildArray() throws JSONException {
+        final JSONArray array = new JSONArray();
+        Event e;
+        while ((e = next()) != Event.END_ARRAY) {
+            if (e == null) throw syntaxError("unexpected end of input");
+            array.put(getValue());
+        }
+        return array;
+    }
+
+    /**
+     * convert a number text into the type which the JSONTokener would return
+     * @param s the number text
+     * @return an Integer, Long or Double or the string itself
+     */
+    private static Object toNumber(final String s) {
+        final int len = s.length();
+        final boolean negative = s.charAt(0) == '-';
+        final int start = negative ? 1 : 0;
+        // fast path for the most common case: small integers in canonical form
+        if (len - start > 0 && len - start <= 9 && (s.charAt(start) != '0' || len - start == 1) && !(negative && s.charAt(start) == '0')) {
+            int v = 0;
+            int i = start;
+            for (; i < len; i++) {
+                final char c = s.charAt(i);
+                if (c < '0' || c > '9') break;
+                v = v * 10 + (c - '0');
+            }
+            if (i == len) return Integer.valueOf(negative ? -v : v);
+        }
+        return JSONObject.stringToValue(s);
+    }
+
+    private int skipWhitespace() {
+        for (;;) {
+            if (this.pos >= this.limit && !fill()) return -1;
+            final int c = this.buffer[this.pos] & 0xff;
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+            this.pos++;
+        }
+    }
+
+    /**
+     * load more bytes from the stream
+     * @return false if the end of the input was reached
+     */
+    private boolean fill() {
+        if (this.is == null) return false;
+        try {
+            this.consumed += this.limit;
+            this.pos = 0;
+            this.limit = 0;
+            int l;
+            while ((l = this.is.read(this.buffer, 0, this.buffer.length)) == 0) {}
+            if (l < 0) return false;
+            this.limit = l;
+            return true;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int read() {
+        if (this.pos >= this.limit && !fill()) return -1;
+        return this.buffer[this.pos++] & 0xff;
+    }
+
+    private void readLiteral(final String literal) throws JSONException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) throw syntaxError("expected '" + literal + "'");
+        }
+    }
+
+    /**
+     * read a number; all characters which may appear in a number are read as one token,
+     * so malformed numbers like 1-2 or 01 are rejected instead of being split into several values
+     * @return the number text or null while values are skipped
+     * @throws JSONException if the token is not a number as defined in RFC 8259
+     */
+    private String readNumber() throws JSONException {
+        int n = 0, state = N_START;
+        for (;;) {
+            if (this.pos >= this.limit && !fill()) break;
+            final int c = this.buffer[this.pos];
+            if (!((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E')) break;
+            state = numberState(state, c);
+            if (state < 0) throw syntaxError("malformed number");
+            if (!this.skipping) {
+                if (n == this.chars.length) growChars();
+                this.chars[n++] = (char) c;
+            }
+            this.pos++;
+        }
+        if (state != N_ZERO && state != N_INTEGER && state != N_FRACTION && state != N_EXPONENT) throw syntaxError("malformed number");
+        return this.skipping ? null : new String(this.chars, 0, n);
+    }
+
+    /**
+     * @return the state of the number syntax after the character or -1 if the character is not allowed
+     */
+    private static int numberState(final int state, final int c) {
+        final boolean digit = c >= '0' && c <= '9';
+        final boolean e = c == 'e' || c == 'E';
+        switch (state) {
+            case N_START:    return c == '-' ? N_MINUS : c == '0' ? N_ZERO : digit ? N_INTEGER : -1;
+            case N_MINUS:    return c == '0' ? N_ZERO : digit ? N_INTEGER : -1;
+            case N_ZERO:     return c == '.' ? N_POINT : e ? N_E : -1;
+            case N_INTEGER:  return digit ? N_INTEGER : c == '.' ? N_POINT : e ? N_E : -1;
+            case N_POINT:    return digit ? N_FRACTION : -1;
+            case N_FRACTION: return digit ? N_FRACTION : e ? N_E : -1;
+            case N_E:        return c == '+' || c == '-' ? N_SIGN : digit ? N_EXPONENT : -1;
+            case N_SIGN:
+            case N_EXPONENT: return digit ? N_EXPONENT : -1;
+            default:         return -1;
+        }
+    }
+
+    /**
+     * read a string; the opening quote had been consumed already
+     * @return the string
+     * @throws JSONException
+     */
+    private String readString() throws JSONException {
+        if (this.skipping) {
+            skipString();
+            return null;
+        }
+        // fast path: strings which are pure ascii without escapes and which are completely in the buffer
+        final int start = this.pos;
+        for (int i = start; i < this.limit; i++) {
+            final byte b = this.buffer[i];
+            if (b == '"') {
+                this.pos = i + 1;
+                return new String(this.buffer, start, i - start, StandardCharsets.ISO_8859_1);
+            }
+            if (b == '\\' || b < 0x20) break; // negative bytes are non-ascii
+        }
+
+        // decode escape sequences and multi-byte characters
+        int n = 0;
+        for (;;) {
+            int c = read();
+            if (c < 0) throw syntaxError("unterminated string");
+            if (n + 2 > this.chars.length) growChars();
+            if (c == '"') return new String(this.chars, 0, n);
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case '"':  case '\\': case '/': this.chars[n++] = (char) c; break;
+                    case 'b':  this.chars[n++] = '\b'; break;
+                    case 'f':  this.chars[n++] = '\f'; break;
+                    case 'n':  this.chars[n++] = '\n'; break;
+                    case 'r':  this.chars[n++] = '\r'; break;
+                    case 't':  this.chars[n++] = '\t'; break;
+                    case 'u':
+                        int u = 0;
+                        for (int i = 0; i < 4; i++) {
+                            final int h = Character.digit(read(), 16);
+                            if (h < 0) throw syntaxError("illegal escape");
+                            u = (u << 4) | h;
+                        }
+                        this.chars[n++] = (char) u;
+                        break;
+                    default: throw syntaxError("illegal escape");
+                }
+            } else if (c < 0x20) {
+                throw syntaxError("control character in string"); // must be escaped, RFC 8259 section 7
+            } else if (c < 0x80) {
+                this.chars[n++] = (char) c;
+            } else {
+                // multi-byte UTF-8 sequence; malformed sequences are replaced like in the java decoders
+                final int extra = c >= 0xf0 && c < 0xf8 ? 3 : c >= 0xe0 ? 2 : c >= 0xc0 ? 1 : -1;
+                if (extra < 0 || c >= 0xf8) {
+                    this.chars[n++] = '\ufffd';
+                    continue;
+                }
+                int cp = c & (0x3f >> extra);
+                boolean malformed = false;
+                for (int i = 0; i < extra; i++) {
+                    if (this.pos >= this.limit && !fill()) throw syntaxError("unterminated string");
+                    final int cc = this.buffer[this.pos] & 0xff;
+                    if ((cc & 0xc0) != 0x80) {
+                        malformed = true;
+                        break;
+                    }
+                    this.pos++;
+                    cp = (cp << 6) | (cc & 0x3f);
+                }
+                if (malformed || cp > Character.MAX_CODE_POINT) {
+                    this.chars[n++] = '\ufffd';
+                } else if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    this.chars[n++] = Character.highSurrogate(cp);
+                    this.chars[n++] = Character.lowSurrogate(cp);
+                } else {
+                    this.chars[n++] = (char) cp;
+                }
+            }
+        }
+    }
+
+    private void skipString() throws JSONException {
+        for (;;) {
+            if (this.pos >= this.limit && !fill()) throw syntaxError("unterminated string");
+            final byte b = this.buffer[this.pos++];
+            if (b == '"') return;
+            if (b >= 0 && b < 0x20) throw syntaxError("control character in string");
+            if (b == '\\') {
+                if (this.pos >= this.limit && !fill()) throw syntaxError("unterminated string");
+                this.pos++; // the escaped character; the hex digits of unicode escapes need no special handling
+            }
+        }
+    }
+
+    private void growChars() {
+        final char[] c = new char[this.chars.length * 2];
+        System.arraycopy(this.chars, 0, c, 0, this.chars.length);
+        this.chars = c;
+    }
+
+    private JSONException syntaxError(final String message) {
+        return new JSONException(message + " at byte " + (this.consumed + this.pos));
+    }
+
+}
@@ -0,0 +1,392 @@
+/**
+ *  JSONStreamWriter
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.tools;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+/**
+ * A json generator which writes UTF-8 bytes directly into a stream.
+ * Values are written with the same rules as JSONObject.toString(): strings are escaped like in JSONObject.quote(),
+ * JSONString values write their own json and numbers are formatted with JSONObject.numberToString().
+ * Therefore writing a JSONObject produces the same bytes as the UTF-8 encoded JSONObject.toString().
+ * Objects and arrays can also be written event by event with startObject(), key(), value() and the end methods.
+ * A JSONStreamWriter must only be used by one thread.
+ */
+public class JSONStreamWriter implements Closeable, Flushable {
+
+    private final static int BUFFER_SIZE = 8192;
+    private final static byte[] HEX = "0123456789abcdef".getBytes();
+    private final static byte[] NULL = "null".getBytes(), TRUE = "true".getBytes(), FALSE = "false".getBytes();
+    private final static Pattern NUMBER_PATTERN = Pattern.compile("-?(?:0|[1-9]\\d*)(?:\\.\\d+)?(?:[eE][+-]?\\d+)?");
+
+    private final OutputStream os;
+    private BufferPool.Buffer pooled; // the write buffer, is given back to the pool when the generator is closed
+    private byte[] buffer;
+    private int pos;
+    private boolean[] first; // for each nesting level: true if no element had been written yet
+    private int depth;
+    private boolean afterKey;
+    private char pendingHighSurrogate;
+
+    /**
+     * create a generator
+     * @param os the target stream; the stream is closed when the generator is closed
+     */
+    public JSONStreamWriter(final OutputStream os) {
+        this.os = os;
+        this.pooled = BufferPool.HEAP.allocate(BUFFER_SIZE);
+        this.buffer = this.pooled.array();
+        this.pos = 0;
+        this.first = new boolean[16];
+        this.first[0] = true;
+        this.depth = 0;
+        this.afterKey = false;
+        this.pendingHighSurrogate = 0;
+    }
+
+    /**
+     * serialize a json value
+     * @param value a JSONObject, JSONArray or any other value which can be written with value(Object)
+     * @return the UTF-8 encoded json
+     * @throws JSONException
+     */
+    public static byte[] toBytes(final Object value) throws JSONException {
+        final CompositeBuffer cb = new CompositeBuffer(BufferPool.HEAP, BUFFER_SIZE);
+        try (final JSONStreamWriter writer = new JSONStreamWriter(cb)) {
+            writer.value(value);
+            if (cb.size() == 0) {
+                // the json fits into the write buffer, which is copied only once
+                final byte[] b = Arrays.copyOf(writer.buffer, writer.pos);
+                writer.pos = 0;
+                return b;
+            }
+            writer.flushBuffer();
+            return cb.toByteArray();
+        } catch (final IOException e) {
+            throw new JSONException(e); // does not happen with a CompositeBuffer
+        }
+    }
+
+    /**
+     * write a line feed between two top-level values, i.e. in jsonlist streams
+     * @return the generator
+     * @throws IOException
+     */
+    public JSONStreamWriter newLine() throws IOException {
+        write('\n');
+        return this;
+    }
+
+    public JSONStreamWriter startObject() throws IOException {
+        beforeValue();
+        write('{');
+        push();
+        return this;
+    }
+
+    public JSONStreamWriter endObject() throws IOException {
+        this.depth--;
+        write('}');
+        return this;
+    }
+
+    public JSONStreamWriter startArray() throws IOException {
+        beforeValue();
+        write('[');
+        push();
+        return this;
+    }
+
+    public JSONStreamWriter endArray() throws IOException {
+        this.depth--;
+        write(']');
+        return this;
+    }
+
+    /**
+     * write the key of the next object member; the key must be followed by a value
+     * @param key the key
+     * @return the generator
+     * @throws IOException
+     */
+    public JSONStreamWriter key(final String key) throws IOException {
+        if (this.first[this.depth]) this.first[this.depth] = false; else write(',');
+        quote(key);
+        write(':');
+        this.afterKey = true;
+        return this;
+    }
+
+    public JSONStreamWriter value(final String value) throws IOException {
+        beforeValue();
+        if (value == null) write(NULL); else quote(value);
+        return this;
+    }
+
+    public JSONStreamWriter value(final long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public JSONStreamWriter value(final boolean value) throws IOException {
+        beforeValue();
+        write(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public JSONStreamWriter nullValue() throws IOException {
+        beforeValue();
+        write(NULL);
+        return this;
+    }
+
+    /**
+     * write any json value; JSONObject and JSONArray values are written recursively
+     * @param value the value
+     * @return the generator
+     * @throws IOException
+     * @throws JSONException if a number is not finite or a JSONString fails
+     */
+    public JSONStreamWriter value(final Object value) throws IOException, JSONException {
+        if (value == null || value.equals(null)) {
+            nullValue();
+        } else if (value instanceof String) {
+            value((String) value);
+        } else if (value instanceof JSONObject) {
+            final JSONObject json = (JSONObject) value;
+            startObject();
+            for (final String key: json.keySet()) {
+                key(key);
+                value(json.opt(key));
+            }
+            endObject();
+        } else if (value instanceof JSONArray) {
+            startArray();
+            for (final Object o: (JSONArray) value) value(o);
+            endArray();
+        } else if (value instanceof JSONString) {
+            Object o;
+            try {
+                o = ((JSONString) value).toJSONString();
+            } catch (final Exception e) {
+                throw new JSONException(e);
+            }
+            beforeValue();
+            if (o == null) quote(value.toString()); else writeRaw(o.toString());
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            value(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            final String s = JSONObject.numberToString((Number) value);
+            if (!NUMBER_PATTERN.matcher(s).matches()) throw new JSONException("JSON does not allow non-finite numbers: " + s); // like NaN or Infinity
+            beforeValue();
+            writeRaw(s);
+        } else if (value instanceof Boolean) {
+            value(((Boolean) value).booleanValue());
+        } else if (value instanceof Enum<?>) {
+            value(((Enum<?>) value).name());
+        } else if (value instanceof Map) {
+            value(new JSONObject((Map<?, ?>) value));
+        } else if (value instanceof Collection) {
+            value(new JSONArray((Collection<?>) value));
+        } else if (value.getClass().isArray()) {
+            value(new JSONArray(value));
+        } else {
+            value(value.toString());
+        }
+        return this;
+    }
+
+    private void push() {
+        this.depth++;
+        if (this.depth == this.first.length) {
+            final boolean[] f = new boolean[this.depth * 2];
+            System.arraycopy(this.first, 0, f, 0, this.depth);
+            this.first = f;
+        }
+        this.first[this.depth] = true;
+    }
+
+    private void beforeValue() throws IOException {
+        if (this.afterKey) {
+            this.afterKey = false;
+        } else if (this.depth > 0) {
+            if (this.first[this.depth]) this.first[this.depth] = false; else write(',');
+        }
+    }
+
+    private void write(final int b) throws IOException {
+        if (this.pos == BUFFER_SIZE) flushBuffer();
+        this.buffer[this.pos++] = (byte) b;
+    }
+
+    private void write(final byte[] b) throws IOException {
+        if (this.pos + b.length > BUFFER_SIZE) flushBuffer();
+        System.arraycopy(b, 0, this.buffer, this.pos, b.length);
+        this.pos += b.length;
+    }
+
+    private void writeLong(long v) throws IOException {
+        if (this.pos + 20 > BUFFER_SIZE) flushBuffer();
+        if (v == Long.MIN_VALUE) {
+            writeRaw(Long.toString(v));
+            return;
+        }
+        if (v < 0) {
+            this.buffer[this.pos++] = '-';
+            v = -v;
+        }
+        final int start = this.pos;
+        do {
+            this.buffer[this.pos++] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v > 0);
+        // reverse the digits
+        for (int i = start, j = this.pos - 1; i < j; i++, j--) {
+            final byte t = this.buffer[i];
+            this.buffer[i] = this.buffer[j];
+            this.buffer[j] = t;
+        }
+    }
+
+    /**
+     * write a string without quoting, i.e. the json of a JSONString
+     * @param s the json text
+     * @throws IOException
+     */
+    private void writeRaw(final String s) throws IOException {
+        final int len = s.length();
+        for (int i = 0; i < len; i++) encode(s.charAt(i), i + 1 < len ? s.charAt(i + 1) : 0);
+    }
+
+    /**
+     * encode one character as UTF-8; surrogate pairs are combined into one code point,
+     * unpaired surrogates are written as '?' like the java encoder does
+     */
+    private void encode(final char c, final char next) throws IOException {
+        if (this.pos + 4 > BUFFER_SIZE) flushBuffer();
+        if (this.pendingHighSurrogate != 0) {
+            final int cp = Character.toCodePoint(this.pendingHighSurrogate, c);
+            this.pendingHighSurrogate = 0;
+            this.buffer[this.pos++] = (byte) (0xf0 | (cp >> 18));
+            this.buffer[this.pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+            this.buffer[this.pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+            this.buffer[this.pos++] = (byte) (0x80 | (cp & 0x3f));
+        } else if (c < 0x80) {
+            this.buffer[this.pos++] = (byte) c;
+        } else if (c < 0x800) {
+            this.buffer[this.pos++] = (byte) (0xc0 | (c >> 6));
+            this.buffer[this.pos++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c) && Character.isLowSurrogate(next)) {
+            this.pendingHighSurrogate = c;
+        } else if (Character.isSurrogate(c)) {
+            this.buffer[this.pos++] = (byte) '?';
+        } else {
+            this.buffer[this.pos++] = (byte) (0xe0 | (c >> 12));
+            this.buffer[this.pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            this.buffer[this.pos++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    /**
+     * write a quoted string with the escaping rules of JSONObject.quote()
+     * @param s the string
+     * @throws IOException
+     */
+    private void quote(final String s) throws IOException {
+        write('"');
+        final int len = s.length();
+        char c = 0;
+        for (int i = 0; i < len; i++) {
+            final char b = c;
+            c = s.charAt(i);
+            switch (c) {
+                case '\\':
+                case '"':
+                    write('\\');
+                    write(c);
+                    break;
+                case '/':
+                    if (b == '<') write('\\');
+                    write(c);
+                    break;
+                case '\b': write('\\'); write('b'); break;
+                case '\t': write('\\'); write('t'); break;
+                case '\n': write('\\'); write('n'); break;
+                case '\f': write('\\'); write('f'); break;
+                case '\r': write('\\'); write('r'); break;
+                default:
+                    if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+                        if (this.pos + 6 > BUFFER_SIZE) flushBuffer();
+                        this.buffer[this.pos++] = '\\';
+                        this.buffer[this.pos++] = 'u';
+                        this.buffer[this.pos++] = HEX[(c >> 12) & 0xf];
+                        this.buffer[this.pos++] = HEX[(c >> 8) & 0xf];
+                        this.buffer[this.pos++] = HEX[(c >> 4) & 0xf];
+                        this.buffer[this.pos++] = HEX[c & 0xf];
+                    } else if (c < 0x80) {
+                        write(c);
+                    } else {
+                        encode(c, i + 1 < len ? s.charAt(i + 1) : 0);
+                    }
+            }
+        }
+        write('"');
+    }
+
+    private void flushBuffer() throws IOException {
+        if (this.pos > 0) {
+            this.os.write(this.buffer, 0, this.pos);
+            this.pos = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        this.os.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.pooled == null) return;
+        try {
+            flushBuffer();
+            this.os.close();
+        } finally {
+            this.pooled.release();
+            this.pooled = null;
+            this.buffer = null;
+        }
+    }
+
+}
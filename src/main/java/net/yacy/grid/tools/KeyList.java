@@ -20,105 +20,476 @@
 
 package net.yacy.grid.tools;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.GZIPInputStream;
 
 /**
  * a key list is a file which contains a list of key words; each line one word
- * The key list is stored into a java set object and the list can be extended on the fly
- * which is done by extending the file with just another line.
- * When is key list file is initialized, all lines are read and pushed into a java set
+ * The list can be extended on the fly which is done by extending the file with just another line.
+ * Keys are looked up in an index file next to the key list, which is a memory-mapped open-addressing
+ * hash table of the 8-byte md5 digests of the keys together with the file offset of the line of the key.
+ * The index records the length, the modification time and a fingerprint of the head and the tail of the part
+ * of the key list that it covers, so opening a key list only maps the index and reads the lines which were
+ * appended after the index was written. An index which is missing, damaged or does not match the key list
+ * is rebuilt from the key list, and the index is rebuilt with twice the size when it becomes too full.
+ * A key found in the index is confirmed by reading back its line. Keys whose digest collides with the digest
+ * of another key are held in an overflow set in memory; the index stores only their number, an index with collisions
+ * is rebuilt when the key list is opened again to find them.
+ * Compressed (.gz) key lists are indexed but cannot be extended; their index is rebuilt whenever the file changes.
  */
 public class KeyList implements Iterable<String> {
 
-    private static final Object _obj = new Object();
+    private final static int MAGIC = 0x594b4932; // "YKI2"
+    private final static int HEADER = 48; // magic, collision count, capacity, count, indexed length, modification time, fingerprint
+    private final static int SAMPLE = 4096; // the size of the head and the tail of the key list in the fingerprint
+    private final static int SLOT = 16; // digest, offset of the key line
+    private final static int MIN_CAPACITY = 1024;
+    private final static int MAX_CAPACITY = 1 << 26; // the index must fit into one mapped buffer, which is limited to 2GB
+    private final static double MAX_LOAD = 0.6;
 
-    private final Map<String, Object> keys;
-    private final RandomAccessFile raf;
+    /**
+     * the index; a table is replaced by a new one when it is rebuilt, readers may still use the old mapping
+     */
+    private final static class Table {
+        private final MappedByteBuffer buffer;
+        private final int capacity, mask;
+        private volatile int count;
 
-    public KeyList(final File file) throws IOException {
-        this.keys = new ConcurrentHashMap<String, Object>();
+        private Table(final MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            this.capacity = (int) buffer.getLong(8);
+            this.mask = this.capacity - 1;
+            this.count = (int) buffer.getLong(16);
+        }
 
-        if (file.exists()) {
-            InputStream is = new FileInputStream(file);
-            if (file.getName().endsWith(".gz")) {
-                is = new GZIPInputStream(is);
+        private static Table create(final File f, final int capacity) throws IOException {
+            final File tmp = new File(f.getParentFile(), f.getName() + ".tmp");
+            tmp.delete();
+            final MappedByteBuffer buffer;
+            try (final RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+                raf.setLength(HEADER + (long) SLOT * capacity); // the file is zero-filled, a zero digest marks an empty slot
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
             }
-            final BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-            String l;
-            try {
-                while ((l = reader.readLine()) != null) {
-                    if (l.isEmpty() || l.charAt(0) == '#') continue;
-                    l = l.trim().toLowerCase();
-                    this.keys.put(l, _obj);
-                }
+            buffer.putInt(0, MAGIC);
+            buffer.putLong(8, capacity);
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return new Table(buffer);
+        }
+
+        private static Table open(final File f) {
+            if (!f.exists() || f.length() < HEADER + SLOT * MIN_CAPACITY) return null;
+            try (final RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                final MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+                final long capacity = buffer.getLong(8);
+                if (buffer.getInt(0) != MAGIC || Long.bitCount(capacity) != 1 || capacity > MAX_CAPACITY ||
+                    raf.length() != HEADER + SLOT * capacity || buffer.getLong(16) < 0 || buffer.getLong(16) > capacity) return null;
+                return new Table(buffer);
             } catch (final IOException e) {
-                // finish
-            } finally {
-                reader.close();
+                return null;
+            }
+        }
+
+        private long indexedLength() {
+            return this.buffer.getLong(24);
+        }
+
+        private void setIndexedLength(final long length) {
+            this.buffer.putLong(24, length);
+        }
+
+        private long lastModified() {
+            return this.buffer.getLong(32);
+        }
+
+        private long fingerprint() {
+            return this.buffer.getLong(40);
+        }
+
+        private void setIdentity(final long lastModified, final long fingerprint) {
+            this.buffer.putLong(32, lastModified);
+            this.buffer.putLong(40, fingerprint);
+        }
+
+        private int collisions() {
+            return this.buffer.getInt(4);
+        }
+
+        private void setCollisions(final int collisions) {
+            this.buffer.putInt(4, collisions);
+        }
+
+        /**
+         * @return the position of the slot of the digest or of the empty slot where the digest belongs
+         */
+        private int slot(final long digest) {
+            int i = (int) digest & this.mask;
+            while (true) {
+                final int p = HEADER + i * SLOT;
+                final long d = this.buffer.getLong(p);
+                if (d == digest || d == 0) return p;
+                i = (i + 1) & this.mask;
             }
         }
 
-        this.raf = new RandomAccessFile(file, "rw");
+        private long offset(final long digest) {
+            final int p = slot(digest);
+            return this.buffer.getLong(p) == 0 ? -1 : this.buffer.getLong(p + 8);
+        }
+
+        // must be called while synchronized on the key list
+        private boolean insert(final long digest, final long offset) {
+            final int p = slot(digest);
+            if (this.buffer.getLong(p) != 0) return false;
+            this.buffer.putLong(p + 8, offset);
+            this.buffer.putLong(p, digest);
+            this.buffer.putLong(16, this.count + 1);
+            this.count++;
+            return true;
+        }
+    }
+
+    private final File file, indexFile;
+    private final boolean compressed;
+    private final RandomAccessFile raf;
+    private volatile Table table;
+    private final Set<String> collisions; // keys which are not in the index because their digest belongs to another key
 
+    public KeyList(final File file) throws IOException {
+        this.file = file;
+        this.indexFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".idx");
+        this.compressed = file.getName().endsWith(".gz");
+        this.raf = this.compressed ? null : new RandomAccessFile(file, "rw");
+        this.collisions = ConcurrentHashMap.newKeySet();
+
+        final long length = this.compressed ? file.length() : this.raf.length();
+        Table t = Table.open(this.indexFile);
+        if (t != null && !(t.indexedLength() == length && t.lastModified() == file.lastModified())) {
+            // the key list was changed after the index was written; it may only have been extended
+            if (this.compressed || t.indexedLength() > length || t.fingerprint() != fingerprint(t.indexedLength())) t = null;
+        }
+        if (t != null && t.collisions() > 0) {
+            // the colliding keys are not in the index; they are found again while the index is rebuilt
+            t = null;
+        }
+        if (t == null) {
+            // the index is missing, damaged or belongs to another key list
+            t = Table.create(this.indexFile, MIN_CAPACITY);
+        }
+        this.table = t;
+        if (t.indexedLength() < length) index(t.indexedLength());
+        sync();
+    }
+
+    // a hash of the head and the tail of the first length bytes of the key list
+    private long fingerprint(final long length) throws IOException {
+        final int head = (int) Math.min(SAMPLE, length);
+        final int tail = (int) Math.min(SAMPLE, length - head);
+        final byte[] b = new byte[head + tail];
+        try (final RandomAccessFile r = new RandomAccessFile(this.file, "r")) {
+            r.readFully(b, 0, head);
+            r.seek(length - tail);
+            r.readFully(b, head, tail);
+        }
+        return Digest.xxHash64(b, 0, b.length, length);
+    }
+
+    // write the identity of the key list to the index, so the index can be re-used when the key list is opened again
+    private synchronized void sync() throws IOException {
+        final long length = this.table.indexedLength();
+        this.table.setIdentity(this.file.lastModified(), fingerprint(length));
+        this.table.buffer.force();
+    }
+
+    // read the key list from the given offset and add all keys to the index
+    private void index(final long from) throws IOException {
+        try (final LineReader reader = new LineReader(from)) {
+            String key;
+            while ((key = reader.next()) != null) {
+                if (this.table.count + 1 > this.table.capacity * MAX_LOAD) grow();
+                final long digest = digest(key);
+                if (this.table.insert(digest, reader.offset)) continue;
+                // the digest is known: this is a duplicate line or a collision; lines of compressed key lists cannot be compared
+                if (!this.compressed && !this.collisions.contains(key) && !key.equals(line(this.table.offset(digest)))) collision(key);
+            }
+        }
+        this.table.setIndexedLength(this.compressed ? this.file.length() : this.raf.length());
+    }
+
+    // must be called while synchronized on the key list
+    private void grow() throws IOException {
+        final Table old = this.table;
+        if (old.capacity >= MAX_CAPACITY) throw new IOException("key list " + this.file + " is too large");
+        final Table t = Table.create(this.indexFile, old.capacity * 2);
+        for (int i = 0; i < old.capacity; i++) {
+            final int p = HEADER + i * SLOT;
+            final long d = old.buffer.getLong(p);
+            if (d != 0) t.insert(d, old.buffer.getLong(p + 8));
+        }
+        t.setIndexedLength(old.indexedLength());
+        t.setIdentity(old.lastModified(), old.fingerprint());
+        t.setCollisions(old.collisions());
+        this.table = t;
     }
 
-    public void clear() throws IOException {
+    // must be called while synchronized on the key list
+    private void collision(final String key) {
+        this.collisions.add(key);
+        this.table.setCollisions(this.collisions.size());
+        Logger.info(KeyList.class, "KeyList " + this.file + ": the digest of key " + key + " collides with another key, the key is kept in the overflow set");
+    }
+
+    private static String normalize(final String key) {
+        return key.trim().toLowerCase();
+    }
+
+    private static long digest(final String key) {
+        final long d = Digest.encodeMD5Long(key.getBytes(StandardCharsets.UTF_8));
+        return d == 0 ? 1 : d; // zero marks an empty slot
+    }
+
+    public synchronized void clear() throws IOException {
+        if (this.compressed) throw new IOException("compressed key list " + this.file + " cannot be changed");
         this.raf.setLength(0);
-        this.keys.clear();
+        this.table = Table.create(this.indexFile, MIN_CAPACITY);
+        this.collisions.clear();
+        sync();
     }
 
     public int size() {
-        return this.keys.size();
+        return this.table.count + this.collisions.size();
     }
 
-    public boolean contains(final String key) {
-        return this.keys.containsKey(key.trim().toLowerCase());
+    public boolean contains(String key) {
+        key = normalize(key);
+        final long offset = this.table.offset(digest(key));
+        if (offset < 0) return false;
+        if (this.compressed) return true; // lines of a compressed key list cannot be read at random; the index is rebuilt if the file changes
+        if (this.collisions.contains(key)) return true;
+        try {
+            return key.equals(line(offset)); // digests may collide
+        } catch (final IOException e) {
+            Logger.warn(KeyList.class, "KeyList could not read key from " + this.file, e);
+            return false;
+        }
     }
 
-    public void add(final String key) throws IOException {
-        if (this.keys.containsKey(key)) return;
-        synchronized (this.raf) {
-            if (this.keys.containsKey(key)) return; // check again for those threads who come late (after another has written this)
-            this.keys.put(key, _obj);
-            this.raf.seek(this.raf.length());
-            this.raf.write(key.getBytes(StandardCharsets.UTF_8));
-            this.raf.writeByte('\n');
+    // read the key in the line at the given offset
+    private String line(final long offset) throws IOException {
+        final FileChannel channel = this.raf.getChannel();
+        ByteBuffer b = ByteBuffer.allocate(256);
+        long position = offset;
+        while (true) {
+            final int start = b.position();
+            final int n = channel.read(b, position);
+            for (int i = start; i < b.position(); i++) {
+                if (b.get(i) == '\n') return normalize(new String(b.array(), 0, i, StandardCharsets.UTF_8));
+            }
+            if (n <= 0) return normalize(new String(b.array(), 0, b.position(), StandardCharsets.UTF_8));
+            position += n;
+            if (!b.hasRemaining()) {
+                final ByteBuffer c = ByteBuffer.allocate(b.capacity() * 2);
+                b.flip();
+                c.put(b);
+                b = c;
+            }
         }
     }
 
+    public void add(String key) throws IOException {
+        key = normalize(key);
+        if (key.isEmpty() || key.charAt(0) == '#') return; // would not be read back as key
+        final long digest = digest(key);
+        if (known(key, digest)) return;
+        synchronized (this) {
+            if (known(key, digest)) return; // check again for those threads who come late (after another has written this)
+            if (this.compressed) throw new IOException("compressed key list " + this.file + " cannot be extended");
+            final byte[] b = (key + "\n").getBytes(StandardCharsets.UTF_8);
+            final long offset = this.raf.length();
+            this.table.setIdentity(0, 0); // the index does not match the key list until it is synced
+            this.raf.seek(offset);
+            this.raf.write(b);
+            if (this.table.offset(digest) >= 0) {
+                collision(key);
+            } else {
+                if (this.table.count + 1 > this.table.capacity * MAX_LOAD) grow();
+                this.table.insert(digest, offset);
+            }
+            this.table.setIndexedLength(offset + b.length);
+        }
+    }
+
+    // check if a key is in the key list; a compressed key list cannot be extended, so its index is trusted
+    private boolean known(final String key, final long digest) throws IOException {
+        final long offset = this.table.offset(digest);
+        if (offset < 0) return false;
+        return this.compressed || this.collisions.contains(key) || key.equals(line(offset));
+    }
+
     public synchronized void close() throws IOException {
-        synchronized (this.raf) {
-            this.raf.close();
+        sync();
+        if (this.raf != null) this.raf.close();
+    }
+
+    /**
+     * iterate over all keys in the order of the key list; duplicate lines are returned once
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private LineReader reader = null;
+            private String next = null;
+            private boolean done = false;
+            private final Set<String> collisionsDone = new HashSet<>(); // colliding keys which had been returned
+
+            private void advance() {
+                if (this.next != null || this.done) return;
+                try {
+                    if (this.reader == null) this.reader = new LineReader(0);
+                    final Table t = KeyList.this.table;
+                    String key;
+                    while ((key = this.reader.next()) != null) {
+                        // only the first line of a key is indexed; colliding keys are not indexed and are returned once
+                        if (t.offset(digest(key)) == this.reader.offset || (KeyList.this.collisions.contains(key) && this.collisionsDone.add(key))) {
+                            this.next = key;
+                            return;
+                        }
+                    }
+                } catch (final IOException e) {
+                    Logger.warn(KeyList.class, "KeyList iteration of " + KeyList.this.file + " failed", e);
+                }
+                this.done = true;
+                if (this.reader != null) this.reader.close();
+            }
+
+            @Override
+            public boolean hasNext() {
+                advance();
+                return this.next != null;
+            }
+
+            @Override
+            public String next() {
+                advance();
+                if (this.next == null) throw new NoSuchElementException();
+                final String key = this.next;
+                this.next = null;
+                return key;
+            }
+        };
+    }
+
+    /**
+     * reads the keys of the key list together with the offset of their line; comments and empty lines are skipped.
+     * Plain key lists are read with positional reads, which do not interfere with appending keys.
+     */
+    private final class LineReader implements AutoCloseable {
+        private final InputStream is;
+        private final long end;
+        private final byte[] buffer = new byte[65536];
+        private int pos = 0, limit = 0;
+        private long bufferOffset, offset;
+        private byte[] line = new byte[256];
+
+        private LineReader(final long from) throws IOException {
+            this.bufferOffset = from;
+            if (KeyList.this.compressed) {
+                this.is = new GZIPInputStream(new FileInputStream(KeyList.this.file), 65536);
+                this.end = Long.MAX_VALUE;
+            } else {
+                final FileChannel channel = KeyList.this.raf.getChannel();
+                this.end = KeyList.this.raf.length(); // lines which are appended while reading are not read
+                this.is = new InputStream() {
+                    private long position = from;
+                    @Override
+                    public int read() throws IOException {
+                        throw new UnsupportedOperationException();
+                    }
+                    @Override
+                    public int read(final byte[] b, final int off, final int len) throws IOException {
+                        final int l = (int) Math.min(len, LineReader.this.end - this.position);
+                        if (l <= 0) return -1;
+                        final int n = channel.read(ByteBuffer.wrap(b, off, l), this.position);
+                        if (n > 0) this.position += n;
+                        return n;
+                    }
+                };
+            }
+        }
+
+        /**
+         * @return the next key or null at the end of the key list; the offset of the line is stored in this.offset
+         */
+        private String next() throws IOException {
+            while (true) {
+                this.offset = this.bufferOffset + this.pos;
+                int l = 0;
+                boolean eof = false;
+                while (true) {
+                    if (this.pos == this.limit) {
+                        this.bufferOffset += this.limit;
+                        this.pos = 0;
+                        this.limit = Math.max(0, this.is.read(this.buffer, 0, this.buffer.length));
+                        if (this.limit == 0) {eof = true; break;}
+                    }
+                    final byte b = this.buffer[this.pos++];
+                    if (b == '\n') break;
+                    if (l == this.line.length) this.line = Arrays.copyOf(this.line, l * 2);
+                    this.line[l++] = b;
+                }
+                if (eof && l == 0) return null;
+                if (l == 0 || this.line[0] == '#') continue;
+                final String key = normalize(new String(this.line, 0, l, StandardCharsets.UTF_8));
+                if (!key.isEmpty()) return key;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {this.is.close();} catch (final IOException e) {}
         }
     }
 
     public static void main(final String[] args) {
         try {
-            final KeyList kl = new KeyList(new File("/tmp/test"));
+            final File f = new File("/tmp/test");
+            KeyList kl = new KeyList(f);
             kl.add("eins");
             kl.add("zwei");
             kl.add("drei");
             System.out.println(kl.contains("eins") ? "drin" : "nicht");
+            kl.close();
+
+            // the key list is extended by another program: the index is re-used
+            Files.write(f.toPath(), "vier\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            kl = new KeyList(f);
+            System.out.println(kl.contains("eins") && kl.contains("vier") ? "drin" : "nicht");
+            kl.close();
+
+            // the key list is replaced: the index is rebuilt
+            Files.write(f.toPath(), "fuenf\nsechs\nsieben\nacht\n".getBytes(StandardCharsets.UTF_8));
+            kl = new KeyList(f);
+            System.out.println(!kl.contains("eins") && kl.contains("acht") ? "neu" : "alt");
+            kl.close();
         } catch (final IOException e) {
             Logger.warn(e);
         }
 
     }
-
-    @Override
-    public Iterator<String> iterator() {
-        return this.keys.keySet().iterator();
-    }
-
 }
@@ -19,28 +19,61 @@
 
 package net.yacy.grid.tools;
 
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
+import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.SimpleFormatter;
 import java.util.logging.StreamHandler;
 
-
+/**
+ * The logger of the grid services. Log calls do not format anything in the calling thread:
+ * every call puts a log event into a lock-free ring buffer and a single background thread formats
+ * the events and hands them over to java logging. Messages may contain {} placeholders which are
+ * replaced by the arguments only when the event is written, so the arguments of suppressed debug
+ * messages are never turned into strings.
+ * If the ring buffer is full, a log call either waits for a free slot (the default) or drops the event;
+ * both cases are counted. The last messages are kept in a second ring which is used for the log tail.
+ */
 public class Logger {
 
-    private static int maxlines = 10000;
-    private static final ConcurrentLinkedQueue<String> lines = new ConcurrentLinkedQueue<>();
-    private static final AtomicInteger a = new AtomicInteger(0);
-    private static final Map<String, org.slf4j.Logger> logger = new ConcurrentHashMap<>();
-    private static final org.slf4j.Logger dfltLogger = org.slf4j.LoggerFactory.getLogger("default");
+    public enum OverflowPolicy {BLOCK, DROP}
+
+    private static final int RING_SIZE = 8192; // must be a power of two
+    private static final int RING_MASK = RING_SIZE - 1;
+
+    private static final Map<String, java.util.logging.Logger> logger = new ConcurrentHashMap<>();
+    private static final java.util.logging.Logger dfltLogger = java.util.logging.Logger.getLogger("default");
+
+    // the event ring: a slot may be written by a producer if its sequence equals the producer position
+    // and may be read by the writer thread if its sequence is one ahead of the reader position
+    private static final Event[] ring = new Event[RING_SIZE];
+    private static final AtomicLongArray sequences = new AtomicLongArray(RING_SIZE);
+    private static final AtomicLong producerPosition = new AtomicLong(0);
+    private static volatile long consumerPosition = 0; // only written by the writer thread
+    private static final LongAdder published = new LongAdder(), dropped = new LongAdder(), blocked = new LongAdder();
+    private static volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private static volatile boolean writerWaiting = false;
+    private static final Thread writer;
+
+    // the tail of the log: only the writer thread adds lines, readers take a snapshot;
+    // the tail is changed only while holding tailLock, the lock is uncontended unless the tail is resized or cleaned
+    private static final Object tailLock = new Object();
+    private static volatile String[] lines = new String[10000];
+    private static volatile long lineCount = 0;
+    private static volatile long lineFloor = 0; // lines before that count are removed with clean()
 
     static {
         final StreamHandler sh = new ConsoleHandler();
@@ -51,6 +84,65 @@ public class Logger {
         sh.setFormatter(new LineFormatter());
         javaLogger.addHandler(sh);
         javaLogger.log(java.util.logging.Level.INFO, "configured logging");
+
+        for (int i = 0; i < RING_SIZE; i++) sequences.set(i, i);
+        writer = new Thread("Logger.writer") {
+            @Override
+            public void run() {
+                while (true) {
+                    if (!drain()) {
+                        writerWaiting = true;
+                        if (!drain()) LockSupport.parkNanos(100000000L);
+                        writerWaiting = false;
+                    }
+                }
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+        // write all pending events before the jvm terminates
+        Runtime.getRuntime().addShutdownHook(new Thread("Logger.shutdown") {
+            @Override
+            public void run() {
+                flush(1000);
+            }
+        });
+    }
+
+    /**
+     * a log event; the message is formatted by the writer thread
+     */
+    private final static class Event {
+        private final Level level;
+        private final String className;
+        private final String format;
+        private final Object[] args;
+        private final Throwable thrown;
+        private final long time;
+        private Event(final Level level, final String className, final String format, final Object[] args, final Throwable thrown) {
+            this.level = level;
+            this.className = className;
+            this.format = format;
+            this.args = args;
+            this.thrown = thrown;
+            this.time = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * a log record with the time of the log call; the record is created later by the writer thread
+     */
+    private final static class EventRecord extends LogRecord {
+        private static final long serialVersionUID = 1L;
+        private final long time;
+        private EventRecord(final Level level, final String msg, final long time) {
+            super(level, msg);
+            this.time = time;
+        }
+        @Override
+        public long getMillis() {
+            return this.time;
+        }
     }
 
     /**
@@ -73,11 +165,9 @@ public class Logger {
     	private static final String format = "%1$-7s [%2$s] %3$-48s \"%4$s\"%5$s%n";
 
         // format string for printing the log record
-        private final Date dat = new Date();
 
         @Override
-        public synchronized String format(final LogRecord record) {
-            this.dat.setTime(record.getMillis());
+        public String format(final LogRecord record) {
             StringBuilder source = null;
             if (record.getSourceClassName() != null) {
                 source = new StringBuilder(record.getSourceClassName());
@@ -104,50 +194,239 @@ public class Logger {
                 throwable = sw.toString();
             }
             final String levelname = record.getLevel().getName();
-            synchronized(DateParser.iso8601MillisFormat) {
-            	final String line = String.format(format,
-                    levelname,
-                    DateParser.iso8601MillisFormat.format(this.dat),
-                    source.toString(),
-                    message,
-                    throwable);
-            	return line;
-            }
+            final String line = String.format(format,
+                levelname,
+                DateParser.formatISO8601Millis(record.getMillis()),
+                source.toString(),
+                message,
+                throwable);
+            return line;
         }
     }
 
     public static void setMaxLines(final int m) {
-        maxlines = m;
+        if (m <= 0) return;
+        synchronized (tailLock) {
+            if (m == lines.length) return;
+            final String[] l = new String[m];
+            final String[] old = lines;
+            final long count = lineCount;
+            for (long i = Math.max(Math.max(0, count - m), Math.max(lineFloor, count - old.length)); i < count; i++) {
+                l[(int) (i % m)] = old[(int) (i % old.length)];
+            }
+            lines = l;
+        }
     }
 
-    public static ArrayList<String> getLines(final int max) {
-        final Object[] a = lines.toArray();
-        final ArrayList<String> l = new ArrayList<>();
-        final int start = Math.max(0, a.length - max);
-        for (int i = start; i < a.length; i++) l.add((String) a[i]);
-        return l;
+    /**
+     * Set the policy for log calls while the event ring buffer is full
+     * @param policy BLOCK to wait until the writer thread has written an event, DROP to discard the event
+     */
+    public static void setOverflowPolicy(final OverflowPolicy policy) {
+        overflowPolicy = policy;
     }
 
-    private static void append(final String line) {
-        if (line != null) lines.add(line);
-        if (a.incrementAndGet() % 100 == 0) {
-            clean(maxlines);
-            a.set(0);
+    /**
+     * get the last log lines. The lines are not copied, the list contains the strings of the tail ring.
+     * @param max the maximum number of lines
+     * @return the lines, the oldest first
+     */
+    public static ArrayList<String> getLines(final int max) {
+        final String[] l = lines;
+        final long count = lineCount;
+        final long start = Math.max(Math.max(lineFloor, count - max), count - l.length);
+        final ArrayList<String> list = new ArrayList<>((int) Math.max(0, count - start));
+        for (long i = start; i < count; i++) {
+            final String line = l[(int) (i % l.length)];
+            if (line != null) list.add(line);
         }
+        // the writer may have overwritten the oldest lines of the snapshot meanwhile
+        final int overwritten = (int) Math.min(list.size(), Math.max(0, lineCount - l.length - start));
+        return overwritten == 0 ? list : new ArrayList<>(list.subList(overwritten, list.size()));
+    }
+
+    /**
+     * get the last log lines as stream, each line terminated with a line feed.
+     * The lines are encoded one after another while the stream is read.
+     * @param max the maximum number of lines
+     * @return a UTF-8 stream of the lines, the oldest first
+     */
+    public static InputStream getLinesStream(final int max) {
+        final ArrayList<String> l = getLines(max);
+        return new InputStream() {
+            private final byte[] lf = new byte[]{'\n'};
+            private int line = 0;
+            private byte[] b = null;
+            private int p = 0;
+            private boolean next() {
+                while (this.b == null || this.p >= this.b.length) {
+                    if (this.b != null && this.b != this.lf) {
+                        this.b = this.lf;
+                    } else {
+                        if (this.line >= l.size()) return false;
+                        this.b = l.get(this.line++).getBytes(StandardCharsets.UTF_8);
+                    }
+                    this.p = 0;
+                }
+                return true;
+            }
+            @Override
+            public int read() {
+                return next() ? this.b[this.p++] & 0xff : -1;
+            }
+            @Override
+            public int read(final byte[] buffer, final int off, final int len) {
+                if (len == 0) return 0;
+                int c = 0;
+                while (c < len && next()) {
+                    final int n = Math.min(len - c, this.b.length - this.p);
+                    System.arraycopy(this.b, this.p, buffer, off + c, n);
+                    this.p += n;
+                    c += n;
+                }
+                return c == 0 ? -1 : c;
+            }
+        };
     }
 
     public static void clean(final int remaining) {
-        int c = lines.size() - remaining;
-        while (c-- > 0) lines.poll();
+        synchronized (tailLock) {
+            lineFloor = Math.max(lineFloor, lineCount - remaining);
+        }
+    }
+
+    /**
+     * get the counters of the logging pipeline
+     * @return a map with the number of published, dropped and blocked events and the number of waiting events
+     */
+    public static Map<String, Object> getStatistics() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("published", published.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("blocked", blocked.sum());
+        stats.put("pending", producerPosition.get() - consumerPosition);
+        stats.put("policy", overflowPolicy.name());
+        return stats;
+    }
+
+    /**
+     * wait until all events which had been published before are written
+     * @param timeout the maximum waiting time in milliseconds
+     */
+    public static void flush(final long timeout) {
+        if (Thread.currentThread() == writer) return;
+        final long target = producerPosition.get();
+        final long deadline = System.currentTimeMillis() + timeout;
+        while (consumerPosition < target && System.currentTimeMillis() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(1000000L);
+        }
+    }
+
+    /**
+     * put an event into the ring buffer
+     */
+    private static void publish(final Event event) {
+        if (Thread.currentThread() == writer) {
+            // the writer thread must never wait for itself, i.e. if an argument logs in its toString()
+            write(event);
+            return;
+        }
+        long position = producerPosition.get();
+        boolean waited = false;
+        while (true) {
+            final int index = (int) position & RING_MASK;
+            final long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (producerPosition.compareAndSet(position, position + 1)) break;
+            } else if (difference < 0) {
+                // the ring is full
+                if (overflowPolicy == OverflowPolicy.DROP) {
+                    dropped.increment();
+                    return;
+                }
+                if (!waited) {
+                    blocked.increment();
+                    waited = true;
+                }
+                LockSupport.unpark(writer);
+                Thread.yield();
+            }
+            position = producerPosition.get();
+        }
+        final int index = (int) position & RING_MASK;
+        ring[index] = event;
+        sequences.set(index, position + 1);
+        published.increment();
+        if (writerWaiting) LockSupport.unpark(writer);
+    }
+
+    /**
+     * write all events in the ring buffer; this is only called by the writer thread
+     * @return true if any event was written
+     */
+    private static boolean drain() {
+        boolean any = false;
+        while (true) {
+            final long position = consumerPosition;
+            final int index = (int) position & RING_MASK;
+            if (sequences.get(index) != position + 1) return any;
+            final Event event = ring[index];
+            ring[index] = null;
+            sequences.set(index, position + RING_SIZE);
+            consumerPosition = position + 1;
+            try {
+                write(event);
+            } catch (final Throwable e) {
+                // the writer must not log through the ring, it would wait for itself
+                dfltLogger.log(Level.WARNING, "Logger could not write a log event of " + event.className, e);
+            }
+            any = true;
+        }
+    }
+
+    private static void write(final Event event) {
+        String msg = event.format;
+        Throwable thrown = event.thrown;
+        if (event.args != null) {
+            final StringBuilder sb = new StringBuilder(msg.length() + 16 * event.args.length);
+            int a = 0, p = 0, q;
+            while (a < event.args.length && (q = msg.indexOf("{}", p)) >= 0) {
+                sb.append(msg, p, q).append(event.args[a++]);
+                p = q + 2;
+            }
+            sb.append(msg, p, msg.length());
+            msg = sb.toString();
+            // an unused last argument which is a throwable is logged as throwable
+            if (thrown == null && a == event.args.length - 1 && event.args[a] instanceof Throwable) thrown = (Throwable) event.args[a];
+        }
+        final LogRecord record = new EventRecord(event.level, event.className + '$' + msg, event.time);
+        record.setLoggerName(event.className);
+        record.setSourceClassName(event.className); // prevents that java logging looks up the caller in the stack of the writer thread
+        record.setThrown(thrown);
+        getLogger(event.className).log(record);
+
+        // add the message to the tail
+        synchronized (tailLock) {
+            final String[] l = lines;
+            final long count = lineCount;
+            l[(int) (count % l.length)] = msg;
+            lineCount = count + 1;
+        }
+    }
+
+    private static void log(final Level level, final String className, final String format, final Object[] args, final Throwable thrown) {
+        if (!getLogger(className).isLoggable(level)) return;
+        publish(new Event(level, className, format, args, thrown));
     }
 
-    private static org.slf4j.Logger getLogger(String className) {
+    private static java.util.logging.Logger getLogger(String className) {
         if (className == null || className.length() == 0) return dfltLogger;
         final int p = className.indexOf(':');
         if (p >= 0) className = className.substring(0, p);
-        org.slf4j.Logger l = logger.get(className);
+        java.util.logging.Logger l = logger.get(className);
         if (l == null) {
-            l = org.slf4j.LoggerFactory.getLogger(className);
+            l = java.util.logging.Logger.getLogger(className);
             logger.put(className, l);
         }
         return l;
@@ -169,13 +448,11 @@ public class Logger {
     }
 
     private static void debug(final String className, final String msg) {
-        getLogger(className).debug(className + '$' + msg);
-        append(msg);
+        log(Level.FINE, className, msg, null, null);
     }
 
     private static void debug(final String className, final String msg, final Throwable t) {
-        getLogger(className).debug(className + '$' + msg, t);
-        append(msg);
+        log(Level.FINE, className, msg, null, t);
     }
 
     public static void debug(final String msg) {
@@ -194,6 +471,13 @@ public class Logger {
         debug(cls.getCanonicalName(), msg);
     }
 
+    /**
+     * log a message with {} placeholders which are replaced by the arguments when the message is written
+     */
+    public static void debug(final Class<?> cls, final String format, final Object... args) {
+        log(Level.FINE, cls.getCanonicalName(), format, args, null);
+    }
+
     public static void debug(final Class<?> cls, final Throwable t) {
         debug(cls.getCanonicalName(), "", t);
     }
@@ -204,8 +488,7 @@ public class Logger {
 
 
     private static void info(final String className, final String msg) {
-        getLogger(className).info(className + '$' + msg);
-        append(msg);
+        log(Level.INFO, className, msg, null, null);
     }
 
     public static void info(final String msg) {
@@ -216,15 +499,17 @@ public class Logger {
         info(cls.getCanonicalName(), msg);
     }
 
+    public static void info(final Class<?> cls, final String format, final Object... args) {
+        log(Level.INFO, cls.getCanonicalName(), format, args, null);
+    }
+
 
     private static void warn(final String className, final String msg) {
-        getLogger(className).warn(className + '$' + msg);
-        append(msg);
+        log(Level.WARNING, className, msg, null, null);
     }
 
     private static void warn(final String className, final String msg, final Throwable t) {
-        getLogger(className).warn(className + '$' + msg, t);
-        append(msg);
+        log(Level.WARNING, className, msg, null, t);
     }
 
     public static void warn(final String msg) {
@@ -243,6 +528,10 @@ public class Logger {
         warn(cls.getCanonicalName(), msg);
     }
 
+    public static void warn(final Class<?> cls, final String format, final Object... args) {
+        log(Level.WARNING, cls.getCanonicalName(), format, args, null);
+    }
+
     public static void warn(final Class<?> cls, final Throwable t) {
         warn(cls.getCanonicalName(), "", t);
     }
@@ -253,13 +542,11 @@ public class Logger {
 
 
     private static void error(final String className, final String msg) {
-        getLogger(className).error(className + '$' + msg);
-        append(msg);
+        log(Level.SEVERE, className, msg, null, null);
     }
 
     private static void error(final String className, final String msg, final Throwable t) {
-        getLogger(className).error(className + '$' + msg, t);
-        append(msg);
+        log(Level.SEVERE, className, msg, null, t);
     }
 
     public static void error(final String msg) {
@@ -278,6 +565,10 @@ public class Logger {
         error(cls.getCanonicalName(), msg);
     }
 
+    public static void error(final Class<?> cls, final String format, final Object... args) {
+        log(Level.SEVERE, cls.getCanonicalName(), format, args, null);
+    }
+
     public static void error(final Class<?> cls, final Throwable t) {
         error(cls.getCanonicalName(), "", t);
     }
@@ -25,14 +25,21 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import jcifs.smb.SmbException;
 import jcifs.smb.SmbFile;
@@ -43,20 +50,115 @@ import jcifs.smb.SmbFile;
  * time-out value. Using this class all network operations may be timed out.
  * This class provides also some static methods that give already solutions for typical
  * network operations that should be timed-out, like dns resolving and reverse domain name resolving.
+ *
+ * All requests are executed in one shared worker pool. The number of concurrently running requests
+ * is limited for each category, so a hanging smb server cannot occupy the workers for pings.
+ * A request which times out is interrupted, but it keeps its category permit until the call actually
+ * returns; this prevents that calls which ignore interrupts pile up.
  */
 public class TimeoutRequest<E> {
 
     public static boolean enable = true; // for tests
-    
+
+    public enum Category {
+        DNS(32), PING(64), SMB(16), DEFAULT(64);
+
+        private final int limit;
+        private final Semaphore permits;
+        private final LongAdder calls, timeouts, rejected, failures, cancelled;
+
+        private Category(final int limit) {
+            this.limit = limit;
+            this.permits = new Semaphore(limit);
+            this.calls = new LongAdder();
+            this.timeouts = new LongAdder();
+            this.rejected = new LongAdder();
+            this.failures = new LongAdder();
+            this.cancelled = new LongAdder();
+        }
+
+        public Map<String, Object> getStatistics() {
+            final Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("limit", this.limit);
+            stats.put("running", this.limit - this.permits.availablePermits());
+            stats.put("calls", this.calls.sum());
+            stats.put("timeouts", this.timeouts.sum());
+            stats.put("rejected", this.rejected.sum());
+            stats.put("failures", this.failures.sum());
+            stats.put("cancelled", this.cancelled.sum());
+            return stats;
+        }
+    }
+
+    private final static ThreadPoolExecutor workers;
+    private final static HashedWheelTimer timer = new HashedWheelTimer("TimeoutRequest.timer", 10, 512);
+    static {
+        int threads = 0;
+        for (final Category category: Category.values()) threads += category.limit;
+        final AtomicInteger count = new AtomicInteger(0);
+        // the queue never holds more tasks than there are category permits
+        workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            final Thread t = new Thread(r, "TimeoutRequest.worker-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+    private final Category category;
     private final Callable<E> call;
 
     /**
      * initialize the TimeoutRequest with a callable method
      */
     public TimeoutRequest(final Callable<E> call) {
+        this(Category.DEFAULT, call);
+    }
+
+    /**
+     * initialize the TimeoutRequest with a callable method
+     * @param category the category which limits the number of concurrent calls of this kind
+     * @param call the method
+     */
+    public TimeoutRequest(final Category category, final Callable<E> call) {
+        this.category = category;
         this.call = call;
     }
 
+    // the task of a call; the category permit is given back when the worker leaves the call
+    private final class Task extends FutureTask<E> {
+        private final CompletableFuture<E> result;
+
+        private Task(final CompletableFuture<E> result) {
+            super(TimeoutRequest.this.call);
+            this.result = result;
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                TimeoutRequest.this.category.permits.release();
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (this.isCancelled()) {
+                this.result.completeExceptionally(new CancellationException());
+                return;
+            }
+            try {
+                this.result.complete(this.get());
+            } catch (final ExecutionException e) {
+                if (this.result.completeExceptionally(e.getCause())) TimeoutRequest.this.category.failures.increment();
+            } catch (final InterruptedException | CancellationException e) {
+                this.result.completeExceptionally(e);
+            }
+        }
+    }
+
     /**
      * call the method using a time-out
      * @param timeout
@@ -70,38 +172,87 @@ public class TimeoutRequest<E> {
             throw new ExecutionException(e1);
         }
         }
-        final ExecutorService service = Executors.newSingleThreadExecutor(Executors.defaultThreadFactory());
+        final long start = System.currentTimeMillis();
         try {
-            final Future<E> taskFuture = service.submit(this.call);
-            final Runnable t = new Runnable() {
-                @Override
-                public void run() { taskFuture.cancel(true); }
-            };
-            service.execute(t);
-            service.shutdown();
-            try {
-                return taskFuture.get(timeout, TimeUnit.MILLISECONDS);
-            } catch (final CancellationException e) {
-                // callable was interrupted
-                throw new ExecutionException(e);
-            } catch (final InterruptedException e) {
-                // service was shutdown
-                throw new ExecutionException(e);
-            } catch (final ExecutionException e) {
-                // callable failed unexpectedly
-                throw e;
-            } catch (final TimeoutException e) {
-                // time-out
-                throw new ExecutionException(e);
+            if (!this.category.permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                this.category.rejected.increment();
+                throw new ExecutionException(new TimeoutException("no free worker for " + this.category.name() + " requests within " + timeout + " milliseconds"));
             }
-        } catch (final OutOfMemoryError e) {
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecutionException(e);
+        }
+        final CompletableFuture<E> result = start(Math.max(0, timeout - (System.currentTimeMillis() - start)));
+        try {
+            return result.get();
+        } catch (final InterruptedException e) {
+            // the caller was interrupted, the callable is interrupted as well
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ExecutionException(e);
+        } catch (final CancellationException e) {
+            throw new ExecutionException(e);
+        } catch (final ExecutionException e) {
+            // the callable failed or the time-out was reached
+            throw e;
+        }
+    }
+
+    /**
+     * call the method asynchronously using a time-out. If the category limit is reached, the call is rejected immediately.
+     * Cancelling the returned future interrupts the callable.
+     * @param timeout
+     * @return a future which completes with the result of the callable, with a TimeoutException after the timeout
+     *   or with a RejectedExecutionException if there is no free worker for this category
+     */
+    public CompletableFuture<E> callAsync(final long timeout) {
+        if (!this.category.permits.tryAcquire()) {
+            this.category.rejected.increment();
+            final CompletableFuture<E> result = new CompletableFuture<>();
+            result.completeExceptionally(new RejectedExecutionException("no free worker for " + this.category.name() + " requests"));
+            return result;
+        }
+        return start(timeout);
+    }
+
+    // start the call; the category permit must be acquired already
+    private CompletableFuture<E> start(final long timeout) {
+        this.category.calls.increment();
+        final CompletableFuture<E> result = new CompletableFuture<>();
+        final Task task = new Task(result);
+        try {
+            workers.execute(task);
+        } catch (final RejectedExecutionException | OutOfMemoryError e) {
             // in case that no memory is there to create a new native thread
-            try {
-                return this.call.call();
-            } catch (final Exception e1) {
-                throw new ExecutionException(e1);
-            }
+            task.run();
+            return result;
         }
+        final HashedWheelTimer.Timeout t = timer.newTimeout(() -> {
+            if (result.completeExceptionally(new TimeoutException("timeout after " + timeout + " milliseconds"))) {
+                this.category.timeouts.increment();
+                task.cancel(true);
+            }
+        }, timeout);
+        result.whenComplete((r, e) -> {
+            t.cancel();
+            if (result.isCancelled()) {
+                this.category.cancelled.increment();
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * get the statistics of all request categories
+     * @return a map from the category name to the statistics of the category
+     */
+    public static Map<String, Object> getStatistics() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        for (final Category category: Category.values()) stats.put(category.name().toLowerCase(), category.getStatistics());
+        stats.put("workers", workers.getPoolSize());
+        stats.put("pending_timeouts", timer.pending());
+        return stats;
     }
 
     /**
@@ -112,7 +263,7 @@ public class TimeoutRequest<E> {
      */
     public static boolean ping(final String host, final int port, final int timeout) {
         try {
-            return new TimeoutRequest<Boolean>(new Callable<Boolean>() {
+            return new TimeoutRequest<Boolean>(Category.PING, new Callable<Boolean>() {
                 @SuppressWarnings("resource")
                 @Override
                 public Boolean call() {
@@ -151,7 +302,7 @@ public class TimeoutRequest<E> {
      * @throws ExecutionException
      */
     public static String getHostName(final InetAddress i, final long timeout) throws ExecutionException {
-        return new TimeoutRequest<String>(new Callable<String>() {
+        return new TimeoutRequest<String>(Category.DNS, new Callable<String>() {
             @Override
             public String call() { return i.getHostName(); }
         }).call(timeout);
@@ -166,7 +317,7 @@ public class TimeoutRequest<E> {
      */
     public static boolean exists(final SmbFile file, final long timeout) throws IOException {
         try {
-            return new TimeoutRequest<Boolean>(new Callable<Boolean>() {
+            return new TimeoutRequest<Boolean>(Category.SMB, new Callable<Boolean>() {
                 @Override
                 public Boolean call() { try {
                     return file.exists();
@@ -188,7 +339,7 @@ public class TimeoutRequest<E> {
      */
     public static boolean canRead(final SmbFile file, final long timeout) throws IOException {
         try {
-            return new TimeoutRequest<Boolean>(new Callable<Boolean>() {
+            return new TimeoutRequest<Boolean>(Category.SMB, new Callable<Boolean>() {
                 @Override
                 public Boolean call() { try {
                     return file.canRead();
@@ -210,7 +361,7 @@ public class TimeoutRequest<E> {
      */
     public static boolean canWrite(final SmbFile file, final long timeout) throws IOException {
         try {
-            return new TimeoutRequest<Boolean>(new Callable<Boolean>() {
+            return new TimeoutRequest<Boolean>(Category.SMB, new Callable<Boolean>() {
                 @Override
                 public Boolean call() { try {
                     return file.canWrite();
@@ -232,7 +383,7 @@ public class TimeoutRequest<E> {
      */
     public static boolean isHidden(final SmbFile file, final long timeout) throws IOException {
         try {
-            return new TimeoutRequest<Boolean>(new Callable<Boolean>() {
+            return new TimeoutRequest<Boolean>(Category.SMB, new Callable<Boolean>() {
                 @Override
                 public Boolean call() { try {
                     return file.isHidden();
@@ -254,7 +405,7 @@ public class TimeoutRequest<E> {
      */
     public static boolean isDirectory(final SmbFile file, final long timeout) throws IOException {
         try {
-            return new TimeoutRequest<Boolean>(new Callable<Boolean>() {
+            return new TimeoutRequest<Boolean>(Category.SMB, new Callable<Boolean>() {
                 @Override
                 public Boolean call() { try {
                     return file.isDirectory();
@@ -276,7 +427,7 @@ public class TimeoutRequest<E> {
      */
     public static long length(final SmbFile file, final long timeout) throws IOException {
         try {
-            return new TimeoutRequest<Long>(new Callable<Long>() {
+            return new TimeoutRequest<Long>(Category.SMB, new Callable<Long>() {
                 @Override
                 public Long call() { try {
                     return file.length();
@@ -298,7 +449,7 @@ public class TimeoutRequest<E> {
      */
     public static long lastModified(final SmbFile file, final long timeout) throws IOException {
         try {
-            return new TimeoutRequest<Long>(new Callable<Long>() {
+            return new TimeoutRequest<Long>(Category.SMB, new Callable<Long>() {
                 @Override
                 public Long call() { try {
                     return file.lastModified();
@@ -320,7 +471,7 @@ public class TimeoutRequest<E> {
      */
     public static String[] list(final SmbFile file, final long timeout) throws IOException {
         try {
-            return new TimeoutRequest<String[]>(new Callable<String[]>() {
+            return new TimeoutRequest<String[]>(Category.SMB, new Callable<String[]>() {
                 @Override
                 public String[] call() { try {
                     return file.list();
@@ -334,4 +485,31 @@ public class TimeoutRequest<E> {
         }
     }
 
+    public static void main(String[] args) {
+        // many short calls, some of them hang; the hanging calls must time out and the short calls must not wait for them
+        final long start = System.currentTimeMillis();
+        final AtomicInteger ok = new AtomicInteger(0), timedout = new AtomicInteger(0);
+        final Thread[] t = new Thread[16];
+        for (int i = 0; i < t.length; i++) {
+            final int n = i;
+            t[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    final boolean hang = j % 100 == n;
+                    try {
+                        new TimeoutRequest<Integer>(hang ? Category.SMB : Category.DEFAULT, () -> {
+                            if (hang) Thread.sleep(10000);
+                            return 1;
+                        }).call(200);
+                        ok.incrementAndGet();
+                    } catch (final ExecutionException e) {
+                        if (e.getCause() instanceof TimeoutException) timedout.incrementAndGet();
+                    }
+                }
+            });
+            t[i].start();
+        }
+        for (int i = 0; i < t.length; i++) try {t[i].join();} catch (final InterruptedException e) {}
+        System.out.println("ok: " + ok.get() + ", timeouts: " + timedout.get() + ", time: " + (System.currentTimeMillis() - start) + " ms");
+        System.out.println(getStatistics());
+    }
 }
@@ -0,0 +1,653 @@
+/**
+ *  TinyLFUARC
+ *  Copyright 19.10.2026 by Michael Peter Christen, @orbiterlab
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.tools;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent cache with lock-free reads and a W-TinyLFU eviction policy.
+ * The entries are stored in a ConcurrentHashMap; reads never lock. The recency order of the entries is kept
+ * in three lru lists: a small admission window (1% of the maximum weight), a probation and a protected segment.
+ * Reads and writes only record events in buffers: reads go into striped lossy ring buffers, writes into a queue.
+ * The buffers are applied to the lru lists by the thread which gets the eviction lock, so no thread waits for
+ * another thread to update the lists.
+ * An entry which falls out of the window is only admitted to the main segments if it was used more often than
+ * the entry which would be evicted for it. The usage frequency is counted with a 4-bit count-min sketch which is
+ * halved periodically, so a scan of one-off keys cannot push the frequently used entries out of the cache.
+ * The cache is bounded by the sum of the entry weights; by default every entry has the weight 1.
+ * The keys must implement equals() and hashCode().
+ */
+public final class TinyLFUARC<K, V> extends AbstractMap<K, V> implements Map<K, V>, Iterable<Map.Entry<K, V>>, ARC<K, V> {
+
+    /**
+     * A weigher computes the weight of an entry, i.e. the memory size of the value
+     */
+    public interface Weigher<K, V> {
+        public int weigh(K key, V value);
+    }
+
+    private final static int WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+    private final static int READ_BUFFER_SIZE = 16; // must be a power of 2
+    private final static int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private final static int WRITE_BUFFER_DRAIN_THRESHOLD = 16;
+
+    private final static class Node<K, V> {
+        private final K key;
+        private volatile V value;
+        private volatile int weight; // the weight of the current value
+        private volatile boolean alive;
+        // the following fields are guarded by the eviction lock
+        private int policyWeight; // the weight which is accounted in the lru lists
+        private int queue;
+        private boolean linked;
+        private Node<K, V> prev, next;
+
+        private Node(final K key, final V value, final int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.alive = true;
+            this.policyWeight = 0;
+            this.linked = false;
+        }
+    }
+
+    /**
+     * a double-linked lru list; the head is the least recently used node
+     */
+    private final static class LRU<K, V> {
+        private Node<K, V> head, tail;
+        private long weight;
+
+        private void addLast(final Node<K, V> n) {
+            n.prev = this.tail;
+            n.next = null;
+            if (this.tail == null) this.head = n; else this.tail.next = n;
+            this.tail = n;
+            this.weight += n.policyWeight;
+        }
+
+        private void unlink(final Node<K, V> n) {
+            if (n.prev == null) this.head = n.next; else n.prev.next = n.next;
+            if (n.next == null) this.tail = n.prev; else n.next.prev = n.prev;
+            n.prev = null;
+            n.next = null;
+            this.weight -= n.policyWeight;
+        }
+
+        private void moveToLast(final Node<K, V> n) {
+            if (this.tail == n) return;
+            unlink(n);
+            addLast(n);
+        }
+
+        private void clear() {
+            this.head = null;
+            this.tail = null;
+            this.weight = 0;
+        }
+    }
+
+    /**
+     * a lossy ring buffer for read events; if the buffer is full, events are dropped
+     */
+    private final static class ReadBuffer<K, V> {
+        private final AtomicReferenceArray<Node<K, V>> slots = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        private final AtomicLong writeCounter = new AtomicLong(0);
+        private volatile long readCounter = 0; // written only under the eviction lock
+
+        /**
+         * @return true if the buffer is full and should be drained
+         */
+        private boolean offer(final Node<K, V> n) {
+            final long w = this.writeCounter.get();
+            if (w - this.readCounter >= READ_BUFFER_SIZE) return true;
+            if (this.writeCounter.compareAndSet(w, w + 1)) this.slots.lazySet((int) (w & READ_BUFFER_MASK), n);
+            return w + 1 - this.readCounter >= READ_BUFFER_SIZE;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Node<K, V>> data;
+    private final long maximumWeight, windowMaximum, protectedMaximum;
+    private final Weigher<K, V> weigher;
+    private final ReadBuffer<K, V>[] readBuffers;
+    private final int readBufferMask;
+    private final ConcurrentLinkedQueue<Runnable> writeBuffer;
+    private final AtomicInteger pendingWrites;
+    private final ReentrantLock evictionLock;
+    private final FrequencySketch sketch; // guarded by the eviction lock
+    private final LRU<K, V> window, probation, protect; // guarded by the eviction lock
+    private final LongAdder hits, misses, evictions;
+
+    /**
+     * create a cache where every entry has the weight 1
+     * @param cacheSize the maximum number of entries
+     */
+    public TinyLFUARC(final int cacheSize) {
+        this(cacheSize, null);
+    }
+
+    /**
+     * create a weight-bounded cache
+     * @param maximumWeight the maximum sum of all entry weights
+     * @param weigher the weigher or null if every entry has the weight 1
+     */
+    @SuppressWarnings("unchecked")
+    public TinyLFUARC(final long maximumWeight, final Weigher<K, V> weigher) {
+        this.maximumWeight = Math.max(1, maximumWeight);
+        this.windowMaximum = Math.max(1, this.maximumWeight / 100);
+        this.protectedMaximum = (this.maximumWeight - this.windowMaximum) * 8 / 10;
+        this.weigher = weigher;
+        this.data = new ConcurrentHashMap<>((int) Math.min(1 << 16, this.maximumWeight));
+        int stripes = 1;
+        while (stripes < 4 * Runtime.getRuntime().availableProcessors()) stripes *= 2;
+        @SuppressWarnings("unchecked")
+        final ReadBuffer<K, V>[] buffers = (ReadBuffer<K, V>[]) new ReadBuffer<?, ?>[stripes];
+        for (int i = 0; i < stripes; i++) buffers[i] = new ReadBuffer<>();
+        this.readBuffers = buffers;
+        this.readBufferMask = stripes - 1;
+        this.writeBuffer = new ConcurrentLinkedQueue<>();
+        this.pendingWrites = new AtomicInteger(0);
+        this.evictionLock = new ReentrantLock();
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, this.maximumWeight));
+        this.window = new LRU<>();
+        this.probation = new LRU<>();
+        this.protect = new LRU<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    private int weigh(final K key, final V value) {
+        return this.weigher == null ? 1 : Math.max(0, this.weigher.weigh(key, value));
+    }
+
+    /**
+     * get a value from the cache; this does not lock
+     * @param s
+     * @return the value
+     */
+    @Override
+    public V get(final Object s) {
+        final Node<K, V> n = this.data.get(s);
+        if (n == null) {
+            this.misses.increment();
+            return null;
+        }
+        this.hits.increment();
+        final ReadBuffer<K, V> buffer = this.readBuffers[(int) Thread.currentThread().getId() & this.readBufferMask];
+        if (buffer.offer(n)) tryDrain();
+        return n.value;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return this.data.containsKey(key);
+    }
+
+    /**
+     * put a value to the cache.
+     * @param s
+     * @param v
+     * @return the previous value
+     */
+    @Override
+    public V put(final K s, final V v) {
+        return put(s, v, false);
+    }
+
+    @Override
+    public void insert(final K s, final V v) {
+        put(s, v, false);
+    }
+
+    @Override
+    public void insertIfAbsent(final K s, final V v) {
+        put(s, v, true);
+    }
+
+    @Override
+    public V putIfAbsent(final K s, final V v) {
+        return put(s, v, true);
+    }
+
+    private V put(final K key, final V value, final boolean onlyIfAbsent) {
+        if (key == null || value == null) throw new NullPointerException();
+        final int weight = weigh(key, value);
+        for (;;) {
+            Node<K, V> n = this.data.get(key);
+            if (n == null) {
+                n = new Node<>(key, value, weight);
+                if (this.data.putIfAbsent(key, n) == null) {
+                    final Node<K, V> added = n;
+                    afterWrite(() -> onAdd(added));
+                    return null;
+                }
+                continue;
+            }
+            if (onlyIfAbsent) {
+                final ReadBuffer<K, V> buffer = this.readBuffers[(int) Thread.currentThread().getId() & this.readBufferMask];
+                if (buffer.offer(n)) tryDrain();
+                return n.value;
+            }
+            final V old;
+            synchronized (n) {
+                if (!n.alive) continue; // the node was removed concurrently
+                old = n.value;
+                n.value = value;
+                n.weight = weight;
+            }
+            final Node<K, V> updated = n;
+            afterWrite(() -> onUpdate(updated));
+            return old;
+        }
+    }
+
+    /**
+     * remove an entry from the cache
+     * @param s
+     * @return the old value
+     */
+    @Override
+    public V remove(final Object s) {
+        final Node<K, V> n = this.data.remove(s);
+        if (n == null) return null;
+        synchronized (n) {
+            n.alive = false;
+        }
+        afterWrite(() -> onRemove(n));
+        return n.value;
+    }
+
+    /**
+     * clear the cache
+     */
+    @Override
+    public void clear() {
+        this.evictionLock.lock();
+        try {
+            for (final Node<K, V> n: this.data.values()) {
+                synchronized (n) {
+                    n.alive = false;
+                }
+            }
+            this.data.clear();
+            drainBuffers();
+            this.window.clear();
+            this.probation.clear();
+            this.protect.clear();
+        } finally {
+            this.evictionLock.unlock();
+        }
+    }
+
+    /**
+     * get the number of entries in the cache
+     */
+    @Override
+    public int size() {
+        return this.data.size();
+    }
+
+    /**
+     * @return the sum of the weights of all entries
+     */
+    public long weightedSize() {
+        this.evictionLock.lock();
+        try {
+            drainBuffers();
+            return this.window.weight + this.probation.weight + this.protect.weight;
+        } finally {
+            this.evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public Collection<K> getKeys(final V value) {
+        final ArrayList<K> keys = new ArrayList<>();
+        for (final Node<K, V> n: this.data.values()) if (value.equals(n.value)) keys.add(n.key);
+        return keys;
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return entrySet().iterator();
+    }
+
+    /**
+     * a snapshot of the entries in the cache
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        final Set<Map.Entry<K, V>> m = new HashSet<>();
+        for (final Node<K, V> n: this.data.values()) m.add(new AbstractMap.SimpleImmutableEntry<>(n.key, n.value));
+        return m;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return this == o;
+    }
+
+    /**
+     * get the cache statistics
+     * @return a map with the size, weight and the counters of cache events
+     */
+    public Map<String, Object> getStatistics() {
+        final Map<String, Object> stats = new HashMap<>();
+        stats.put("size", size());
+        stats.put("weight", weightedSize());
+        stats.put("max_weight", this.maximumWeight);
+        stats.put("hits", this.hits.sum());
+        stats.put("misses", this.misses.sum());
+        stats.put("evictions", this.evictions.sum());
+        return stats;
+    }
+
+    private void afterWrite(final Runnable task) {
+        this.writeBuffer.add(task);
+        // writes must be applied eventually, so the writer waits for the lock if the buffer grows
+        if (this.pendingWrites.incrementAndGet() > WRITE_BUFFER_DRAIN_THRESHOLD) {
+            this.evictionLock.lock();
+            try {
+                drainBuffers();
+            } finally {
+                this.evictionLock.unlock();
+            }
+        } else {
+            tryDrain();
+        }
+    }
+
+    private void tryDrain() {
+        while (this.evictionLock.tryLock()) {
+            try {
+                drainBuffers();
+            } finally {
+                this.evictionLock.unlock();
+            }
+            // a task may have been added after the drain and before the unlock
+            if (this.writeBuffer.isEmpty()) return;
+        }
+    }
+
+    // must be called while holding the eviction lock
+    private void drainBuffers() {
+        for (final ReadBuffer<K, V> buffer: this.readBuffers) {
+            long r = buffer.readCounter;
+            final long w = buffer.writeCounter.get();
+            for (; r < w; r++) {
+                final int i = (int) (r & READ_BUFFER_MASK);
+                final Node<K, V> n = buffer.slots.get(i);
+                if (n == null) break; // not yet published
+                buffer.slots.lazySet(i, null);
+                onAccess(n);
+            }
+            buffer.readCounter = r;
+        }
+        Runnable task;
+        while ((task = this.writeBuffer.poll()) != null) {
+            this.pendingWrites.decrementAndGet();
+            task.run();
+        }
+        evict();
+    }
+
+    // the following methods are called while holding the eviction lock
+
+    private LRU<K, V> lru(final Node<K, V> n) {
+        return n.queue == WINDOW ? this.window : n.queue == PROBATION ? this.probation : this.protect;
+    }
+
+    private void onAccess(final Node<K, V> n) {
+        this.sketch.increment(n.key.hashCode());
+        if (!n.linked) return;
+        if (n.queue == PROBATION) {
+            // promote to the protected segment; this may demote the oldest protected entry
+            this.probation.unlink(n);
+            n.queue = PROTECTED;
+            this.protect.addLast(n);
+            while (this.protect.weight > this.protectedMaximum && this.protect.head != n) {
+                final Node<K, V> demoted = this.protect.head;
+                this.protect.unlink(demoted);
+                demoted.queue = PROBATION;
+                this.probation.addLast(demoted);
+            }
+        } else {
+            lru(n).moveToLast(n);
+        }
+    }
+
+    private void onAdd(final Node<K, V> n) {
+        if (!n.alive || n.linked) return;
+        this.sketch.increment(n.key.hashCode());
+        n.policyWeight = n.weight;
+        n.queue = WINDOW;
+        n.linked = true;
+        this.window.addLast(n);
+    }
+
+    private void onUpdate(final Node<K, V> n) {
+        if (!n.linked) return;
+        final LRU<K, V> l = lru(n);
+        final int w = n.weight;
+        l.weight += w - n.policyWeight;
+        n.policyWeight = w;
+        onAccess(n);
+    }
+
+    private void onRemove(final Node<K, V> n) {
+        if (!n.linked) return;
+        lru(n).unlink(n);
+        n.linked = false;
+    }
+
+    private void evict() {
+        // move entries from the window to the probation segment; they become candidates for admission
+        Node<K, V> candidate = null;
+        while (this.window.weight > this.windowMaximum && this.window.head != null) {
+            final Node<K, V> n = this.window.head;
+            this.window.unlink(n);
+            n.queue = PROBATION;
+            this.probation.addLast(n);
+            if (candidate == null) candidate = n;
+        }
+
+        // evict until the cache has the maximum weight: either the candidate or the victim at the head of the probation
+        while (this.window.weight + this.probation.weight + this.protect.weight > this.maximumWeight) {
+            Node<K, V> victim = this.probation.head;
+            if (victim == null) victim = this.protect.head;
+            if (victim == null) victim = this.window.head;
+            if (victim == null) break;
+            if (candidate == null || victim == candidate) {
+                if (victim == candidate) candidate = candidate.next;
+                evictNode(victim);
+                continue;
+            }
+            if (admit(candidate, victim)) {
+                evictNode(victim);
+            } else {
+                final Node<K, V> next = candidate.next;
+                evictNode(candidate);
+                candidate = next;
+            }
+        }
+    }
+
+    private boolean admit(final Node<K, V> candidate, final Node<K, V> victim) {
+        return this.sketch.frequency(candidate.key.hashCode()) > this.sketch.frequency(victim.key.hashCode());
+    }
+
+    private void evictNode(final Node<K, V> n) {
+        lru(n).unlink(n);
+        n.linked = false;
+        synchronized (n) {
+            n.alive = false;
+        }
+        this.data.remove(n.key, n);
+        this.evictions.increment();
+    }
+
+    /**
+     * A count-min sketch with 4-bit counters. Every long of the table holds 16 counters.
+     * When the number of increments reaches ten times the table size, all counters are halved,
+     * so the sketch forgets old usage.
+     */
+    private final static class FrequencySketch {
+        private final static long[] SEED = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private final static long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int tableMask, sampleSize;
+        private int size;
+
+        private FrequencySketch(final int maximumSize) {
+            int t = 8;
+            while (t < maximumSize) t *= 2;
+            this.table = new long[t];
+            this.tableMask = t - 1;
+            this.sampleSize = 10 * t;
+            this.size = 0;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+
+        private int indexOf(final int item, final int i) {
+            long hash = (item + SEED[i]) * SEED[i];
+            hash += hash >>> 32;
+            return ((int) hash) & this.tableMask;
+        }
+
+        private int frequency(final int h) {
+            final int hash = spread(h);
+            final int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                final int offset = (start + i) << 2;
+                frequency = Math.min(frequency, (int) ((this.table[indexOf(hash, i)] >>> offset) & 0xfL));
+            }
+            return frequency;
+        }
+
+        private void increment(final int h) {
+            final int hash = spread(h);
+            final int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                final int index = indexOf(hash, i);
+                final int offset = (start + i) << 2;
+                final long mask = 0xfL << offset;
+                if ((this.table[index] & mask) != mask) {
+                    this.table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++this.size == this.sampleSize) {
+                for (int i = 0; i < this.table.length; i++) this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+                this.size = this.size / 2;
+            }
+        }
+    }
+
+    /**
+     * compare hit rate and throughput with the ConcurrentARC
+     * @param args
+     */
+    public static void main(final String[] args) {
+        final int cacheSize = 10000;
+        final int threads = Runtime.getRuntime().availableProcessors() * 2;
+
+        // hit rate: a skewed workload which is interrupted by scans of one-off keys
+        final ARC<Integer, Integer> tiny = new TinyLFUARC<>(cacheSize);
+        final ARC<Integer, Integer> arc = new ConcurrentARC<>(cacheSize, Runtime.getRuntime().availableProcessors());
+        for (final ARC<Integer, Integer> a: Arrays.asList(tiny, arc)) {
+            final Random r = new Random(0);
+            long hit = 0, count = 0;
+            int scan = 1000000;
+            for (int i = 0; i < 2000000; i++) {
+                final int key;
+                if (i % 100000 < 20000) {
+                    key = scan++; // scan
+                } else {
+                    key = (int) Math.abs(r.nextGaussian() * cacheSize); // hot keys
+                    count++;
+                }
+                if (a.get(key) != null) {
+                    if (key < 1000000) hit++;
+                } else {
+                    a.insert(key, key);
+                }
+            }
+            System.out.println(a.getClass().getSimpleName() + " hit rate of hot keys with scans: " + (100 * hit / count) + "%");
+        }
+
+        // throughput: concurrent reads and writes of a zipf-like key distribution
+        for (final ARC<Integer, Integer> a: Arrays.<ARC<Integer, Integer>>asList(new TinyLFUARC<>(cacheSize), new ConcurrentARC<>(cacheSize, Runtime.getRuntime().availableProcessors()))) {
+            final AtomicLong ops = new AtomicLong(0);
+            final java.util.concurrent.ExecutorService pool = Executors.newFixedThreadPool(threads);
+            final long stop = System.currentTimeMillis() + 3000;
+            for (int t = 0; t < threads; t++) {
+                final int seed = t;
+                pool.submit(() -> {
+                    final Random r = new Random(seed);
+                    long n = 0;
+                    while (System.currentTimeMillis() < stop) {
+                        for (int i = 0; i < 1000; i++) {
+                            final int key = (int) Math.abs(r.nextGaussian() * cacheSize * 2);
+                            if (a.get(key) == null) a.insert(key, key);
+                        }
+                        n += 1000;
+                    }
+                    ops.addAndGet(n);
+                });
+            }
+            pool.shutdown();
+            try {pool.awaitTermination(10, TimeUnit.SECONDS);} catch (final InterruptedException e) {}
+            System.out.println(a.getClass().getSimpleName() + " with " + threads + " threads: " + (ops.get() / 3000) + " operations/ms, size " + a.size());
+        }
+    }
+}